@@ -222,6 +222,29 @@ JNIEXPORT jlong JNICALL Java_edu_stanford_nlp_mt_lm_KenLM_scoreNGramSeq
   return result;
 }
   
+/*
+ * Class:     edu_stanford_nlp_more_lm_KenLM
+ * Method:    scoreNGramSeqBatch
+ * Signature: (JLjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;)V
+ *
+ * Scores num_queries sequences in one call. The input is a direct buffer of
+ * native-order jints. Each query is a record of its length, its start index, and
+ * the words of the sequence in the same (reversed) order as scoreNGramSeq. The
+ * output is a direct buffer that receives one marshalled jlong per query.
+ */
+JNIEXPORT void JNICALL Java_edu_stanford_nlp_mt_lm_KenLM_scoreNGramSeqBatch
+(JNIEnv *env, jobject this_jobj, jlong kenLM_ptr, jobject jinput, jint num_queries, jobject joutput) {
+  const WrapAbstract *kenLM = reinterpret_cast<WrapAbstract*>(kenLM_ptr);
+  const jint *input = static_cast<const jint*>(env->GetDirectBufferAddress(jinput));
+  jlong *output = static_cast<jlong*>(env->GetDirectBufferAddress(joutput));
+  for (jint i = 0; i < num_queries; ++i) {
+    const jint ngram_sz = input[0];
+    const lm::WordIndex *ngram_array = reinterpret_cast<const lm::WordIndex*>(input + 2);
+    output[i] = kenLM->QuerySequence(ngram_array, ngram_array + input[1], ngram_array + ngram_sz);
+    input += 2 + ngram_sz;
+  }
+}
+
 /*
  * Class:     edu_stanford_nlp_more_lm_KenLM
  * Method:    getOrder
@@ -6,6 +6,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import com.google.gson.Gson;
 
+import edu.stanford.nlp.mt.decoder.feat.FeaturizerProfiler;
 import edu.stanford.nlp.mt.service.handlers.RuleQuery;
 import edu.stanford.nlp.mt.service.handlers.TranslationQuery;
 import edu.stanford.nlp.util.Pair;
@@ -31,13 +32,17 @@ public final class Messages {
     // the "Req" suffix.
     TRANSLATION_REQUEST("tReq", TranslationRequest.class),
     RULE_QUERY_REQUEST("rqReq", RuleQueryRequest.class),
+    WEIGHTS_UPDATE_REQUEST("wuReq", WeightsUpdateRequest.class),
+    STATS_REQUEST("stReq", StatsRequest.class),
     // Error catch-all request
     UNKNOWN_REQUEST("unkReq", null),
     
     // Responses -- convention is camelcase letters followed by
     // the "Rep" suffix.
     TRANSLATION_REPLY("tRep", TranslationReply.class),
-    RULE_QUERY_REPLY("rqRep", RuleQueryReply.class);
+    RULE_QUERY_REPLY("rqRep", RuleQueryReply.class),
+    WEIGHTS_UPDATE_REPLY("wuRep", WeightsUpdateReply.class),
+    STATS_REPLY("stRep", StatsReply.class);
         
     private final String keyName;
     private final Class msgClass;
@@ -157,6 +162,51 @@ public final class Messages {
     }
   }
   
+  /**
+   * Replace the decoder weights. The text is the path of a weights file on the server.
+   * 
+   * @author Spence Green
+   *
+   */
+  public static class WeightsUpdateRequest extends Request {
+    public WeightsUpdateRequest(String weightsFile) {
+      super(null, null, weightsFile, null);
+      this.id = MessageType.WEIGHTS_UPDATE_REQUEST.ordinal();
+    }
+    @Override
+    public boolean isAsynchronous() {
+      return false;
+    }
+    @Override
+    public String toString() {
+      return String.format("[weights %s]", text);
+    }
+  }
+  
+  /**
+   * Decoder statistics. Set <code>reset</code> to clear the statistics after
+   * they are read.
+   * 
+   * @author Spence Green
+   *
+   */
+  public static class StatsRequest extends Request {
+    public final boolean reset;
+    public StatsRequest(boolean reset) {
+      super(null, null, null, null);
+      this.reset = reset;
+      this.id = MessageType.STATS_REQUEST.ordinal();
+    }
+    @Override
+    public boolean isAsynchronous() {
+      return false;
+    }
+    @Override
+    public String toString() {
+      return String.format("[stats reset=%b]", reset);
+    }
+  }
+  
   public static class UnknownRequest extends Request {
     public UnknownRequest() {
       super(null, null, null, null);
@@ -219,4 +269,40 @@ public final class Messages {
       return sb.toString();
     }
   }
+  
+  public static class WeightsUpdateReply implements Reply {
+    public final boolean success;
+    // Version of the weights that the decoder uses for new inputs
+    public final long version;
+    public final int numWeights;
+    public WeightsUpdateReply(boolean success, long version, int numWeights) {
+      this.success = success;
+      this.version = version;
+      this.numWeights = numWeights;
+    }
+    @Override
+    public String toString() {
+      return String.format("[%s v%d %d weights]", success ? "OK" : "FAILED", version, numWeights);
+    }
+  }
+  
+  public static class StatsReply implements Reply {
+    // Version of the weights that the decoder uses for new inputs
+    public final long weightsVersion;
+    // Empty if featurizer profiling is disabled
+    public final List<FeaturizerProfiler.Entry> featurizers;
+    public StatsReply(long weightsVersion, List<FeaturizerProfiler.Entry> featurizers) {
+      this.weightsVersion = weightsVersion;
+      this.featurizers = featurizers;
+    }
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("weights v%d", weightsVersion));
+      for (FeaturizerProfiler.Entry entry : featurizers) {
+        sb.append(String.format("%n")).append(entry.toString());
+      }
+      return sb.toString();
+    }
+  }
 }
@@ -12,16 +12,17 @@ import org.eclipse.jetty.continuation.Continuation;
 import org.eclipse.jetty.continuation.ContinuationSupport;
 
 import edu.stanford.nlp.mt.Phrasal;
-import edu.stanford.nlp.mt.decoder.util.SparseScorer;
 import edu.stanford.nlp.mt.service.Messages.MessageType;
 import edu.stanford.nlp.mt.service.Messages.Request;
 import edu.stanford.nlp.mt.service.handlers.RequestHandler;
 import edu.stanford.nlp.mt.service.handlers.RuleQueryRequestHandler;
 import edu.stanford.nlp.mt.service.handlers.RuleQueryRequestHandlerMock;
 import edu.stanford.nlp.mt.service.handlers.ServiceResponse;
+import edu.stanford.nlp.mt.service.handlers.StatsRequestHandler;
 import edu.stanford.nlp.mt.service.handlers.TranslationRequestHandler;
 import edu.stanford.nlp.mt.service.handlers.TranslationRequestHandlerMock;
 import edu.stanford.nlp.mt.service.handlers.UnknownRequestHandler;
+import edu.stanford.nlp.mt.service.handlers.WeightsUpdateRequestHandler;
 import edu.stanford.nlp.util.Pair;
 
 /**
@@ -88,9 +89,17 @@ public class PhrasalServlet extends HttpServlet {
 
       } else if (type == MessageType.RULE_QUERY_REQUEST) {
         handlers[type.ordinal()] = loadMock ? new RuleQueryRequestHandlerMock() :
-          new RuleQueryRequestHandler(decoder.getTranslationModel(), new SparseScorer(decoder.getModel()),
+          new RuleQueryRequestHandler(decoder.getTranslationModel(), decoder::getModelSnapshot,
               decoder.getPreprocessor(), decoder.getPostprocessor());
 
+      } else if (type == MessageType.WEIGHTS_UPDATE_REQUEST) {
+        handlers[type.ordinal()] = loadMock ? new UnknownRequestHandler() :
+          new WeightsUpdateRequestHandler(decoder);
+
+      } else if (type == MessageType.STATS_REQUEST) {
+        handlers[type.ordinal()] = loadMock ? new UnknownRequestHandler() :
+          new StatsRequestHandler(decoder);
+
       } else if (type == MessageType.UNKNOWN_REQUEST) {
         handlers[type.ordinal()] = new UnknownRequestHandler();
       }
@@ -6,6 +6,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -17,6 +18,8 @@ import com.google.gson.reflect.TypeToken;
 
 import edu.stanford.nlp.mt.decoder.util.RuleGrid;
 import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.decoder.util.WeightSnapshot;
 import edu.stanford.nlp.mt.process.Postprocessor;
 import edu.stanford.nlp.mt.process.Preprocessor;
 import edu.stanford.nlp.mt.service.Messages.Language;
@@ -46,7 +49,9 @@ public class RuleQueryRequestHandler implements RequestHandler {
   private static final Logger logger = LogManager.getLogger(RuleQueryRequestHandler.class.getName());
 
   private final TranslationModel<IString, String> phraseTable;
-  private final Scorer<String> scorer;
+  private final Supplier<WeightSnapshot<String>> weights;
+  // Servlet threads update their scorers independently
+  private final ThreadLocal<Scorer<String>> scorers;
   private final Preprocessor preprocessor;
   private final Postprocessor postprocessor;
 
@@ -54,14 +59,15 @@ public class RuleQueryRequestHandler implements RequestHandler {
    * Constructor.
    * 
    * @param phraseGenerator
-   * @param scorer
+   * @param weights Source of the current decoder weights.
    * @param preprocessor
    * @param postprocessor
    */
   public RuleQueryRequestHandler(TranslationModel<IString,String> phraseGenerator, 
-      Scorer<String> scorer, Preprocessor preprocessor, Postprocessor postprocessor) {
+      Supplier<WeightSnapshot<String>> weights, Preprocessor preprocessor, Postprocessor postprocessor) {
     this.phraseTable = phraseGenerator;
-    this.scorer = scorer;
+    this.weights = weights;
+    this.scorers = ThreadLocal.withInitial(() -> new SparseScorer(weights.get().weights));
     this.preprocessor = preprocessor;
     this.postprocessor = postprocessor;
   }
@@ -72,6 +78,8 @@ public class RuleQueryRequestHandler implements RequestHandler {
     ServiceResponse response;
     try {
       RuleQueryRequest ruleRequest = (RuleQueryRequest) request;
+      final Scorer<String> scorer = scorers.get();
+      scorer.updateWeights(weights.get());
 
       // Source pre-processing
       Sequence<IString> source;
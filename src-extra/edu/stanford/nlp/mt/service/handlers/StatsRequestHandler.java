@@ -0,0 +1,59 @@
+package edu.stanford.nlp.mt.service.handlers;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.reflect.TypeToken;
+
+import edu.stanford.nlp.mt.Phrasal;
+import edu.stanford.nlp.mt.decoder.feat.FeaturizerProfiler;
+import edu.stanford.nlp.mt.service.Messages.Request;
+import edu.stanford.nlp.mt.service.Messages.StatsReply;
+import edu.stanford.nlp.mt.service.Messages.StatsRequest;
+
+/**
+ * Synchronous handler for decoder statistics messages.
+ * 
+ * @author Spence Green
+ *
+ */
+public class StatsRequestHandler implements RequestHandler {
+
+  private final Phrasal decoder;
+
+  /**
+   * Constructor.
+   * 
+   * @param decoder
+   */
+  public StatsRequestHandler(Phrasal decoder) {
+    this.decoder = decoder;
+  }
+
+  @Override
+  public ServiceResponse handle(Request request) {
+    StatsRequest statsRequest = (StatsRequest) request;
+    FeaturizerProfiler profiler = decoder.getFeaturizerProfiler();
+    List<FeaturizerProfiler.Entry> featurizers = profiler == null ? 
+        Collections.emptyList() : profiler.entries();
+    if (profiler != null && statsRequest.reset) profiler.reset();
+    StatsReply reply = new StatsReply(decoder.getModelSnapshot().version, featurizers);
+    Type t = new TypeToken<StatsReply>() {}.getType();
+    return new ServiceResponse(reply, t);
+  }
+
+  @Override
+  public void handleAsynchronous(Request baseRequest,
+      HttpServletRequest request, HttpServletResponse response) {
+    throw new UnsupportedOperationException("Asynchronous call to synchronous handler.");
+  }
+
+  @Override
+  public boolean validate(Request baseRequest) {
+    return true;
+  }
+}
@@ -15,6 +15,9 @@ public class TranslationQuery extends ScoredQuery  {
   public final List<String> tgt;
   public final List<String> align;
   
+  // True if the search was degraded to meet the decoding time limit
+  public final boolean degraded;
+  
   /**
    * Constructor.
    * 
@@ -23,9 +26,22 @@ public class TranslationQuery extends ScoredQuery  {
    * @param score
    */
   public TranslationQuery(List<String> tgt, List<String> align, double score) {
+    this(tgt, align, score, false);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param tgt
+   * @param align
+   * @param score
+   * @param degraded
+   */
+  public TranslationQuery(List<String> tgt, List<String> align, double score, boolean degraded) {
     super(score);
     this.tgt = tgt;
     this.align = align;
+    this.degraded = degraded;
   }
   
   @Override
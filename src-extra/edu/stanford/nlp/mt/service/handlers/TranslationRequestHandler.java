@@ -169,14 +169,24 @@ public class TranslationRequestHandler implements RequestHandler {
         }
         input.properties.put(InputProperty.TargetPrefix, targets != null);
         
-        // Decode
+        // The time limit covers the whole request, so deduct the time spent in the queue
+        // and in pre-processing.
         final long decodeStart = System.nanoTime();
+        if (input.properties.containsKey(InputProperty.DecodingTimeLimit)) {
+          final long timeLimit = ((Number) input.properties.get(InputProperty.DecodingTimeLimit)).longValue();
+          final long elapsed = (decodeStart - input.submitTime) / 1000000L;
+          input.properties.put(InputProperty.DecodingTimeLimit, Math.max(0L, timeLimit - elapsed));
+        }
+        
+        // Decode
         final int numRequestedTranslations = input.n;
         final int numTranslationsToGenerate = input.n * NBEST_MULTIPLIER;
         List<RichTranslation<IString,String>> translations = 
             decoder.decode(source, input.inputId, threadId, numTranslationsToGenerate, targets, input.properties); 
-        logger.info("Input {} decoder: #translations: {}",
-            input.inputId, translations.size());
+        final boolean degraded = translations.size() > 0 && 
+            translations.get(0).isDegraded();
+        logger.info("Input {} decoder: #translations: {} degraded: {}",
+            input.inputId, translations.size(), degraded);
         
         // Result extraction and post-processing
         final long postprocStart = System.nanoTime();
@@ -231,7 +241,8 @@ public class TranslationRequestHandler implements RequestHandler {
             input.inputId, querySeconds, preprocSeconds, decodeSeconds, postprocSeconds);
 
         // Create the service reply
-        TranslationRequestHandler.populateRequest(input.request, translationList, alignments, scoreList);
+        TranslationRequestHandler.populateRequest(input.request, translationList, alignments, scoreList,
+            degraded);
         input.continuation.resume(); // Re-dispatch/ resume to generate response
 
         return new DecoderOutput(input.inputId, true);
@@ -240,7 +251,7 @@ public class TranslationRequestHandler implements RequestHandler {
         // Catch all exception handler. Generate an empty response.
         logger.error("Decoding of request failed: " + input.toString(), e);
         TranslationRequestHandler.populateRequest(input.request, new LinkedList<Sequence<IString>>(), 
-            new LinkedList<List<String>>(), new LinkedList<Double>());
+            new LinkedList<List<String>>(), new LinkedList<Double>(), false);
         input.continuation.resume(); // Re-dispatch/ resume to generate response
       }
       return new DecoderOutput(input.inputId, false);
@@ -361,17 +372,18 @@ public class TranslationRequestHandler implements RequestHandler {
    * @param translationList
    * @param alignments
    * @param scoreList
+   * @param degraded
    * @return
    */
   private static List<TranslationQuery> toQuery(List<Sequence<IString>> translationList,
-      List<List<String>> alignments, List<Double> scoreList) {
+      List<List<String>> alignments, List<Double> scoreList, boolean degraded) {
     final int nTranslations = translationList.size();
     double normalizer = 0.0;
     for (double d : scoreList) normalizer += d;
     List<TranslationQuery> sortedList = new ArrayList<>(nTranslations);
     for (int i = 0; i < nTranslations; ++i) {
       TranslationQuery query = new TranslationQuery(Sequences.toStringList(translationList.get(i)),
-          alignments.get(i), scoreList.get(i) / normalizer);
+          alignments.get(i), scoreList.get(i) / normalizer, degraded);
       sortedList.add(query);
     }
     return sortedList;
@@ -384,11 +396,12 @@ public class TranslationRequestHandler implements RequestHandler {
    * @param translationList
    * @param alignments
    * @param scoreList
+   * @param degraded
    */
   private static void populateRequest(HttpServletRequest request, List<Sequence<IString>> translationList,
-      List<List<String>> alignments, List<Double> scoreList) {
+      List<List<String>> alignments, List<Double> scoreList, boolean degraded) {
     Type t = new TypeToken<TranslationReply>() {}.getType();
-    List<TranslationQuery> queryList = toQuery(translationList, alignments, scoreList);
+    List<TranslationQuery> queryList = toQuery(translationList, alignments, scoreList, degraded);
     TranslationReply baseResponse = new TranslationReply(queryList);
     ServiceResponse serviceResponse = new ServiceResponse(baseResponse, t);
     request.setAttribute(PhrasalServlet.ASYNC_KEY, serviceResponse);   
@@ -440,7 +453,7 @@ public class TranslationRequestHandler implements RequestHandler {
     if ( ! requestSubmitted) {
       logger.error("Decoding of request failed: {}", input);
       TranslationRequestHandler.populateRequest(input.request, new LinkedList<Sequence<IString>>(), 
-          new LinkedList<List<String>>(), new LinkedList<Double>());
+          new LinkedList<List<String>>(), new LinkedList<Double>(), false);
       input.continuation.resume(); // Re-dispatch/ resume to generate response
     }
   }
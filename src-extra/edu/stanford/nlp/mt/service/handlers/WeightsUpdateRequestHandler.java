@@ -0,0 +1,69 @@
+package edu.stanford.nlp.mt.service.handlers;
+
+import java.lang.reflect.Type;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.reflect.TypeToken;
+
+import edu.stanford.nlp.mt.Phrasal;
+import edu.stanford.nlp.mt.decoder.util.WeightSnapshot;
+import edu.stanford.nlp.mt.service.Messages.Request;
+import edu.stanford.nlp.mt.service.Messages.WeightsUpdateReply;
+import edu.stanford.nlp.mt.service.Messages.WeightsUpdateRequest;
+
+/**
+ * Synchronous handler for weight update messages. Loads a weights file and publishes
+ * it to the decoder. Inputs that are being decoded finish with the previous weights.
+ * 
+ * @author Spence Green
+ *
+ */
+public class WeightsUpdateRequestHandler implements RequestHandler {
+
+  private static final Logger logger = LogManager.getLogger(WeightsUpdateRequestHandler.class.getName());
+
+  private final Phrasal decoder;
+
+  /**
+   * Constructor.
+   * 
+   * @param decoder
+   */
+  public WeightsUpdateRequestHandler(Phrasal decoder) {
+    this.decoder = decoder;
+  }
+
+  @Override
+  public ServiceResponse handle(Request request) {
+    WeightsUpdateRequest updateRequest = (WeightsUpdateRequest) request;
+    WeightsUpdateReply reply;
+    try {
+      WeightSnapshot<String> snapshot = decoder.loadModel(updateRequest.text);
+      logger.info("Loaded weights {} from {}", snapshot, updateRequest.text);
+      reply = new WeightsUpdateReply(true, snapshot.version, snapshot.weights.size());
+
+    } catch (Exception e) {
+      logger.error("Weights update request failed: " + updateRequest.text, e);
+      WeightSnapshot<String> snapshot = decoder.getModelSnapshot();
+      reply = new WeightsUpdateReply(false, snapshot.version, snapshot.weights.size());
+    }
+    Type t = new TypeToken<WeightsUpdateReply>() {}.getType();
+    return new ServiceResponse(reply, t);
+  }
+
+  @Override
+  public void handleAsynchronous(Request baseRequest,
+      HttpServletRequest request, HttpServletResponse response) {
+    throw new UnsupportedOperationException("Asynchronous call to synchronous handler.");
+  }
+
+  @Override
+  public boolean validate(Request baseRequest) {
+    return baseRequest.text != null && baseRequest.text.length() > 0;
+  }
+}
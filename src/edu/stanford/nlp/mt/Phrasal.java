@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
@@ -25,17 +26,21 @@ import org.apache.logging.log4j.Logger;
 
 import edu.stanford.nlp.mt.decoder.AbstractBeamInferer;
 import edu.stanford.nlp.mt.decoder.AbstractBeamInfererBuilder;
+import edu.stanford.nlp.mt.decoder.CubePruningDecoder;
 import edu.stanford.nlp.mt.decoder.DTUDecoder;
 import edu.stanford.nlp.mt.decoder.Inferer;
 import edu.stanford.nlp.mt.decoder.Inferer.NbestMode;
 import edu.stanford.nlp.mt.decoder.InfererBuilderFactory;
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
+import edu.stanford.nlp.mt.decoder.feat.FeaturizerProfiler;
 import edu.stanford.nlp.mt.decoder.feat.Featurizer;
 import edu.stanford.nlp.mt.decoder.feat.FeaturizerFactory;
+import edu.stanford.nlp.mt.decoder.feat.RuleFeatureCache;
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.base.HierarchicalReorderingFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.base.LexicalReorderingFeaturizer;
+import edu.stanford.nlp.mt.decoder.feat.base.NGramLanguageModelFeaturizer;
 import edu.stanford.nlp.mt.decoder.h.HeuristicFactory;
 import edu.stanford.nlp.mt.decoder.h.SearchHeuristic;
 import edu.stanford.nlp.mt.decoder.recomb.RecombinationFilter;
@@ -45,8 +50,12 @@ import edu.stanford.nlp.mt.decoder.util.DTUHypothesis;
 import edu.stanford.nlp.mt.decoder.util.Derivation;
 import edu.stanford.nlp.mt.decoder.util.OutputSpace;
 import edu.stanford.nlp.mt.decoder.util.OutputSpaceFactory;
+import edu.stanford.nlp.mt.decoder.util.RuleQueryCache;
 import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.decoder.util.ScorerFactory;
+import edu.stanford.nlp.mt.decoder.util.WeightSnapshot;
+import edu.stanford.nlp.mt.lm.CachingLanguageModel;
+import edu.stanford.nlp.mt.lm.LMQueryCache;
 import edu.stanford.nlp.mt.lm.LanguageModel;
 import edu.stanford.nlp.mt.metrics.MetricUtils;
 import edu.stanford.nlp.mt.process.Postprocessor;
@@ -117,7 +126,9 @@ public class Phrasal {
         .append(
             " filename : Translation model file. Multiple models can be specified by separating filenames with colons.")
         .append(nl).append("  -").append(LANGUAGE_MODEL_OPT)
-        .append(" filename : Language model file. For KenLM, prefix filename with 'kenlm:'").append(nl).append("  -")
+        .append(" filename : Language model file. For KenLM, prefix filename with 'kenlm:'. For MappedLanguageModelBuilder output, prefix with 'mapped:'. For TrieLanguageModelBuilder output, prefix with 'trie:'").append(nl).append("  -")
+        .append(LM_CACHE).append(" [direct|lru] [size] : Per-thread cache of queries to the language model (default size: ")
+        .append(LMQueryCache.DEFAULT_CAPACITY).append(")").append(nl).append("  -")
         .append(OPTION_LIMIT_OPT).append(" num : Translation option limit.").append(nl).append("  -")
         .append(NBEST_LIST_OPT).append(" num : n-best list size.").append(nl).append("  -")
         .append(DISTINCT_NBEST_LIST_OPT).append(" boolean : Generate distinct n-best lists (default: false)").append(nl).append("  -")
@@ -125,6 +136,23 @@ public class Phrasal {
         .append(nl).append("  -").append(PREFIX_ALIGN_COMPOUNDS).append(" boolean : Apply heuristic compound word alignmen for prefix decoding? Affects cube pruning decoder only. (default: false) ")
         .append(nl).append("  -").append(BEAM_SIZE).append(" num : Stack/beam size.").append(nl).append("  -")
         .append(SEARCH_ALGORITHM).append(" [cube|multibeam] : Inference algorithm (default:cube)").append(nl)
+        .append("  -").append(LAZY_DERIVATIONS)
+        .append(" boolean : Only build derivations that are inserted into a beam (cube pruning only; default: false)").append(nl)
+        .append("  -").append(CUBE_GROWING)
+        .append(" boolean : Cube growing. Implies lazy derivations (cube pruning only; default: false)").append(nl)
+        .append("  -").append(RULE_QUERY_CACHE_SIZE)
+        .append(" num : Cache TM queries and future costs for this many recent inputs (cube pruning only; default: 0)").append(nl)
+        .append("  -").append(INCREMENTAL_PREFIX_DECODING)
+        .append(" boolean : Resume prefix decoding from the beams of the last prefix of the same input. Requires ")
+        .append(RULE_QUERY_CACHE_SIZE).append(" (cube pruning only; default: false)").append(nl)
+        .append("  -").append(BATCH_SCORING)
+        .append(" boolean : Score the successors in each agenda batch in one pass (cube pruning only; default: false)").append(nl)
+        .append("  -").append(RULE_FEATURE_CACHE_SIZE)
+        .append(" num : Cache the context-free features of this many rules across inputs (default: 0)").append(nl)
+        .append("  -").append(PRUNE_ZERO_WEIGHT_FEATURES)
+        .append(" boolean : Sparse featurizers do not emit features with a zero weight. Decoding only; do not enable for tuning (default: false)").append(nl)
+        .append("  -").append(PROFILE_FEATURIZERS)
+        .append(" boolean : Record per-featurizer calls, time, and allocation. Also exposed through JMX (default: false)").append(nl)
         .append("  -").append(REORDERING_MODEL)
         .append(
             " type filename [options] : Lexicalized re-ordering model where type is [classic|hierarchical]. Multiple models can be separating filenames with colons.")
@@ -136,6 +164,10 @@ public class Phrasal {
         .append(ADDITIONAL_FEATURIZERS).append(" class [class] : List of additional feature functions.").append(nl)
         .append("  -").append(DISABLED_FEATURIZERS).append(" class [class] : List of baseline featurizers to disable.")
         .append(nl).append("  -").append(NUM_THREADS).append(" num : Number of decoding threads (default: 1)")
+        .append(nl).append("  -").append(INTRA_SENTENCE_THREADS)
+        .append(" num : Number of workers that expand a single input on the shared ForkJoinPool (default: 1)")
+        .append(nl).append("  -").append(RULE_FEATURIZATION_THREADS)
+        .append(" num : Number of workers that featurize the rules of a TM query on the shared ForkJoinPool (default: 1)")
         .append(nl).append("  -").append(USE_ITG_CONSTRAINTS)
         .append(" boolean : Use ITG constraints for decoding (multibeam search only)").append(nl).append("  -")
         .append(RECOMBINATION_MODE).append(" name : Recombination mode [pharoah,exact,dtu] (default: exact).")
@@ -186,6 +218,15 @@ public class Phrasal {
   public static final String PREFIX_ALIGN_COMPOUNDS = "prefix-align-compounds";
   public static final String BEAM_SIZE = "stack";
   public static final String SEARCH_ALGORITHM = "search-algorithm";
+  public static final String LAZY_DERIVATIONS = "lazy-derivations";
+  public static final String CUBE_GROWING = "cube-growing";
+  public static final String RULE_QUERY_CACHE_SIZE = "rule-query-cache-size";
+  public static final String INCREMENTAL_PREFIX_DECODING = "incremental-prefix-decoding";
+  public static final String RULE_FEATURE_CACHE_SIZE = "rule-feature-cache-size";
+  public static final String BATCH_SCORING = "batch-scoring";
+  public static final String LM_CACHE = "lm-cache";
+  public static final String PROFILE_FEATURIZERS = "profile-featurizers";
+  public static final String PRUNE_ZERO_WEIGHT_FEATURES = "prune-zero-weight-features";
   public static final String REORDERING_MODEL = "reordering-model";
   public static final String WEIGHTS_FILE = "weights-file";
   public static final String MAX_SENTENCE_LENGTH = "max-sentence-length";
@@ -194,6 +235,8 @@ public class Phrasal {
   public static final String ADDITIONAL_FEATURIZERS = "additional-featurizers";
   public static final String DISABLED_FEATURIZERS = "disabled-featurizers";
   public static final String NUM_THREADS = "threads";
+  public static final String INTRA_SENTENCE_THREADS = "intra-sentence-threads";
+  public static final String RULE_FEATURIZATION_THREADS = "rule-featurization-threads";
   public static final String USE_ITG_CONSTRAINTS = "use-itg-constraints";
   public static final String RECOMBINATION_MODE = "recombination-mode";
   public static final String GAPS_OPT = "gaps";
@@ -225,8 +268,8 @@ public class Phrasal {
     REQUIRED_FIELDS.add(TRANSLATION_TABLE_OPT);
     OPTIONAL_FIELDS.addAll(Arrays.asList(INPUT_FILE_OPT,WEIGHTS_FILE, REORDERING_MODEL, DISTORTION_LIMIT, ADDITIONAL_FEATURIZERS,
         DISABLED_FEATURIZERS, OPTION_LIMIT_OPT, NBEST_LIST_OPT, DISTINCT_NBEST_LIST_OPT, 
-        FORCE_DECODE, PREFIX_ALIGN_COMPOUNDS, RECOMBINATION_MODE, SEARCH_ALGORITHM, BEAM_SIZE, WEIGHTS_FILE, MAX_SENTENCE_LENGTH, MIN_SENTENCE_LENGTH,
-        USE_ITG_CONSTRAINTS, NUM_THREADS, GAPS_OPT, GAPS_IN_FUTURE_COST_OPT, LINEAR_DISTORTION_OPT,
+        FORCE_DECODE, PREFIX_ALIGN_COMPOUNDS, RECOMBINATION_MODE, SEARCH_ALGORITHM, LAZY_DERIVATIONS, CUBE_GROWING, RULE_QUERY_CACHE_SIZE, INCREMENTAL_PREFIX_DECODING, RULE_FEATURE_CACHE_SIZE, BATCH_SCORING, LM_CACHE, PROFILE_FEATURIZERS, PRUNE_ZERO_WEIGHT_FEATURES, BEAM_SIZE, WEIGHTS_FILE, MAX_SENTENCE_LENGTH, MIN_SENTENCE_LENGTH,
+        USE_ITG_CONSTRAINTS, NUM_THREADS, INTRA_SENTENCE_THREADS, RULE_FEATURIZATION_THREADS, GAPS_OPT, GAPS_IN_FUTURE_COST_OPT, LINEAR_DISTORTION_OPT,
         MAX_PENDING_PHRASES_OPT, DROP_UNKNOWN_WORDS, INDEPENDENT_PHRASE_TABLES, FOREGROUND_TM, LANGUAGE_MODEL_OPT,
         ALIGNMENT_OUTPUT_FILE, PREPROCESSOR_FILTER, POSTPROCESSOR_FILTER, SOURCE_CLASS_MAP, TARGET_CLASS_MAP,
         PRINT_MODEL_SCORES, INPUT_PROPERTIES, FEATURE_AUGMENTATION, WRAP_BOUNDARY, KSR_NBEST_SIZE, WPA_NBEST_SIZE, ORACLE_NBEST_SIZE, REFERENCE));
@@ -260,9 +303,25 @@ public class Phrasal {
   private int ruleQueryLimit = 20;
 
   /**
-   * Global model loaded at startup.
+   * Global model. Decoder threads read the current snapshot at the start of each input,
+   * so <code>setModel()</code> may be called while decoding.
    */
-  private Counter<String> globalModel;
+  private final AtomicReference<WeightSnapshot<String>> globalModel = new AtomicReference<>();
+
+  /**
+   * Cache of TM queries shared by the inferers. May be null.
+   */
+  private RuleQueryCache<IString,String> ruleQueryCache;
+
+  /**
+   * Per-featurizer statistics. May be null.
+   */
+  private FeaturizerProfiler featurizerProfiler;
+
+  /**
+   * Sparse featurizers skip features with a zero weight in the decoding model.
+   */
+  private boolean pruneZeroWeightFeatures = false;
 
   /**
    * DTU options
@@ -284,6 +343,11 @@ public class Phrasal {
    */
   private final List<Scorer<String>> scorers;
 
+  /**
+   * The last decoder-local weights of each inferer. See <code>localModel()</code>.
+   */
+  private final List<WeightSnapshot<String>> localModels;
+
   /**
    * The feature extractor.
    */
@@ -299,6 +363,11 @@ public class Phrasal {
    */
   private final LanguageModel<IString> languageModel;
   
+  /**
+   * Language models with query caches, whose hit counts are logged.
+   */
+  private final List<CachingLanguageModel<IString>> cachingLanguageModels = new ArrayList<>();
+  
   /**
    * Whether to filter unknown words in the output
    */
@@ -380,21 +449,67 @@ public class Phrasal {
   }
 
   /**
-   * Set the global model used by Phrasal.
+   * Set the global model used by Phrasal. The weights are copied, and inputs that
+   * are being decoded finish with the previous model.
    *
    * @param m
+   * @return The snapshot of the new model.
+   */
+  public WeightSnapshot<String> setModel(Counter<String> m) {
+    final WeightSnapshot<String> snapshot = WeightSnapshot.copyOf(m);
+    globalModel.set(snapshot);
+    logger.info("Published model {}", snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Load the global model from a weights file. See <code>setModel()</code>.
+   *
+   * @param filename
+   * @return The snapshot of the new model.
    */
-  public void setModel(Counter<String> m) {
-    this.globalModel = m;
+  public WeightSnapshot<String> loadModel(String filename) {
+    final Counter<String> weights = IOTools.readWeights(filename);
+    if (weights == null) throw new RuntimeException("Could not load weights file: " + filename);
+    return setModel(weights);
   }
 
   /**
-   * Return the global Phrasal model.
+   * Return the global Phrasal model. The returned weights are read-only, and
+   * modifications throw <code>UnsupportedOperationException</code>. Use
+   * <code>setModel()</code> to change the model.
    *
    * @return
    */
   public Counter<String> getModel() {
-    return this.globalModel;
+    return globalModel.get().weights;
+  }
+
+  /**
+   * Return the snapshot of decoder-local weights for a thread. The weights are only
+   * wrapped again when the caller passes a different weight vector.
+   *
+   * @param threadId
+   * @param weights
+   * @return
+   */
+  private WeightSnapshot<String> localModel(int threadId, Counter<String> weights) {
+    WeightSnapshot<String> snapshot = localModels.get(threadId);
+    if (snapshot == null || snapshot.weights != weights) {
+      snapshot = WeightSnapshot.wrap(weights);
+      localModels.set(threadId, snapshot);
+      logger.info("Loaded decoder-local weights for thread {}", threadId);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Return the current snapshot of the global Phrasal model.
+   *
+   * @return
+   */
+  public WeightSnapshot<String> getModelSnapshot() {
+    return globalModel.get();
   }
 
   /**
@@ -404,6 +519,15 @@ public class Phrasal {
     return numThreads;
   }
 
+  /**
+   * Per-featurizer statistics, or null if featurizer profiling is disabled.
+   *
+   * @return
+   */
+  public FeaturizerProfiler getFeaturizerProfiler() {
+    return featurizerProfiler;
+  }
+
   /**
    * Access the decoder's phrase table.
    *
@@ -770,7 +894,15 @@ public class Phrasal {
     }
     else if (lgModel != null) {
       logger.info("Language model: {}", lgModel);
-      languageModel = FeaturizerFactory.makeLM(lgModel);
+      final LanguageModel<IString> loadedLM = FeaturizerFactory.makeLM(lgModel);
+      if (config.containsKey(LM_CACHE)) {
+        final List<String> cacheOpts = config.get(LM_CACHE);
+        final int cacheSize = cacheOpts.size() > 1 ? Integer.parseInt(cacheOpts.get(1)) : LMQueryCache.DEFAULT_CAPACITY;
+        languageModel = new CachingLanguageModel<>(loadedLM, cacheOpts.get(0), cacheSize);
+        logger.info("Language model cache: {} size: {}", cacheOpts.get(0), cacheSize);
+      } else {
+        languageModel = loadedLM;
+      }
       featurizer = FeaturizerFactory.factory(FeaturizerFactory.MOSES_DENSE_FEATURES, withGaps, languageModel,
           FactoryUtil.makePair(FeaturizerFactory.GAP_PARAMETER, gapType),
           FactoryUtil.makePair(FeaturizerFactory.LINEAR_DISTORTION_COST, String.valueOf(distortionCost)));
@@ -800,19 +932,53 @@ public class Phrasal {
       featurizer.setFeatureAugmentationMode(featureAugmentationMode);
     }
 
+    if (config.containsKey(RULE_FEATURE_CACHE_SIZE)) {
+      final int ruleFeatureCacheSize = Integer.parseInt(config.get(RULE_FEATURE_CACHE_SIZE).get(0));
+      if (ruleFeatureCacheSize > 0) {
+        featurizer.setRuleFeatureCache(new RuleFeatureCache<>(ruleFeatureCacheSize));
+        logger.info("Rule feature cache size: {}", ruleFeatureCacheSize);
+      }
+    }
+
+    if (config.containsKey(PROFILE_FEATURIZERS) && Boolean.parseBoolean(config.get(PROFILE_FEATURIZERS).get(0))) {
+      featurizerProfiler = new FeaturizerProfiler();
+      featurizerProfiler.registerMBean();
+      featurizer.setProfiler(featurizerProfiler);
+      logger.info("Featurizer profiling enabled");
+    }
+
+    if (featurizer.isDenseOnly()) {
+      logger.info("Dense-only feature extraction: {}", featurizer.getDenseFeatureNames());
+    }
+    
+    for (Featurizer<IString,String> f : featurizer.getFeaturizers()) {
+      if (f instanceof NGramLanguageModelFeaturizer && 
+          ((NGramLanguageModelFeaturizer) f).getLanguageModel() instanceof CachingLanguageModel) {
+        cachingLanguageModels.add((CachingLanguageModel<IString>) ((NGramLanguageModelFeaturizer) f).getLanguageModel());
+      }
+    }
+
     // Link the final featurizer and the phrase table
     translationModel.setFeaturizer(featurizer);
     if(foregroundModel != null) foregroundModel.setFeaturizer(featurizer);
+    if (config.containsKey(RULE_FEATURIZATION_THREADS)) {
+      final int ruleFeaturizationThreads = Integer.parseInt(config.get(RULE_FEATURIZATION_THREADS).get(0));
+      translationModel.setRuleFeaturizationParallelism(ruleFeaturizationThreads);
+      if(foregroundModel != null) foregroundModel.setRuleFeaturizationParallelism(ruleFeaturizationThreads);
+      logger.info("Rule featurization threads: {}", ruleFeaturizationThreads);
+    }
+    if (config.containsKey(PRUNE_ZERO_WEIGHT_FEATURES)) {
+      pruneZeroWeightFeatures = Boolean.parseBoolean(config.get(PRUNE_ZERO_WEIGHT_FEATURES).get(0));
+      logger.info("Prune zero-weight features: {}", pruneZeroWeightFeatures);
+    }
 
     // Create Scorer / weight vector
-    this.globalModel = new ClassicCounter<String>();
-
+    Counter<String> weights = null;
     if (config.containsKey(WEIGHTS_FILE)) {
       logger.info("Weights file: {}", config.get(WEIGHTS_FILE).get(0));
-      globalModel = IOTools.readWeights(config.get(WEIGHTS_FILE).get(0));
-      if (globalModel == null)
-        globalModel = new ClassicCounter<>();
+      weights = IOTools.readWeights(config.get(WEIGHTS_FILE).get(0));
     }
+    globalModel.set(WeightSnapshot.copyOf(weights == null ? new ClassicCounter<>() : weights));
 
     if (config.containsKey(MAX_SENTENCE_LENGTH)) {
       maxSentenceSize = Integer.parseInt(config.get(MAX_SENTENCE_LENGTH).get(0));
@@ -824,8 +990,8 @@ public class Phrasal {
       minSentenceSize = Integer.parseInt(config.get(MIN_SENTENCE_LENGTH).get(0));
     }
 
-    logger.info("WeightConfig: '{}' {}", Counters.toBiggestValuesFirstString(globalModel, 20),
-        (globalModel.size() > 20 ? "..." : ""));
+    logger.info("WeightConfig: '{}' {}", Counters.toBiggestValuesFirstString(getModel(), 20),
+        (getModel().size() > 20 ? "..." : ""));
 
     // Create Recombination Filter
     final RecombinationFilter<Derivation<IString, String>> filter = RecombinationFilterFactory
@@ -847,6 +1013,7 @@ public class Phrasal {
     // Create Inferers and scorers
     inferers = new ArrayList<>(numThreads);
     scorers = new ArrayList<>(numThreads);
+    localModels = new ArrayList<>(Collections.nCopies(numThreads, null));
 
     String searchAlgorithm = config.containsKey(SEARCH_ALGORITHM) ? config.get(SEARCH_ALGORITHM).get(0).trim()
         : InfererBuilderFactory.DEFAULT_INFERER;
@@ -857,6 +1024,33 @@ public class Phrasal {
 
     final AbstractBeamInfererBuilder<IString, String> infererBuilder = (AbstractBeamInfererBuilder<IString, String>) InfererBuilderFactory
         .factory(searchAlgorithm);
+    if (infererBuilder instanceof CubePruningDecoder.CubePruningDecoderBuilder) {
+      final boolean lazyDerivations = config.containsKey(LAZY_DERIVATIONS) ? 
+          Boolean.parseBoolean(config.get(LAZY_DERIVATIONS).get(0)) : false;
+      final boolean cubeGrowing = config.containsKey(CUBE_GROWING) ? 
+          Boolean.parseBoolean(config.get(CUBE_GROWING).get(0)) : false;
+      ((CubePruningDecoder.CubePruningDecoderBuilder<IString, String>) infererBuilder)
+        .setLazyDerivations(lazyDerivations).setCubeGrowing(cubeGrowing);
+      logger.info("Lazy derivations: {}", lazyDerivations);
+      logger.info("Cube growing: {}", cubeGrowing);
+      final int ruleQueryCacheSize = config.containsKey(RULE_QUERY_CACHE_SIZE) ?
+          Integer.parseInt(config.get(RULE_QUERY_CACHE_SIZE).get(0)) : 0;
+      if (ruleQueryCacheSize > 0) {
+        ruleQueryCache = new RuleQueryCache<>(ruleQueryCacheSize);
+        infererBuilder.setRuleQueryCache(ruleQueryCache);
+        logger.info("Rule query cache size: {}", ruleQueryCacheSize);
+      }
+      final boolean incrementalPrefixDecoding = config.containsKey(INCREMENTAL_PREFIX_DECODING) ? 
+          Boolean.parseBoolean(config.get(INCREMENTAL_PREFIX_DECODING).get(0)) : false;
+      ((CubePruningDecoder.CubePruningDecoderBuilder<IString, String>) infererBuilder)
+        .setIncrementalPrefixDecoding(incrementalPrefixDecoding);
+      logger.info("Incremental prefix decoding: {}", incrementalPrefixDecoding);
+      final boolean batchScoring = config.containsKey(BATCH_SCORING) ? 
+          Boolean.parseBoolean(config.get(BATCH_SCORING).get(0)) : false;
+      ((CubePruningDecoder.CubePruningDecoderBuilder<IString, String>) infererBuilder)
+        .setBatchScoring(batchScoring);
+      logger.info("Batch scoring: {}", batchScoring);
+    }
 
     // Create the decoders, one per thread
     for (int i = 0; i < numThreads; i++) {
@@ -865,7 +1059,8 @@ public class Phrasal {
         infererBuilder.setFeaturizer((FeatureExtractor<IString, String>) featurizer.clone());
         infererBuilder.setPhraseGenerator((TranslationModel<IString, String>) translationModel.clone());
         if(foregroundModel != null) infererBuilder.setForegroundModel((TranslationModel<IString, String>) foregroundModel.clone());
-        final Scorer<String> scorer = ScorerFactory.factory(ScorerFactory.SPARSE_SCORER, globalModel, null);
+        final Scorer<String> scorer = ScorerFactory.factory(ScorerFactory.SPARSE_SCORER, getModel(), null);
+        scorer.updateWeights(globalModel.get());
         infererBuilder.setScorer(scorer);
         scorers.add(scorer);
         infererBuilder.setSearchHeuristic((SearchHeuristic<IString, String>) heuristic.clone());
@@ -892,6 +1087,10 @@ public class Phrasal {
         final int beamSize = Integer.parseInt(config.get(BEAM_SIZE).get(0));
         infererBuilder.setBeamSize(beamSize);
       }
+      
+      if (config.containsKey(INTRA_SENTENCE_THREADS)) {
+        infererBuilder.setParallelism(Integer.parseInt(config.get(INTRA_SENTENCE_THREADS).get(0)));
+      }
       inferers.add(infererBuilder.newInferer());
       
       ((AbstractBeamInferer<IString, String>) inferers.get(i)).setPrefixAlignCompounds(prefixAlignCompounds);
@@ -1221,7 +1420,7 @@ public class Phrasal {
         : new ArrayList<>();
 
     // Sanity check -- Set each thread's model to the current global model.
-    this.scorers.stream().forEach(scorer -> scorer.updateWeights(globalModel));
+    this.scorers.stream().forEach(scorer -> scorer.updateWeights(globalModel.get()));
 
     int ksrTyped = 0;
     int ksrTotal = 0;
@@ -1305,6 +1504,15 @@ public class Phrasal {
     
     if(ksrTotal > 0) logger.info("KSR: {} / {} = {}", ksrTyped, ksrTotal, ((double) ksrTyped) / ksrTotal);
     if(wpaTotal > 0) logger.info("Word prediction accuracy: {} / {} = {}", wpaCorrect, wpaTotal, ((double) wpaCorrect) / wpaTotal);
+    if (featurizerProfiler != null) {
+      logger.info("Featurizer profile:{}{}", System.getProperty("line.separator"), featurizerProfiler.getSummary());
+    }
+    for (CachingLanguageModel<IString> lm : cachingLanguageModels) {
+      final long hits = lm.hits();
+      final long queries = hits + lm.misses();
+      logger.info("{}: queries: {} hits: {} hit rate: {}", lm.getName(), queries, hits, 
+          queries == 0 ? 0.0 : hits / (double) queries);
+    }
     return bestTranslationList;
   }
 
@@ -1392,17 +1600,30 @@ public class Phrasal {
     }
     if (inputProperties.containsKey(InputProperty.ModelWeights)) {
       final Counter<String> weights = (Counter<String>) inputProperties.get(InputProperty.ModelWeights);
-      this.scorers.get(threadId).updateWeights(weights);
-      logger.info("Loaded decoder-local weights for thread {}", threadId);
+      this.scorers.get(threadId).updateWeights(localModel(threadId, weights));
 
     } else {
-      this.scorers.get(threadId).updateWeights(this.globalModel);
+      // Pick up the current global model once per input
+      this.scorers.get(threadId).updateWeights(globalModel.get());
     }
     if (! inputProperties.containsKey(InputProperty.RuleQueryLimit)) {
       inputProperties.put(InputProperty.RuleQueryLimit, ruleQueryLimit);
     }
+    if (pruneZeroWeightFeatures && ! inputProperties.containsKey(InputProperty.ModelWeights)) {
+      // Decoder-local weights are tuning weights, for which all features must be extracted
+      inputProperties.put(InputProperty.FeatureFilter, this.scorers.get(threadId));
+    }
     timer.mark("setup");
     
+    // LM cache counts of this thread before decoding. Queries from intra-sentence
+    // worker threads are only included in the totals.
+    final int numCaches = cachingLanguageModels.size();
+    final long[] cacheCounts = new long[2 * numCaches];
+    for (int i = 0; i < numCaches; ++i) {
+      cacheCounts[2*i] = cachingLanguageModels.get(i).threadHits();
+      cacheCounts[2*i + 1] = cachingLanguageModels.get(i).threadMisses();
+    }
+    
     // Decode
     List<RichTranslation<IString, String>> translations = new ArrayList<>(1);
     if (numTranslations > 1) {
@@ -1422,6 +1643,11 @@ public class Phrasal {
     }
     timer.mark("decode");
     logger.info("Decode timing: {}", timer);
+    for (int i = 0; i < numCaches; ++i) {
+      final CachingLanguageModel<IString> lm = cachingLanguageModels.get(i);
+      logger.info("input {}: {} hits: {} misses: {}", sourceInputId, lm.getName(), 
+          lm.threadHits() - cacheCounts[2*i], lm.threadMisses() - cacheCounts[2*i + 1]);
+    }
     return translations;
   }
 
@@ -1463,11 +1689,11 @@ public class Phrasal {
     }
     if (inputProperties.containsKey(InputProperty.ModelWeights)) {
       final Counter<String> weights = (Counter<String>) inputProperties.get(InputProperty.ModelWeights);
-      this.scorers.get(threadId).updateWeights(weights);
-      logger.info("Loaded decoder-local weights for thread {}", threadId);
+      this.scorers.get(threadId).updateWeights(localModel(threadId, weights));
 
     } else {
-      this.scorers.get(threadId).updateWeights(this.globalModel);
+      // Pick up the current global model once per input
+      this.scorers.get(threadId).updateWeights(globalModel.get());
     }
     timer.mark("setup");
 
@@ -0,0 +1,89 @@
+package edu.stanford.nlp.mt.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
+import edu.stanford.nlp.mt.decoder.util.DenseScorer;
+import edu.stanford.nlp.mt.decoder.util.FeatureBatch;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.TimingUtils;
+import edu.stanford.nlp.mt.util.TimingUtils.TimeKeeper;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Compares per-derivation scoring with <code>Scorer.getIncrementalScore()</code>
+ * to batch scoring with <code>Scorer.getIncrementalScores()</code>. Simulates the
+ * successors of one coverage cardinality in the cube pruning decoder: each
+ * derivation has a handful of dense features and a few sparse features.
+ *
+ * Usage: java BatchScoring [integer-features]
+ *
+ * @author Spence Green
+ *
+ */
+public class BatchScoring {
+
+  private static final int NUM_DENSE = 12;
+  private static final int NUM_SPARSE = 6;
+  private static final int SPARSE_VOCABULARY = 100000;
+  private static final int BATCH_SIZE = 1000;
+  private static final int NUM_ITERS = 2000;
+
+  public static void main(String[] args) {
+    final boolean integerFeatures = args.length > 0 && Boolean.parseBoolean(args[0]);
+    final FeatureTemplate template = integerFeatures ? new FeatureTemplate("SPARSE") : null;
+
+    final Random random = new Random(42);
+    final Counter<String> weights = new ClassicCounter<>();
+    for (int i = 0; i < NUM_DENSE; ++i) weights.setCount("DENSE" + i, random.nextGaussian());
+    for (int i = 0; i < SPARSE_VOCABULARY; i += 2) weights.setCount("SPARSE:" + i, random.nextGaussian());
+
+    final List<List<FeatureValue<String>>> vectors = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; ++i) {
+      List<FeatureValue<String>> features = new ArrayList<>(NUM_DENSE + NUM_SPARSE);
+      for (int j = 0; j < NUM_DENSE; ++j) {
+        features.add(new FeatureValue<>("DENSE" + j, random.nextDouble(), true));
+      }
+      for (int j = 0; j < NUM_SPARSE; ++j) {
+        final int id = random.nextInt(SPARSE_VOCABULARY);
+        features.add(template == null ? new FeatureValue<>("SPARSE:" + id, 1.0) :
+          template.newFeatureValue(new int[] { id }, 1.0, () -> String.valueOf(id)));
+      }
+      vectors.add(features);
+    }
+
+    // Scorers index the weights when they are constructed
+    final List<Scorer<String>> scorers = new ArrayList<>();
+    scorers.add(new SparseScorer(weights));
+    scorers.add(new DenseScorer(weights));
+    final FeatureBatch<String> batch = new FeatureBatch<>();
+    final double[] scores = new double[BATCH_SIZE];
+    double checksum = 0.0;
+
+    TimeKeeper timer = TimingUtils.start();
+    for (Scorer<String> scorer : scorers) {
+      final String name = scorer.getClass().getSimpleName();
+      for (int iter = 0; iter < NUM_ITERS; ++iter) {
+        for (int i = 0; i < BATCH_SIZE; ++i) checksum += scorer.getIncrementalScore(vectors.get(i));
+      }
+      timer.mark(name + " per derivation");
+
+      for (int iter = 0; iter < NUM_ITERS; ++iter) {
+        for (int i = 0; i < BATCH_SIZE; ++i) batch.add(vectors.get(i));
+        scorer.getIncrementalScores(batch, scores);
+        batch.clear();
+        for (int i = 0; i < BATCH_SIZE; ++i) checksum -= scores[i];
+      }
+      timer.mark(name + " batch");
+    }
+
+    System.out.println("Timing: " + timer.toString());
+    // The two paths compute the same scores, so the checksum should be close to zero.
+    System.out.println("Checksum: " + checksum);
+  }
+}
@@ -0,0 +1,120 @@
+package edu.stanford.nlp.mt.benchmark;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.mt.lm.CachingLanguageModel;
+import edu.stanford.nlp.mt.lm.LMQueryCache;
+import edu.stanford.nlp.mt.lm.LMState;
+import edu.stanford.nlp.mt.lm.LanguageModel;
+import edu.stanford.nlp.mt.lm.LanguageModelFactory;
+import edu.stanford.nlp.mt.util.IOTools;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.Sequences;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * Replays a trace of decoder queries against a language model with and without a
+ * <code>CachingLanguageModel</code>, and reports the hit rate and queries/sec of each
+ * cache type and capacity.
+ *
+ * Record the trace with the <code>queryTrace</code> parameter of
+ * <code>NGramLanguageModelFeaturizer</code> and one decoding thread. The prior state of
+ * each query is the state of its target prefix, which is computed before the timed replay.
+ * Each configuration starts with an empty cache, and the first configuration is run twice
+ * to warm up the JIT.
+ *
+ * Usage: java LanguageModelCache lm_file trace_file [capacity ...]
+ *
+ * @author Spence Green
+ *
+ */
+public class LanguageModelCache {
+
+  private static final String NO_CACHE = "none";
+  private static final String DELIMITER = " ||| ";
+
+  private static class Query {
+    final Sequence<IString> sequence;
+    final int startIndex;
+    final LMState priorState;
+    Query(Sequence<IString> sequence, int startIndex, LMState priorState) {
+      this.sequence = sequence;
+      this.startIndex = startIndex;
+      this.priorState = priorState;
+    }
+  }
+
+  /**
+   * Read the trace and compute the prior states.
+   */
+  private static List<Query> readTrace(String traceFile, LanguageModel<IString> lm) throws IOException {
+    final List<Query> queries = new ArrayList<>();
+    final Map<String,LMState> prefixStates = new HashMap<>();
+    try (LineNumberReader reader = IOTools.getReaderFromFile(traceFile)) {
+      for (String line; (line = reader.readLine()) != null;) {
+        final String[] fields = line.split(" \\|\\|\\| ", -1);
+        if (fields.length != 3) {
+          throw new RuntimeException(String.format("%s: line %d: expected start%sprefix%ssequence",
+              traceFile, reader.getLineNumber(), DELIMITER, DELIMITER));
+        }
+        final String prefix = fields[1].trim();
+        LMState priorState = null;
+        if (prefix.length() > 0) {
+          priorState = prefixStates.get(prefix);
+          if (priorState == null) {
+            priorState = lm.score(Sequences.wrapStart(IStrings.tokenize(prefix), lm.getStartToken()), 1, null);
+            prefixStates.put(prefix, priorState);
+          }
+        }
+        queries.add(new Query(IStrings.tokenize(fields[2]), Integer.parseInt(fields[0].trim()), priorState));
+      }
+    }
+    return queries;
+  }
+
+  /**
+   * Replay the trace and print one line of the report.
+   */
+  private static void report(String cacheType, int capacity, LanguageModel<IString> lm, List<Query> queries) {
+    final CachingLanguageModel<IString> cachingLM = cacheType.equals(NO_CACHE) ? null :
+      new CachingLanguageModel<>(lm, cacheType, capacity);
+    final LanguageModel<IString> model = cachingLM == null ? lm : cachingLM;
+    double logProb = 0.0;
+    final long startTime = TimingUtils.startTime();
+    for (Query query : queries) {
+      logProb += model.score(query.sequence, query.startIndex, query.priorState).getScore();
+    }
+    final double secs = TimingUtils.elapsedSeconds(startTime);
+    final long hits = cachingLM == null ? 0 : cachingLM.hits();
+    System.out.printf("%-8s %10d %12d %9.4f %12.0f %16.4f%n", cacheType, cachingLM == null ? 0 : capacity,
+        queries.size(), hits / (double) queries.size(), queries.size() / secs, logProb);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.printf("Usage: java %s lm_file trace_file [capacity ...]%n", LanguageModelCache.class.getName());
+      System.exit(-1);
+    }
+    final LanguageModel<IString> lm = LanguageModelFactory.load(args[0]);
+    final List<Query> queries = readTrace(args[1], lm);
+    final List<Integer> capacities = new ArrayList<>();
+    for (int i = 2; i < args.length; ++i) capacities.add(Integer.parseInt(args[i]));
+    if (capacities.isEmpty()) capacities.add(LMQueryCache.DEFAULT_CAPACITY);
+
+    System.out.printf("%-8s %10s %12s %9s %12s %16s%n", "cache", "capacity", "queries", "hit-rate",
+        "queries/s", "log-prob");
+    report(NO_CACHE, 0, lm, queries);
+    report(NO_CACHE, 0, lm, queries);
+    for (int capacity : capacities) {
+      report(LMQueryCache.DIRECT_MAPPED, capacity, lm, queries);
+      report(LMQueryCache.LRU, capacity, lm, queries);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package edu.stanford.nlp.mt.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import edu.stanford.nlp.mt.lm.ARPALanguageModel;
+import edu.stanford.nlp.mt.lm.LanguageModel;
+import edu.stanford.nlp.mt.lm.MappedLanguageModel;
+import edu.stanford.nlp.mt.lm.MappedLanguageModelBuilder;
+import edu.stanford.nlp.mt.lm.TrieLanguageModel;
+import edu.stanford.nlp.mt.lm.TrieLanguageModelBuilder;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.Sequences;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * Reports bytes/n-gram, load time, and queries/sec for the Java language model
+ * formats: the probing tables of <code>ARPALanguageModel</code>, the memory-mapped
+ * probing tables of <code>MappedLanguageModel</code>, and the quantized trie of
+ * <code>TrieLanguageModel</code>.
+ *
+ * The size of the trie is exact. The size of <code>ARPALanguageModel</code> is the
+ * difference in used heap before and after loading, so run with a fixed heap (-Xms equal
+ * to -Xmx). The mapped model is mostly off-heap, so its size is the size of the binary file.
+ *
+ * Usage: java LanguageModelFormats arpa_file text_file [prob_bits backoff_bits]
+ *
+ * @author Spence Green
+ *
+ */
+public class LanguageModelFormats {
+
+  private static final int NUM_ITERS = 5;
+
+  private static long usedMemory() {
+    final Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  /**
+   * Score the input NUM_ITERS times and print one line of the report.
+   */
+  private static void report(String name, LanguageModel<IString> lm, long numBytes, long numNgrams,
+      double loadSecs, List<Sequence<IString>> lines) {
+    long numQueries = 0;
+    double logProb = 0.0;
+    final long startTime = TimingUtils.startTime();
+    for (int iter = 0; iter < NUM_ITERS; ++iter) {
+      logProb = 0.0;
+      for (Sequence<IString> seq : lines) {
+        logProb += lm.score(seq, 1, null).getScore();
+        numQueries += seq.size() - 1;
+      }
+    }
+    final double secs = TimingUtils.elapsedSeconds(startTime);
+    System.out.printf("%-8s %12d %10.1f %11.2f %8.2f %12.0f %14.4f%n", name, numNgrams,
+        numBytes / (1024.0 * 1024.0), numBytes / (double) numNgrams, loadSecs,
+        numQueries / secs, logProb);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2 && args.length != 4) {
+      System.err.printf("Usage: java %s arpa_file text_file [prob_bits backoff_bits]%n",
+          LanguageModelFormats.class.getName());
+      System.exit(-1);
+    }
+    final String arpaFile = args[0];
+    final int probBits = args.length == 4 ? Integer.parseInt(args[2]) : TrieLanguageModelBuilder.DEFAULT_PROB_BITS;
+    final int backoffBits = args.length == 4 ? Integer.parseInt(args[3]) : TrieLanguageModelBuilder.DEFAULT_BACKOFF_BITS;
+
+    // Quantized trie. Count n-grams from the trie, which is built from the same file.
+    File trieFile = File.createTempFile("lmformats", ".trie");
+    trieFile.deleteOnExit();
+    TrieLanguageModelBuilder.build(arpaFile, probBits, backoffBits).write(trieFile.getPath());
+    long startTime = TimingUtils.startTime();
+    TrieLanguageModel trieLM = new TrieLanguageModel(trieFile.getPath());
+    final double trieLoadSecs = TimingUtils.elapsedSeconds(startTime);
+    final long numNgrams = trieLM.numNgrams();
+
+    final IString startToken = trieLM.getStartToken();
+    final IString endToken = trieLM.getEndToken();
+    final List<Sequence<IString>> lines = IStrings.tokenizeFile(args[1]).stream()
+        .map(s -> Sequences.wrapStartEnd(s, startToken, endToken))
+        .collect(Collectors.toList());
+
+    System.out.printf("%-8s %12s %10s %11s %8s %12s %14s%n", "model", "n-grams", "MiB",
+        "bytes/ngram", "load(s)", "queries/s", "log-prob");
+    report(String.format("trie%d/%d", probBits, backoffBits), trieLM, trieLM.sizeInBytes(), numNgrams,
+        trieLoadSecs, lines);
+    trieLM = null;
+
+    // Heap probing tables
+    long before = usedMemory();
+    startTime = TimingUtils.startTime();
+    ARPALanguageModel arpaLM = new ARPALanguageModel(arpaFile);
+    final double arpaLoadSecs = TimingUtils.elapsedSeconds(startTime);
+    final long arpaBytes = usedMemory() - before;
+    report("arpa", arpaLM, arpaBytes, numNgrams, arpaLoadSecs, lines);
+    arpaLM = null;
+
+    // Memory-mapped probing tables
+    File mappedFile = File.createTempFile("lmformats", ".bin");
+    mappedFile.deleteOnExit();
+    MappedLanguageModelBuilder.build(arpaFile, mappedFile.getPath());
+    startTime = TimingUtils.startTime();
+    MappedLanguageModel mappedLM = new MappedLanguageModel(mappedFile.getPath());
+    final double mappedLoadSecs = TimingUtils.elapsedSeconds(startTime);
+    report("mapped", mappedLM, mappedFile.length(), numNgrams, mappedLoadSecs, lines);
+  }
+}
@@ -3,13 +3,16 @@ package edu.stanford.nlp.mt.benchmark;
 import edu.stanford.nlp.mt.util.ArraySequence;
 import edu.stanford.nlp.mt.util.IString;
 import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.ParentLinkedSequence;
 import edu.stanford.nlp.mt.util.Sequence;
 import edu.stanford.nlp.mt.util.Sequences;
 import edu.stanford.nlp.mt.util.TimingUtils;
 import edu.stanford.nlp.mt.util.TimingUtils.TimeKeeper;
 
 /**
- * Test of Sequence concatenation.
+ * Test of Sequence concatenation. The second and third tests simulate left-to-right
+ * decoding: a partial translation is extended one phrase at a time and the n-gram
+ * history at the right edge is read after each extension.
  * 
  * @author Spence Green
  *
@@ -31,6 +34,29 @@ public class SequenceConcat {
     }
     timer.mark(ArraySequence.class.getSimpleName());
     
+    final int sentenceLength = 20;
+    final int historyLength = 4;
+    final int numSentences = numIters / sentenceLength;
+    int sum = 0;
+    for (int i = 0; i < numSentences; ++i) {
+      c = Sequences.emptySequence();
+      for (int j = 0; j < sentenceLength; ++j) {
+        c = c.concat(seq);
+        for (int k = c.size() - historyLength; k < c.size(); ++k) sum += c.get(k).id;
+      }
+    }
+    timer.mark("Left-to-right " + ArraySequence.class.getSimpleName());
+    
+    for (int i = 0; i < numSentences; ++i) {
+      c = Sequences.emptySequence();
+      for (int j = 0; j < sentenceLength; ++j) {
+        c = ParentLinkedSequence.concat(c, seq);
+        for (int k = c.size() - historyLength; k < c.size(); ++k) sum += c.get(k).id;
+      }
+    }
+    timer.mark("Left-to-right " + ParentLinkedSequence.class.getSimpleName());
+    
     System.out.println("Timing: " + timer.toString());
+    System.out.println("Checksum: " + sum);
   }
 }
@@ -6,11 +6,14 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.stanford.nlp.mt.Phrasal;
+import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
 import edu.stanford.nlp.mt.decoder.recomb.RecombinationFilter;
 import edu.stanford.nlp.mt.decoder.recomb.RecombinationHistory;
 import edu.stanford.nlp.mt.decoder.util.Beam;
@@ -20,6 +23,7 @@ import edu.stanford.nlp.mt.decoder.util.Derivation;
 import edu.stanford.nlp.mt.decoder.util.DiverseNbestDecoder;
 import edu.stanford.nlp.mt.decoder.util.NbestListUtils;
 import edu.stanford.nlp.mt.decoder.util.OutputSpace;
+import edu.stanford.nlp.mt.decoder.util.RuleQueryCache;
 import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.decoder.util.StateLatticeDecoder;
 import edu.stanford.nlp.mt.decoder.util.SyntheticRules;
@@ -62,6 +66,9 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
   
   // Maximum threshold that only applies when generating distinct n-best lists
   private static final int MAX_POPPED_ITEMS = Phrasal.MAX_NBEST_SIZE * 3;
+  
+  // Minimum number of work items per worker for intra-sentence parallelism
+  private static final int MIN_ITEMS_PER_WORKER = 4;
 
   // Members
   protected final int beamCapacity;
@@ -69,16 +76,40 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
   private final Comparator<RichTranslation<TK,FV>> translationComparator;
   
   protected boolean prefixAlignCompounds = false;
+  
+  // Intra-sentence parallelism. Worker 0 uses the featurizer of this inferer.
+  protected final int parallelism;
+  private final List<FeatureExtractor<TK,FV>> workerFeaturizers;
+
+  // Shared cache of TM queries. May be null.
+  protected final RuleQueryCache<TK,FV> ruleQueryCache;
 
   /**
    * Constructor.
    * 
    * @param builder
    */
+  @SuppressWarnings("unchecked")
   protected AbstractBeamInferer(AbstractBeamInfererBuilder<TK, FV> builder) {
     super(builder);
     this.beamCapacity = builder.beamSize;
     this.beamType = builder.beamType;
+    this.parallelism = Math.max(1, builder.parallelism);
+    this.ruleQueryCache = builder.ruleQueryCache;
+    
+    // Featurizers can keep scratch state, so each worker gets its own copy.
+    this.workerFeaturizers = new ArrayList<>(parallelism);
+    workerFeaturizers.add(featurizer);
+    for (int i = 1; i < parallelism; ++i) {
+      try {
+        workerFeaturizers.add((FeatureExtractor<TK,FV>) featurizer.clone());
+      } catch (CloneNotSupportedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    if (parallelism > 1) {
+      logger.info("Intra-sentence parallelism: {} workers", parallelism);
+    }
     this.translationComparator = new Comparator<RichTranslation<TK,FV>>() {
       @Override
       public int compare(RichTranslation<TK, FV> o1, RichTranslation<TK, FV> o2) {
@@ -158,6 +189,66 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
     return new PhraseQuery<>(source, ruleList);
   }
   
+  /**
+   * Initialize the featurizers of the intra-sentence workers. Call after 
+   * the featurizer of this inferer has been initialized for a new input.
+   * 
+   * @param sourceInputId
+   * @param source
+   */
+  protected void initializeWorkerFeaturizers(int sourceInputId, Sequence<TK> source) {
+    for (int i = 1; i < parallelism; ++i) workerFeaturizers.get(i).initialize(sourceInputId, source);
+  }
+  
+  /**
+   * The featurizer for an intra-sentence worker.
+   * 
+   * @param worker
+   * @return
+   */
+  protected FeatureExtractor<TK,FV> workerFeaturizer(int worker) {
+    return workerFeaturizers.get(worker);
+  }
+  
+  /**
+   * Work over a contiguous range of items.
+   * 
+   * @author Spence Green
+   *
+   */
+  @FunctionalInterface
+  protected static interface RangeTask {
+    public void apply(int worker, int start, int end);
+  }
+  
+  /**
+   * Split the range [0,size) into contiguous chunks and run them on the shared
+   * <code>ForkJoinPool</code>. The first chunk runs in the calling thread. Each chunk
+   * is assigned a distinct worker id in [0,parallelism). Returns when all chunks
+   * have finished.
+   * 
+   * @param size
+   * @param task
+   */
+  protected void forEachChunk(int size, RangeTask task) {
+    final int numWorkers = Math.min(parallelism, size / MIN_ITEMS_PER_WORKER);
+    if (numWorkers <= 1) {
+      task.apply(0, 0, size);
+      return;
+    }
+    final int chunkSize = (size + numWorkers - 1) / numWorkers;
+    final List<ForkJoinTask<?>> tasks = new ArrayList<>(numWorkers - 1);
+    for (int worker = 1; worker < numWorkers; ++worker) {
+      final int w = worker;
+      final int start = worker * chunkSize;
+      final int end = Math.min(size, start + chunkSize);
+      if (start >= end) break;
+      tasks.add(ForkJoinPool.commonPool().submit(() -> task.apply(w, start, end)));
+    }
+    task.apply(0, 0, Math.min(size, chunkSize));
+    for (ForkJoinTask<?> t : tasks) t.join();
+  }
+  
   /**
    * Container for the result of a TM query.
    * 
@@ -218,6 +309,9 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
     }
     timer.mark("Extraction");
     logger.info("Input {}: nbest timing {}", sourceInputId, timer);
+    if (nbestList != null && isDegraded()) {
+      for (RichTranslation<TK,FV> translation : nbestList) translation.setDegraded(true);
+    }
 
     return nbestList;
   }
@@ -316,9 +410,10 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
         distinctSurfaceTranslations.add(pathTarget);
       }
       
-      // This is very inefficient. But we need to reconstruct the Featurizable
-      // object for RichTranslation below, and there's not a good way to do that without
-      // building up the derivation from the list of rule applications in the lattice path.
+      // Reconstruct the derivation for the Featurizable of RichTranslation below. Each
+      // edge of the lattice path stores its local features, so phrase-based derivations
+      // are re-attached to their recombined parents without running the featurizers.
+      // DTU derivations are still rebuilt from the list of rule applications.
       boolean withDTUs = false;
       final Set<Rule<TK>> seenOptions = new HashSet<>();
       Derivation<TK, FV> goalHyp = null;
@@ -329,10 +424,15 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
           continue;
         }
         withDTUs = withDTUs || node.rule.abstractRule instanceof DTURule;
-        goalHyp = withDTUs ? new DTUHypothesis<>(sourceInputId, node.rule, goalHyp.length, goalHyp, 
-            node, featurizer, scorer, heuristic, seenOptions, outputSpace)
-            : new Derivation<>(sourceInputId, node.rule, goalHyp.length, goalHyp, featurizer, scorer, 
-                heuristic, outputSpace);
+        if (withDTUs) {
+          goalHyp = new DTUHypothesis<>(sourceInputId, node.rule, goalHyp.length, goalHyp, 
+            node, featurizer, scorer, heuristic, seenOptions, outputSpace);
+        } else if (node.parent == goalHyp) {
+          // Path follows the parent pointer
+          goalHyp = node;
+        } else {
+          goalHyp = new Derivation<>(sourceInputId, node, goalHyp);
+        }
       }
       
       // Decoder failure in which the null hypothesis was returned.
@@ -403,7 +503,20 @@ public abstract class AbstractBeamInferer<TK, FV> extends AbstractInferer<TK, FV
         null, outputSpace, targets, nbestSize);
     if (beam == null) return null; // Decoder failure
     final Derivation<TK, FV> best = beam.iterator().next();
-    return new RichTranslation<>(best.featurizable, best.score, FeatureValues.combine(best), 0);
+    final RichTranslation<TK,FV> translation = new RichTranslation<>(best.featurizable, best.score, 
+        FeatureValues.combine(best), 0);
+    translation.setDegraded(isDegraded());
+    return translation;
+  }
+  
+  /**
+   * True if the last call to <code>decode()</code> degraded the search to meet the
+   * decoding time limit.
+   * 
+   * @return
+   */
+  protected boolean isDegraded() {
+    return false;
   }
 
   /**
@@ -2,6 +2,7 @@ package edu.stanford.nlp.mt.decoder;
 
 import edu.stanford.nlp.mt.decoder.Inferer;
 import edu.stanford.nlp.mt.decoder.util.BeamFactory;
+import edu.stanford.nlp.mt.decoder.util.RuleQueryCache;
 
 /**
  * An abstract builder interface for beam-based inferers.
@@ -16,6 +17,8 @@ abstract public class AbstractBeamInfererBuilder<TK, FV> extends
 
   protected int beamSize;
   protected BeamFactory.BeamType beamType;
+  protected int parallelism = 1;
+  protected RuleQueryCache<TK,FV> ruleQueryCache = null;
 
   /**
    * Constructor.
@@ -53,6 +56,33 @@ abstract public class AbstractBeamInfererBuilder<TK, FV> extends
     return this;
   }
 
+  /**
+   * Set the number of workers used to expand a single input. Workers run on the
+   * shared <code>ForkJoinPool</code>.
+   * 
+   * @param parallelism
+   * @return
+   */
+  public AbstractBeamInfererBuilder<TK, FV> setParallelism(int parallelism) {
+    if (parallelism <= 0) {
+      throw new RuntimeException(String.format(
+          "Invalid parallelism, %d. Must be > 0", parallelism));
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Set a cache of TM queries. The cache may be shared by multiple inferers.
+   * 
+   * @param ruleQueryCache
+   * @return
+   */
+  public AbstractBeamInfererBuilder<TK, FV> setRuleQueryCache(RuleQueryCache<TK,FV> ruleQueryCache) {
+    this.ruleQueryCache = ruleQueryCache;
+    return this;
+  }
+
   @Override
   abstract public Inferer<TK, FV> newInferer();
 
@@ -3,26 +3,31 @@ package edu.stanford.nlp.mt.decoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
 import edu.stanford.nlp.mt.decoder.recomb.RecombinationHistory;
 import edu.stanford.nlp.mt.decoder.util.Beam;
 import edu.stanford.nlp.mt.decoder.util.BundleBeam;
 import edu.stanford.nlp.mt.decoder.util.OutputSpace;
 import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.decoder.util.FeatureBatch;
 import edu.stanford.nlp.mt.decoder.util.HyperedgeBundle;
-import edu.stanford.nlp.mt.decoder.util.HyperedgeBundle.Consequent;
+import edu.stanford.nlp.mt.decoder.util.PrefixDecodingState;
 import edu.stanford.nlp.mt.decoder.util.RuleGrid;
+import edu.stanford.nlp.mt.decoder.util.RuleQueryCache;
 import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.decoder.util.SuccessorArena;
 import edu.stanford.nlp.mt.decoder.util.SyntheticRules;
 import edu.stanford.nlp.mt.tm.ConcreteRule;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.InputProperties;
 import edu.stanford.nlp.mt.util.InputProperty;
+import edu.stanford.nlp.mt.util.RichTranslation;
 import edu.stanford.nlp.mt.util.Sequence;
 import edu.stanford.nlp.mt.util.TimingUtils;
 import edu.stanford.nlp.mt.util.TimingUtils.TimeKeeper;
@@ -43,12 +48,55 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
   // of MultiBeamDecoder
   public static final int DEFAULT_BEAM_SIZE = 1200;
   public static final int DEFAULT_MAX_DISTORTION = -1;
+  
+  // With intra-sentence parallelism, the number of items popped from the agenda
+  // at once for each worker.
+  private static final int POP_BATCH_SIZE_PER_WORKER = 4;
 
   // TODO(spenceg) May need to cap the number of popped items to keep it from running forever.
   
   protected int maxDistortion;
   protected final int defaultDistortion;
   
+  // Defer construction of derivations until they are popped into a beam
+  protected final boolean lazyDerivations;
+  
+  // Re-rank lazy items whose exact score falls below the agenda
+  protected final boolean cubeGrowing;
+  
+  // Resume prefix decoding from the beams of the last prefix of the same source
+  protected final boolean incrementalPrefixDecoding;
+  
+  // Score the successors in each agenda batch with one call to the scorer
+  protected final boolean batchScoring;
+  
+  // Build the successors in each agenda batch together so that featurizers can compute
+  // their features in one call, e.g., to a native language model
+  protected final boolean prefetchFeatures;
+  
+  // Prefix decoding state that is published once the current lattice is no longer in use
+  private RuleQueryCache.Entry<TK,FV> pendingPrefixEntry = null;
+  private PrefixDecodingState<TK,FV> pendingPrefixState = null;
+  
+  // Time-limited decoding. The deadline is System.nanoTime() units.
+  private long deadline = Long.MAX_VALUE;
+  private long beamDeadline = Long.MAX_VALUE;
+  private boolean pastDeadline = false;
+  private boolean degraded = false;
+  
+  // Per-decoder (i.e., per-thread) storage that is reused across sentences. Successors
+  // on the agenda are slots in the arena, and are referred to as items.
+  private final SuccessorArena<TK,FV> arena;
+  private final int[] successorBuffer = new int[4];
+  private final IntArrayList itemBatch = new IntArrayList();
+  private final IntArrayList popBatch = new IntArrayList();
+  private final int popBatchSize;
+  private final List<FeatureBatch<FV>> featureBatches;
+  private final List<IntArrayList> featureBatchItems;
+  private final double[][] batchScores;
+  private final List<List<Derivation<TK,FV>>> prefetchAntecedents;
+  private final List<List<ConcreteRule<TK,FV>>> prefetchRules;
+  
   static public <TK, FV> CubePruningDecoderBuilder<TK, FV> builder() {
     return new CubePruningDecoderBuilder<TK, FV>();
   }
@@ -57,18 +105,68 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     super(builder);
     maxDistortion = builder.maxDistortion;
     defaultDistortion = builder.maxDistortion;
+    lazyDerivations = builder.lazyDerivations || builder.cubeGrowing;
+    cubeGrowing = builder.cubeGrowing;
+    incrementalPrefixDecoding = builder.incrementalPrefixDecoding && ruleQueryCache != null;
+    if (builder.incrementalPrefixDecoding && ruleQueryCache == null) {
+      logger.warn("Incremental prefix decoding requires a rule query cache. Disabled.");
+    }
+    final boolean heuristicDependsOnScore = heuristic != null && heuristic.dependsOnScore();
+    batchScoring = builder.batchScoring && ! heuristicDependsOnScore;
+    if (builder.batchScoring && heuristicDependsOnScore) {
+      logger.warn("Batch scoring is not supported by the search heuristic. Disabled.");
+    }
+    arena = new SuccessorArena<>(2*beamCapacity);
+    popBatchSize = parallelism == 1 ? 1 : parallelism * POP_BATCH_SIZE_PER_WORKER;
+    featureBatches = new ArrayList<>(parallelism);
+    featureBatchItems = new ArrayList<>(parallelism);
+    batchScores = new double[parallelism][];
+    if (batchScoring) {
+      for (int i = 0; i < parallelism; ++i) {
+        featureBatches.add(new FeatureBatch<>());
+        featureBatchItems.add(new IntArrayList());
+        batchScores[i] = new double[64];
+      }
+    }
+    prefetchFeatures = featurizer.isPrefetchEnabled();
+    prefetchAntecedents = new ArrayList<>(parallelism);
+    prefetchRules = new ArrayList<>(parallelism);
+    if (prefetchFeatures) {
+      for (int i = 0; i < parallelism; ++i) {
+        prefetchAntecedents.add(new ArrayList<>());
+        prefetchRules.add(new ArrayList<>());
+      }
+    }
 
     if (maxDistortion != -1) {
       logger.info("Cube pruning decoder {}. Distortion limit: {}", builder.decoderId, 
           maxDistortion);
     } else {
       logger.info("Cube pruning decoder {}. No hard distortion limit", builder.decoderId);
-    }    
+    }
+    if (cubeGrowing) {
+      logger.info("Cube pruning decoder {}. Cube growing enabled", builder.decoderId);
+    } else if (lazyDerivations) {
+      logger.info("Cube pruning decoder {}. Lazy derivation construction enabled", builder.decoderId);
+    }
+    if (incrementalPrefixDecoding) {
+      logger.info("Cube pruning decoder {}. Incremental prefix decoding enabled", builder.decoderId);
+    }
+    if (batchScoring) {
+      logger.info("Cube pruning decoder {}. Batch scoring enabled", builder.decoderId);
+    }
+    if (prefetchFeatures) {
+      logger.info("Cube pruning decoder {}. Batch feature prefetching enabled", builder.decoderId);
+    }
   }
 
   public static class CubePruningDecoderBuilder<TK, FV> extends AbstractBeamInfererBuilder<TK, FV> {
     int maxDistortion = DEFAULT_MAX_DISTORTION;
     int decoderId = -1;
+    boolean lazyDerivations = false;
+    boolean cubeGrowing = false;
+    boolean incrementalPrefixDecoding = false;
+    boolean batchScoring = false;
 
     @Override
     public AbstractBeamInfererBuilder<TK, FV> setMaxDistortion(int maxDistortion) {
@@ -76,6 +174,56 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
       return this;
     }
 
+    /**
+     * Only build derivations for successors that are popped into a beam. Successors
+     * are ranked on the agenda by a cheap estimate computed from the antecedent and the rule.
+     * 
+     * @param lazyDerivations
+     * @return
+     */
+    public CubePruningDecoderBuilder<TK, FV> setLazyDerivations(boolean lazyDerivations) {
+      this.lazyDerivations = lazyDerivations;
+      return this;
+    }
+
+    /**
+     * Cube growing (Huang and Chiang, 2007). Implies lazy derivation construction. When a
+     * lazy item is popped and scored, it is returned to the agenda if its exact score is
+     * worse than the estimate of the best remaining item.
+     * 
+     * @param cubeGrowing
+     * @return
+     */
+    public CubePruningDecoderBuilder<TK, FV> setCubeGrowing(boolean cubeGrowing) {
+      this.cubeGrowing = cubeGrowing;
+      return this;
+    }
+
+    /**
+     * Resume prefix decoding from the beams of the last prefix decoded for the same source
+     * when the new prefix extends it. Requires a rule query cache, which holds the beams.
+     * 
+     * @param incrementalPrefixDecoding
+     * @return
+     */
+    public CubePruningDecoderBuilder<TK, FV> setIncrementalPrefixDecoding(boolean incrementalPrefixDecoding) {
+      this.incrementalPrefixDecoding = incrementalPrefixDecoding;
+      return this;
+    }
+
+    /**
+     * Build the successors that are added to the agenda together (e.g., the successors
+     * of all bundles for a coverage cardinality) and score their features in one pass
+     * with <code>Scorer.getIncrementalScores()</code>.
+     * 
+     * @param batchScoring
+     * @return
+     */
+    public CubePruningDecoderBuilder<TK, FV> setBatchScoring(boolean batchScoring) {
+      this.batchScoring = batchScoring;
+      return this;
+    }
+
     public CubePruningDecoderBuilder() {
       super(DEFAULT_BEAM_SIZE, null);
     }
@@ -92,6 +240,44 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     }
   }
 
+  @Override
+  public List<RichTranslation<TK, FV>> nbest(Scorer<FV> scorer,
+      Sequence<TK> source, int sourceInputId,
+      InputProperties sourceInputProperties,
+      OutputSpace<TK, FV> outputSpace, List<Sequence<TK>> targets, int size, boolean distinct,
+      NbestMode nbestMode) {
+    try {
+      return super.nbest(scorer, source, sourceInputId, sourceInputProperties, outputSpace, targets, 
+          size, distinct, nbestMode);
+    } finally {
+      publishPrefixState();
+    }
+  }
+  
+  @Override
+  public RichTranslation<TK, FV> translate(Scorer<FV> scorer,
+      Sequence<TK> source, int sourceInputId,
+      InputProperties sourceInputProperties,
+      OutputSpace<TK, FV> outputSpace, List<Sequence<TK>> targets) {
+    try {
+      return super.translate(scorer, source, sourceInputId, sourceInputProperties, outputSpace, targets);
+    } finally {
+      publishPrefixState();
+    }
+  }
+  
+  /**
+   * Make the prefix beams of the last input available to other decoders. Called once
+   * n-best extraction no longer modifies the derivations.
+   */
+  private void publishPrefixState() {
+    if (pendingPrefixEntry != null) {
+      pendingPrefixEntry.setPrefixState(pendingPrefixState);
+      pendingPrefixEntry = null;
+      pendingPrefixState = null;
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   protected Beam<Derivation<TK, FV>> decode(Scorer<FV> scorer,
@@ -102,9 +288,21 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
       List<Sequence<TK>> targets, int nbest) {
 
     TimeKeeper timer = TimingUtils.start();
+    final long startTime = System.nanoTime();
     
     boolean printDebug = false; // sourceInputId == 1022;
     
+    // Set the time limit
+    if (sourceInputProperties.containsKey(InputProperty.DecodingTimeLimit)) {
+      final long timeLimit = ((Number) sourceInputProperties.get(InputProperty.DecodingTimeLimit)).longValue();
+      this.deadline = startTime + Math.max(0L, timeLimit) * 1000000L;
+      logger.info("input {}: Decoding time limit {}ms", sourceInputId, timeLimit);
+    } else {
+      this.deadline = Long.MAX_VALUE;
+    }
+    this.pastDeadline = false;
+    this.degraded = false;
+    
     // Set the distortion limit
     if (sourceInputProperties.containsKey(InputProperty.DistortionLimit)) {
       this.maxDistortion = (int) sourceInputProperties.get(InputProperty.DistortionLimit);
@@ -114,38 +312,66 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
       this.maxDistortion = defaultDistortion;
     }
     InputProperties inputProperties = sourceInputProperties;
+    
+    // Rule queries can be shared across decodes of the same source unless the
+    // output space filters the rule list (force decoding)
+    final boolean isConstrained = targets != null && targets.size() > 0 && 
+        ! inputProperties.containsKey(InputProperty.TargetPrefix);
+    final RuleQueryCache.Key<TK> cacheKey = ruleQueryCache == null || isConstrained ? null :
+      ruleQueryCache.newKey(source, inputProperties, scorer.getWeightsVersion());
+    RuleQueryCache.Entry<TK,FV> cacheEntry = ruleQueryCache == null ? null : ruleQueryCache.get(cacheKey);
+    
     if(foregroundModel != null && !inputProperties.containsKey(InputProperty.ForegroundTM)) {
       inputProperties.put(InputProperty.ForegroundTM, foregroundModel);
     }
     
-    // TM (phrase table) query for applicable rules
-    final PhraseQuery<TK,FV> phraseQuery = 
-        getRules(source, inputProperties, targets, sourceInputId, scorer);
-    source = phraseQuery.filteredSource;
-    timer.mark("TM query");
-    
-    // Check after potential filtering for OOVs
-    if (source.size() == 0) return null;
-    final int sourceLength = source.size();
-    final List<ConcreteRule<TK,FV>> ruleList = phraseQuery.ruleList;
-    logger.info("input {}: rule query size {}", sourceInputId, ruleList.size());
-    
-    if (printDebug) {
-      for (ConcreteRule<TK,FV> rule : ruleList)
-        System.err.println(rule);
+    final List<ConcreteRule<TK,FV>> ruleList;
+    final RuleGrid<TK,FV> ruleGrid;
+    if (cacheEntry != null) {
+      source = cacheEntry.filteredSource;
+      ruleList = cacheEntry.ruleList;
+      ruleGrid = cacheEntry.ruleGrid;
+      heuristic.setFutureCostTable(cacheEntry.getFutureCostTable());
+      logger.info("input {}: rule query cache hit", sourceInputId);
+      timer.mark("Rule cache");
+      
+    } else {
+      // TM (phrase table) query for applicable rules
+      final PhraseQuery<TK,FV> phraseQuery = 
+          getRules(source, inputProperties, targets, sourceInputId, scorer);
+      source = phraseQuery.filteredSource;
+      timer.mark("TM query");
+
+      // Check after potential filtering for OOVs
+      if (source.size() == 0) return null;
+      List<ConcreteRule<TK,FV>> queryRuleList = phraseQuery.ruleList;
+      logger.info("input {}: rule query size {}", sourceInputId, queryRuleList.size());
+
+      if (printDebug) {
+        for (ConcreteRule<TK,FV> rule : queryRuleList)
+          System.err.println(rule);
+      }
+
+      // Force decoding---if it is enabled, then filter the rule set according
+      // to the references
+      outputSpace.filter(queryRuleList, this, inputProperties);
+
+      assert inputProperties.containsKey(InputProperty.RuleQueryLimit);
+      RuleGrid<TK,FV> queryRuleGrid = new RuleGrid<>(queryRuleList, source, 
+          (int) inputProperties.get(InputProperty.RuleQueryLimit));
+      if (cacheKey != null) {
+        cacheEntry = ruleQueryCache.put(cacheKey, source, queryRuleList, queryRuleGrid);
+        queryRuleList = cacheEntry.ruleList;
+      }
+      ruleList = queryRuleList;
+      ruleGrid = queryRuleGrid;
+      timer.mark("Rulegrid");
     }
-    
-    // Force decoding---if it is enabled, then filter the rule set according
-    // to the references
-    outputSpace.filter(ruleList, this, inputProperties);
-    
-    assert inputProperties.containsKey(InputProperty.RuleQueryLimit);
-    final RuleGrid<TK,FV> ruleGrid = new RuleGrid<>(ruleList, source, 
-        (int) inputProperties.get(InputProperty.RuleQueryLimit));
+    final int sourceLength = source.size();
+    arena.reset(sourceLength);
     if ( ! ruleGrid.isCoverageComplete()) {
       logger.warn("input {}: Incomplete source coverage", sourceInputId);
     }
-    timer.mark("Rulegrid");
     
     // Fill Beam 0 (root)...only has one cube
     BundleBeam<TK,FV> nullBeam = new BundleBeam<>(beamCapacity, filter, ruleGrid, 
@@ -155,6 +381,9 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     List<List<ConcreteRule<TK,FV>>> ruleListList = Collections.singletonList(ruleList);
     Derivation<TK, FV> nullHypothesis = new Derivation<>(sourceInputId, source, 
         inputProperties, heuristic, scorer, ruleListList, outputSpace);
+    if (cacheEntry != null && cacheEntry.getFutureCostTable() == null) {
+      cacheEntry.setFutureCostTable(heuristic.getFutureCostTable());
+    }
     nullBeam.put(nullHypothesis);
     final List<Beam<Derivation<TK,FV>>> beams = new ArrayList<>(sourceLength+1);
     beams.add(nullBeam);
@@ -164,6 +393,7 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
 
     // Initialize feature extractors
     featurizer.initialize(sourceInputId, source);
+    initializeWorkerFeaturizers(sourceInputId, source);
     
     // Prefix decoding
     int startOfDecoding = 1;
@@ -172,7 +402,8 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     if (inputProperties.containsKey(InputProperty.TargetPrefix) && targets != null && targets.size() > 0) {
       if (targets.size() > 1) logger.warn("Decoding to multiple prefixes is not supported. Choosing the first one.");
       minSourceCoverage = decodePrefix(source, ruleList, inputProperties, targets.get(0), 
-          scorer, beams, sourceInputId, outputSpace, recombinationHistory, timer);
+          scorer, beams, sourceInputId, outputSpace, recombinationHistory, 
+          incrementalPrefixDecoding ? cacheEntry : null, timer);
       if (minSourceCoverage < 0) {
         logger.warn("input {}: PREFIX DECODING FAILURE", sourceInputId);
         return null;
@@ -186,51 +417,79 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     // main translation loop---beam expansion
     final int maxPhraseLength = phraseGenerator.maxLengthSource();
     int totalHypothesesGenerated = 1, numRecombined = 0, numPruned = 0;
+    int numUnscored = 0, numRequeued = 0;
+    final long searchStartTime = System.nanoTime();
+    int totalPoppedItems = 0;
     for (int i = startOfDecoding; i <= sourceLength; i++) {
       int rootBeam = prefilledBeams ? minSourceCoverage : 0;
       int minCoverage = i - maxPhraseLength;
       int startBeam = Math.max(rootBeam, minCoverage);
+      final int capacity = capacityBeforeDeadline(sourceLength - i + 1, searchStartTime, totalPoppedItems);
 
       // Initialize the priority queue
-      Queue<Item> pq = new PriorityQueue<>(2*beamCapacity);
+      final IntArrayList batch = itemBatch;
       for (int j = startBeam; j < i; ++j) {
         BundleBeam<TK,FV> bundleBeam = (BundleBeam<TK,FV>) beams.get(j);
         for (HyperedgeBundle<TK,FV> bundle : bundleBeam.getBundlesForConsequentSize(i)) {
-          for(Item consequent : generateConsequentsFrom(null, bundle, sourceInputId, outputSpace, false)) {
-            ++totalHypothesesGenerated;
-            if (consequent.derivation == null) ++numPruned;
-            pq.add(consequent);
-          }
+          final int batchStart = batch.size();
+          totalHypothesesGenerated += generateConsequentsFrom(-1, -1, bundle, sourceInputId, 
+              outputSpace, false, batch);
+          numPruned += countPruned(batch, batchStart);
         }
       }
+      addToAgenda(batch, sourceInputId, outputSpace);
 
       // Beam-filling
       BundleBeam<TK,FV> newBeam = (BundleBeam<TK, FV>) beams.get(i);
       int numPoppedItems = newBeam.size();
-      while (numPoppedItems < beamCapacity && ! pq.isEmpty()) {
-        final Item item = pq.poll();
-
-        // Derivations are null if they're pruned by an output constraint.
-        if (item.derivation != null && (Double.isInfinite(item.derivation.score) || Double.isNaN(item.derivation.score))) {
-          // this normally happens when there's something brain dead about
-          // the baseline model/featurizers,
-          // like log(p) values that equal -inf for some featurizers.
-          logger.warn("Generated derivation with invalid score: {}", item.derivation);
-          ++numPoppedItems;
-        } else if (item.derivation != null) {
-          newBeam.put(item.derivation);
-          ++numPoppedItems;
+      final int initialBeamSize = numPoppedItems;
+      while (numPoppedItems < capacity && ! arena.isEmpty()) {
+        if (newBeam.size() > 0 && System.nanoTime() > beamDeadline) {
+          // Out of time for this beam
+          degraded = true;
+          break;
+        }
+        // With intra-sentence parallelism, pop several items at once so that
+        // their successors can be built in parallel.
+        final IntArrayList popped = popBatch;
+        for (int k = 0; k < popBatchSize && numPoppedItems + k < capacity && ! arena.isEmpty(); ++k) {
+          popped.add(arena.poll());
         }
-        // else pruned items don't count against the pop limit
-
-        // Expand this consequent.
-        for(Item consequent : generateConsequentsFrom(item.consequent, item.consequent.bundle, 
-            sourceInputId, outputSpace, false)) {
-          ++totalHypothesesGenerated;
-          if (consequent.derivation == null) ++numPruned;
-          pq.add(consequent);
+        if (lazyDerivations) buildDerivations(popped, sourceInputId, outputSpace, cubeGrowing);
+        
+        for (int k = 0, numPopped = popped.size(); k < numPopped; ++k) {
+          final int item = popped.getInt(k);
+          if (cubeGrowing && requeue(item)) {
+            ++numRequeued;
+            continue;
+          }
+          final Derivation<TK,FV> derivation = derivation(item, sourceInputId, outputSpace);
+
+          // Derivations are null if they're pruned by an output constraint.
+          if (derivation != null && (Double.isInfinite(derivation.score) || Double.isNaN(derivation.score))) {
+            // this normally happens when there's something brain dead about
+            // the baseline model/featurizers,
+            // like log(p) values that equal -inf for some featurizers.
+            logger.warn("Generated derivation with invalid score: {}", derivation);
+            ++numPoppedItems;
+          } else if (derivation != null) {
+            newBeam.put(derivation);
+            ++numPoppedItems;
+          }
+          // else pruned items don't count against the pop limit
+
+          // Expand this consequent.
+          final int batchStart = batch.size();
+          totalHypothesesGenerated += generateConsequentsFrom(arena.itemId(item), arena.ruleId(item), 
+              arena.bundle(item), sourceInputId, outputSpace, false, batch);
+          numPruned += countPruned(batch, batchStart);
+          arena.release(item);
         }
+        popped.clear();
+        addToAgenda(batch, sourceInputId, outputSpace);
       }
+      totalPoppedItems += numPoppedItems - initialBeamSize;
+      numUnscored += arena.clearAgenda();
           
       if (printDebug) {
         System.err.println(newBeam.beamString(10));
@@ -244,6 +503,14 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     logger.info("input {}: Decoding time: {}", sourceInputId, timer);
     logger.info("input {}: #derivations generated: {}  pruned: {}  recombined: {}", sourceInputId, 
         totalHypothesesGenerated, numPruned, numRecombined);
+    if (lazyDerivations) {
+      logger.info("input {}: #featurizations saved: {}  re-queued: {}", sourceInputId, 
+          numUnscored, numRequeued);
+    }
+    if (degraded) {
+      logger.info("input {}: Search degraded to meet the time limit (past deadline: {})", sourceInputId, 
+          pastDeadline);
+    }
 
     // Return the best beam, which should be the goal beam
     boolean isGoalBeam = true;
@@ -279,67 +546,221 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
   }
 
   /**
-   * Searches for consequents, always returning at least one and at most two.
+   * Searches for consequents of an item in a bundle and appends them to a batch. Returns
+   * at least one consequent for the top-left corner of the bundle, and at most two.
    * 
-   * @param antecedent
+   * @param itemId The item id of the antecedent in the bundle, or -1 for the top-left corner.
+   * @param ruleId The rule id of the antecedent in the bundle, or -1 for the top-left corner.
    * @param bundle
    * @param sourceInputId
    * @param outputSpace
    * @param checkSourceCoverage
-   * @return
+   * @param batch
+   * @return The number of consequents.
    */
-  private List<Item> generateConsequentsFrom(Consequent<TK, FV> antecedent, 
-      HyperedgeBundle<TK, FV> bundle, int sourceInputId, OutputSpace<TK, FV> outputSpace, 
-      boolean checkSourceCoverage) {
-    List<Item> successors = new ArrayList<>(2);
-    for(Consequent<TK, FV> successor : bundle.nextSuccessors(antecedent)) {
-      boolean buildDerivation = outputSpace.allowableContinuation(successor.antecedent.featurizable, successor.rule)
-          && (!checkSourceCoverage || (!successor.antecedent.sourceCoverage.intersects(successor.rule.sourceCoverage) ));
-      Derivation<TK, FV> derivation = buildDerivation ? new Derivation<>(sourceInputId,
-          successor.rule, successor.antecedent.length, successor.antecedent, featurizer, scorer, 
-          heuristic, outputSpace) : null;
-      successors.add(new Item(derivation, successor));
-    }
-    return successors;
+  private int generateConsequentsFrom(int itemId, int ruleId, HyperedgeBundle<TK, FV> bundle, 
+      int sourceInputId, OutputSpace<TK, FV> outputSpace, boolean checkSourceCoverage, 
+      IntArrayList batch) {
+    final int numSuccessors = bundle.nextSuccessors(itemId, ruleId, successorBuffer);
+    for (int k = 0; k < numSuccessors; ++k) {
+      final int item = arena.add(bundle, successorBuffer[2*k], successorBuffer[2*k+1]);
+      final Derivation<TK,FV> antecedent = arena.antecedent(item);
+      final ConcreteRule<TK,FV> rule = arena.rule(item);
+      boolean buildDerivation = outputSpace.allowableContinuation(antecedent.featurizable, rule)
+          && (!checkSourceCoverage || ! arena.coverageOverlaps(item));
+      if ( ! buildDerivation) {
+        arena.setPruned(item);
+      } else if (lazyDerivations || parallelism > 1 || batchScoring || prefetchFeatures || pastDeadline) {
+        // With intra-sentence parallelism, batch scoring, or prefetching, derivations are
+        // built in addToAgenda(). Past the deadline, only popped items are scored.
+        arena.setEstimatedPriority(item);
+      } else {
+        final Derivation<TK,FV> derivation = new Derivation<>(sourceInputId, rule, antecedent.length, 
+            antecedent, featurizer, scorer, heuristic, outputSpace);
+        arena.setDerivation(item, derivation);
+        arena.setPriority(item, derivation.finalScoreEstimate());
+      }
+      batch.add(item);
+    }
+    return numSuccessors;
   }
   
-  private int itemId = 0;
+  /**
+   * The number of pruned items in <code>batch[start, batch.size())</code>.
+   * 
+   * @param batch
+   * @param start
+   * @return
+   */
+  private int countPruned(IntArrayList batch, int start) {
+    int numPruned = 0;
+    for (int k = start, sz = batch.size(); k < sz; ++k) {
+      if (arena.isPruned(batch.getInt(k))) ++numPruned;
+    }
+    return numPruned;
+  }
   
   /**
-   * Wrapper for class for the priority queue that organizes successors.
+   * Add a batch of new items to the agenda and clear the batch. With intra-sentence
+   * parallelism, batch scoring, or prefetching, the derivations are built before insertion.
+   * Items are inserted in batch order, so the agenda does not depend on thread scheduling.
    * 
-   * @author Spence Green
-   *
-   * @param <TK>
-   * @param <FV>
+   * @param batch
+   * @param sourceInputId
+   * @param outputSpace
    */
-  protected class Item implements Comparable<Item> {
-    
-    public final Derivation<TK, FV> derivation;
-    public final Consequent<TK, FV> consequent;
-    public int id = itemId++;
-
-    public Item(Derivation<TK,FV> derivation, Consequent<TK,FV> consequent) {
-      this.derivation = derivation;
-      this.consequent = consequent;
+  private void addToAgenda(IntArrayList batch, int sourceInputId, OutputSpace<TK, FV> outputSpace) {
+    if ((parallelism > 1 || batchScoring || prefetchFeatures) && ! lazyDerivations && ! pastDeadline) {
+      buildDerivations(batch, sourceInputId, outputSpace, true);
     }
-
-    @Override
-    public int compareTo(Item o) {
-      if (derivation == null && o.derivation == null) {
-        return id - o.id;
-      } else if (derivation == null) {
-        return 1;
-      } else if (o.derivation == null) {
-        return -1;
+    for (int k = 0, sz = batch.size(); k < sz; ++k) arena.push(batch.getInt(k));
+    batch.clear();
+  }
+  
+  /**
+   * Cube growing: return a newly scored item to the agenda if its exact score is worse
+   * than the priority of the best remaining item. Each item is re-queued at most once.
+   * 
+   * @param item
+   * @return true if the item was returned to the agenda.
+   */
+  private boolean requeue(int item) {
+    if (arena.isRequeued(item) || arena.isPruned(item) || arena.isEmpty()) return false;
+    final int top = arena.peek();
+    if (arena.isPruned(top) || arena.priority(top) <= arena.priority(item)) return false;
+    arena.setRequeued(item);
+    arena.push(item);
+    return true;
+  }
+  
+  /**
+   * Build the derivations for a list of items, possibly in parallel.
+   * 
+   * @param items
+   * @param sourceInputId
+   * @param outputSpace
+   * @param updatePriority Rank the item by the score of the derivation.
+   */
+  private void buildDerivations(IntArrayList items, int sourceInputId, OutputSpace<TK, FV> outputSpace, 
+      boolean updatePriority) {
+    forEachChunk(items.size(), (worker, start, end) -> {
+      final FeatureExtractor<TK,FV> workerFeaturizer = workerFeaturizer(worker);
+      if (prefetchFeatures) prefetch(items, start, end, worker, workerFeaturizer);
+      // Dense-only derivations are scored without feature lists
+      if (batchScoring && ! workerFeaturizer.isDenseOnly()) {
+        buildAndScoreDerivations(items, start, end, worker, sourceInputId, outputSpace, 
+            workerFeaturizer, updatePriority);
       } else {
-        return derivation.compareTo(o.derivation);
+        for (int k = start; k < end; ++k) {
+          materialize(items.getInt(k), sourceInputId, outputSpace, workerFeaturizer, updatePriority);
+        }
+      }
+    });
+  }
+  
+  /**
+   * Compute the prefetched features of the unbuilt derivations of the items in [start,end).
+   * The derivations must be built next, in order, on the calling thread.
+   * 
+   * @param items
+   * @param start
+   * @param end
+   * @param worker
+   * @param featurizer
+   */
+  private void prefetch(IntArrayList items, int start, int end, int worker, 
+      FeatureExtractor<TK,FV> featurizer) {
+    final List<Derivation<TK,FV>> antecedents = prefetchAntecedents.get(worker);
+    final List<ConcreteRule<TK,FV>> rules = prefetchRules.get(worker);
+    for (int k = start; k < end; ++k) {
+      final int item = items.getInt(k);
+      if (arena.derivation(item) == null && ! arena.isPruned(item)) {
+        antecedents.add(arena.antecedent(item));
+        rules.add(arena.rule(item));
       }
     }
-    
-    @Override
-    public String toString() {
-      return String.format("%d: %s", id, derivation);
+    if (antecedents.size() > 0) featurizer.prefetch(antecedents, rules);
+    antecedents.clear();
+    rules.clear();
+  }
+  
+  /**
+   * Build the derivations for the items in [start,end) and score them as a batch.
+   * 
+   * @param items
+   * @param start
+   * @param end
+   * @param worker
+   * @param sourceInputId
+   * @param outputSpace
+   * @param featurizer
+   * @param updatePriority
+   */
+  private void buildAndScoreDerivations(IntArrayList items, int start, int end, int worker, 
+      int sourceInputId, OutputSpace<TK, FV> outputSpace, FeatureExtractor<TK,FV> featurizer, 
+      boolean updatePriority) {
+    final FeatureBatch<FV> batch = featureBatches.get(worker);
+    final IntArrayList batchItems = featureBatchItems.get(worker);
+    for (int k = start; k < end; ++k) {
+      final int item = items.getInt(k);
+      if (arena.derivation(item) == null && ! arena.isPruned(item)) {
+        // Unscored derivation
+        final Derivation<TK,FV> antecedent = arena.antecedent(item);
+        final Derivation<TK,FV> derivation = new Derivation<>(sourceInputId, arena.rule(item), 
+            antecedent.length, antecedent, featurizer, null, heuristic, outputSpace);
+        arena.setDerivation(item, derivation);
+        batch.add(derivation.features);
+        batchItems.add(item);
+      }
+    }
+    if (batch.size() > 0) {
+      if (batchScores[worker].length < batch.size()) {
+        batchScores[worker] = new double[Math.max(batch.size(), 2 * batchScores[worker].length)];
+      }
+      final double[] scores = batchScores[worker];
+      scorer.getIncrementalScores(batch, scores);
+      for (int i = 0, sz = batchItems.size(); i < sz; ++i) {
+        final int item = batchItems.getInt(i);
+        final Derivation<TK,FV> derivation = arena.derivation(item);
+        derivation.score += scores[i];
+        if (updatePriority) arena.setPriority(item, derivation.finalScoreEstimate());
+      }
+    }
+    batch.clear();
+    batchItems.clear();
+  }
+  
+  /**
+   * Get the derivation for an item, building it if necessary. Returns null 
+   * if the item was pruned.
+   * 
+   * @param item
+   * @param sourceInputId
+   * @param outputSpace
+   * @return
+   */
+  private Derivation<TK,FV> derivation(int item, int sourceInputId, OutputSpace<TK, FV> outputSpace) {
+    materialize(item, sourceInputId, outputSpace, featurizer, false);
+    return arena.derivation(item);
+  }
+  
+  /**
+   * Build the derivation for an item with the specified featurizer.
+   * 
+   * @param item
+   * @param sourceInputId
+   * @param outputSpace
+   * @param featurizer
+   * @param updatePriority
+   */
+  private void materialize(int item, int sourceInputId, OutputSpace<TK, FV> outputSpace, 
+      FeatureExtractor<TK,FV> featurizer, boolean updatePriority) {
+    if (arena.derivation(item) == null && ! arena.isPruned(item)) {
+      final Derivation<TK,FV> antecedent = arena.antecedent(item);
+      final Derivation<TK,FV> derivation = new Derivation<>(sourceInputId, arena.rule(item), 
+          antecedent.length, antecedent, featurizer, scorer, heuristic, outputSpace);
+      arena.setDerivation(item, derivation);
+      if (updatePriority) arena.setPriority(item, derivation.finalScoreEstimate());
     }
   }
 
@@ -350,6 +771,41 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
   
   
   
+  /**
+   * Time-limited decoding: shrink the capacity of the next beam so that the remaining beams
+   * can be filled before the deadline, and give the beam an equal share of the time left.
+   * Past the deadline, the capacity is 1 so that the search completes a translation greedily.
+   * 
+   * @param remainingBeams The number of beams left to fill, including the next one.
+   * @param searchStartTime
+   * @param totalPoppedItems The number of items popped since <code>searchStartTime</code>.
+   * @return The capacity of the next beam.
+   */
+  private int capacityBeforeDeadline(int remainingBeams, long searchStartTime, int totalPoppedItems) {
+    beamDeadline = Long.MAX_VALUE;
+    if (deadline == Long.MAX_VALUE) return beamCapacity;
+    int capacity = beamCapacity;
+    final long now = System.nanoTime();
+    if (now >= deadline) {
+      pastDeadline = true;
+      capacity = 1;
+    } else {
+      beamDeadline = now + (deadline - now) / remainingBeams;
+      if (totalPoppedItems > 0) {
+        final double nanosPerItem = (now - searchStartTime) / (double) totalPoppedItems;
+        capacity = (int) Math.max(1.0, Math.min(beamCapacity, 
+            (deadline - now) / (remainingBeams * nanosPerItem)));
+      }
+    }
+    if (capacity < beamCapacity) degraded = true;
+    return capacity;
+  }
+  
+  @Override
+  protected boolean isDegraded() {
+    return degraded;
+  }
+  
   /**
    * Populate the beams given the prefix. Returns the minimum source coverage cardinality.
    * 
@@ -365,7 +821,8 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
   private int decodePrefix(Sequence<TK> source, List<ConcreteRule<TK,FV>> ruleList, 
       InputProperties sourceInputProperties, Sequence<TK> prefix, Scorer<FV> scorer, 
       List<Beam<Derivation<TK,FV>>> beams, int sourceInputId, OutputSpace<TK, FV> outputSpace,
-      RecombinationHistory<Derivation<TK, FV>> recombinationHistory, TimeKeeper timer) {
+      RecombinationHistory<Derivation<TK, FV>> recombinationHistory, RuleQueryCache.Entry<TK,FV> cacheEntry,
+      TimeKeeper timer) {
     if (source == null || source.size() == 0 || prefix == null || prefix.size() == 0) return 0;
 
     //System.err.println("start prefix decoding");
@@ -402,49 +859,76 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
       tgtBeams.add(new BundleBeam<>(beamCapacity, filter, prefixGrid, recombinationHistory, maxDistortion, i, true));
     }
     
+    // Resume from the beams of the last prefix. Rules for the new prefix are not
+    // applied to the resumed beams.
+    final PrefixDecodingState<TK,FV> lastState = cacheEntry == null ? null : cacheEntry.takePrefixState();
+    final int resumeLength = lastState == null ? 0 : 
+      lastState.resumableLength(prefix, maxDistortion, allowIncompletePrefix);
+    for (int i = 1; i <= resumeLength; ++i) {
+      final BundleBeam<TK,FV> beam = (BundleBeam<TK,FV>) tgtBeams.get(i);
+      for (Derivation<TK,FV> d : lastState.resume(i, recombinationHistory)) beam.put(d, false);
+    }
+    if (resumeLength > 0) {
+      logger.info("input {}: Resuming prefix decoding at {}/{}", sourceInputId, resumeLength, prefixLength);
+    }
+    
     final int maxTgtPhraseLength = prefixGrid.maxTargetLength();
     int totalHypothesesGenerated = 1, numRecombined = 0, numPruned = 0;
     int lastRecoveredCardinality = 0;
-    for (int i = 1; i <= prefixLength; ++i) {
+    final long searchStartTime = System.nanoTime();
+    int totalPoppedItems = 0;
+    for (int i = resumeLength + 1; i <= prefixLength; ++i) {
       //System.err.println("i = " + i);
       int rootBeam = 0;
       int minCoverage = i - maxTgtPhraseLength;
       int startBeam = Math.max(rootBeam, minCoverage);
+      // The source coverage beams are filled after the prefix
+      final int capacity = capacityBeforeDeadline(prefixLength - i + 1 + source.size(), 
+          searchStartTime, totalPoppedItems);
 
       // Initialize the priority queue
-      Queue<Item> pq = new PriorityQueue<>(2*beamCapacity);
+      final IntArrayList batch = itemBatch;
       for (int j = startBeam; j < i; ++j) {
         BundleBeam<TK,FV> bundleBeam = (BundleBeam<TK,FV>) tgtBeams.get(j);
         //System.err.println("card " + j + " consequent size " + i);
         for (HyperedgeBundle<TK,FV> bundle : bundleBeam.getBundlesForConsequentSize(i)) {
-          for(Item consequent : generateConsequentsFrom(null, bundle, sourceInputId, outputSpace, true)) {
-            ++totalHypothesesGenerated;
-            if (consequent.derivation == null) ++numPruned;
-            pq.add(consequent);
-          }
+          final int batchStart = batch.size();
+          totalHypothesesGenerated += generateConsequentsFrom(-1, -1, bundle, sourceInputId, 
+              outputSpace, true, batch);
+          numPruned += countPruned(batch, batchStart);
         }
       }
+      addToAgenda(batch, sourceInputId, outputSpace);
       
       // Beam-filling
       BundleBeam<TK,FV> newBeam = (BundleBeam<TK, FV>) tgtBeams.get(i);
       int numPoppedItems = newBeam.size();
-      while (numPoppedItems < beamCapacity && ! pq.isEmpty()) {
-        final Item item = pq.poll();
+      final int initialBeamSize = numPoppedItems;
+      while (numPoppedItems < capacity && ! arena.isEmpty()) {
+        if (newBeam.size() > 0 && System.nanoTime() > beamDeadline) {
+          // Out of time for this beam
+          degraded = true;
+          break;
+        }
+        final int item = arena.poll();
+        final Derivation<TK,FV> derivation = derivation(item, sourceInputId, outputSpace);
 
         // Derivations are null if they're pruned by an output constraint or have incompatible source coverage.
-        if (item.derivation != null) {
-          newBeam.put(item.derivation);
+        if (derivation != null) {
+          newBeam.put(derivation);
           ++numPoppedItems;
         }
        
         // Expand this consequent
-        for(Item consequent : generateConsequentsFrom(item.consequent, item.consequent.bundle, 
-            sourceInputId, outputSpace, true)) {
-          ++totalHypothesesGenerated;
-          if (consequent.derivation == null) ++numPruned;
-          pq.add(consequent);
-        }
+        final int batchStart = batch.size();
+        totalHypothesesGenerated += generateConsequentsFrom(arena.itemId(item), arena.ruleId(item), 
+            arena.bundle(item), sourceInputId, outputSpace, true, batch);
+        numPruned += countPruned(batch, batchStart);
+        arena.release(item);
+        addToAgenda(batch, sourceInputId, outputSpace);
       }
+      totalPoppedItems += numPoppedItems - initialBeamSize;
+      arena.clearAgenda();
       
       //System.err.println("beam " + i + ": " + newBeam.size());
       
@@ -490,6 +974,12 @@ public class CubePruningDecoder<TK,FV> extends AbstractBeamInferer<TK, FV> {
     logger.info("input {}: #derivations generated: {}  pruned: {}  recombined: {}", sourceInputId, 
         totalHypothesesGenerated, numPruned, numRecombined);
     
+    if (cacheEntry != null) {
+      pendingPrefixEntry = cacheEntry;
+      pendingPrefixState = new PrefixDecodingState<>(prefix, tgtBeams, recombinationHistory, 
+          maxDistortion, allowIncompletePrefix);
+    }
+    
     return populateSourceBeams(tgtBeams, beams);
   }
   
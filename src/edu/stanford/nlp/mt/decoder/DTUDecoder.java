@@ -8,6 +8,7 @@ import edu.stanford.nlp.mt.decoder.util.*;
 import edu.stanford.nlp.mt.tm.ConcreteRule;
 import edu.stanford.nlp.mt.tm.DTURule;
 import edu.stanford.nlp.mt.tm.Rule;
+import edu.stanford.nlp.mt.util.CoverageSet;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.InputProperties;
 import edu.stanford.nlp.mt.util.Sequence;
@@ -107,7 +108,7 @@ public class DTUDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
 
   private final Runtime rt = Runtime.getRuntime();
 
-  private static boolean isContiguous(BitSet bitset) {
+  private static boolean isContiguous(CoverageSet bitset) {
     int i = bitset.nextSetBit(0);
     int j = bitset.nextClearBit(i + 1);
     return (bitset.nextSetBit(j + 1) == -1);
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
 import edu.stanford.nlp.mt.decoder.recomb.RecombinationHistory;
 import edu.stanford.nlp.mt.decoder.util.Beam;
 import edu.stanford.nlp.mt.decoder.util.OutputSpace;
@@ -154,6 +155,8 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
     if ( ! ruleGrid.isCoverageComplete()) {
       System.err.printf("Incomplete coverage for source input %d%n", sourceInputId);
     }
+    // The workers share the grid, which sorts the spans lazily
+    if (parallelism > 1) ruleGrid.sortAll();
     
     // Generate null/start hypothesis
     List<List<ConcreteRule<TK,FV>>> allOptions = new ArrayList<>();
@@ -169,6 +172,7 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
 
     // Initialize feature extractors
     featurizer.initialize(sourceInputId, source);
+    initializeWorkerFeaturizers(sourceInputId, source);
 
     // main translation loop---beam expansion
     long startTime = System.nanoTime();
@@ -282,6 +286,10 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
    * Sloppy beam search from Pharoah / early version of Moses. This algorithm
    * creates many hypotheses that will eventually be discarded.
    * 
+   * Without intra-sentence parallelism, the successors are inserted into the beams as they
+   * are generated. Otherwise, the antecedents in the beam are expanded in parallel, and the
+   * successors are inserted into the beams in antecedent order afterward.
+   * 
    * @param beams
    * @param beamId
    * @param sourceSz
@@ -294,15 +302,72 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
       int sourceSz, RuleGrid<TK,FV> optionGrid,
       OutputSpace<TK, FV> outputSpace,
       int sourceInputId) {
+    if (parallelism == 1) {
+      return expandAntecedents(beams[beamId], 0, sourceSz, optionGrid, outputSpace,
+          sourceInputId, featurizer, beams, null);
+    }
+    final List<Derivation<TK, FV>> antecedents = new ArrayList<>(beams[beamId].size());
+    for (Derivation<TK, FV> hyp : beams[beamId]) antecedents.add(hyp);
+    final List<List<Derivation<TK, FV>>> successors = new ArrayList<>(antecedents.size());
+    for (int i = 0, sz = antecedents.size(); i < sz; ++i) successors.add(null);
+    final int[] hypothesesGenerated = new int[parallelism];
+    forEachChunk(antecedents.size(), (worker, start, end) -> 
+      hypothesesGenerated[worker] += expandAntecedents(antecedents.subList(start, end), start,
+          sourceSz, optionGrid, outputSpace, sourceInputId, workerFeaturizer(worker), null, successors));
+
+    // Insert new hypotheses into the sloppy beams
     int optionsApplied = 0;
-    int hypPos = -1;
+    for (List<Derivation<TK, FV>> localSuccessors : successors) {
+      if (localSuccessors == null) continue;
+      for (Derivation<TK, FV> newHyp : localSuccessors) {
+        int sourceWordsCovered = newHyp.sourceCoverage.cardinality();
+        beams[sourceWordsCovered].put(newHyp);
+        optionsApplied++;
+      }
+    }
+
+    if (DEBUG) {
+      System.err.printf("Options applied: %d%n", optionsApplied);
+    }
+    int totalHypothesesGenerated = 0;
+    for (int count : hypothesesGenerated) totalHypothesesGenerated += count;
+    return totalHypothesesGenerated;
+  }
+
+  /**
+   * Expand a range of antecedents. If <code>successors</code> is null, then the successors
+   * are inserted into <code>beams</code>. Otherwise, the successors of each antecedent are
+   * stored at its position in <code>successors</code>.
+   * 
+   * @param antecedents
+   * @param start The position of the first antecedent.
+   * @param sourceSz
+   * @param optionGrid
+   * @param outputSpace
+   * @param sourceInputId
+   * @param featurizer
+   * @param beams
+   * @param successors
+   * @return number of generated hypotheses
+   */
+  private int expandAntecedents(Iterable<Derivation<TK, FV>> antecedents, int start,
+      int sourceSz, RuleGrid<TK,FV> optionGrid,
+      OutputSpace<TK, FV> outputSpace,
+      int sourceInputId, FeatureExtractor<TK,FV> featurizer,
+      Beam<Derivation<TK, FV>>[] beams, List<List<Derivation<TK, FV>>> successors) {
     int totalHypothesesGenerated = 0;
+    int hypPos = start - 1;
 
-    for (Derivation<TK, FV> hyp : beams[beamId]) {
+    for (Derivation<TK, FV> hyp : antecedents) {
       hypPos++;
       if (hyp == null)
         continue;
       int localOptionsApplied = 0;
+      List<Derivation<TK, FV>> localSuccessors = null;
+      if (successors != null) {
+        localSuccessors = new ArrayList<>();
+        successors.set(hypPos, localSuccessors);
+      }
       int firstCoverageGap = hyp.sourceCoverage.nextClearBit(0);
       int priorStartPos = (hyp.featurizable == null ? 0
           : hyp.featurizable.sourcePosition);
@@ -412,11 +477,13 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
               continue;
             }
 
-            // Insert new hypothesis into sloppy beam.
-            int sourceWordsCovered = newHyp.sourceCoverage.cardinality();
-            beams[sourceWordsCovered].put(newHyp);
-
-            optionsApplied++;
+            if (localSuccessors == null) {
+              // Insert new hypothesis into sloppy beam.
+              int sourceWordsCovered = newHyp.sourceCoverage.cardinality();
+              beams[sourceWordsCovered].put(newHyp);
+            } else {
+              localSuccessors.add(newHyp);
+            }
             localOptionsApplied++;
           }
         }
@@ -426,10 +493,6 @@ public class MultiBeamDecoder<TK, FV> extends AbstractBeamInferer<TK, FV> {
             localOptionsApplied);
       }
     }
-
-    if (DEBUG) {
-      System.err.printf("Options applied: %d%n", optionsApplied);
-    }
     return totalHypothesesGenerated;
   }
 }
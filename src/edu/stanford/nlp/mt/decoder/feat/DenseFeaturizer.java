@@ -0,0 +1,38 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.List;
+
+import edu.stanford.nlp.mt.util.Featurizable;
+
+/**
+ * A <code>DerivationFeaturizer</code> that extracts a fixed set of dense features. When
+ * every derivation featurizer is dense, the decoder writes the features of each derivation
+ * into a <code>double[]</code> instead of creating <code>FeatureValue</code> objects.
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public interface DenseFeaturizer<TK,FV> {
+
+  /**
+   * The names of the dense features in the order of <code>denseFeaturize()</code>, or null
+   * if this featurizer (as configured) also extracts sparse features. The list must not
+   * change after construction.
+   *
+   * @return
+   */
+  List<FV> getDenseFeatureNames();
+
+  /**
+   * Extract the features of <code>f</code> into <code>values[offset]</code> through
+   * <code>values[offset + getDenseFeatureNames().size() - 1]</code>. The values are zero when
+   * this method is called. The featurizer state must be set as in <code>featurize()</code>.
+   *
+   * @param f
+   * @param values
+   * @param offset
+   */
+  void denseFeaturize(Featurizable<TK,FV> f, double[] values, int offset);
+}
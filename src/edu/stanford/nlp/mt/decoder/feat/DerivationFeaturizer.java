@@ -35,6 +35,29 @@ public abstract class DerivationFeaturizer<TK, FV> implements Featurizer<TK,FV>
    * @return a list of features or null.
    */
   public abstract List<FeatureValue<FV>> featurize(Featurizable<TK, FV> f);
+
+  /**
+   * Number of packed state words used by this featurizer. Featurizers whose state
+   * is a fixed number of primitive values should store it with 
+   * <code>Featurizable.setStateWord()</code> instead of allocating a
+   * <code>FeaturizerState</code>. Recombination compares the words directly.
+   * 
+   * @return
+   */
+  public int numStateWords() {
+    return 0;
+  }
+
+  /**
+   * Number of leading state words that determine recombination. The remaining words
+   * carry values that are needed by the next rule application but that do not
+   * distinguish states.
+   * 
+   * @return
+   */
+  public int numRecombinationStateWords() {
+    return numStateWords();
+  }
     
   /**
    * DO NOT MODIFY OR OVERRIDE ANYTHING BELOW THIS LINE. PHRASAL USES THESE
@@ -43,6 +66,7 @@ public abstract class DerivationFeaturizer<TK, FV> implements Featurizer<TK,FV>
   private static final int UNDEFINED_ID = -1;
 
   private int id = UNDEFINED_ID;
+  private int stateOffset = UNDEFINED_ID;
 
   public void setId(int id) {
     if (this.id != UNDEFINED_ID && this.id != id) {
@@ -59,4 +83,18 @@ public abstract class DerivationFeaturizer<TK, FV> implements Featurizer<TK,FV>
 
     return id;
   }
+
+  public void setStateOffset(int offset) {
+    if (this.stateOffset != UNDEFINED_ID && this.stateOffset != offset) {
+      throw new RuntimeException(
+          this.getClass().getName() + ": ERROR setting state offset twice with different values.");
+    }
+    this.stateOffset = offset;
+  }
+
+  public int getStateOffset() {
+    if (this.stateOffset == UNDEFINED_ID)
+      throw new RuntimeException("Error: state offset not yet defined.");
+    return stateOffset;
+  }
 }
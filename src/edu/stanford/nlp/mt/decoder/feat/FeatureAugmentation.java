@@ -0,0 +1,200 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.InputProperty;
+
+/**
+ * Feature space augmentation a la Daume III (2007). Each feature is copied under a
+ * label (a genre, or the position of the derivation relative to a target prefix).
+ * 
+ * The name of an augmented feature (and its global id in integer feature mode) is
+ * created once per base feature and label, so augmentation does not build strings
+ * once the feature space has been seen.
+ * 
+ * This class is threadsafe.
+ * 
+ * @author Spence Green
+ *
+ * @param <FV>
+ */
+public class FeatureAugmentation<FV> {
+
+  private static final String[] NO_GENRE = new String[]{""};
+  private static final String PREFIX = "PRF";
+  private static final String PREFIX_BOUNDARY_STRADDLE = PREFIX + "-" + "STR";
+  private static final String AFTER_PREFIX = PREFIX + "-" + "AFT";
+  
+  private static final int ALL = 0;
+  private static final int DENSE = 1;
+  private static final int EXTENDED = 2;
+  private static final int PREFIX_AND_GENRE = 3;
+  private static final int PREFIX_ONLY = 4;
+  
+  private final int mode;
+  private final LabelTable<FV> prefixTable = new LabelTable<>(PREFIX);
+  private final LabelTable<FV> straddleTable = new LabelTable<>(PREFIX_BOUNDARY_STRADDLE);
+  private final LabelTable<FV> afterPrefixTable = new LabelTable<>(AFTER_PREFIX);
+  private final ConcurrentMap<String,LabelTable<FV>> genreTables = new ConcurrentHashMap<>();
+  
+  private FeatureAugmentation(int mode) {
+    this.mode = mode;
+  }
+  
+  /**
+   * Create an augmentation from one of the modes <code>all</code>, <code>dense</code>,
+   * <code>extended</code>, <code>prefixAndGenre</code>, or <code>prefix</code>.
+   * 
+   * @param mode
+   * @return The augmentation, or null if the mode is not supported.
+   */
+  public static <FV> FeatureAugmentation<FV> fromString(String mode) {
+    switch (mode) {
+      case "all": return new FeatureAugmentation<>(ALL);
+      case "dense": return new FeatureAugmentation<>(DENSE);
+      case "extended": return new FeatureAugmentation<>(EXTENDED);
+      case "prefixAndGenre": return new FeatureAugmentation<>(PREFIX_AND_GENRE);
+      case "prefix": return new FeatureAugmentation<>(PREFIX_ONLY);
+      default: return null;
+    }
+  }
+  
+  /**
+   * Append the augmented copies of a list of features.
+   * 
+   * @param f
+   * @param featureValues
+   */
+  public void augment(Featurizable<?,FV> f, List<FeatureValue<FV>> featureValues) {
+    if (mode < PREFIX_ONLY) {
+      String[] genres = (String[]) f.sourceInputProperties.get(InputProperty.Domain);
+      if (genres == null) genres = NO_GENRE;
+      final int sz = featureValues.size();
+      for (String genre : genres) {
+        final LabelTable<FV> table = genreTable(genre);
+        for (int i = 0; i < sz; ++i) {
+          final FeatureValue<FV> fv = featureValues.get(i);
+          if (mode == ALL || mode == PREFIX_AND_GENRE ||
+              (mode == DENSE && fv.isDenseFeature) ||
+              (mode == EXTENDED && ! fv.isDenseFeature)) {
+            featureValues.add(table.augment(fv));
+          }
+        }
+      }
+    }
+    if (mode >= PREFIX_AND_GENRE) {
+      final boolean inPrefix = f.targetSequence != null && f.derivation != null && 
+          f.derivation.insertionPosition < f.derivation.prefixLength;
+      final boolean straddle = inPrefix && f.derivation.length > f.derivation.prefixLength;
+      final boolean afterPrefix = f.derivation != null && f.derivation.prefixLength > 0 && !inPrefix;
+      for (int i = 0, sz = featureValues.size(); i < sz; ++i) {
+        final FeatureValue<FV> fv = featureValues.get(i);
+        if (inPrefix) {
+          featureValues.add(prefixTable.augment(fv));
+        } else if (afterPrefix) {
+          featureValues.add(afterPrefixTable.augment(fv));
+        }
+        if (straddle) {
+          featureValues.add(straddleTable.augment(fv));
+        }
+      }
+    }
+  }
+  
+  /**
+   * Augment rule features with the position of a derivation relative to the target
+   * prefix. Returns null if the augmentation mode does not depend on the prefix.
+   * 
+   * @param ruleFeatures
+   * @param derivation
+   * @return
+   */
+  public List<FeatureValue<FV>> nonLocalAugmentRuleFeatures(List<FeatureValue<FV>> ruleFeatures,
+      Derivation<?,FV> derivation) {
+    if (mode < PREFIX_AND_GENRE) return null;
+    final List<FeatureValue<FV>> rv = new ArrayList<>();
+    if (derivation.insertionPosition < derivation.prefixLength) {
+      final boolean straddle = derivation.length > derivation.prefixLength;
+      for (FeatureValue<FV> fv : ruleFeatures) {
+        if (fv instanceof AugmentedFeatureValue) continue;
+        rv.add(prefixTable.augment(fv));
+        if (straddle) rv.add(straddleTable.augment(fv));
+      }
+    } else if (derivation.prefixLength > 0) {
+      for (FeatureValue<FV> fv : ruleFeatures) {
+        if (fv instanceof AugmentedFeatureValue) continue;
+        rv.add(afterPrefixTable.augment(fv));
+      }
+    }
+    return rv;
+  }
+  
+  private LabelTable<FV> genreTable(String genre) {
+    LabelTable<FV> table = genreTables.get(genre);
+    if (table == null) {
+      table = new LabelTable<>(genre);
+      final LabelTable<FV> other = genreTables.putIfAbsent(genre, table);
+      if (other != null) table = other;
+    }
+    return table;
+  }
+  
+  /**
+   * Augmented feature names for one label.
+   * 
+   * @author Spence Green
+   *
+   * @param <FV>
+   */
+  private static class LabelTable<FV> {
+    private final String namePrefix;
+    private final ConcurrentMap<FV,AugmentedName<FV>> names = new ConcurrentHashMap<>();
+    
+    private LabelTable(String label) {
+      this.namePrefix = "aug-" + label + "-";
+    }
+    
+    @SuppressWarnings("unchecked")
+    private FeatureValue<FV> augment(FeatureValue<FV> fv) {
+      AugmentedName<FV> name = names.get(fv.name);
+      if (name == null) {
+        final String augmentedName = namePrefix + fv.name.toString();
+        name = new AugmentedName<>((FV) augmentedName, 
+            fv.id >= 0 ? FeatureTemplate.indexOf(augmentedName) : -1);
+        final AugmentedName<FV> other = names.putIfAbsent(fv.name, name);
+        if (other != null) name = other;
+      }
+      return new AugmentedFeatureValue<>(name.name, fv.value, fv.isDenseFeature, name.id);
+    }
+  }
+  
+  private static class AugmentedName<FV> {
+    private final FV name;
+    private final int id;
+    private AugmentedName(FV name, int id) {
+      this.name = name;
+      this.id = id;
+    }
+  }
+  
+  /**
+   * Marks features that were created by augmentation.
+   * 
+   * @author Spence Green
+   *
+   * @param <FV>
+   */
+  private static class AugmentedFeatureValue<FV> extends FeatureValue<FV> {
+    private static final long serialVersionUID = 4716373437722357153L;
+
+    private AugmentedFeatureValue(FV name, double value, boolean isDense, int id) {
+      super(name, value, isDense, id);
+    }
+  }
+}
@@ -4,16 +4,22 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+import edu.stanford.nlp.mt.util.DTUFeaturizable;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
-import edu.stanford.nlp.mt.util.InputProperty;
 import edu.stanford.nlp.mt.util.Sequence;
 
 /**
- * Container class for featurizers.
+ * Container class for featurizers. Feature extraction runs through a
+ * <code>FeaturizerPlan</code> that is rebuilt when the featurizers change.
+ * 
+ * If every derivation featurizer is a <code>DenseFeaturizer</code>, then
+ * <code>isDenseOnly()</code> is true and <code>Derivation</code> uses the dense-only
+ * path of <code>denseFeaturize()</code>.
  * 
  * @author danielcer
  * @author Spence Green
@@ -26,11 +32,12 @@ public class FeatureExtractor<TK, FV> extends
     Cloneable {
   
   private List<Featurizer<TK, FV>> featurizers;
+  private FeaturizerPlan<TK, FV> plan;
   private final int numDerivationFeaturizers;
-  private int featureAugmentationMode = -1;
-  private ConcurrentHashMap<String, String> prefixFeatMap = null;
-  private ConcurrentHashMap<String, String> straddleFeatMap = null;
-  private ConcurrentHashMap<String, String> afterPrefixFeatMap = null;
+  private final int numStateWords;
+  private FeatureAugmentation<FV> featureAugmentation = null;
+  private RuleFeatureCache<TK, FV> ruleFeatureCache = null;
+  private FeaturizerProfiler profiler = null;
   
   /**
    * Constructor.
@@ -51,13 +58,20 @@ public class FeatureExtractor<TK, FV> extends
       String featureAugmentationMode) {
     this.featurizers = new ArrayList<>(featurizers);
     int id = -1;
+    int stateWords = 0;
     for (Featurizer<TK, FV> featurizer : featurizers) {
       if (featurizer instanceof DerivationFeaturizer) {
         DerivationFeaturizer<TK, FV> sfeaturizer = (DerivationFeaturizer<TK, FV>) featurizer;
         sfeaturizer.setId(++id);
+        if (sfeaturizer.numStateWords() > 0) {
+          sfeaturizer.setStateOffset(stateWords);
+          stateWords += sfeaturizer.numStateWords();
+        }
       }
     }
     this.numDerivationFeaturizers = id + 1;
+    this.numStateWords = stateWords;
+    this.plan = new FeaturizerPlan<>(this.featurizers);
     
     setFeatureAugmentationMode(featureAugmentationMode);
     
@@ -68,30 +82,12 @@ public class FeatureExtractor<TK, FV> extends
   
   public boolean setFeatureAugmentationMode(String featureAugmentationMode) {
     if (featureAugmentationMode != null) {
-      if (featureAugmentationMode.equals("all")) {
-        this.featureAugmentationMode = 0;
-      } else if (featureAugmentationMode.equals("dense")) {
-        this.featureAugmentationMode = 1;
-      } else if (featureAugmentationMode.equals("extended")) {
-        this.featureAugmentationMode = 2;
-      } else if (featureAugmentationMode.equals("prefixAndGenre")) {
-        this.featureAugmentationMode = 3;
-        initPrefixFeatMaps();
-      } else if (featureAugmentationMode.equals("prefix")) {
-        this.featureAugmentationMode = 4;
-        initPrefixFeatMaps();
-      }
+      this.featureAugmentation = FeatureAugmentation.fromString(featureAugmentationMode);
       return true;
     }
     return false;
   }
   
-  private void initPrefixFeatMaps() {
-    prefixFeatMap = new ConcurrentHashMap<>();
-    straddleFeatMap = new ConcurrentHashMap<>();
-    afterPrefixFeatMap = new ConcurrentHashMap<>();
-  }
-  
   /**
    * Remove feature templates give a <code>Set</code> of class names.
    * 
@@ -117,6 +113,7 @@ public class FeatureExtractor<TK, FV> extends
       if (!foundFeaturizers.contains(f))
         System.err.println("No featurizer to disable for class: " + f);
     featurizers = filteredFeaturizers;
+    plan = new FeaturizerPlan<>(featurizers, profiler);
   }
 
   @Override
@@ -130,6 +127,7 @@ public class FeatureExtractor<TK, FV> extends
           .add(f instanceof NeedsCloneable ? (DerivationFeaturizer<TK, FV>) ((NeedsCloneable<TK, FV>) f)
               .clone() : f);
     }
+    featurizer.plan = new FeaturizerPlan<>(featurizer.featurizers, profiler);
     return featurizer;
   }
 
@@ -160,165 +158,179 @@ public class FeatureExtractor<TK, FV> extends
     return numDerivationFeaturizers;
   }
 
+  /**
+   * Returns the total number of packed state words of the <code>DerivationFeaturizer</code>s.
+   * 
+   * @return
+   */
+  public int getNumStateWords() {
+    return numStateWords;
+  }
+
   /**
    * Extract derivation features.
    */
   @Override
   public List<FeatureValue<FV>> featurize(Featurizable<TK, FV> f) {
-    List<FeatureValue<FV>> featureValues = new ArrayList<>();
-    for (Featurizer<TK, FV> featurizer : featurizers) {
-      if (featurizer instanceof DerivationFeaturizer) {
-        List<FeatureValue<FV>> listFeatureValues = 
-            ((DerivationFeaturizer<TK,FV>) featurizer).featurize(f);
-        if (listFeatureValues != null) {
-          for (FeatureValue<FV> fv : listFeatureValues) {
-            featureValues.add(fv);
-          }
-        }
-      }
-    }
+    List<FeatureValue<FV>> featureValues = plan.featurize(f);
     
-    if(featureAugmentationMode >= 0) augmentFeatures(f, featureValues);
+    if(featureAugmentation != null) featureAugmentation.augment(f, featureValues);
     
     return featureValues;
   }
 
+  /**
+   * True if the derivation features can be extracted with <code>denseFeaturize()</code>,
+   * i.e., every derivation featurizer is a <code>DenseFeaturizer</code> and feature
+   * augmentation is disabled.
+   * 
+   * @return
+   */
+  public boolean isDenseOnly() {
+    return featureAugmentation == null && plan.isDenseOnly();
+  }
+
+  /**
+   * The names of the derivation features extracted by <code>denseFeaturize()</code>.
+   * 
+   * @return
+   */
+  public List<FV> getDenseFeatureNames() {
+    return plan.getDenseFeatureNames();
+  }
+
+  /**
+   * Extract derivation features into a fixed-index array. Only valid if
+   * <code>isDenseOnly()</code> is true.
+   * 
+   * @param f
+   * @return
+   */
+  public double[] denseFeaturize(Featurizable<TK, FV> f) {
+    return plan.denseFeaturize(f);
+  }
+
+  /**
+   * True if <code>prefetch()</code> computes features, so that the decoder should
+   * build derivations in batches.
+   * 
+   * @return
+   */
+  public boolean isPrefetchEnabled() {
+    return plan.isPrefetchEnabled();
+  }
+
+  /**
+   * Compute the features of a batch of successors before their derivations are built.
+   * See <code>PrefetchingFeaturizer</code>.
+   * 
+   * @param antecedents
+   * @param rules
+   */
+  public void prefetch(List<Derivation<TK,FV>> antecedents, List<ConcreteRule<TK,FV>> rules) {
+    plan.prefetch(antecedents, rules);
+  }
+
   /**
    * Extract rule features.
    */
   @Override
   public List<FeatureValue<FV>> ruleFeaturize(Featurizable<TK, FV> f) {
-    List<FeatureValue<FV>> featureValues = new ArrayList<>();
-    for (Featurizer<TK, FV> featurizer : featurizers) {
-      if (featurizer instanceof RuleFeaturizer) {
-        RuleFeaturizer<TK, FV> ruleFeaturizer = (RuleFeaturizer<TK, FV>) featurizer;
-        List<FeatureValue<FV>> listFeatureValues = 
-            ((RuleFeaturizer<TK, FV>) featurizer).ruleFeaturize(f);
-        if (listFeatureValues != null) {
-          boolean doNotCache = ruleFeaturizer.isolationScoreOnly();
-          for (FeatureValue<FV> fv : listFeatureValues) {
-            fv.doNotCache = doNotCache;
-            featureValues.add(fv);
-          }
-        }
-      }
-    }
+    List<FeatureValue<FV>> featureValues = plan.ruleFeaturize(f);
     
-    if(featureAugmentationMode >= 0) augmentFeatures(f, featureValues);
+    if(featureAugmentation != null) featureAugmentation.augment(f, featureValues);
     
     return featureValues;
   }
- 
-  private static final String[] NO_GENRE = new String[]{""};
-  private static final String PREFIX = "PRF";
-  private static final String PREFIX_BOUNDARY_STRADDLE = PREFIX + "-" + "STR";
-  private static final String AFTER_PREFIX = PREFIX + "-" + "AFT";
-  
+
   /**
-   * Feature space augmentation a la Daume III (2007).
+   * Return the cached features of the context-free rule featurizers, or null if the
+   * features of <code>f</code> cannot be cached. In that case, call <code>ruleFeaturize()</code>.
+   * Otherwise, call <code>contextDependentRuleFeaturize()</code> for the remaining features.
    * 
    * @param f
-   * @param featureValues
+   * @return
    */
-  @SuppressWarnings("unchecked")
-  private void augmentFeatures(Featurizable<TK, FV> f, List<FeatureValue<FV>> featureValues) {
-    String[] genres = (String[]) f.sourceInputProperties.get(InputProperty.Domain);
-    if (genres == null) genres = NO_GENRE;
-    
-    if (featureAugmentationMode < 4) {
-      for(int i = 0, sz = featureValues.size(); i < sz; ++i) {
-        FeatureValue<FV> fv = featureValues.get(i);
-        if (featureAugmentationMode == 0 ||
-            featureAugmentationMode == 3 ||
-            (featureAugmentationMode == 1 && fv.isDenseFeature) ||
-            (featureAugmentationMode == 2 && ! fv.isDenseFeature)) {
-          for(String genre : genres) {
-            String featureValue = "aug-" +  genre + "-" + fv.name.toString();
-            featureValues.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-          }
-        }
-      }
-    } 
-    if (featureAugmentationMode >= 3) {
-      // Prefix mode
-      for(int i = 0, sz = featureValues.size(); i < sz; ++i) {
-        FeatureValue<FV> fv = featureValues.get(i);
-        final boolean inPrefix = f.targetSequence != null && f.derivation != null && 
-            f.derivation.insertionPosition < f.derivation.prefixLength;
-        final boolean straddle = inPrefix && f.derivation.length > f.derivation.prefixLength;
-        final boolean afterPrefix = f.derivation != null && f.derivation.prefixLength > 0 && !inPrefix;
-        if (inPrefix) {
-          String featureValue = getAugFeatureName(fv.name.toString(), prefixFeatMap, PREFIX);
-          featureValues.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-        }
-        else if(afterPrefix) {
-          String featureValue = getAugFeatureName(fv.name.toString(), afterPrefixFeatMap, AFTER_PREFIX);
-          featureValues.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-        }
-        if (straddle) {
-          String featureValue = getAugFeatureName(fv.name.toString(), straddleFeatMap, PREFIX_BOUNDARY_STRADDLE);
-          featureValues.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-        }
-      }
+  public RuleFeatureCache.Entry<FV> contextFreeRuleFeaturize(Featurizable<TK, FV> f) {
+    // Feature augmentation depends on the input properties
+    if (ruleFeatureCache == null || featureAugmentation != null || f.rule == null ||
+        f instanceof DTUFeaturizable) return null;
+    // Pruned features depend on the weights version
+    final Scorer<FV> filter = FeatureUtils.getFeatureFilter(f.sourceInputProperties);
+    final long prunedVersion = filter == null ? RuleFeatureCache.UNPRUNED : filter.getWeightsVersion();
+    if (filter != null && prunedVersion < 0) return null;
+    RuleFeatureCache.Entry<FV> entry = ruleFeatureCache.get(f.rule.abstractRule);
+    if (entry == null || ! entry.isValidFor(prunedVersion)) {
+      entry = ruleFeatureCache.put(f.rule.abstractRule, plan.contextFreeRuleFeaturize(f), prunedVersion);
     }
+    return entry;
   }
-  
-  private String getAugFeatureName(String baseFeatureName, ConcurrentHashMap<String, String> map, String augLabel) {
-    String result = map.get(baseFeatureName);
-    if(result != null) return result;
-    
-    result = "aug-" + augLabel + "-" + baseFeatureName;
-    map.put(baseFeatureName, result);
-    return result;
+
+  /**
+   * Extract the features of the rule featurizers that are not context-free.
+   * 
+   * @param f
+   * @return
+   */
+  public List<FeatureValue<FV>> contextDependentRuleFeaturize(Featurizable<TK, FV> f) {
+    return plan.contextDependentRuleFeaturize(f);
   }
-  
-  @SuppressWarnings("unchecked")
+
+  /**
+   * Set the cache of context-free rule features. Shared by clones of this object.
+   * 
+   * @param cache
+   */
+  public void setRuleFeatureCache(RuleFeatureCache<TK,FV> cache) {
+    this.ruleFeatureCache = cache;
+  }
+
+  /**
+   * Time every featurizer call with a profiler. Shared by clones of this object.
+   * 
+   * @param profiler The profiler, or null to disable profiling.
+   */
+  public void setProfiler(FeaturizerProfiler profiler) {
+    this.profiler = profiler;
+    this.plan = new FeaturizerPlan<>(featurizers, profiler);
+  }
+
+  /**
+   * The featurizer profiler. May be null.
+   * 
+   * @return
+   */
+  public FeaturizerProfiler getProfiler() { return profiler; }
+
+  /**
+   * The cache of context-free rule features. May be null.
+   * 
+   * @return
+   */
+  public RuleFeatureCache<TK,FV> getRuleFeatureCache() { return ruleFeatureCache; }
+
+  /**
+   * Augment rule features with the position of a derivation relative to the target
+   * prefix. Returns null if the feature augmentation mode does not depend on the prefix.
+   * 
+   * @param ruleFeatures
+   * @param derivation
+   * @return
+   */
   public List<FeatureValue<FV>> nonLocalAugmentRuleFeatures(List<FeatureValue<FV>> ruleFeatures, Derivation<TK, FV> derivation) {
-    List<FeatureValue<FV>> rv = null;
-    if (featureAugmentationMode >= 3) {
-      rv = new ArrayList<>();
-      if(derivation.insertionPosition < derivation.prefixLength) {
-        boolean straddle = derivation.length > derivation.prefixLength;
-        // Prefix mode
-        for(FeatureValue<FV> fv : ruleFeatures) {
-          if(fv.name.toString().startsWith("aug-")) continue;
-          String featureValue = getAugFeatureName(fv.name.toString(), prefixFeatMap, PREFIX);
-          rv.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-          if(straddle) {
-            featureValue = getAugFeatureName(fv.name.toString(), straddleFeatMap, PREFIX_BOUNDARY_STRADDLE);
-            rv.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-          }
-        }
-      }
-      else if(derivation.prefixLength > 0) {
-        for(FeatureValue<FV> fv : ruleFeatures) {
-          if(fv.name.toString().startsWith("aug-")) continue;
-          String featureValue = getAugFeatureName(fv.name.toString(), afterPrefixFeatMap, AFTER_PREFIX);
-          rv.add(new FeatureValue<>((FV) featureValue, fv.value, fv.isDenseFeature));
-        }
-      }
-    }
-    return rv;
+    return featureAugmentation == null ? null : 
+      featureAugmentation.nonLocalAugmentRuleFeatures(ruleFeatures, derivation);
   }
-  
 
   @Override
   public void initialize(int sourceInputId,
       Sequence<TK> sourceSequence) {
-    for (Featurizer<TK, FV> featurizer : featurizers) {
-      if (featurizer instanceof DerivationFeaturizer) {
-        ((DerivationFeaturizer<TK,FV>) featurizer).initialize(sourceInputId, sourceSequence);
-      }
-    }
+    plan.initialize(sourceInputId, sourceSequence);
   }
 
   @Override
   public void initialize() {
-    for (Featurizer<TK,FV> featurizer : featurizers) {
-      if (featurizer instanceof RuleFeaturizer) {
-        ((RuleFeaturizer<TK,FV>) featurizer).initialize();
-      }
-    }
+    plan.initialize();
   }
  
   @Override
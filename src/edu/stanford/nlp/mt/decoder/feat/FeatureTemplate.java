@@ -0,0 +1,187 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.concurrent.ConcurrentHashIndex;
+
+/**
+ * Integer feature mode. A featurizer creates a template once, and then maps
+ * primitive keys (e.g., vocabulary ids of the tokens in a rule) to global feature
+ * ids. The feature name is only built the first time that a key is seen. Scorers
+ * look up weights for these features by id instead of by name.
+ *
+ * Only the names in a weight vector receive global ids. The index is shared by all
+ * models, and ids are never released, so at most <code>MAX_FEATURES</code> names
+ * are registered, e.g., under online tuning. Features without ids have id -1 and
+ * are scored by name. Each template caches at most <code>MAX_KEYS</code> keys.
+ *
+ * Feature names are still attached to the feature values, so n-best lists and
+ * weight files are unchanged.
+ *
+ * This class is threadsafe.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeatureTemplate {
+
+  // Global index of the names that appear in a weight vector.
+  private static final Index<String> featureIndex = new ConcurrentHashIndex<>();
+
+  public static final int MAX_KEYS = 1 << 20;
+
+  public static final int MAX_FEATURES = 1 << 22;
+
+  private static volatile boolean inUse = false;
+
+  private final String prefix;
+  private final ConcurrentMap<Key,FeatureId> features = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param prefix The feature name prefix, e.g., "DPT".
+   */
+  public FeatureTemplate(String prefix) {
+    this.prefix = prefix;
+    inUse = true;
+  }
+
+  /**
+   * True if a featurizer has created a template. Scorers only index their weights
+   * by id in that case.
+   *
+   * @return
+   */
+  public static boolean inUse() { return inUse; }
+
+  /**
+   * The global id of a feature name, or -1 if the name has no weight.
+   *
+   * @param featureName
+   * @return
+   */
+  public static int indexOf(String featureName) {
+    return featureIndex.indexOf(featureName);
+  }
+
+  /**
+   * Number of registered features.
+   *
+   * @return
+   */
+  public static int numFeatures() { return featureIndex.size(); }
+
+  /**
+   * Convert a weight vector to an array indexed by global feature id. Registers
+   * the feature names in the weight vector until the index holds
+   * <code>MAX_FEATURES</code> names. The array is sized to the largest id
+   * in the weight vector, and <code>reuse</code> is cleared and returned if it is
+   * large enough.
+   *
+   * @param weights
+   * @param reuse An array returned by a previous call, or null.
+   * @return
+   */
+  public static double[] toArray(Counter<String> weights, double[] reuse) {
+    return toArray(weights, reuse, MAX_FEATURES);
+  }
+
+  static double[] toArray(Counter<String> weights, double[] reuse, int maxFeatures) {
+    int size = 0;
+    for (String key : weights.keySet()) {
+      if (key == null) continue;
+      // The bound is approximate if several threads register names
+      final int id = featureIndex.size() < maxFeatures ? 
+          featureIndex.addToIndex(key) : featureIndex.indexOf(key);
+      size = Math.max(size, id + 1);
+    }
+    final double[] array;
+    if (reuse != null && reuse.length >= size) {
+      array = reuse;
+      Arrays.fill(array, 0.0);
+    } else {
+      array = new double[size];
+    }
+    for (String key : weights.keySet()) {
+      if (key == null) continue;
+      final int id = featureIndex.indexOf(key);
+      if (id >= 0 && id < array.length) array[id] = weights.getCount(key);
+    }
+    return array;
+  }
+
+  /**
+   * Return a feature value for a key. <code>suffix</code> is called to create
+   * the feature name (without the template prefix) when the key has not been seen.
+   * Equal keys must yield equal names.
+   *
+   * @param key
+   * @param value
+   * @param suffix
+   * @return
+   */
+  public FeatureValue<String> newFeatureValue(int[] key, double value, Supplier<String> suffix) {
+    final Key k = new Key(key);
+    FeatureId id = features.get(k);
+    if (id == null) {
+      id = resolve(prefix + ":" + suffix.get());
+      if (features.size() < MAX_KEYS) {
+        final FeatureId other = features.putIfAbsent(k, id);
+        if (other != null) id = other;
+      }
+    } else if (id.id < 0 && id.indexSize != featureIndex.size()) {
+      // The name may have received a weight since it was resolved
+      id = resolve(id.name);
+      features.put(k, id);
+    }
+    return new FeatureValue<>(id.name, value, id.id);
+  }
+
+  private static FeatureId resolve(String name) {
+    final int indexSize = featureIndex.size();
+    return new FeatureId(featureIndex.indexOf(name), name, indexSize);
+  }
+
+  /**
+   * Number of keys registered for this template.
+   *
+   * @return
+   */
+  public int size() { return features.size(); }
+
+  private static class FeatureId {
+    private final int id;
+    private final String name;
+    private final int indexSize;
+    private FeatureId(int id, String name, int indexSize) {
+      this.id = id;
+      this.name = name;
+      this.indexSize = indexSize;
+    }
+  }
+
+  private static class Key {
+    private final int[] key;
+    private final int hashCode;
+    private Key(int[] key) {
+      this.key = key;
+      this.hashCode = Arrays.hashCode(key);
+    }
+    @Override
+    public int hashCode() { return hashCode; }
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if ( ! (o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hashCode == other.hashCode && Arrays.equals(key, other.key);
+    }
+  }
+}
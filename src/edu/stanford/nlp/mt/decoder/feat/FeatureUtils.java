@@ -5,8 +5,11 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.tm.TranslationModel;
 import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.InputProperty;
 import edu.stanford.nlp.mt.decoder.feat.base.LexicalReorderingFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.base.LinearFutureCostFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.base.NGramLanguageModelFeaturizer;
@@ -78,4 +81,29 @@ public final class FeatureUtils {
     }
     return props;
   }  
+
+  /**
+   * Return the scorer that sparse featurizers should consult before they emit a feature,
+   * or null if zero-weight features are not pruned for this input.
+   * 
+   * @param inputProperties
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <FV> Scorer<FV> getFeatureFilter(InputProperties inputProperties) {
+    final Object filter = inputProperties == null ? null : 
+      inputProperties.get(InputProperty.FeatureFilter);
+    return filter instanceof Scorer ? (Scorer<FV>) filter : null;
+  }
+
+  /**
+   * True if a feature should not be emitted because it has a zero weight.
+   * 
+   * @param featureName
+   * @param filter The scorer returned by <code>getFeatureFilter()</code>.
+   * @return
+   */
+  public static <FV> boolean isPruned(FV featureName, Scorer<FV> filter) {
+    return filter != null && ! filter.hasNonZeroWeight(featureName);
+  }
 }
@@ -0,0 +1,354 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * A flat view of the featurizers in a <code>FeatureExtractor</code>. Derivation
+ * featurizers and rule featurizers are split into arrays when the plan is built,
+ * so feature extraction loops over exactly the featurizers that apply without
+ * type checks, and without testing <code>isContextFree()</code> and
+ * <code>isolationScoreOnly()</code> for every rule.
+ * 
+ * The plan holds references to the featurizers. Build a new plan when the
+ * featurizers are cloned or removed.
+ * 
+ * If every derivation featurizer is a <code>DenseFeaturizer</code>, the plan also
+ * supports dense-only extraction into a fixed-index <code>double[]</code>.
+ * 
+ * Derivation featurizers that implement <code>PrefetchingFeaturizer</code> and enable it
+ * are called by <code>prefetch()</code>.
+ * 
+ * If a <code>FeaturizerProfiler</code> is supplied, every featurizer call is timed.
+ * 
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public class FeaturizerPlan<TK,FV> {
+
+  private final DerivationFeaturizer<TK,FV>[] derivationFeaturizers;
+  private final int[] derivationSlots;
+  private final PrefetchingFeaturizer<TK,FV>[] prefetchingFeaturizers;
+  private final int[] prefetchSlots;
+  private final RuleStage<TK,FV> allRuleFeaturizers;
+  private final RuleStage<TK,FV> contextFreeRuleFeaturizers;
+  private final RuleStage<TK,FV> contextDependentRuleFeaturizers;
+  
+  // Null unless every derivation featurizer extracts only dense features
+  private final DenseFeaturizer<TK,FV>[] denseFeaturizers;
+  private final int[] denseOffsets;
+  private final List<FV> denseFeatureNames;
+  
+  // Size of the last derivation feature list. Used to presize the next list.
+  private int derivationFeatureHint = 16;
+  
+  // Null if profiling is disabled
+  private final FeaturizerProfiler profiler;
+  
+  /**
+   * Constructor.
+   * 
+   * @param featurizers
+   */
+  public FeaturizerPlan(List<Featurizer<TK,FV>> featurizers) {
+    this(featurizers, null);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param featurizers
+   * @param profiler The profiler, or null to disable profiling.
+   */
+  @SuppressWarnings("unchecked")
+  public FeaturizerPlan(List<Featurizer<TK,FV>> featurizers, FeaturizerProfiler profiler) {
+    this.profiler = profiler;
+    List<DerivationFeaturizer<TK,FV>> derivation = new ArrayList<>();
+    List<RuleFeaturizer<TK,FV>> contextFree = new ArrayList<>();
+    List<RuleFeaturizer<TK,FV>> all = new ArrayList<>();
+    List<RuleFeaturizer<TK,FV>> contextDependent = new ArrayList<>();
+    for (Featurizer<TK,FV> featurizer : featurizers) {
+      if (featurizer instanceof DerivationFeaturizer) {
+        derivation.add((DerivationFeaturizer<TK,FV>) featurizer);
+      }
+      if (featurizer instanceof RuleFeaturizer) {
+        RuleFeaturizer<TK,FV> ruleFeaturizer = (RuleFeaturizer<TK,FV>) featurizer;
+        all.add(ruleFeaturizer);
+        if (ruleFeaturizer.isContextFree()) {
+          contextFree.add(ruleFeaturizer);
+        } else {
+          contextDependent.add(ruleFeaturizer);
+        }
+      }
+    }
+    this.derivationFeaturizers = (DerivationFeaturizer<TK,FV>[]) derivation.toArray(new DerivationFeaturizer<?,?>[derivation.size()]);
+    this.derivationSlots = new int[derivationFeaturizers.length];
+    if (profiler != null) {
+      for (int i = 0; i < derivationFeaturizers.length; ++i) {
+        derivationSlots[i] = profiler.slot(derivationFeaturizers[i], "featurize");
+      }
+    }
+    
+    // Batch feature computation
+    List<PrefetchingFeaturizer<TK,FV>> prefetching = new ArrayList<>();
+    for (DerivationFeaturizer<TK,FV> featurizer : derivationFeaturizers) {
+      if (featurizer instanceof PrefetchingFeaturizer &&
+          ((PrefetchingFeaturizer<TK,FV>) featurizer).isPrefetchEnabled()) {
+        prefetching.add((PrefetchingFeaturizer<TK,FV>) featurizer);
+      }
+    }
+    this.prefetchingFeaturizers = (PrefetchingFeaturizer<TK,FV>[]) prefetching.toArray(new PrefetchingFeaturizer<?,?>[prefetching.size()]);
+    this.prefetchSlots = new int[prefetchingFeaturizers.length];
+    if (profiler != null) {
+      for (int i = 0; i < prefetchingFeaturizers.length; ++i) {
+        prefetchSlots[i] = profiler.slot((Featurizer<TK,FV>) prefetchingFeaturizers[i], "prefetch");
+      }
+    }
+    
+    // Dense-only extraction
+    List<FV> denseNames = new ArrayList<>();
+    int[] offsets = new int[derivationFeaturizers.length];
+    for (int i = 0; i < derivationFeaturizers.length && denseNames != null; ++i) {
+      List<FV> names = derivationFeaturizers[i] instanceof DenseFeaturizer ?
+          ((DenseFeaturizer<TK,FV>) derivationFeaturizers[i]).getDenseFeatureNames() : null;
+      if (names == null) {
+        denseNames = null;
+      } else {
+        offsets[i] = denseNames.size();
+        denseNames.addAll(names);
+      }
+    }
+    if (denseNames == null) {
+      this.denseFeaturizers = null;
+      this.denseOffsets = null;
+      this.denseFeatureNames = null;
+    } else {
+      this.denseFeaturizers = (DenseFeaturizer<TK,FV>[]) new DenseFeaturizer<?,?>[derivationFeaturizers.length];
+      for (int i = 0; i < derivationFeaturizers.length; ++i) {
+        denseFeaturizers[i] = (DenseFeaturizer<TK,FV>) derivationFeaturizers[i];
+      }
+      this.denseOffsets = offsets;
+      this.denseFeatureNames = Collections.unmodifiableList(denseNames);
+    }
+    
+    this.allRuleFeaturizers = new RuleStage<>(all, profiler);
+    this.contextFreeRuleFeaturizers = new RuleStage<>(contextFree, profiler);
+    this.contextDependentRuleFeaturizers = new RuleStage<>(contextDependent, profiler);
+  }
+  
+  /**
+   * Extract the features of all derivation featurizers.
+   * 
+   * @param f
+   * @return
+   */
+  public List<FeatureValue<FV>> featurize(Featurizable<TK,FV> f) {
+    final List<FeatureValue<FV>> featureValues = new ArrayList<>(derivationFeatureHint);
+    if (profiler == null) {
+      for (DerivationFeaturizer<TK,FV> featurizer : derivationFeaturizers) {
+        final List<FeatureValue<FV>> listFeatureValues = featurizer.featurize(f);
+        if (listFeatureValues != null) featureValues.addAll(listFeatureValues);
+      }
+    } else {
+      final FeaturizerProfiler.ThreadStats stats = profiler.stats();
+      for (int i = 0; i < derivationFeaturizers.length; ++i) {
+        final long startBytes = stats.allocatedBytes();
+        final long startNanos = System.nanoTime();
+        final List<FeatureValue<FV>> listFeatureValues = derivationFeaturizers[i].featurize(f);
+        stats.record(derivationSlots[i], startNanos, startBytes);
+        if (listFeatureValues != null) featureValues.addAll(listFeatureValues);
+      }
+    }
+    derivationFeatureHint = featureValues.size();
+    return featureValues;
+  }
+  
+  /**
+   * Extract the features of all derivation featurizers into a new array whose entries
+   * correspond to <code>getDenseFeatureNames()</code>. Only valid if <code>isDenseOnly()</code>
+   * is true.
+   * 
+   * @param f
+   * @return
+   */
+  public double[] denseFeaturize(Featurizable<TK,FV> f) {
+    final double[] values = new double[denseFeatureNames.size()];
+    if (profiler == null) {
+      for (int i = 0; i < denseFeaturizers.length; ++i) {
+        denseFeaturizers[i].denseFeaturize(f, values, denseOffsets[i]);
+      }
+    } else {
+      final FeaturizerProfiler.ThreadStats stats = profiler.stats();
+      for (int i = 0; i < denseFeaturizers.length; ++i) {
+        final long startBytes = stats.allocatedBytes();
+        final long startNanos = System.nanoTime();
+        denseFeaturizers[i].denseFeaturize(f, values, denseOffsets[i]);
+        stats.record(derivationSlots[i], startNanos, startBytes);
+      }
+    }
+    return values;
+  }
+  
+  /**
+   * True if at least one derivation featurizer computes features in <code>prefetch()</code>.
+   * 
+   * @return
+   */
+  public boolean isPrefetchEnabled() { return prefetchingFeaturizers.length > 0; }
+  
+  /**
+   * Compute the features of a batch of successors in the featurizers that support it.
+   * See <code>PrefetchingFeaturizer</code>.
+   * 
+   * @param antecedents
+   * @param rules
+   */
+  public void prefetch(List<Derivation<TK,FV>> antecedents, List<ConcreteRule<TK,FV>> rules) {
+    if (profiler == null) {
+      for (PrefetchingFeaturizer<TK,FV> featurizer : prefetchingFeaturizers) {
+        featurizer.prefetch(antecedents, rules);
+      }
+    } else {
+      final FeaturizerProfiler.ThreadStats stats = profiler.stats();
+      for (int i = 0; i < prefetchingFeaturizers.length; ++i) {
+        final long startBytes = stats.allocatedBytes();
+        final long startNanos = System.nanoTime();
+        prefetchingFeaturizers[i].prefetch(antecedents, rules);
+        stats.record(prefetchSlots[i], startNanos, startBytes);
+      }
+    }
+  }
+  
+  /**
+   * True if every derivation featurizer extracts only dense features.
+   * 
+   * @return
+   */
+  public boolean isDenseOnly() { return denseFeaturizers != null; }
+  
+  /**
+   * The names of the features extracted by <code>denseFeaturize()</code>, or null if
+   * <code>isDenseOnly()</code> is false.
+   * 
+   * @return
+   */
+  public List<FV> getDenseFeatureNames() { return denseFeatureNames; }
+  
+  /**
+   * Extract the features of all rule featurizers.
+   * 
+   * @param f
+   * @return
+   */
+  public List<FeatureValue<FV>> ruleFeaturize(Featurizable<TK,FV> f) {
+    return allRuleFeaturizers.featurize(f);
+  }
+  
+  /**
+   * Extract the features of the context-free rule featurizers.
+   * 
+   * @param f
+   * @return
+   */
+  public List<FeatureValue<FV>> contextFreeRuleFeaturize(Featurizable<TK,FV> f) {
+    return contextFreeRuleFeaturizers.featurize(f);
+  }
+  
+  /**
+   * Extract the features of the rule featurizers that are not context-free.
+   * 
+   * @param f
+   * @return
+   */
+  public List<FeatureValue<FV>> contextDependentRuleFeaturize(Featurizable<TK,FV> f) {
+    return contextDependentRuleFeaturizers.featurize(f);
+  }
+  
+  /**
+   * Initialize the derivation featurizers for a new source input.
+   * 
+   * @param sourceInputId
+   * @param sourceSequence
+   */
+  public void initialize(int sourceInputId, Sequence<TK> sourceSequence) {
+    for (DerivationFeaturizer<TK,FV> featurizer : derivationFeaturizers) {
+      featurizer.initialize(sourceInputId, sourceSequence);
+    }
+  }
+  
+  /**
+   * Initialize the rule featurizers.
+   */
+  public void initialize() {
+    for (RuleFeaturizer<TK,FV> featurizer : allRuleFeaturizers.featurizers) {
+      featurizer.initialize();
+    }
+  }
+  
+  /**
+   * Number of derivation featurizers.
+   * 
+   * @return
+   */
+  public int numDerivationFeaturizers() { return derivationFeaturizers.length; }
+  
+  /**
+   * A set of rule featurizers with their cache flags.
+   * 
+   * @author Spence Green
+   *
+   * @param <TK>
+   * @param <FV>
+   */
+  private static class RuleStage<TK,FV> {
+    private final RuleFeaturizer<TK,FV>[] featurizers;
+    private final boolean[] doNotCache;
+    private final int[] slots;
+    private final FeaturizerProfiler profiler;
+    
+    @SuppressWarnings("unchecked")
+    private RuleStage(List<RuleFeaturizer<TK,FV>> featurizers, FeaturizerProfiler profiler) {
+      this.featurizers = (RuleFeaturizer<TK,FV>[]) featurizers.toArray(new RuleFeaturizer<?,?>[featurizers.size()]);
+      this.doNotCache = new boolean[this.featurizers.length];
+      this.slots = new int[this.featurizers.length];
+      this.profiler = profiler;
+      for (int i = 0; i < this.featurizers.length; ++i) {
+        doNotCache[i] = this.featurizers[i].isolationScoreOnly();
+        if (profiler != null) slots[i] = profiler.slot(this.featurizers[i], "ruleFeaturize");
+      }
+    }
+    
+    private List<FeatureValue<FV>> featurize(Featurizable<TK,FV> f) {
+      final List<FeatureValue<FV>> featureValues = new ArrayList<>(2 * featurizers.length);
+      final FeaturizerProfiler.ThreadStats stats = profiler == null ? null : profiler.stats();
+      for (int i = 0; i < featurizers.length; ++i) {
+        final List<FeatureValue<FV>> listFeatureValues;
+        if (stats == null) {
+          listFeatureValues = featurizers[i].ruleFeaturize(f);
+        } else {
+          final long startBytes = stats.allocatedBytes();
+          final long startNanos = System.nanoTime();
+          listFeatureValues = featurizers[i].ruleFeaturize(f);
+          stats.record(slots[i], startNanos, startBytes);
+        }
+        if (listFeatureValues != null) {
+          final boolean doNotCache = this.doNotCache[i];
+          for (FeatureValue<FV> fv : listFeatureValues) {
+            fv.doNotCache = doNotCache;
+            featureValues.add(fv);
+          }
+        }
+      }
+      return featureValues;
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Records per-featurizer call counts, time, and allocated bytes. Each thread records
+ * into its own counters, which are aggregated when the statistics are read. Allocated
+ * bytes are measured with <code>com.sun.management.ThreadMXBean</code> when the JVM
+ * supports it.
+ * 
+ * Enable with the <code>profile-featurizers</code> option in Phrasal. When profiling
+ * is disabled, <code>FeaturizerPlan</code> does not touch the profiler.
+ * 
+ * This class is threadsafe.
+ * 
+ * @author Spence Green
+ *
+ */
+public class FeaturizerProfiler implements FeaturizerProfilerMBean {
+
+  private static final Logger logger = LogManager.getLogger(FeaturizerProfiler.class.getName());
+  
+  public static final String MBEAN_NAME = "edu.stanford.nlp.mt:type=FeaturizerProfiler";
+
+  // Null if the JVM cannot measure per-thread allocation
+  private final com.sun.management.ThreadMXBean threadBean;
+  
+  // Slot ids of featurizer names. Guarded by this.
+  private final Map<String,Integer> slots = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  
+  private final List<ThreadStats> threadStats = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<ThreadStats> localStats = new ThreadLocal<>();
+  private volatile int epoch = 0;
+  
+  /**
+   * Constructor.
+   */
+  public FeaturizerProfiler() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean allocationBean = null;
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      allocationBean = (com.sun.management.ThreadMXBean) bean;
+      try {
+        if (allocationBean.isThreadAllocatedMemorySupported()) {
+          allocationBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+          allocationBean = null;
+        }
+      } catch (UnsupportedOperationException | SecurityException e) {
+        allocationBean = null;
+      }
+    }
+    this.threadBean = allocationBean;
+    if (threadBean == null) logger.warn("Allocation tracking is not supported by this JVM");
+  }
+  
+  /**
+   * Return the slot of a featurizer method.
+   * 
+   * @param featurizer
+   * @param method
+   * @return
+   */
+  public synchronized int slot(Featurizer<?,?> featurizer, String method) {
+    String className = featurizer.getClass().getSimpleName();
+    if (className.isEmpty()) className = featurizer.getClass().getName();
+    final String name = className + "." + method;
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = names.size();
+      names.add(name);
+      slots.put(name, slot);
+    }
+    return slot;
+  }
+  
+  /**
+   * The counters of the calling thread.
+   * 
+   * @return
+   */
+  public ThreadStats stats() {
+    ThreadStats stats = localStats.get();
+    if (stats == null || stats.epoch != epoch) {
+      stats = new ThreadStats(epoch);
+      localStats.set(stats);
+      threadStats.add(stats);
+    }
+    return stats;
+  }
+  
+  /**
+   * Register this profiler with the platform MBean server. Replaces a profiler
+   * that was registered previously.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      try {
+        server.registerMBean(this, name);
+      } catch (InstanceAlreadyExistsException e) {
+        server.unregisterMBean(name);
+        server.registerMBean(this, name);
+      }
+      logger.info("Registered featurizer profiler as {}", MBEAN_NAME);
+    } catch (JMException e) {
+      logger.warn("Could not register featurizer profiler with JMX", e);
+    }
+  }
+  
+  /**
+   * Aggregate the statistics of all threads. Sorted by total time.
+   * 
+   * @return
+   */
+  public List<Entry> entries() {
+    final String[] slotNames;
+    synchronized(this) {
+      slotNames = names.toArray(new String[names.size()]);
+    }
+    final long[] calls = new long[slotNames.length];
+    final long[] nanos = new long[slotNames.length];
+    final long[] bytes = new long[slotNames.length];
+    final int[] threads = new int[slotNames.length];
+    for (ThreadStats stats : threadStats) {
+      // Counters of other threads may be stale, but are never torn across arrays
+      final long[][] counters = stats.counters;
+      final int n = Math.min(slotNames.length, counters[0].length);
+      for (int i = 0; i < n; ++i) {
+        if (counters[0][i] == 0) continue;
+        calls[i] += counters[0][i];
+        nanos[i] += counters[1][i];
+        bytes[i] += counters[2][i];
+        ++threads[i];
+      }
+    }
+    final List<Entry> entries = new ArrayList<>(slotNames.length);
+    for (int i = 0; i < slotNames.length; ++i) {
+      if (calls[i] == 0) continue;
+      entries.add(new Entry(slotNames[i], calls[i], nanos[i], threadBean == null ? -1 : bytes[i], threads[i]));
+    }
+    entries.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+    return entries;
+  }
+  
+  @Override
+  public String getSummary() {
+    final List<Entry> entries = entries();
+    long totalNanos = 0;
+    for (Entry e : entries) totalNanos += e.nanos;
+    final StringBuilder sb = new StringBuilder();
+    final String nl = System.getProperty("line.separator");
+    sb.append(String.format("%-50s %12s %12s %7s %10s %16s %8s", "Featurizer", "Calls", "Time (ms)", "%", 
+        "ns/call", "Allocated (B)", "Threads")).append(nl);
+    for (Entry e : entries) {
+      sb.append(String.format("%-50s %12d %12.1f %7.2f %10d %16s %8d", e.name, e.calls, e.nanos / 1e6, 
+          totalNanos == 0 ? 0.0 : 100.0 * e.nanos / totalNanos, e.nanos / e.calls, 
+          e.allocatedBytes < 0 ? "n/a" : String.valueOf(e.allocatedBytes), e.threads)).append(nl);
+    }
+    return sb.toString();
+  }
+  
+  @Override
+  public long getTotalCalls() {
+    long total = 0;
+    for (Entry e : entries()) total += e.calls;
+    return total;
+  }
+
+  @Override
+  public long getTotalNanos() {
+    long total = 0;
+    for (Entry e : entries()) total += e.nanos;
+    return total;
+  }
+
+  @Override
+  public long getTotalAllocatedBytes() {
+    if (threadBean == null) return -1;
+    long total = 0;
+    for (Entry e : entries()) total += e.allocatedBytes;
+    return total;
+  }
+
+  @Override
+  public int getNumThreads() {
+    return threadStats.size();
+  }
+
+  @Override
+  public void reset() {
+    // Threads start new counters on their next call
+    ++epoch;
+    threadStats.clear();
+  }
+  
+  /**
+   * The counters of one thread.
+   * 
+   * @author Spence Green
+   *
+   */
+  public final class ThreadStats {
+    private final int epoch;
+    private final long threadId = Thread.currentThread().getId();
+    // calls, nanos, and bytes by slot
+    private volatile long[][] counters = new long[3][16];
+    
+    private ThreadStats(int epoch) {
+      this.epoch = epoch;
+    }
+    
+    /**
+     * Allocated bytes of this thread, or -1 if not supported.
+     * 
+     * @return
+     */
+    public long allocatedBytes() {
+      return threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(threadId);
+    }
+    
+    /**
+     * Record one call.
+     * 
+     * @param slot
+     * @param startNanos Value of <code>System.nanoTime()</code> before the call.
+     * @param startBytes Value of <code>allocatedBytes()</code> before the call.
+     */
+    public void record(int slot, long startNanos, long startBytes) {
+      final long elapsed = System.nanoTime() - startNanos;
+      final long allocated = startBytes < 0 ? 0 : allocatedBytes() - startBytes;
+      long[][] c = counters;
+      if (slot >= c[0].length) {
+        final int size = Math.max(slot + 1, 2 * c[0].length);
+        c = new long[][] { Arrays.copyOf(c[0], size), Arrays.copyOf(c[1], size), Arrays.copyOf(c[2], size) };
+        counters = c;
+      }
+      c[0][slot]++;
+      c[1][slot] += elapsed;
+      c[2][slot] += allocated;
+    }
+  }
+  
+  /**
+   * Aggregate statistics of one featurizer method.
+   * 
+   * @author Spence Green
+   *
+   */
+  public static class Entry {
+    public final String name;
+    public final long calls;
+    public final long nanos;
+    public final long allocatedBytes;
+    public final int threads;
+    
+    private Entry(String name, long calls, long nanos, long allocatedBytes, int threads) {
+      this.name = name;
+      this.calls = calls;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+      this.threads = threads;
+    }
+    
+    @Override
+    public String toString() {
+      return String.format("%s: %d calls %d ns %d bytes", name, calls, nanos, allocatedBytes);
+    }
+  }
+}
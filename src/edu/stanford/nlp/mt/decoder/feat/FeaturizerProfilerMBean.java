@@ -0,0 +1,50 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+/**
+ * JMX interface of <code>FeaturizerProfiler</code>.
+ * 
+ * @author Spence Green
+ *
+ */
+public interface FeaturizerProfilerMBean {
+
+  /**
+   * A table of per-featurizer statistics, sorted by total time.
+   * 
+   * @return
+   */
+  public String getSummary();
+  
+  /**
+   * Total number of featurizer calls.
+   * 
+   * @return
+   */
+  public long getTotalCalls();
+  
+  /**
+   * Total time spent in featurizers in nanoseconds.
+   * 
+   * @return
+   */
+  public long getTotalNanos();
+  
+  /**
+   * Total bytes allocated by featurizers, or -1 if allocation tracking is not supported.
+   * 
+   * @return
+   */
+  public long getTotalAllocatedBytes();
+  
+  /**
+   * Number of threads that have called featurizers since the last reset.
+   * 
+   * @return
+   */
+  public int getNumThreads();
+  
+  /**
+   * Clear all statistics.
+   */
+  public void reset();
+}
@@ -0,0 +1,39 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.List;
+
+import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+
+/**
+ * A <code>DerivationFeaturizer</code> that can compute its features for a batch of
+ * successors before their derivations are built, e.g., to score all successors with one
+ * language model call. The decoder calls <code>prefetch()</code> and then builds the
+ * derivations of the batch in order on the same thread. <code>featurize()</code> uses the
+ * prefetched result for a derivation if there is one, and otherwise computes it as usual.
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public interface PrefetchingFeaturizer<TK,FV> {
+
+  /**
+   * True if <code>prefetch()</code> is faster than featurizing the derivations one at a
+   * time. Must not change after construction.
+   *
+   * @return
+   */
+  boolean isPrefetchEnabled();
+
+  /**
+   * Compute the features of the successors that apply <code>rules.get(i)</code> to
+   * <code>antecedents.get(i)</code>. The source coverage of each rule must not overlap
+   * the coverage of its antecedent.
+   *
+   * @param antecedents
+   * @param rules
+   */
+  void prefetch(List<Derivation<TK,FV>> antecedents, List<ConcreteRule<TK,FV>> rules);
+}
@@ -0,0 +1,238 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.tm.Rule;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Cache of the features extracted by context-free rule featurizers, and of their
+ * score under the current weights. Rules that occur repeatedly across source inputs
+ * (e.g., frequent phrases in a document) are featurized once.
+ *
+ * Scores are cached for the weight snapshot installed in the scorer (see
+ * <code>WeightSnapshot</code>). Features are not affected by weight changes, unless
+ * zero-weight features were pruned (see <code>InputProperty.FeatureFilter</code>). Pruned
+ * entries are only valid for the weights version that they were pruned for.
+ *
+ * The cache is bounded by keeping two generations of entries. When the current
+ * generation is full, it replaces the previous generation, and entries that are
+ * only in the previous generation are evicted. Lookups promote entries to the
+ * current generation.
+ *
+ * This class is threadsafe.
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public class RuleFeatureCache<TK,FV> {
+
+  /**
+   * Weights version of entries whose features were not pruned.
+   */
+  public static final long UNPRUNED = -1;
+
+  private final int generationSize;
+  private volatile ConcurrentHashMap<Key<TK>,Entry<FV>> current;
+  private volatile ConcurrentHashMap<Key<TK>,Entry<FV>> previous;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity Maximum number of rules in the cache.
+   */
+  public RuleFeatureCache(int capacity) {
+    if (capacity <= 1) throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+    this.generationSize = capacity / 2;
+    this.current = new ConcurrentHashMap<>(Math.min(generationSize, 1 << 16));
+    this.previous = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Lookup a rule.
+   *
+   * @param rule
+   * @return The entry or null if the rule is not in the cache.
+   */
+  public Entry<FV> get(Rule<TK> rule) {
+    final Key<TK> key = new Key<>(rule);
+    Entry<FV> entry = current.get(key);
+    if (entry == null) {
+      entry = previous.get(key);
+      if (entry != null) insert(key, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Insert the context-free features of a rule.
+   *
+   * @param rule
+   * @param features
+   * @return The cache entry.
+   */
+  public Entry<FV> put(Rule<TK> rule, List<FeatureValue<FV>> features) {
+    return put(rule, features, UNPRUNED);
+  }
+
+  /**
+   * Insert the context-free features of a rule. Replaces an entry that is not valid for
+   * <code>prunedVersion</code>.
+   *
+   * @param rule
+   * @param features
+   * @param prunedVersion The weights version for which zero-weight features were pruned, or
+   * <code>UNPRUNED</code>.
+   * @return The cache entry.
+   */
+  public Entry<FV> put(Rule<TK> rule, List<FeatureValue<FV>> features, long prunedVersion) {
+    final Key<TK> key = new Key<>(rule);
+    final Entry<FV> entry = new Entry<>(features, prunedVersion);
+    final Entry<FV> other = insert(key, entry, false);
+    if (other == null) return entry;
+    if (other.isValidFor(prunedVersion)) return other;
+    insert(key, entry, true);
+    return entry;
+  }
+
+  private Entry<FV> insert(Key<TK> key, Entry<FV> entry) {
+    return insert(key, entry, false);
+  }
+
+  private Entry<FV> insert(Key<TK> key, Entry<FV> entry, boolean replace) {
+    ConcurrentHashMap<Key<TK>,Entry<FV>> map = current;
+    if (map.size() >= generationSize) {
+      synchronized(this) {
+        if (current.size() >= generationSize) {
+          previous = current;
+          current = new ConcurrentHashMap<>(Math.min(generationSize, 1 << 16));
+        }
+        map = current;
+      }
+    }
+    return replace ? map.put(key, entry) : map.putIfAbsent(key, entry);
+  }
+
+  /**
+   * Drop all entries.
+   */
+  public synchronized void clear() {
+    current = new ConcurrentHashMap<>();
+    previous = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Approximate number of rules in the cache.
+   *
+   * @return
+   */
+  public int size() { return current.size() + previous.size(); }
+
+  /**
+   * Cached features of a rule.
+   *
+   * @author Spence Green
+   *
+   * @param <FV>
+   */
+  public static final class Entry<FV> {
+    public final List<FeatureValue<FV>> features;
+    private final long prunedVersion;
+    private volatile Score score;
+
+    private Entry(List<FeatureValue<FV>> features, long prunedVersion) {
+      this.features = Collections.unmodifiableList(features);
+      this.prunedVersion = prunedVersion;
+    }
+
+    /**
+     * True if the features can be used by a featurizer that prunes for
+     * <code>prunedVersion</code>. Unpruned features are valid for any weights, since
+     * zero-weight features do not change the score.
+     *
+     * @param prunedVersion The weights version, or <code>UNPRUNED</code>.
+     * @return
+     */
+    public boolean isValidFor(long prunedVersion) {
+      return this.prunedVersion == UNPRUNED || this.prunedVersion == prunedVersion;
+    }
+
+    /**
+     * Return the score of the features. The score is cached for the weights version
+     * of the scorer, unless the weights were not installed from a snapshot.
+     *
+     * @param scorer
+     * @return
+     */
+    public double score(Scorer<FV> scorer) {
+      final long version = scorer.getWeightsVersion();
+      if (version < 0) return scorer.getIncrementalScore(features);
+      final Score s = score;
+      if (s != null && s.version == version) return s.value;
+      final double value = scorer.getIncrementalScore(features);
+      score = new Score(version, value);
+      return value;
+    }
+  }
+
+  private static final class Score {
+    private final long version;
+    private final double value;
+    private Score(long version, double value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Everything in a rule that a context-free featurizer may read.
+   *
+   * @author Spence Green
+   *
+   * @param <TK>
+   */
+  private static final class Key<TK> {
+    private final int id;
+    private final Sequence<TK> source;
+    private final Sequence<TK> target;
+    private final float[] scores;
+    private final String[] phraseScoreNames;
+    private final String phraseTableName;
+    private final Object alignment;
+    private final int hashCode;
+
+    private Key(Rule<TK> rule) {
+      this.id = rule.id;
+      this.source = rule.source;
+      this.target = rule.target;
+      this.scores = rule.scores;
+      this.phraseScoreNames = rule.phraseScoreNames;
+      this.phraseTableName = rule.phraseTableName;
+      this.alignment = rule.alignment;
+      this.hashCode = Objects.hash(id, source, target, phraseTableName) * 31 + Arrays.hashCode(scores);
+    }
+
+    @Override
+    public int hashCode() { return hashCode; }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if ( ! (o instanceof Key)) return false;
+      Key<?> other = (Key<?>) o;
+      return hashCode == other.hashCode && id == other.id && source.equals(other.source) &&
+          target.equals(other.target) && Arrays.equals(scores, other.scores) &&
+          Objects.equals(phraseTableName, other.phraseTableName) &&
+          Arrays.equals(phraseScoreNames, other.phraseScoreNames) &&
+          Objects.equals(alignment, other.alignment);
+    }
+  }
+}
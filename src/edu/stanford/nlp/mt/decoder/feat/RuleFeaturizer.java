@@ -37,4 +37,14 @@ public interface RuleFeaturizer<TK, FV> extends Featurizer<TK,FV> {
    * the rule is applied in a <code>Derivation</code>.
    */
   boolean isolationScoreOnly();
+
+  /**
+   * True if the features of a rule only depend on the rule itself (the source
+   * and target phrases, alignment, scores, and phrase table), and not on the
+   * source input or its properties. The features of context-free featurizers
+   * can be cached across source inputs (see <code>RuleFeatureCache</code>).
+   * 
+   * @return
+   */
+  default boolean isContextFree() { return false; }
 }
@@ -501,6 +501,8 @@ public class HierarchicalReorderingFeaturizer extends
         HierBlock newBlock = new HierBlock(curCS, curF, prevBlock == null ? 1
             : (prevBlock.stackSz + 1 - merges));
         f.setState(this, newBlock);
+        f.setStateWord(this, 0, newBlock.fStart);
+        f.setStateWord(this, 1, newBlock.fEnd);
         if (DETAILED_DEBUG)
           System.err.printf(
               "HierarchicalReorderingFeaturizer: new block (%s)\n",
@@ -637,6 +639,15 @@ public class HierarchicalReorderingFeaturizer extends
       Sequence<IString> foreign) {
   }
 
+  /**
+   * The source span of the top block on the stack. The stack itself is held by
+   * <code>HierBlock</code>, but recombination only depends on the span.
+   */
+  @Override
+  public int numStateWords() {
+    return forwardOrientationComputation == ForwardOrientationComputation.hierarchical ? 2 : 0;
+  }
+
   @Override
   public NeedsCloneable<IString, String> clone()
       throws CloneNotSupportedException {
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import edu.stanford.nlp.mt.decoder.feat.DenseFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.FeaturizerState;
 import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
@@ -30,7 +31,7 @@ import edu.stanford.nlp.util.PropertiesUtils;
  * @author Spence Green
  */
 public class LexicalReorderingFeaturizer extends
-    DerivationFeaturizer<IString, String> {
+    DerivationFeaturizer<IString, String> implements DenseFeaturizer<IString, String> {
 
   private static final boolean DETAILED_DEBUG = false;
   
@@ -231,12 +232,49 @@ public class LexicalReorderingFeaturizer extends
         System.err.printf("\t%s: %f\n", value.name, value.value);
     }
     
-    // Create the state
+    setState(f);
+
+    return features;
+  }
+
+  /**
+   * The generative and dynamic models only extract dense features.
+   */
+  @Override
+  public List<String> getDenseFeatureNames() {
+    return discriminativeSet == null ? Arrays.asList(featureTags) : null;
+  }
+
+  @Override
+  public void denseFeaturize(Featurizable<IString, String> f, double[] values, int offset) {
+    final boolean monotone = f.linearDistortion == 0;
+    final boolean swap = (f.prior != null && f.sourcePosition
+        + f.sourcePhrase.size() == f.prior.sourcePosition);
+    final LexicalReorderingTable.ReorderingTypes[] mapping;
+    final float[] scores;
+    final float[] priorScores;
+    if (mlrt != null) {
+      mapping = mlrt.positionalMapping;
+      scores = mlrt.getReorderingScores(f.derivation.rule.abstractRule);
+      priorScores = f.prior == null ? null : mlrt.getReorderingScores(f.prior.derivation.rule.abstractRule);
+    } else {
+      mapping = LexicalReorderingTable.msdBidirectionalPositionMapping;
+      scores = f.rule.abstractRule.reoderingScores;
+      priorScores = f.prior == null ? null : f.prior.rule.abstractRule.reoderingScores;
+    }
+    for (int i = 0; i < mapping.length; ++i) {
+      final float[] s = usePrior(mapping[i]) ? priorScores : scores;
+      if (s != null && featureFunction(monotone, swap, mapping[i])) {
+        values[offset + i] = s[i];
+      }
+    }
+    setState(f);
+  }
+
+  private void setState(Featurizable<IString, String> f) {
     int rightEdge = lastOptionRightEdge(f.derivation);
     int leftEdge = lastOptionLeftEdge(f.derivation);
     f.setState(this, new MSDState(leftEdge, rightEdge, f.derivation.sourceCoverage));
-
-    return features;
   }
 
   private boolean aboveThreshold(ConcreteRule<IString, String> rule) {
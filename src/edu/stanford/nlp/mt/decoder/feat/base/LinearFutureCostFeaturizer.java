@@ -3,8 +3,8 @@ package edu.stanford.nlp.mt.decoder.feat.base;
 import java.util.Collections;
 import java.util.List;
 
+import edu.stanford.nlp.mt.decoder.feat.DenseFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
-import edu.stanford.nlp.mt.decoder.feat.FeaturizerState;
 import edu.stanford.nlp.mt.decoder.util.Derivation;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
@@ -17,7 +17,8 @@ import edu.stanford.nlp.mt.util.Sequence;
  * 
  * @author Michel Galley
  */
-public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, String> {
+public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, String> 
+  implements DenseFeaturizer<IString, String> {
 
   public static final String FEATURE_NAME = "LinearDistortion";
 
@@ -71,7 +72,27 @@ public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, St
   @Override
   public List<FeatureValue<String>> featurize(
       Featurizable<IString, String> f) {
-    float oldFutureCost = f.prior != null ? ((FutureCostState) f.prior.getState(this)).f
+    return Collections.singletonList(new FeatureValue<String>(FEATURE_NAME, value(f), true));
+  }
+
+  @Override
+  public List<String> getDenseFeatureNames() {
+    return Collections.singletonList(FEATURE_NAME);
+  }
+
+  @Override
+  public void denseFeaturize(Featurizable<IString, String> f, double[] values, int offset) {
+    values[offset] = value(f);
+  }
+
+  /**
+   * Compute the feature value and set the state.
+   * 
+   * @param f
+   * @return
+   */
+  private double value(Featurizable<IString, String> f) {
+    float oldFutureCost = f.prior != null ? Float.intBitsToFloat((int) f.prior.getStateWord(this, 1))
         : 0.0f;
     float futureCost;
     if (f.done) {
@@ -81,9 +102,10 @@ public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, St
           * oldFutureCost;
     }
     int edge = lastOptionForeignEdge(f.derivation);
-    f.setState(this, new FutureCostState(edge, futureCost));
+    f.setStateWord(this, 0, edge);
+    f.setStateWord(this, 1, Float.floatToIntBits(futureCost));
     float deltaCost = futureCost - oldFutureCost;
-    return Collections.singletonList(new FeatureValue<String>(FEATURE_NAME, -1.0 * (cost(f) + deltaCost), true));
+    return -1.0 * (cost(f) + deltaCost);
   }
 
   @Override
@@ -91,6 +113,20 @@ public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, St
       Sequence<IString> foreign) {
   }
 
+  /**
+   * Source edge of the last rule, and the future cost. Only the edge is used
+   * for recombination.
+   */
+  @Override
+  public int numStateWords() {
+    return 2;
+  }
+
+  @Override
+  public int numRecombinationStateWords() {
+    return 1;
+  }
+
   static int cost(Featurizable<IString, String> f) {
     int cost = f.linearDistortion;
     if (ADD_EOS)
@@ -133,32 +169,4 @@ public class LinearFutureCostFeaturizer extends DerivationFeaturizer<IString, St
     }
     return 0;
   }
-  
-  private static class FutureCostState extends FeaturizerState {
-
-    private final float f;
-    private final int edge;
-
-    public FutureCostState(int edge, float f) {
-      this.edge = edge;
-      this.f = f;
-    }
-    
-    @Override
-    public boolean equals(Object other) {
-      if (this == other) {
-        return true;
-      } else if ( ! (other instanceof FutureCostState)) {
-        return false;
-      } else {
-        FutureCostState o = (FutureCostState) other;
-        return this.edge == o.edge;
-      }
-    }
-
-    @Override
-    public int hashCode() {
-      return this.edge;
-    }
-  }
 }
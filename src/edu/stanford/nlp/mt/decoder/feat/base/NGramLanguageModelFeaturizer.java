@@ -1,20 +1,30 @@
 package edu.stanford.nlp.mt.decoder.feat.base;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 
+import edu.stanford.nlp.mt.decoder.feat.DenseFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
+import edu.stanford.nlp.mt.decoder.feat.PrefetchingFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
 import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
+import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.lm.CachingLanguageModel;
+import edu.stanford.nlp.mt.lm.LMQueryCache;
 import edu.stanford.nlp.mt.lm.LMState;
 import edu.stanford.nlp.mt.lm.LanguageModel;
 import edu.stanford.nlp.mt.lm.LanguageModelFactory;
+import edu.stanford.nlp.mt.tm.ConcreteRule;
 import edu.stanford.nlp.mt.util.AbstractWordClassMap;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.IOTools;
 import edu.stanford.nlp.mt.util.IString;
 import edu.stanford.nlp.mt.util.Sequence;
 import edu.stanford.nlp.mt.util.Sequences;
@@ -25,11 +35,26 @@ import edu.stanford.nlp.util.PropertiesUtils;
 /**
  * Featurizer for n-gram language models.
  * 
+ * If the language model supports batch scoring, then the decoder can score all of the
+ * successors of a batch with one query through <code>prefetch()</code>.
+ * 
+ * Named parameters:
+ * <ul>
+ * <li><code>classBased</code> and <code>classMap</code>: Query a class-based model.</li>
+ * <li><code>cache</code> and <code>cacheSize</code>: Wrap the model in a
+ * <code>CachingLanguageModel</code> of type <code>LMQueryCache.DIRECT_MAPPED</code> or
+ * <code>LMQueryCache.LRU</code>.</li>
+ * <li><code>queryTrace</code>: Write every query to a file for
+ * <code>edu.stanford.nlp.mt.benchmark.LanguageModelCache</code>. Assumes the default
+ * sentence boundaries, i.e., no <code>wrapBoundary</code>.</li>
+ * </ul>
+ * 
  * @author danielcer
  * @author Spence Green
  */
 public class NGramLanguageModelFeaturizer extends DerivationFeaturizer<IString, String> implements
-RuleFeaturizer<IString, String> {
+RuleFeaturizer<IString, String>, DenseFeaturizer<IString, String>, 
+PrefetchingFeaturizer<IString, String> {
   private static final boolean DEBUG = false;
   public static final String DEFAULT_FEATURE_NAME = "LM";
 
@@ -40,9 +65,18 @@ RuleFeaturizer<IString, String> {
 
   private final boolean isClassBased;
   private final AbstractWordClassMap targetClassMap;
+  
+  // Null unless queries are traced
+  private final PrintStream queryTrace;
+  // Open query traces of all instances. Closed by one shutdown hook.
+  private static final List<PrintStream> queryTraces = new ArrayList<>();
+  private static boolean traceHookRegistered = false;
 
   private static final boolean wrapBoundary = System.getProperties().containsKey("wrapBoundary");
 
+  // Prefetched LM queries of the current batch of the calling thread
+  private final ThreadLocal<PrefetchBuffer> prefetchBuffer = ThreadLocal.withInitial(PrefetchBuffer::new);
+
   /**
    * Constructor.
    * 
@@ -55,6 +89,7 @@ RuleFeaturizer<IString, String> {
     this.endToken = lm.getEndToken();
     this.isClassBased = false;
     this.targetClassMap = null;
+    this.queryTrace = null;
   }
 
   /**
@@ -71,16 +106,22 @@ RuleFeaturizer<IString, String> {
       throw new RuntimeException(
           "At least two arguments are needed: LM file name and LM feature name");
     }
+    // Named parameters
+    Properties options = FeatureUtils.argsToProperties(args);
+
     // Load the LM
-    this.lm = LanguageModelFactory.load(args[0]);
+    LanguageModel<IString> lm = LanguageModelFactory.load(args[0]);
+    if (options.containsKey("cache")) {
+      lm = new CachingLanguageModel<>(lm, options.getProperty("cache"), 
+          PropertiesUtils.getInt(options, "cacheSize", LMQueryCache.DEFAULT_CAPACITY));
+    }
+    this.lm = lm;
     this.startToken = lm.getStartToken();
     this.endToken = lm.getEndToken();
 
     // Set the feature name
     this.featureName = args[1];
 
-    // Named parameters
-    Properties options = FeatureUtils.argsToProperties(args);
     this.isClassBased = PropertiesUtils.getBool(options, "classBased", false);
     if (isClassBased && options.containsKey("classMap")) {
       // A local class map that differs from the one specified by Phrasal.TARGET_CLASS_MAP
@@ -90,7 +131,43 @@ RuleFeaturizer<IString, String> {
       this.targetClassMap = TargetClassMap.getInstance();
     } else {
       this.targetClassMap = null;
-    }    
+    }
+    
+    if (options.containsKey("queryTrace")) {
+      this.queryTrace = IOTools.getWriterFromFile(options.getProperty("queryTrace"));
+      closeOnExit(queryTrace);
+    } else {
+      this.queryTrace = null;
+    }
+  }
+
+  /**
+   * Close a query trace on exit. All traces share one shutdown hook.
+   *
+   * @param trace
+   */
+  private static void closeOnExit(PrintStream trace) {
+    synchronized(queryTraces) {
+      if ( ! traceHookRegistered) {
+        traceHookRegistered = true;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          @Override
+          public void run() {
+            synchronized(queryTraces) {
+              for (PrintStream t : queryTraces) t.close();
+            }
+          }
+        });
+      }
+      queryTraces.add(trace);
+    }
+  }
+
+  /**
+   * @return The language model queried by this featurizer.
+   */
+  public LanguageModel<IString> getLanguageModel() {
+    return lm;
   }
 
   /**
@@ -114,6 +191,26 @@ RuleFeaturizer<IString, String> {
 
   @Override
   public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) {
+    return Collections.singletonList(new FeatureValue<>(featureName, score(f), true));
+  }
+
+  @Override
+  public List<String> getDenseFeatureNames() {
+    return Collections.singletonList(featureName);
+  }
+
+  @Override
+  public void denseFeaturize(Featurizable<IString, String> f, double[] values, int offset) {
+    values[offset] = score(f);
+  }
+
+  /**
+   * Score the target phrase of <code>f</code> and set the LM state.
+   * 
+   * @param f
+   * @return
+   */
+  private double score(Featurizable<IString, String> f) {
     if (DEBUG) {
       System.err.printf("Sequence: %s%n\tNovel Phrase: %s%n",
           f.targetSequence, f.targetPhrase);
@@ -121,38 +218,99 @@ RuleFeaturizer<IString, String> {
       System.err.println("ngram scoring:");
     }
     
-    LMState priorState = f.prior == null ? null : (LMState) f.prior.getState(this);
+    LMState state;
+    final PrefetchBuffer buffer = isPrefetchEnabled() ? prefetchBuffer.get() : null;
+    if (buffer != null && buffer.hasNext(f)) {
+      state = buffer.next();
+      
+    } else {
+      LMState priorState = f.prior == null ? null : (LMState) f.prior.getState(this);
+      Sequence<IString> partialTranslation = makeQuery(f.prior, priorState, f.targetPhrase, f.done);
+      if (queryTrace != null && partialTranslation != null) {
+        trace(f.prior, partialTranslation, startIndex(f.prior, priorState));
+      }
+      state = partialTranslation == null ? null : 
+        lm.score(partialTranslation, startIndex(f.prior, priorState), priorState);
+    }
+    if (state == null) return 0.0;
+    f.setState(this, state);
     
+    if (DEBUG) {
+      System.err.printf("Final score: %f%n", state.getScore());
+      System.err.println("===================");
+    }
+    return state.getScore();
+  }
+
+  /**
+   * The LM query for a new target phrase.
+   * 
+   * @param prior
+   * @param priorState
+   * @param targetPhrase
+   * @param done
+   * @return The sequence to score, or null if the phrase is not scored.
+   */
+  private Sequence<IString> makeQuery(Featurizable<IString, String> prior, LMState priorState,
+      Sequence<IString> targetPhrase, boolean done) {
     Sequence<IString> partialTranslation = isClassBased ? 
-        toClassRepresentation(f.targetPhrase) : f.targetPhrase;
-    int startIndex = 0;
+        toClassRepresentation(targetPhrase) : targetPhrase;
     if (! wrapBoundary) {
-      if (f.prior == null && f.done) {
+      if (prior == null && done) {
         partialTranslation = Sequences.wrapStartEnd(
             partialTranslation, startToken, endToken);
-        startIndex = 1;
-      } else if (f.prior == null) {
+      } else if (prior == null) {
         partialTranslation = Sequences.wrapStart(partialTranslation, startToken);
-        startIndex = 1;
-      } else if ( f.done) {
+      } else if (done) {
         partialTranslation = Sequences.wrapEnd(partialTranslation, endToken);
       } 
-    } else if (f.prior == null) {
+    } else if (prior == null) {
       if (partialTranslation.size() < 2) return null;
-      startIndex = 1;
-    } else if (f.prior != null && priorState == null) {
-      partialTranslation = Sequences.wrapStart(partialTranslation, f.prior.targetSequence.get(0));
-      startIndex = 1;
+    } else if (priorState == null) {
+      partialTranslation = Sequences.wrapStart(partialTranslation, prior.targetSequence.get(0));
     }
-    
-    LMState state = lm.score(partialTranslation, startIndex, priorState);
-    f.setState(this, state);
-    
-    if (DEBUG) {
-      System.err.printf("Final score: %f%n", state.getScore());
-      System.err.println("===================");
+    return partialTranslation;
+  }
+
+  /**
+   * The start index of the query returned by <code>makeQuery()</code>.
+   */
+  private static int startIndex(Featurizable<IString, String> prior, LMState priorState) {
+    return prior == null || (wrapBoundary && priorState == null) ? 1 : 0;
+  }
+
+  /**
+   * Write a query to the trace as: start index ||| target prefix ||| sequence. The prior
+   * state of the query is the state of the target prefix.
+   */
+  private void trace(Featurizable<IString, String> prior, Sequence<IString> sequence, int startIndex) {
+    final Sequence<IString> prefix = prior == null ? Sequences.emptySequence() : 
+      (isClassBased ? toClassRepresentation(prior.targetSequence) : prior.targetSequence);
+    queryTrace.printf("%d ||| %s ||| %s%n", startIndex, prefix, sequence);
+  }
+
+  @Override
+  public boolean isPrefetchEnabled() {
+    return lm.supportsBatchScoring();
+  }
+
+  @Override
+  public void prefetch(List<Derivation<IString, String>> antecedents, 
+      List<ConcreteRule<IString, String>> rules) {
+    final PrefetchBuffer buffer = prefetchBuffer.get();
+    buffer.clear();
+    for (int i = 0, sz = antecedents.size(); i < sz; ++i) {
+      final Derivation<IString, String> antecedent = antecedents.get(i);
+      final ConcreteRule<IString, String> rule = rules.get(i);
+      final Featurizable<IString, String> prior = antecedent.featurizable;
+      final LMState priorState = prior == null ? null : (LMState) prior.getState(this);
+      // Coverage of the rule and the antecedent is disjoint
+      final boolean done = antecedent.untranslatedSourceTokens == rule.sourceCoverage.cardinality();
+      final Sequence<IString> sequence = makeQuery(prior, priorState, rule.abstractRule.target, done);
+      if (queryTrace != null && sequence != null) trace(prior, sequence, startIndex(prior, priorState));
+      buffer.add(prior, rule, sequence, startIndex(prior, priorState), priorState);
     }
-    return Collections.singletonList(new FeatureValue<>(featureName, state.getScore(), true));
+    buffer.score(lm);
   }
 
   @Override
@@ -175,6 +333,71 @@ RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return true;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
+  
+  /**
+   * LM queries for a batch of successors, which are consumed in order as the
+   * derivations are built.
+   * 
+   * @author Spence Green
+   *
+   */
+  private static class PrefetchBuffer {
+    private final List<Featurizable<IString, String>> priors = new ArrayList<>();
+    private final List<ConcreteRule<IString, String>> rules = new ArrayList<>();
+    private final List<Sequence<IString>> sequences = new ArrayList<>();
+    private final List<LMState> priorStates = new ArrayList<>();
+    private int[] startIndices = new int[64];
+    private LMState[] states = new LMState[64];
+    private int next = 0;
+    
+    void add(Featurizable<IString, String> prior, ConcreteRule<IString, String> rule, 
+        Sequence<IString> sequence, int startIndex, LMState priorState) {
+      final int i = rules.size();
+      if (i == startIndices.length) {
+        startIndices = Arrays.copyOf(startIndices, 2 * i);
+        states = new LMState[2 * i];
+      }
+      priors.add(prior);
+      rules.add(rule);
+      sequences.add(sequence);
+      priorStates.add(priorState);
+      startIndices[i] = startIndex;
+    }
+    
+    void score(LanguageModel<IString> lm) {
+      lm.score(sequences, startIndices, priorStates, states);
+    }
+    
+    /**
+     * True if the next prefetched query belongs to <code>f</code>.
+     */
+    boolean hasNext(Featurizable<IString, String> f) {
+      return next < rules.size() && rules.get(next) == f.rule && priors.get(next) == f.prior;
+    }
+    
+    LMState next() {
+      final LMState state = states[next++];
+      if (next == rules.size()) clear();
+      return state;
+    }
+    
+    /**
+     * Release the references to the derivations of the batch.
+     */
+    void clear() {
+      Arrays.fill(states, 0, rules.size(), null);
+      priors.clear();
+      rules.clear();
+      sequences.clear();
+      priorStates.clear();
+      next = 0;
+    }
+  }
   
   private static class LocalTargetMap extends AbstractWordClassMap {
     public LocalTargetMap() {
@@ -41,4 +41,9 @@ public class PhrasePenaltyFeaturizer<TK> implements
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
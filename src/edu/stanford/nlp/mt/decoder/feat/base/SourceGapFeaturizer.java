@@ -1,6 +1,5 @@
 package edu.stanford.nlp.mt.decoder.feat.base;
 
-import java.util.BitSet;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -200,7 +199,7 @@ public class SourceGapFeaturizer extends
       int phraseStartIdx = phraseCS.nextSetBit(0);
       int phraseEndIdx = phraseCS.length();
 
-      BitSet middleCS = new BitSet(phraseEndIdx - 1); // e.g. ..x......
+      CoverageSet middleCS = new CoverageSet(phraseEndIdx - 1); // e.g. ..x......
       middleCS.set(phraseStartIdx + 1, phraseEndIdx - 1);
       middleCS.and(hypCS);
       Featurizable<IString, String> curF = f;
@@ -89,4 +89,9 @@ public class TranslationModelFeaturizer implements RuleFeaturizer<IString, Strin
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
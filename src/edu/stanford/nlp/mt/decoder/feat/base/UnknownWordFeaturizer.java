@@ -36,4 +36,9 @@ public class UnknownWordFeaturizer<TK> implements RuleFeaturizer<TK, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -31,4 +31,9 @@ public class WordPenaltyFeaturizer<TK> implements RuleFeaturizer<TK, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
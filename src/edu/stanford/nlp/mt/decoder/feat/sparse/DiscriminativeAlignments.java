@@ -10,7 +10,9 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
 import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.IString;
@@ -36,6 +38,11 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
   
   private SourceClassMap sourceMap;
   private TargetClassMap targetMap;
+
+  // Integer feature mode
+  private final FeatureTemplate template;
+  private final FeatureTemplate templateTgt;
+  private final FeatureTemplate templateSrc;
   
   /**
    * Constructor.
@@ -45,6 +52,9 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
     this.addSourceDeletions = false;
     this.addTargetInsertions = false;
     this.useClasses = false;
+    this.template = null;
+    this.templateTgt = null;
+    this.templateSrc = null;
   }
 
   /**
@@ -61,6 +71,10 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
       sourceMap = SourceClassMap.getInstance();
       targetMap = TargetClassMap.getInstance();
     }
+    final boolean integerFeatures = options.containsKey("integerFeatures");
+    this.template = integerFeatures ? new FeatureTemplate(FEATURE_NAME) : null;
+    this.templateTgt = integerFeatures ? new FeatureTemplate(FEATURE_NAME_TGT) : null;
+    this.templateSrc = integerFeatures ? new FeatureTemplate(FEATURE_NAME_SRC) : null;
   }
 
   @Override
@@ -77,6 +91,7 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
       s2t.add(new HashSet<Integer>());
     }
     BitSet hasMultipleAlignments = new BitSet(tgtLength);
+    final Scorer<String> filter = FeatureUtils.getFeatureFilter(f.sourceInputProperties);
     List<FeatureValue<String>> features = new LinkedList<>();
 
     // Target-side alignments
@@ -85,8 +100,15 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
       if (alignments == null) {
         if (addTargetInsertions) {
           IString tgtWord = f.targetPhrase.get(i);
+          if (templateTgt != null) {
+            IString tgtRep = targetToken(tgtWord);
+            addFeature(features, templateTgt.newFeatureValue(new int[] { tgtRep.id }, 1.0, tgtRep::toString), filter);
+            continue;
+          }
           String featureString = FEATURE_NAME_TGT + ":" + targetRepresentation(tgtWord);
-          features.add(new FeatureValue<String>(featureString, 1.0));
+          if ( ! FeatureUtils.isPruned(featureString, filter)) {
+            features.add(new FeatureValue<String>(featureString, 1.0));
+          }
         }
 
       } else {
@@ -105,10 +127,20 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
       IString srcWord = f.sourcePhrase.get(i);
       if (alignments.size() == 0) {
         if (addSourceDeletions) {
+          if (templateSrc != null) {
+            IString srcRep = sourceToken(srcWord);
+            addFeature(features, templateSrc.newFeatureValue(new int[] { srcRep.id }, 1.0, srcRep::toString), filter);
+            continue;
+          }
           String featureString = FEATURE_NAME_SRC + ":" + sourceRepresentation(srcWord);
-          features.add(new FeatureValue<String>(featureString, 1.0));
+          if ( ! FeatureUtils.isPruned(featureString, filter)) {
+            features.add(new FeatureValue<String>(featureString, 1.0));
+          }
         }
         
+      } else if (template != null) {
+        addFeature(features, alignmentFeatureValue(f, alignment, srcWord, alignments, hasMultipleAlignments), filter);
+
       } else {
         // Use sets so that multiple alignments aren't counted twice
         Set<String> alignedTargetWords = new TreeSet<String>();
@@ -139,12 +171,59 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
           seenFirst = true;
         }
         String featureString = FEATURE_NAME + ":" + sb.toString();
-        features.add(new FeatureValue<String>(featureString, 1.0));
+        if ( ! FeatureUtils.isPruned(featureString, filter)) {
+          features.add(new FeatureValue<String>(featureString, 1.0));
+        }
       }
     }
     return features;
   }
+
+  private static void addFeature(List<FeatureValue<String>> features, FeatureValue<String> feature,
+      Scorer<String> filter) {
+    if ( ! FeatureUtils.isPruned(feature.name, filter)) features.add(feature);
+  }
   
+  /**
+   * Integer feature mode. The key is the set of aligned source token ids followed by the
+   * set of aligned target token ids. Feature names are identical to the string mode.
+   */
+  private FeatureValue<String> alignmentFeatureValue(Featurizable<IString, String> f, 
+      PhraseAlignment alignment, IString srcWord, Set<Integer> alignments, BitSet hasMultipleAlignments) {
+    Set<IString> alignedSourceWords = new HashSet<>();
+    Set<IString> alignedTargetWords = new HashSet<>();
+    alignedSourceWords.add(sourceToken(srcWord));
+    for (int tgtIndex : alignments) {
+      alignedTargetWords.add(targetToken(f.targetPhrase.get(tgtIndex)));
+      if (hasMultipleAlignments.get(tgtIndex)) {
+        for (int sIndex : alignment.t2s(tgtIndex)) {
+          alignedSourceWords.add(sourceToken(f.sourcePhrase.get(sIndex)));
+        }
+      }
+    }
+    int[] srcIds = alignedSourceWords.stream().mapToInt(t -> t.id).sorted().toArray();
+    int[] tgtIds = alignedTargetWords.stream().mapToInt(t -> t.id).sorted().toArray();
+    int[] key = new int[srcIds.length + tgtIds.length + 1];
+    System.arraycopy(srcIds, 0, key, 0, srcIds.length);
+    key[srcIds.length] = -1;
+    System.arraycopy(tgtIds, 0, key, srcIds.length + 1, tgtIds.length);
+    return template.newFeatureValue(key, 1.0, () -> {
+      Set<String> srcStrings = new TreeSet<>();
+      for (IString token : alignedSourceWords) srcStrings.add(token.toString());
+      Set<String> tgtStrings = new TreeSet<>();
+      for (IString token : alignedTargetWords) tgtStrings.add(token.toString());
+      return String.join("-", srcStrings) + ">" + String.join("-", tgtStrings);
+    });
+  }
+
+  private IString sourceToken(IString token) {
+    return useClasses ? sourceMap.get(token) : token;
+  }
+
+  private IString targetToken(IString token) {
+    return useClasses ? targetMap.get(token) : token;
+  }
+
   private String sourceRepresentation(IString token) {
     return useClasses ? sourceMap.get(token).toString() : token.toString();
   }
@@ -157,4 +236,9 @@ public class DiscriminativeAlignments implements RuleFeaturizer<IString,String>
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -4,7 +4,6 @@ import java.util.LinkedList;
 import java.util.List;
 
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
-import edu.stanford.nlp.mt.decoder.feat.FeaturizerState;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.IString;
@@ -42,33 +41,12 @@ public class DiscriminativeSignedDistortion extends DerivationFeaturizer<IString
     }
     String featureString = String.format("%s:%d", FEATURE_NAME, distortion);
     features.add(new FeatureValue<String>(featureString, 1.0));
-    f.setState(this, new DistortionState(distortion));
+    f.setStateWord(this, 0, distortion);
     return features;
   }
-  
-  private static class DistortionState extends FeaturizerState {
-
-    private final int distortion;
-
-    public DistortionState(int distortion) {
-      this.distortion = distortion;
-    }
-    
-    @Override
-    public boolean equals(Object other) {
-      if (this == other) {
-        return true;
-      } else if ( ! (other instanceof DistortionState)) {
-        return false;
-      } else {
-        DistortionState o = (DistortionState) other;
-        return this.distortion == o.distortion;
-      }
-    }
 
-    @Override
-    public int hashCode() {
-      return distortion;
-    }
+  @Override
+  public int numStateWords() {
+    return 1;
   }
 }
@@ -5,7 +5,6 @@ import java.util.List;
 import java.util.Properties;
 
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
-import edu.stanford.nlp.mt.decoder.feat.FeaturizerState;
 import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
@@ -58,7 +57,7 @@ public class InDomainRule extends DerivationFeaturizer<IString, String> {
     if (featureIndex < 0) {
       throw new RuntimeException("RuleFeatureIndex property not specified for input: " + String.valueOf(f.sourceInputId));
     }
-    BoundaryState priorState = f.prior == null ? null : (BoundaryState) f.prior.getState(this);
+    final boolean priorInDomain = f.prior != null && f.prior.getStateWord(this, 0) != 0;
 
     // Synthetic rules are always in-domain
     final boolean inDomain = featureIndex < f.rule.abstractRule.scores.length ?
@@ -68,40 +67,19 @@ public class InDomainRule extends DerivationFeaturizer<IString, String> {
       String featureStringDefault = String.format("%s:inrule", FEATURE_PREFIX);
       features.add(new FeatureValue<String>(featureStringDefault, 1.0));
 
-      if (addAdjacentRuleFeature && priorState != null && priorState.inDomain) {
+      if (addAdjacentRuleFeature && priorInDomain) {
         String featureString = String.format("%s:adjrule", FEATURE_PREFIX);
         features.add(new FeatureValue<String>(featureString, 1.0));
       }
 
     } 
-    f.setState(this, new BoundaryState(inDomain));
+    f.setStateWord(this, 0, inDomain ? 1 : 0);
     
     return features;
   }
 
-  private static class BoundaryState extends FeaturizerState {
-
-    private final boolean inDomain;
-
-    public BoundaryState(boolean inDomain) {
-      this.inDomain = inDomain;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (this == other) {
-        return true;
-      } else if ( ! (other instanceof BoundaryState)) {
-        return false;
-      } else {
-        BoundaryState o = (BoundaryState) other;
-        return inDomain == o.inDomain;
-      }
-    }
-
-    @Override
-    public int hashCode() {
-      return inDomain ? 1 : 0;
-    }
+  @Override
+  public int numStateWords() {
+    return 1;
   }
 }
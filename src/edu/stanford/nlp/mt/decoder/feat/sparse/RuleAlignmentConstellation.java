@@ -35,4 +35,9 @@ public class RuleAlignmentConstellation implements
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.Properties;
 
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
 import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.tm.ConcreteRule;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
@@ -32,6 +34,10 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
 
   private SourceClassMap sourceMap;
   private TargetClassMap targetMap;
+
+  // Integer feature mode
+  private final FeatureTemplate lexicalTemplate;
+  private final FeatureTemplate classTemplate;
   
   /**
    * Constructor.
@@ -41,6 +47,8 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
     this.addClassBasedRule = false;
     this.countFeatureIndex = -1;
     this.lexicalCutoff = 0;
+    this.lexicalTemplate = null;
+    this.classTemplate = null;
   }
 
   /**
@@ -59,6 +67,9 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
       targetMap = TargetClassMap.getInstance();
     }
     this.lexicalCutoff = PropertiesUtils.getInt(options, "lexicalCutoff", 0);
+    final boolean integerFeatures = options.containsKey("integerFeatures");
+    this.lexicalTemplate = integerFeatures ? new FeatureTemplate(FEATURE_NAME) : null;
+    this.classTemplate = integerFeatures ? new FeatureTemplate(FEATURE_NAME) : null;
   }
 
   @Override
@@ -66,12 +77,16 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
 
   @Override
   public List<FeatureValue<String>> ruleFeaturize(Featurizable<IString, String> f) {
+    final Scorer<String> filter = FeatureUtils.getFeatureFilter(f.sourceInputProperties);
+    if (lexicalTemplate != null) return ruleFeaturizeIndexed(f, filter);
     List<FeatureValue<String>> features = new ArrayList<>();
     if (addLexicalizedRule && aboveLexicalThreshold(f.rule)) {
       String sourcePhrase = f.sourcePhrase.toString("-");
       String targetPhrase = f.targetPhrase.toString("-");
       String featureString = FEATURE_NAME + ":" + String.format("%s>%s", sourcePhrase, targetPhrase);
-      features.add(new FeatureValue<String>(featureString, 1.0));
+      if ( ! FeatureUtils.isPruned(featureString, filter)) {
+        features.add(new FeatureValue<String>(featureString, 1.0));
+      }
     }
     if (addClassBasedRule) {
       StringBuilder sb = new StringBuilder();
@@ -89,11 +104,65 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
         seenFirst = true;
       }
       String featureString = FEATURE_NAME + ":" + sb.toString();
-      features.add(new FeatureValue<String>(featureString, 1.0));
+      if ( ! FeatureUtils.isPruned(featureString, filter)) {
+        features.add(new FeatureValue<String>(featureString, 1.0));
+      }
     }
     return features;
   }
 
+  /**
+   * Integer feature mode. Feature names are identical to the string mode.
+   */
+  private List<FeatureValue<String>> ruleFeaturizeIndexed(Featurizable<IString, String> f,
+      Scorer<String> filter) {
+    List<FeatureValue<String>> features = new ArrayList<>(2);
+    if (addLexicalizedRule && aboveLexicalThreshold(f.rule)) {
+      int[] key = ruleKey(f, null, null);
+      FeatureValue<String> feature = lexicalTemplate.newFeatureValue(key, 1.0, () -> 
+        String.format("%s>%s", f.sourcePhrase.toString("-"), f.targetPhrase.toString("-")));
+      if ( ! FeatureUtils.isPruned(feature.name, filter)) features.add(feature);
+    }
+    if (addClassBasedRule) {
+      int[] key = ruleKey(f, sourceMap, targetMap);
+      FeatureValue<String> feature = classTemplate.newFeatureValue(key, 1.0, () -> {
+        StringBuilder sb = new StringBuilder();
+        for (IString token : f.sourcePhrase) {
+          if (sb.length() > 0) sb.append("-");
+          sb.append(sourceMap.get(token).toString());
+        }
+        sb.append(">");
+        for (int i = 0, sz = f.targetPhrase.size(); i < sz; ++i) {
+          if (i > 0) sb.append("-");
+          sb.append(targetMap.get(f.targetPhrase.get(i)).toString());
+        }
+        return sb.toString();
+      });
+      if ( ! FeatureUtils.isPruned(feature.name, filter)) features.add(feature);
+    }
+    return features;
+  }
+
+  /**
+   * Source and target token ids separated by -1. Maps tokens to classes if the
+   * class maps are not null.
+   */
+  private static int[] ruleKey(Featurizable<IString, String> f, SourceClassMap srcMap, TargetClassMap tgtMap) {
+    final int srcLength = f.sourcePhrase.size();
+    final int tgtLength = f.targetPhrase.size();
+    int[] key = new int[srcLength + tgtLength + 1];
+    for (int i = 0; i < srcLength; ++i) {
+      IString token = f.sourcePhrase.get(i);
+      key[i] = srcMap == null ? token.id : srcMap.get(token).id;
+    }
+    key[srcLength] = -1;
+    for (int i = 0; i < tgtLength; ++i) {
+      IString token = f.targetPhrase.get(i);
+      key[srcLength + 1 + i] = tgtMap == null ? token.id : tgtMap.get(token).id;
+    }
+    return key;
+  }
+
   private boolean aboveLexicalThreshold(ConcreteRule<IString, String> rule) {
     if (countFeatureIndex < 0 || lexicalCutoff <= 0) return true;
     if (countFeatureIndex >= rule.abstractRule.scores.length) {
@@ -108,4 +177,9 @@ public class RuleIndicator implements RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
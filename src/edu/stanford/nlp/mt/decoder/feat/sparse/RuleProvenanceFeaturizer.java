@@ -82,4 +82,9 @@ public class RuleProvenanceFeaturizer implements RuleFeaturizer<IString, String>
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -98,4 +98,9 @@ public class RulePunctuation implements RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -32,4 +32,9 @@ public class RuleShape implements RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -33,4 +33,9 @@ public class RuleTargetDimension implements RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -64,4 +64,9 @@ public class RuleUnalignedFeaturizer implements RuleFeaturizer<IString, String>
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -4,7 +4,6 @@ import java.util.LinkedList;
 import java.util.List;
 
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
-import edu.stanford.nlp.mt.decoder.feat.FeaturizerState;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.IString;
@@ -34,18 +33,18 @@ public class TargetClassBigramBoundary extends DerivationFeaturizer<IString, Str
   public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) {
     List<FeatureValue<String>> features = new LinkedList<>();
     // Detect last phrase
-    BoundaryState priorState = f.prior == null ? null : (BoundaryState) f.prior.getState(this);
-    IString leftEdge = priorState == null ? TokenUtils.START_TOKEN : priorState.classId;
+    IString leftEdge = f.prior == null ? TokenUtils.START_TOKEN : 
+      new IString((int) f.prior.getStateWord(this, 0));
     
     // Detect this phrase
     if (f.targetPhrase != null && f.targetPhrase.size() > 0) {
       IString rightEdge = targetMap.get(f.targetPhrase.get(0));
       String featureString = String.format("%s:%s-%s", FEATURE_NAME, leftEdge, rightEdge);
       features.add(new FeatureValue<String>(featureString, 1.0));      
-      f.setState(this, new BoundaryState(rightEdge));
+      f.setStateWord(this, 0, rightEdge.id);
     } else {
       // Deletion rule, so state is the same as the last application.
-      f.setState(this, new BoundaryState(leftEdge));
+      f.setStateWord(this, 0, leftEdge.id);
     }
     
     // Detect done
@@ -54,34 +53,16 @@ public class TargetClassBigramBoundary extends DerivationFeaturizer<IString, Str
       IString rightEdge = TokenUtils.END_TOKEN;
       String featureString = String.format("%s:%s-%s", FEATURE_NAME, leftEdge, rightEdge);
       features.add(new FeatureValue<String>(featureString, 1.0));
-      f.setState(this, new BoundaryState(rightEdge));
+      f.setStateWord(this, 0, rightEdge.id);
     }
     return features;
   }
-  
-  private static class BoundaryState extends FeaturizerState {
 
-    private final IString classId;
-
-    public BoundaryState(IString classId) {
-      this.classId = classId;
-    }
-    
-    @Override
-    public boolean equals(Object other) {
-      if (this == other) {
-        return true;
-      } else if ( ! (other instanceof BoundaryState)) {
-        return false;
-      } else {
-        BoundaryState o = (BoundaryState) other;
-        return classId.equals(o.classId);
-      }
-    }
-
-    @Override
-    public int hashCode() {
-      return classId.hashCode();
-    }
+  /**
+   * The class id of the last target token.
+   */
+  @Override
+  public int numStateWords() {
+    return 1;
   }
 }
@@ -2,8 +2,12 @@ package edu.stanford.nlp.mt.decoder.feat.sparse;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
+import edu.stanford.nlp.mt.decoder.feat.FeatureUtils;
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.IString;
@@ -21,17 +25,45 @@ public class TargetUnigramClass implements RuleFeaturizer<IString, String> {
   private static final String FEATURE_NAME = "TGTCLS";
 
   private final TargetClassMap targetMap = TargetClassMap.getInstance();
+
+  // Integer feature mode
+  private final FeatureTemplate template;
   
+  /**
+   * Constructor.
+   */
+  public TargetUnigramClass() {
+    this.template = null;
+  }
+
+  /**
+   * Constructor for reflection loading.
+   * 
+   * @param args
+   */
+  public TargetUnigramClass(String... args) {
+    Properties options = FeatureUtils.argsToProperties(args);
+    this.template = options.containsKey("integerFeatures") ? new FeatureTemplate(FEATURE_NAME) : null;
+  }
+
   @Override
   public void initialize() {}
 
   @Override
   public List<FeatureValue<String>> ruleFeaturize(
       Featurizable<IString, String> f) {
+    final Scorer<String> filter = FeatureUtils.getFeatureFilter(f.sourceInputProperties);
     List<FeatureValue<String>> features = new LinkedList<>();
     for (IString token : f.targetPhrase) {
+      if (template != null) {
+        IString tokenClass = targetMap.get(token);
+        FeatureValue<String> feature = template.newFeatureValue(new int[] { tokenClass.id }, 1.0, tokenClass::toString);
+        if ( ! FeatureUtils.isPruned(feature.name, filter)) features.add(feature);
+        continue;
+      }
       String tokenClass = targetMap.get(token).toString();
       String featureString = String.format("%s:%s",FEATURE_NAME,tokenClass);
+      if (FeatureUtils.isPruned(featureString, filter)) continue;
       features.add(new FeatureValue<String>(featureString, 1.0));
     }
     return features;
@@ -41,4 +73,9 @@ public class TargetUnigramClass implements RuleFeaturizer<IString, String> {
   public boolean isolationScoreOnly() {
     return false;
   }
+
+  @Override
+  public boolean isContextFree() {
+    return true;
+  }
 }
@@ -68,7 +68,13 @@ public class IsolatedPhraseForeignCoverageHeuristic<TK, FV> implements
 
     int foreignSequenceSize = sourceSequence.size();
 
-    SpanScores viterbiSpanScores = new SpanScores(foreignSequenceSize);
+    // Reuse the table if it was computed from the same rule list
+    assert (ruleList.size() == 1);
+    if (hSpanScores != null && hSpanScores.ruleList == ruleList.get(0)) {
+      return hSpanScores.getScore(0, foreignSequenceSize - 1);
+    }
+
+    SpanScores viterbiSpanScores = new SpanScores(foreignSequenceSize, ruleList.get(0));
 
     if (DEBUG) {
       System.err.println("IsolatedPhraseForeignCoverageHeuristic");
@@ -79,7 +85,6 @@ public class IsolatedPhraseForeignCoverageHeuristic<TK, FV> implements
     }
 
     // initialize viterbiSpanScores
-    assert (ruleList.size() == 1);
     for (ConcreteRule<TK,FV> rule : ruleList.get(0)) {
       // Don't run the featurizer again
 //      Featurizable<TK, FV> f = new Featurizable<TK, FV>(sourceSequence, sourceInputProperties, 
@@ -158,11 +163,24 @@ public class IsolatedPhraseForeignCoverageHeuristic<TK, FV> implements
     return hCompleteSequence;
   }
 
+  @Override
+  public Object getFutureCostTable() {
+    return hSpanScores;
+  }
+
+  @Override
+  public void setFutureCostTable(Object table) {
+    if (table instanceof SpanScores) hSpanScores = (SpanScores) table;
+  }
+
   private static class SpanScores {
     final double[] spanValues;
     final int terminalPositions;
+    // Identity of the rules from which the table was computed
+    final List<?> ruleList;
 
-    public SpanScores(int length) {
+    public SpanScores(int length, List<?> ruleList) {
+      this.ruleList = ruleList;
       terminalPositions = length + 1;
       spanValues = new double[terminalPositions * terminalPositions];
       Arrays.fill(spanValues, Double.NEGATIVE_INFINITY);
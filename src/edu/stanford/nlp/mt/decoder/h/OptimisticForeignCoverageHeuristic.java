@@ -39,6 +39,11 @@ public class OptimisticForeignCoverageHeuristic<TK, FV> implements
 
   }
 
+  @Override
+  public boolean dependsOnScore() {
+    return true;
+  }
+
   @Override
   public double getInitialHeuristic(Sequence<TK> sourceSequence, InputProperties sourceInputProperties,
       List<List<ConcreteRule<TK,FV>>> options, Scorer<FV> scorer, int sourceInputId) {
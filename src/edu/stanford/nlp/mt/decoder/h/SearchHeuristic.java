@@ -32,6 +32,30 @@ public interface SearchHeuristic<TK, FV> extends Cloneable {
       InputProperties sourceInputProperties, 
       List<List<ConcreteRule<TK,FV>>> options, Scorer<FV> scorer, int sourceInputId);
 
+  /**
+   * Return the future cost table computed by the last call to <code>getInitialHeuristic()</code>,
+   * or null if the heuristic does not support sharing. The table must not be modified
+   * after it is returned.
+   * 
+   * @return
+   */
+  default Object getFutureCostTable() { return null; }
+
+  /**
+   * Install a table returned by <code>getFutureCostTable()</code>. The next call to
+   * <code>getInitialHeuristic()</code> with the same rule list reuses the table.
+   * 
+   * @param table
+   */
+  default void setFutureCostTable(Object table) {}
+
+  /**
+   * True if <code>getHeuristicDelta()</code> reads the score of the new derivation.
+   * 
+   * @return
+   */
+  default boolean dependsOnScore() { return false; }
+
   /**
    * Compute the delta between this derivation and the last one.
    * 
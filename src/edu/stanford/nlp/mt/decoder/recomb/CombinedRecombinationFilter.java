@@ -55,12 +55,13 @@ public class CombinedRecombinationFilter<S> implements RecombinationFilter<S> {
 
   @Override
   public long recombinationHashCode(S hyp) {
-    long hashCode = 0;
-    long multiplier = 0x5DEECE66DL;
+    // Combine the 64-bit signatures of the component filters without
+    // discarding the high-order bits.
+    long hashCode = filters.length;
     for (RecombinationFilter<S> filter : filters) {
       long localHashCode = filter.recombinationHashCode(hyp);
-      hashCode = multiplier * hashCode + 0xBL;
-      hashCode += multiplier * localHashCode + 0xBL;
+      hashCode = Long.rotateLeft(hashCode, 31) ^ localHashCode;
+      hashCode *= 0x9E3779B97F4A7C15L;
     }
     return hashCode;
   }
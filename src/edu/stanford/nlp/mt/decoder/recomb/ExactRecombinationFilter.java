@@ -1,6 +1,6 @@
 package edu.stanford.nlp.mt.decoder.recomb;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.stanford.nlp.mt.decoder.feat.DerivationFeaturizer;
@@ -11,7 +11,8 @@ import edu.stanford.nlp.mt.util.IString;
 
 
 /**
- * Recombination filter that considers all featurizer states.
+ * Recombination filter that considers all featurizer states. Packed state words
+ * are compared directly.
  * 
  * @author Spence Green
  *
@@ -34,13 +35,21 @@ RecombinationFilter<Derivation<IString, String>> {
   };
   
   private final List<DerivationFeaturizer<IString, String>> featurizers;
+  private final List<DerivationFeaturizer<IString, String>> packedFeaturizers;
   private final RecombinationFilter<Derivation<IString, String>> sourceCoverageFilter;
 
   public ExactRecombinationFilter(List<Featurizer<IString, String>> featurizers) {
-    this.featurizers = new LinkedList<>();
+    this.featurizers = new ArrayList<>();
+    this.packedFeaturizers = new ArrayList<>();
     for (Featurizer<IString, String> featurizer : featurizers) {
       if (featurizer instanceof DerivationFeaturizer) {
-        this.featurizers.add((DerivationFeaturizer<IString, String>) featurizer);
+        DerivationFeaturizer<IString, String> derivationFeaturizer = 
+            (DerivationFeaturizer<IString, String>) featurizer;
+        if (derivationFeaturizer.numStateWords() > 0) {
+          this.packedFeaturizers.add(derivationFeaturizer);
+        } else {
+          this.featurizers.add(derivationFeaturizer);
+        }
       }
     }
     sourceCoverageFilter = new SourceCoverageRecombinationFilter<IString, String>();
@@ -62,6 +71,13 @@ RecombinationFilter<Derivation<IString, String>> {
       return false; 
     }
 
+    // Check packed states
+    for (DerivationFeaturizer<IString, String> featurizer : packedFeaturizers) {
+      if ( ! hypA.featurizable.stateWordsEqual(featurizer, hypB.featurizable)) {
+        return false;
+      }
+    }
+
     // Check other stateful featurizers
     for (DerivationFeaturizer<IString, String> featurizer : featurizers) {
       FeaturizerState stateA = (FeaturizerState) hypA.featurizable.getState(featurizer);
@@ -89,6 +105,9 @@ RecombinationFilter<Derivation<IString, String>> {
 
     // Generate a hash code from individual hash codes
     long code = 0x87c37b91114253d5L ^ (featurizers.size()*0x4cf5ad432745937fL);
+    for (DerivationFeaturizer<IString, String> featurizer : packedFeaturizers) {
+      code = 31 * code + hyp.featurizable.stateWordsHashCode(featurizer);
+    }
     for (int i = 0, sz = featurizers.size(); i < sz; ++i) {
       DerivationFeaturizer<IString, String> featurizer = featurizers.get(i);
       FeaturizerState state = hyp.featurizable.getState(featurizer);
@@ -46,6 +46,9 @@ RecombinationFilter<Derivation<TK, FV>> {
       // one or the other is the null hypothesis
       return false;
     }
+    if (distortionFeaturizer.numStateWords() > 0) {
+      return hypA.featurizable.stateWordsEqual(distortionFeaturizer, hypB.featurizable);
+    }
     FeaturizerState stateA = (FeaturizerState) hypA.featurizable.getState(distortionFeaturizer);
     FeaturizerState stateB = (FeaturizerState) hypB.featurizable.getState(distortionFeaturizer);
 
@@ -58,6 +61,9 @@ RecombinationFilter<Derivation<TK, FV>> {
     if (hyp.featurizable == null) {
       return 0;
     }
+    if (distortionFeaturizer.numStateWords() > 0) {
+      return hyp.featurizable.stateWordsHashCode(distortionFeaturizer);
+    }
     FeaturizerState state = (FeaturizerState) hyp.featurizable.getState(distortionFeaturizer);
     return state.hashCode();
   }
@@ -72,25 +72,16 @@ public class NGramLMRecombinationFilter implements RecombinationFilter<Derivatio
       return hyp.featurizable.getState(lmFeaturizers.get(0)).hashCode();
     
     } else {
-      // Ripped off from MurmurHash3
-      final int c1 = 0xcc9e2d51;
-      final int c2 = 0x1b873593;
-
+      // 64-bit signature over the LM states. RecombinationHash compares the full signature
+      // before calling combinable(), so don't fold it to 32 bits.
       final int sz = lmFeaturizers.size();
-      int h1 = sz*4;
-
+      long signature = sz;
       for (int i=0; i<sz; i++) {
         LMState state = (LMState) hyp.featurizable.getState(lmFeaturizers.get(i));
-        int k1 = state.hashCode();
-        k1 *= c1;
-        k1 = (k1 << 15) | (k1 >>> 17);  // ROTL32(k1,15);
-        k1 *= c2;
-
-        h1 ^= k1;
-        h1 = (h1 << 13) | (h1 >>> 19);  // ROTL32(h1,13);
-        h1 = h1*5+0xe6546b64;
+        signature = Long.rotateLeft(signature, 31) ^ state.hashCode();
+        signature *= 0x9E3779B97F4A7C15L;
       }
-      return h1;
+      return signature;
     }
   }
   
@@ -1,9 +1,8 @@
 package edu.stanford.nlp.mt.decoder.recomb;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.mt.decoder.util.State;
@@ -12,31 +11,49 @@ import edu.stanford.nlp.mt.decoder.util.State;
 /**
  * Implements hypothesis recombination according to the specified recombination
  * filter.
- * 
+ *
+ * The table is a primitive, open-addressing (linear probing) hash table that stores the
+ * 64-bit recombination signature returned by
+ * {@link RecombinationFilter#recombinationHashCode(Object)} along with an int slot into
+ * an array of derivations. Hypotheses with equal signatures are resolved with
+ * {@link RecombinationFilter#combinable(Object, Object)}. No wrapper objects are created
+ * per hypothesis.
+ *
  * @author danielcer
  * @author Spence Green
- * 
+ *
  * @param <S>
  */
 public class RecombinationHash<S extends State<S>> {
 
-  private static final int INITIAL_CAPACITY = 1500;
-  
-  private final Map<FilterWrappedHypothesis, FilterWrappedHypothesis> recombinationHash;
+  // Must be a power of 2. The table is allocated on the first insertion.
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int EMPTY = -1;
+
+  // Hash table
+  private long[] tableSignatures;
+  private int[] tableSlots;
+  private int mask;
+  private int resizeThreshold;
+
+  // Derivation storage, indexed by slot
+  private Object[] derivations;
+  private long[] derivationSignatures;
+  private int size = 0;
+
   // private
   final RecombinationFilter<S> filter;
 
   /**
-	 * 
+	 *
 	 */
   public RecombinationHash(RecombinationFilter<S> filter) {
-    this.recombinationHash = new HashMap<>(INITIAL_CAPACITY);
     this.filter = filter;
   }
 
   /**
    * Result of queryStatus()
-   * 
+   *
    * NOVEL -- The hypothesis is novel and was inserted into the table.
    * COMBINABLE -- The hypothesis could be combined with a better hypothesis
    * SELF -- Hypothesis is already in the table.
@@ -47,17 +64,13 @@ public class RecombinationHash<S extends State<S>> {
   };
 
   public int size() {
-    return recombinationHash.size();
+    return size;
   }
 
   public boolean isBest(S hypothesis) {
-    FilterWrappedHypothesis wrappedHyp = new FilterWrappedHypothesis(
-        hypothesis, filter);
-    FilterWrappedHypothesis filterEquivWrappedHyp = recombinationHash
-        .get(wrappedHyp);
-    if (filterEquivWrappedHyp == null)
-      return false;
-    return filterEquivWrappedHyp.hypothesis == hypothesis;
+    if (size == 0) return false;
+    final int pos = find(hypothesis, filter.recombinationHashCode(hypothesis));
+    return pos >= 0 && derivation(tableSlots[pos]) == hypothesis;
   }
 
   /**
@@ -65,31 +78,32 @@ public class RecombinationHash<S extends State<S>> {
 	 * the re-combined hypothesis, if any.
 	 */
   public Status update(S hypothesis) {
-    FilterWrappedHypothesis wrappedHyp = new FilterWrappedHypothesis(
-        hypothesis, filter);
-    FilterWrappedHypothesis filterEquivWrappedHyp = recombinationHash
-        .get(wrappedHyp);
+    final long signature = filter.recombinationHashCode(hypothesis);
+    final int pos = size == 0 ? EMPTY : find(hypothesis, signature);
 
-    if (filterEquivWrappedHyp == null) {
+    if (pos < 0) {
       lastBestOnQuery = hypothesis;
       lastRedundantOnQuery = null;
-      recombinationHash.put(wrappedHyp, wrappedHyp);
+      insert(hypothesis, signature);
       return Status.NOVEL;
-    
-    } else if (hypothesis == filterEquivWrappedHyp.hypothesis) {
+    }
+
+    final int slot = tableSlots[pos];
+    final S filterEquivHyp = derivation(slot);
+    if (hypothesis == filterEquivHyp) {
       lastBestOnQuery = hypothesis;
       lastRedundantOnQuery = null;
       return Status.SELF;
-    
-    } else if (hypothesis.score() > filterEquivWrappedHyp.hypothesis.score()) {
-      lastRedundantOnQuery = filterEquivWrappedHyp.hypothesis;
+
+    } else if (hypothesis.score() > filterEquivHyp.score()) {
+      lastRedundantOnQuery = filterEquivHyp;
       lastBestOnQuery = hypothesis;
-      filterEquivWrappedHyp.hypothesis = hypothesis;
+      derivations[slot] = hypothesis;
       return Status.BETTER;
-    
+
     } else {
       lastRedundantOnQuery = hypothesis;
-      lastBestOnQuery = filterEquivWrappedHyp.hypothesis;
+      lastBestOnQuery = filterEquivHyp;
       return Status.COMBINABLE;
     }
   }
@@ -106,11 +120,16 @@ public class RecombinationHash<S extends State<S>> {
   }
 
   /**
-	 * 
+	 *
 	 */
   public void put(S hypothesis) {
-    FilterWrappedHypothesis wrappedHyp = new FilterWrappedHypothesis(hypothesis, filter);
-    recombinationHash.put(wrappedHyp, wrappedHyp);
+    final long signature = filter.recombinationHashCode(hypothesis);
+    final int pos = size == 0 ? EMPTY : find(hypothesis, signature);
+    if (pos < 0) {
+      insert(hypothesis, signature);
+    } else {
+      derivations[tableSlots[pos]] = hypothesis;
+    }
   }
 
   public void remove(S hypothesis) {
@@ -118,76 +137,142 @@ public class RecombinationHash<S extends State<S>> {
   }
 
   public void remove(S hypothesis, boolean missingOkay) {
-    FilterWrappedHypothesis wrappedHyp = new FilterWrappedHypothesis(
-        hypothesis, filter);
-    FilterWrappedHypothesis filterEquivWrappedHyp = recombinationHash
-        .get(wrappedHyp);
-    if (filterEquivWrappedHyp == null) {
+    final long signature = filter.recombinationHashCode(hypothesis);
+    final int pos = size == 0 ? EMPTY : find(hypothesis, signature);
+    if (pos < 0) {
       if (missingOkay)
         return;
       throw new RuntimeException("hypothesis not found in recombination hash");
     }
-    if (hypothesis == filterEquivWrappedHyp.hypothesis)
-      recombinationHash.remove(wrappedHyp);
-  }
+    final int slot = tableSlots[pos];
+    if (hypothesis != derivation(slot)) return;
 
-  public class FilterWrappedHypothesis {
-    public S hypothesis;
-    public final RecombinationFilter<S> filter;
-    private final long hashCode;
+    deleteFromTable(pos);
 
-    public FilterWrappedHypothesis(S hyp, RecombinationFilter<S> filter) {
-      this.hypothesis = hyp;
-      this.filter = filter;
-      hashCode = filter.recombinationHashCode(hypothesis);
+    // Keep the derivation array dense by moving the last derivation into the empty slot
+    final int last = size - 1;
+    if (slot != last) {
+      final int lastPos = positionOf(last, derivationSignatures[last]);
+      tableSlots[lastPos] = slot;
+      derivations[slot] = derivations[last];
+      derivationSignatures[slot] = derivationSignatures[last];
     }
+    derivations[last] = null;
+    --size;
+  }
+
+  /**
+   * Get the list of best hypotheses.
+   *
+   * @return
+   */
+  public List<S> derivations() {
+    final List<S> derivationList = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) derivationList.add(derivation(i));
+    return derivationList;
+  }
+
+  @Override
+  public String toString() {
+    return derivations().stream().map(h -> h.toString()).collect(Collectors.joining(" ||| "));
+  }
+
+  @SuppressWarnings("unchecked")
+  private S derivation(int slot) {
+    return (S) derivations[slot];
+  }
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      
-      } else if (!(o instanceof RecombinationHash.FilterWrappedHypothesis)) {
-        return false;
-
-      } else {
-        FilterWrappedHypothesis wrappedHyp = (FilterWrappedHypothesis) o;
-        if (wrappedHyp.hypothesis == this.hypothesis) {
-          return true;
-        } else if (hashCode != wrappedHyp.hashCode) {
-          return false;
-        } else {
-          boolean isCombinable = filter.combinable(this.hypothesis, wrappedHyp.hypothesis);
-          return isCombinable;
+  /**
+   * Returns the table position of the hypothesis that is filter-equivalent to
+   * <code>hypothesis</code>, or a negative value if there is no such hypothesis.
+   */
+  private int find(S hypothesis, long signature) {
+    for (int pos = mix(signature) & mask; tableSlots[pos] != EMPTY; pos = (pos + 1) & mask) {
+      if (tableSignatures[pos] == signature) {
+        final S candidate = derivation(tableSlots[pos]);
+        if (candidate == hypothesis || filter.combinable(hypothesis, candidate)) {
+          return pos;
         }
       }
     }
+    return EMPTY;
+  }
+
+  /**
+   * Returns the table position that points to a derivation slot.
+   */
+  private int positionOf(int slot, long signature) {
+    int pos = mix(signature) & mask;
+    while (tableSlots[pos] != slot) pos = (pos + 1) & mask;
+    return pos;
+  }
 
-    @Override
-    public String toString() {
-      return hypothesis.toString();
+  private void insert(S hypothesis, long signature) {
+    if (tableSlots == null) {
+      allocate(INITIAL_CAPACITY);
+    } else if (size >= resizeThreshold) {
+      allocate(tableSlots.length << 1);
     }
-    
-    @Override
-    public int hashCode() {
-      return ((int) (hashCode >> 32)) ^ ((int) (hashCode & 0xffffffff));
+    final int slot = size++;
+    derivations[slot] = hypothesis;
+    derivationSignatures[slot] = signature;
+    insertIntoTable(slot, signature);
+  }
+
+  private void insertIntoTable(int slot, long signature) {
+    int pos = mix(signature) & mask;
+    while (tableSlots[pos] != EMPTY) pos = (pos + 1) & mask;
+    tableSignatures[pos] = signature;
+    tableSlots[pos] = slot;
+  }
+
+  /**
+   * Backward-shift deletion for linear probing. Does not require tombstones.
+   */
+  private void deleteFromTable(int pos) {
+    int i = pos;
+    while (true) {
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (tableSlots[j] == EMPTY) {
+          tableSlots[i] = EMPTY;
+          return;
+        }
+        final int k = mix(tableSignatures[j]) & mask;
+        // Can the entry at j be moved to i?
+        if (i <= j ? (i >= k || k > j) : (i >= k && k > j)) break;
+      }
+      tableSignatures[i] = tableSignatures[j];
+      tableSlots[i] = tableSlots[j];
+      i = j;
     }
   }
 
   /**
-   * Get the list of best hypotheses.
-   * 
-   * @return
+   * (Re-)allocate the table and derivation arrays.
    */
-  public List<S> derivations() {
-    final List<S> derivations = new ArrayList<>(recombinationHash.size());
-    for (FilterWrappedHypothesis hyp : recombinationHash.keySet()) derivations.add(hyp.hypothesis);
-    return derivations;
+  private void allocate(int capacity) {
+    tableSignatures = new long[capacity];
+    tableSlots = new int[capacity];
+    Arrays.fill(tableSlots, EMPTY);
+    mask = capacity - 1;
+    resizeThreshold = capacity >> 1;
+    derivations = derivations == null ? new Object[resizeThreshold] : Arrays.copyOf(derivations, resizeThreshold);
+    derivationSignatures = derivationSignatures == null ? new long[resizeThreshold] :
+      Arrays.copyOf(derivationSignatures, resizeThreshold);
+    for (int i = 0; i < size; ++i) insertIntoTable(i, derivationSignatures[i]);
   }
-  
-  @Override
-  public String toString() {
-    return derivations().stream().map(h -> h.toString()).collect(Collectors.joining(" ||| "));
+
+  /**
+   * Finalization step of MurmurHash3. Spreads the signature across the table.
+   */
+  private static int mix(long signature) {
+    signature ^= signature >>> 33;
+    signature *= 0xff51afd7ed558ccdL;
+    signature ^= signature >>> 33;
+    signature *= 0xc4ceb9fe1a85ec53L;
+    signature ^= signature >>> 33;
+    return (int) signature;
   }
 }
@@ -44,6 +44,17 @@ public class RecombinationHistory<S extends State<S>> {
    */
   public void remove(S pruned) { historyMap.remove(pruned); }
   
+  /**
+   * Copy the recombinations of a retained state from another history.
+   * 
+   * @param retainedState
+   * @param other
+   */
+  public void copy(S retainedState, RecombinationHistory<S> other) {
+    List<S> discardedList = other.historyMap.get(retainedState);
+    if (discardedList != null) historyMap.put(retainedState, new ArrayList<>(discardedList));
+  }
+  
   /**
    * 
    */
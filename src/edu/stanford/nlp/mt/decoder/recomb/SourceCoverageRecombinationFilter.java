@@ -24,6 +24,6 @@ public class SourceCoverageRecombinationFilter<TK, FV> implements
 
   @Override
   public long recombinationHashCode(Derivation<TK, FV> hyp) {
-    return hyp.sourceCoverage.hashCode();
+    return hyp.sourceCoverage.longHashCode();
   }
 }
@@ -2,7 +2,9 @@ package edu.stanford.nlp.mt.decoder.util;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
 import edu.stanford.nlp.mt.util.DenseFeatureValueCollection;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.IOTools;
@@ -24,6 +26,13 @@ public class DenseScorer implements Scorer<String> {
   private final Index<String> featureIndex;
   private double[] weights;
   private final boolean sharedFeatureIndex;
+  private long weightsVersion = -1;
+  private DenseWeights denseWeights;
+
+  // Weights indexed by global feature id (integer feature mode). Created when a
+  // featurizer uses templates.
+  private volatile double[] idWeights;
+  private Counter<String> idWeightsSource;
 
   public DenseScorer(String filename) {
     sharedFeatureIndex = false;
@@ -57,8 +66,14 @@ public class DenseScorer implements Scorer<String> {
   private double getIncrementalScoreHash(
       Collection<FeatureValue<String>> features) {
     double score = 0;
+    double[] idw = idWeights;
 
     for (FeatureValue<String> feature : features) {
+      if (feature.id >= 0) {
+        if (idw == null) idw = indexWeights();
+        if (feature.id < idw.length) score += idw[feature.id] * feature.value;
+        continue;
+      }
       int index = featureIndex.indexOf(feature.name);
       if (index >= 0 && index < weights.length) {
         score += weights[index] * feature.value;
@@ -68,6 +83,23 @@ public class DenseScorer implements Scorer<String> {
     return score;
   }
 
+  @Override
+  public void getIncrementalScores(FeatureBatch<String> batch, double[] scores) {
+    final double[] w = batch.weights();
+    double[] idw = idWeights;
+    for (int k = 0, n = batch.numFeatures(); k < n; ++k) {
+      final int id = batch.id(k);
+      if (id >= 0) {
+        if (idw == null) idw = indexWeights();
+        w[k] = id < idw.length ? idw[id] : 0.0;
+      } else {
+        final int index = featureIndex.indexOf(batch.name(k));
+        w[k] = index >= 0 && index < weights.length ? weights[index] : 0.0;
+      }
+    }
+    batch.innerProducts(scores);
+  }
+
   @Override
   public boolean hasNonZeroWeight(String featureName) {
     int idx = featureIndex.indexOf(featureName);
@@ -76,6 +108,8 @@ public class DenseScorer implements Scorer<String> {
 
   @Override
   public void updateWeights(Counter<String> featureWts) {
+    weightsVersion = -1;
+    denseWeights = null;
     for (String key : featureWts.keySet()) {
       // TODO(spenceg) - find out what is generating 'null' model weights
       // for now, we'll just have the decoding model ignore them
@@ -88,10 +122,55 @@ public class DenseScorer implements Scorer<String> {
       if (key == null) continue;
       weights[featureIndex.indexOf(key)] = featureWts.getCount(key);
     }
+    idWeightsSource = featureWts;
+    if (FeatureTemplate.inUse()) indexWeights();
+  }
+
+  private synchronized double[] indexWeights() {
+    final double[] idw = FeatureTemplate.toArray(idWeightsSource, null);
+    idWeights = idw;
+    return idw;
+  }
+
+  @Override
+  public double[] getWeights(List<String> featureNames) {
+    // Publish the names and the weights together, since worker threads may share this scorer
+    final DenseWeights cached = denseWeights;
+    if (cached != null && (cached.featureNames == featureNames || cached.featureNames.equals(featureNames))) {
+      return cached.weights;
+    }
+    final double[] w = new double[featureNames.size()];
+    for (int i = 0; i < w.length; ++i) {
+      final int index = featureIndex.indexOf(featureNames.get(i));
+      w[i] = index >= 0 && index < weights.length ? weights[index] : 0.0;
+    }
+    denseWeights = new DenseWeights(featureNames, w);
+    return w;
+  }
+
+  @Override
+  public void updateWeights(WeightSnapshot<String> snapshot) {
+    if (snapshot.version == weightsVersion) return;
+    updateWeights(snapshot.weights);
+    weightsVersion = snapshot.version;
+  }
+
+  @Override
+  public long getWeightsVersion() {
+    return weightsVersion;
   }
 
   @Override
   public void saveWeights(String filename) throws IOException {
     throw new UnsupportedOperationException();
   }
+
+  private static class DenseWeights {
+    private final List<String> featureNames;
+    private final double[] weights;
+    private DenseWeights(List<String> featureNames, double[] weights) {
+      this.featureNames = featureNames;
+      this.weights = weights;
+    }
+  }
 }
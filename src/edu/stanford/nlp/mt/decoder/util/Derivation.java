@@ -12,6 +12,7 @@ import edu.stanford.nlp.mt.util.DTUFeaturizable;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.Featurizable;
 import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.ParentLinkedSequence;
 import edu.stanford.nlp.mt.util.PhraseAlignment;
 import edu.stanford.nlp.mt.util.Sequence;
 import edu.stanford.nlp.mt.util.Sequences;
@@ -65,8 +66,13 @@ State<Derivation<TK, FV>> {
   public final CoverageSet sourceCoverage;
   public Featurizable<TK, FV> featurizable;
 
-  // Features extracted to score this derivation
+  // Features extracted to score this derivation. In dense-only mode, these are the
+  // rule features, and the derivation features are in denseFeatures.
   public List<FeatureValue<FV>> features;
+  
+  // Dense-only mode (see FeatureExtractor.isDenseOnly()). Otherwise null.
+  public double[] denseFeatures;
+  public List<FV> denseFeatureNames;
 
   // Only used for diverse n-best extraction
   public Derivation<TK,FV> bestChild;
@@ -133,6 +139,11 @@ State<Derivation<TK, FV>> {
   /**
    * Constructor for standard phrase-based (left-to-right) derivation expansion.
    * 
+   * If <code>scorer</code> is null, then the score of the features is not added to
+   * <code>score</code>. The caller must add it, e.g., after scoring a <code>FeatureBatch</code>.
+   * This is not supported in dense-only mode, in which <code>features</code> only contains
+   * the rule features.
+   * 
    * @param sourceInputId
    * @param rule
    * @param insertionPosition
@@ -159,21 +170,28 @@ State<Derivation<TK, FV>> {
     this.prefixCompleted = outputSpace == null ? true : (this.length >= outputSpace.getPrefixLength());
     this.prefixLength = outputSpace == null ? 0 : outputSpace.getPrefixLength();
     sourceSequence = base.sourceSequence;
-    targetSequence = base.targetSequence.concat(rule.abstractRule.target);
+    targetSequence = ParentLinkedSequence.concat(base.targetSequence, rule.abstractRule.target);
     untranslatedSourceTokens = this.sourceSequence.size()
     - this.sourceCoverage.cardinality();
     linearDistortion = (base.rule == null ? rule.sourcePosition
         : base.rule.linearDistortion(rule));
     
-    featurizable = new Featurizable<>(this, sourceInputId, featurizer.getNumDerivationFeaturizers());
-    
-    features = featurizer.featurize(featurizable);
-    features.addAll(rule.cachedFeatureList);
-    
-    List<FeatureValue<FV>> nonLocalRuleAugments = featurizer.nonLocalAugmentRuleFeatures(rule.cachedFeatureList, this);
-    if(nonLocalRuleAugments != null) features.addAll(nonLocalRuleAugments);
+    featurizable = new Featurizable<>(this, sourceInputId, featurizer.getNumDerivationFeaturizers(),
+        featurizer.getNumStateWords());
     
-    score = base.score + scorer.getIncrementalScore(features);
+    if (featurizer.isDenseOnly()) {
+      featurizeDense(featurizer);
+      score = scorer == null ? base.score : base.score + denseScore(scorer);
+      
+    } else {
+      features = featurizer.featurize(featurizable);
+      features.addAll(rule.cachedFeatureList);
+
+      List<FeatureValue<FV>> nonLocalRuleAugments = featurizer.nonLocalAugmentRuleFeatures(rule.cachedFeatureList, this);
+      if(nonLocalRuleAugments != null) features.addAll(nonLocalRuleAugments);
+
+      score = scorer == null ? base.score : base.score + scorer.getIncrementalScore(features);
+    }
     h = (Double.isInfinite(base.h)) ? base.h : base.h
         + heuristic.getHeuristicDelta(this, rule.sourceCoverage);
     // System.err.printf("h: %f %f %d %s\n", baseHyp.h,
@@ -183,6 +201,42 @@ State<Derivation<TK, FV>> {
     depth = base.depth + 1;    
   }
 
+  /**
+   * Constructor that re-attaches the last rule application of <code>edge</code> to
+   * <code>base</code>, which must be recombinable with <code>edge.parent</code>. The
+   * local features and the score delta of the edge are reused, so the featurizers are
+   * not run. Use to build n-best derivations from lattice paths.
+   * 
+   * @param sourceInputId
+   * @param edge
+   * @param base
+   */
+  public Derivation(int sourceInputId, Derivation<TK, FV> edge, Derivation<TK, FV> base) {
+    this.id = nextId.incrementAndGet();
+    this.insertionPosition = base.length;
+    this.rule = edge.rule;
+    this.parent = base;
+    this.sourceInputProperties = base.sourceInputProperties;
+    this.sourceCoverage = base.sourceCoverage.clone();
+    this.sourceCoverage.or(rule.sourceCoverage);
+    this.length = insertionPosition + rule.abstractRule.target.size();
+    this.prefixLength = edge.prefixLength;
+    this.prefixCompleted = this.length >= prefixLength;
+    sourceSequence = base.sourceSequence;
+    targetSequence = ParentLinkedSequence.concat(base.targetSequence, rule.abstractRule.target);
+    untranslatedSourceTokens = this.sourceSequence.size()
+    - this.sourceCoverage.cardinality();
+    linearDistortion = (base.rule == null ? rule.sourcePosition
+        : base.rule.linearDistortion(rule));
+    featurizable = new Featurizable<>(this, sourceInputId, edge.featurizable);
+    features = edge.features;
+    denseFeatures = edge.denseFeatures;
+    denseFeatureNames = edge.denseFeatureNames;
+    score = base.score + (edge.score - edge.parent.score);
+    h = edge.h;
+    depth = base.depth + 1;
+  }
+
   /**
    * Constructor for DTU.
    * 
@@ -216,14 +270,14 @@ State<Derivation<TK, FV>> {
     this.length = (insertionPosition < base.length) ? base.length
         : insertionPosition + targetPhrase.size();
     sourceSequence = base.sourceSequence;
-    targetSequence = base.targetSequence.concat(targetPhrase);
+    targetSequence = ParentLinkedSequence.concat(base.targetSequence, targetPhrase);
     untranslatedSourceTokens = this.sourceSequence.size()
     - this.sourceCoverage.cardinality();
     linearDistortion = (base.rule == null ? rule.sourcePosition
         : base.rule.linearDistortion(rule));
 
     featurizable = new DTUFeaturizable<>(this, abstractRule,
-        sourceInputId, featurizer.getNumDerivationFeaturizers(), targetPhrase,
+        sourceInputId, featurizer.getNumDerivationFeaturizers(), featurizer.getNumStateWords(), targetPhrase,
         hasPendingPhrases, segmentIdx);
 
     features = featurizer.featurize(featurizable);
@@ -263,17 +317,54 @@ State<Derivation<TK, FV>> {
     this.rule = newRule;
     this.length = length + targetSpan.size();
     this.prefixCompleted = (this.length >= this.prefixLength);
-    targetSequence = targetSequence.concat(targetSpan);
-    featurizable = new Featurizable<>(this, sourceInputId, featurizer.getNumDerivationFeaturizers());
+    targetSequence = ParentLinkedSequence.concat(targetSequence, targetSpan);
+    featurizable = new Featurizable<>(this, sourceInputId, featurizer.getNumDerivationFeaturizers(),
+        featurizer.getNumStateWords());
+    double baseScore = parent == null ? 0.0 : parent.score;
+    if (featurizer.isDenseOnly()) {
+      featurizeDense(featurizer);
+      score = baseScore + denseScore(scorer);
+      return;
+    }
+    denseFeatures = null;
+    denseFeatureNames = null;
     features = featurizer.featurize(featurizable);
     features.addAll(rule.cachedFeatureList);
     
     List<FeatureValue<FV>> nonLocalRuleAugments = featurizer.nonLocalAugmentRuleFeatures(rule.cachedFeatureList, this);
     if(nonLocalRuleAugments != null) features.addAll(nonLocalRuleAugments);
     
-    double baseScore = parent == null ? 0.0 : parent.score;
     score = baseScore + scorer.getIncrementalScore(features);    
   }
+
+  /**
+   * Dense-only mode: extract the derivation features into an array, and
+   * reference the rule features, which are shared with the rule.
+   * 
+   * @param featurizer
+   */
+  private void featurizeDense(FeatureExtractor<TK, FV> featurizer) {
+    denseFeatureNames = featurizer.getDenseFeatureNames();
+    denseFeatures = featurizer.denseFeaturize(featurizable);
+    features = rule.cachedFeatureList;
+  }
+  
+  /**
+   * Dense-only mode: the score of the rule features plus the inner product of the 
+   * derivation features with their weights.
+   * 
+   * @param scorer
+   * @return
+   */
+  private double denseScore(Scorer<FV> scorer) {
+    final double[] weights = scorer.getWeights(denseFeatureNames);
+    double score = Double.isNaN(rule.cachedFeatureScore) ? 
+        scorer.getIncrementalScore(features) : rule.cachedFeatureScore;
+    for (int i = 0; i < denseFeatures.length; ++i) {
+      score += weights[i] * denseFeatures[i];
+    }
+    return score;
+  }
   
   @Override
   public String toString() {
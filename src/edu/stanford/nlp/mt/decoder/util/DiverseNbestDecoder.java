@@ -303,11 +303,12 @@ public class DiverseNbestDecoder<TK,FV> {
       p = p.bestChild;
     }
 
-    // Iterate over derivation list to make the final derivation
+    // Iterate over derivation list to make the final derivation. Nodes are re-attached
+    // to recombined parents with their stored features.
     Derivation<TK, FV> goalHyp = null;
     for (Derivation<TK, FV> node : nodes) {
-      goalHyp = goalHyp == null ? node : new Derivation<>(sourceInputId, node.rule, goalHyp.length, 
-          goalHyp, featurizer, scorer, heuristic, outputSpace);
+      goalHyp = goalHyp == null || node.parent == goalHyp ? node : 
+        new Derivation<>(sourceInputId, node, goalHyp);
     }
     return goalHyp;
   }
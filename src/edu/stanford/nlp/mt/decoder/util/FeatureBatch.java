@@ -0,0 +1,155 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import edu.stanford.nlp.mt.util.FeatureValue;
+
+/**
+ * The feature vectors of a batch of derivations in flat parallel arrays: the
+ * global id (see <code>FeatureTemplate</code>), the name of features without an id,
+ * and the value. Scorers fill the weight of each feature in <code>weights()</code>,
+ * and then compute all scores with <code>innerProducts()</code>.
+ *
+ * NOTE: This class is not threadsafe. Use one batch per thread.
+ *
+ * @author Spence Green
+ *
+ * @param <FV>
+ */
+public class FeatureBatch<FV> {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private int size = 0;
+  private int[] offsets = new int[65];
+  private Collection<FeatureValue<FV>>[] vectors;
+
+  private int numFeatures = 0;
+  private int[] ids = new int[INITIAL_CAPACITY];
+  private FV[] names;
+  private double[] values = new double[INITIAL_CAPACITY];
+  private double[] weights = new double[INITIAL_CAPACITY];
+  private double[] products = new double[INITIAL_CAPACITY];
+
+  /**
+   * Constructor.
+   */
+  @SuppressWarnings("unchecked")
+  public FeatureBatch() {
+    vectors = (Collection<FeatureValue<FV>>[]) new Collection<?>[offsets.length - 1];
+    names = (FV[]) new Object[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Add a feature vector to the batch. The batch holds a reference to the vector
+   * until <code>clear()</code>.
+   *
+   * @param vector
+   * @return The index of the vector in the batch.
+   */
+  public int add(Collection<FeatureValue<FV>> vector) {
+    ensureCapacity(numFeatures + vector.size());
+    if (size + 1 >= offsets.length) {
+      offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+      vectors = Arrays.copyOf(vectors, offsets.length - 1);
+    }
+    for (FeatureValue<FV> feature : vector) {
+      ids[numFeatures] = feature.id;
+      names[numFeatures] = feature.id < 0 ? feature.name : null;
+      values[numFeatures++] = feature.value;
+    }
+    vectors[size] = vector;
+    offsets[++size] = numFeatures;
+    return size - 1;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > values.length) {
+      final int newCapacity = Math.max(capacity, 2 * values.length);
+      ids = Arrays.copyOf(ids, newCapacity);
+      names = Arrays.copyOf(names, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+      weights = Arrays.copyOf(weights, newCapacity);
+      products = Arrays.copyOf(products, newCapacity);
+    }
+  }
+
+  /**
+   * Number of feature vectors in the batch.
+   *
+   * @return
+   */
+  public int size() { return size; }
+
+  /**
+   * Total number of features in the batch.
+   *
+   * @return
+   */
+  public int numFeatures() { return numFeatures; }
+
+  /**
+   * The global id of the k-th feature in the batch, or -1 if the feature has no id.
+   *
+   * @param k
+   * @return
+   */
+  public int id(int k) { return ids[k]; }
+
+  /**
+   * The name of the k-th feature in the batch. Null if the feature has an id.
+   *
+   * @param k
+   * @return
+   */
+  public FV name(int k) { return names[k]; }
+
+  /**
+   * The i-th feature vector.
+   *
+   * @param i
+   * @return
+   */
+  public Collection<FeatureValue<FV>> vector(int i) { return vectors[i]; }
+
+  /**
+   * Per-feature weights. The first <code>numFeatures()</code> entries must be set
+   * by the scorer before calling <code>innerProducts()</code>.
+   *
+   * @return
+   */
+  public double[] weights() { return weights; }
+
+  /**
+   * Compute the inner product of each feature vector with its weights.
+   *
+   * @param scores Output array of length at least <code>size()</code>.
+   */
+  public void innerProducts(double[] scores) {
+    final int n = numFeatures;
+    final double[] v = values;
+    final double[] w = weights;
+    final double[] p = products;
+    for (int k = 0; k < n; ++k) {
+      p[k] = v[k] * w[k];
+    }
+    for (int i = 0; i < size; ++i) {
+      double score = 0.0;
+      for (int k = offsets[i], end = offsets[i+1]; k < end; ++k) {
+        score += p[k];
+      }
+      scores[i] = score;
+    }
+  }
+
+  /**
+   * Remove all feature vectors.
+   */
+  public void clear() {
+    Arrays.fill(names, 0, numFeatures, null);
+    Arrays.fill(vectors, 0, size, null);
+    size = 0;
+    numFeatures = 0;
+  }
+}
@@ -46,32 +46,105 @@ public class HyperedgeBundle<TK,FV> {
    */
   public List<Consequent<TK,FV>> nextSuccessors(Consequent<TK,FV> antecedent) {
     List<Consequent<TK,FV>> consequentList = new ArrayList<>(2);
+    nextSuccessors(antecedent, consequentList);
+    return consequentList;
+  }
+
+  /**
+   * Appends the unsorted, ungenerated successors of this antecedent to a caller-supplied
+   * list. Avoids allocating a list for each call in the inner loop of the decoder.
+   * 
+   * @param antecedent
+   * @param consequentList
+   */
+  public void nextSuccessors(Consequent<TK,FV> antecedent, List<Consequent<TK,FV>> consequentList) {
+    final int[] successors = new int[4];
+    final int numSuccessors = antecedent == null ? nextSuccessors(-1, -1, successors) :
+      nextSuccessors(antecedent.itemId, antecedent.ruleId, successors);
+    for (int i = 0; i < numSuccessors; ++i) {
+      final int itemId = successors[2*i];
+      final int ruleId = successors[2*i+1];
+      consequentList.add(new Consequent<TK,FV>(itemList.get(itemId), ruleList.get(ruleId), 
+          this, itemId, ruleId));
+    }
+  }
+
+  /**
+   * Primitive version of <code>nextSuccessors()</code> for callers that store consequents
+   * as (item id, rule id) pairs. Writes the pairs of the successors of the antecedent to
+   * <code>successors</code>, which must have length at least 4.
+   * 
+   * @param itemId The item id of the antecedent, or -1 for the top-left corner of the grid.
+   * @param ruleId The rule id of the antecedent, or -1 for the top-left corner of the grid.
+   * @param successors
+   * @return The number of successors in the range [0,2].
+   */
+  public int nextSuccessors(int itemId, int ruleId, int[] successors) {
+    int numSuccessors = 0;
     if (expandedItems.cardinality() == 0) {
       // Top-left corner of the grid
-      assert antecedent == null || (antecedent.itemId < 0 && antecedent.ruleId < 0);
-      //System.err.println("top left corner " + itemList.size() + " " + ruleList.size());
-      consequentList.add(new Consequent<TK,FV>(itemList.get(0), ruleList.get(0), this, 0, 0));
+      assert itemId < 0 && ruleId < 0;
+      successors[0] = 0;
+      successors[1] = 0;
       expandedItems.set(0);
+      numSuccessors = 1;
 
-    } else if (antecedent != null) {
+    } else if (itemId >= 0) {
       // Move down in the grid (items)
-      int lastItem = antecedent.itemId;
-      int lastRule = antecedent.ruleId;
-      int nextItem = getIndex(lastItem+1, lastRule);
-      if ( ! expandedItems.get(nextItem) && lastItem+1 < itemList.size()) {
-        consequentList.add(new Consequent<TK,FV>(itemList.get(lastItem+1), ruleList.get(lastRule), 
-            this, lastItem+1, lastRule));
+      int nextItem = getIndex(itemId+1, ruleId);
+      if ( ! expandedItems.get(nextItem) && itemId+1 < itemList.size()) {
+        successors[2*numSuccessors] = itemId+1;
+        successors[2*numSuccessors+1] = ruleId;
+        ++numSuccessors;
         expandedItems.set(nextItem);
       }
       // Move right in the grid (rules)
-      int nextRule = getIndex(lastItem, lastRule+1);
-      if ( ! expandedItems.get(nextRule) && lastRule+1 < ruleList.size()) {
-        consequentList.add(new Consequent<TK,FV>(itemList.get(lastItem), ruleList.get(lastRule+1), 
-            this, lastItem, lastRule+1));
+      int nextRule = getIndex(itemId, ruleId+1);
+      if ( ! expandedItems.get(nextRule) && ruleId+1 < ruleList.size()) {
+        successors[2*numSuccessors] = itemId;
+        successors[2*numSuccessors+1] = ruleId+1;
+        ++numSuccessors;
         expandedItems.set(nextRule);
       }
     }
-    return consequentList;
+    return numSuccessors;
+  }
+
+  /**
+   * The antecedent derivation with the given item id.
+   */
+  public Derivation<TK,FV> getItem(int itemId) {
+    return itemList.get(itemId);
+  }
+
+  /**
+   * The rule with the given rule id.
+   */
+  public ConcreteRule<TK,FV> getRule(int ruleId) {
+    return ruleList.get(ruleId);
+  }
+
+  /**
+   * Cheap estimate of score + h for a consequent that does not require building
+   * the derivation. The future cost of the rule span is approximated by the best
+   * rule in the bundle, and then replaced by the isolation score of this rule.
+   * 
+   * @param itemId
+   * @param ruleId
+   * @return
+   */
+  public double estimatedScore(int itemId, int ruleId) {
+    final Derivation<TK,FV> antecedent = itemList.get(itemId);
+    return antecedent.score + antecedent.h + (ruleList.get(ruleId).isolationScore - bestRuleScore());
+  }
+
+  /**
+   * The isolation score of the highest-scoring rule in this bundle.
+   * 
+   * @return
+   */
+  public double bestRuleScore() {
+    return ruleList.get(0).isolationScore;
   }
 
   private int getIndex(int itemId, int ruleId) {
@@ -103,8 +176,13 @@ public class HyperedgeBundle<TK,FV> {
       this.ruleId = ruleId;
     }
 
+    /**
+     * See <code>HyperedgeBundle.estimatedScore()</code>.
+     * 
+     * @return
+     */
     public double estimatedScore() {
-      return antecedent.score + rule.isolationScore + (antecedent.h - rule.isolationScore);
+      return bundle.estimatedScore(itemId, ruleId);
     }
 
     @Override
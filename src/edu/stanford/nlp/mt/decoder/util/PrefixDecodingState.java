@@ -0,0 +1,139 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.mt.decoder.recomb.RecombinationHistory;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * The target-cardinality beams of the last prefix decoded for a source input. In
+ * interactive MT the next prefix usually extends the last one, so the next decoder
+ * can resume from the beams that cover the shared part of the two prefixes instead
+ * of searching from the root.
+ *
+ * Only the beams that cover complete words of the last prefix are resumable. The last
+ * word of the last prefix may have been incomplete, or matched by a rule that straddles
+ * the end of the prefix.
+ *
+ * Not threadsafe. Decoders take the state from a <code>RuleQueryCache.Entry</code>
+ * and return a new state once the lattice is no longer in use. The derivations and their
+ * featurizables are not copied, so the state relies on two invariants:
+ * <ul>
+ * <li>Derivations and featurizables are immutable after construction, except for the
+ * n-best annotations <code>bestChild</code> and <code>completionScore</code>. These are
+ * written only by n-best extraction of the decoder that owns the lattice.</li>
+ * <li>The state has one owner at a time. The publishing decoder does not extract from the
+ * lattice after publishing it, and the state is taken atomically from the cache entry. The
+ * first thread that resumes a beam becomes the owner, and any other thread that resumes
+ * from the state gets an <code>IllegalStateException</code>.</li>
+ * </ul>
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public class PrefixDecodingState<TK,FV> {
+
+  public final Sequence<TK> prefix;
+  private final int distortionLimit;
+  private final boolean allowIncompletePrefix;
+
+  // Derivations in beam i cover the first i words of the prefix. Beam 0 is not stored.
+  private final List<List<Derivation<TK,FV>>> beams;
+  private final RecombinationHistory<Derivation<TK,FV>> recombinationHistory;
+
+  // Every node of the lattice that the beams can reach, including the ancestors
+  private final List<Derivation<TK,FV>> lattice;
+  private Thread owner = null;
+
+  /**
+   * Constructor. Snapshots the contents of the target-cardinality beams and their
+   * recombinations.
+   *
+   * @param prefix
+   * @param tgtBeams
+   * @param recombinationHistory May be null.
+   * @param distortionLimit
+   * @param allowIncompletePrefix
+   */
+  public PrefixDecodingState(Sequence<TK> prefix, List<Beam<Derivation<TK,FV>>> tgtBeams,
+      RecombinationHistory<Derivation<TK,FV>> recombinationHistory, int distortionLimit,
+      boolean allowIncompletePrefix) {
+    this.prefix = prefix;
+    this.distortionLimit = distortionLimit;
+    this.allowIncompletePrefix = allowIncompletePrefix;
+    this.recombinationHistory = new RecombinationHistory<>();
+    this.beams = new ArrayList<>(tgtBeams.size());
+    beams.add(Collections.emptyList());
+    final Set<Derivation<TK,FV>> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 1, sz = tgtBeams.size(); i < sz; ++i) {
+      List<Derivation<TK,FV>> beam = new ArrayList<>(tgtBeams.get(i).size());
+      for (Derivation<TK,FV> d : tgtBeams.get(i)) {
+        beam.add(d);
+        if (recombinationHistory != null) this.recombinationHistory.copy(d, recombinationHistory);
+        addAncestors(d, nodes);
+        for (Derivation<TK,FV> recombined : this.recombinationHistory.recombinations(d)) {
+          addAncestors(recombined, nodes);
+        }
+      }
+      beams.add(Collections.unmodifiableList(beam));
+    }
+    this.lattice = new ArrayList<>(nodes);
+  }
+
+  private static <TK,FV> void addAncestors(Derivation<TK,FV> d, Set<Derivation<TK,FV>> nodes) {
+    for (; d != null && nodes.add(d); d = d.parent);
+  }
+
+  /**
+   * Return the number of beams (excluding the root beam) that can be resumed for a new prefix.
+   * Returns 0 if the state is not compatible with the new prefix.
+   *
+   * @param newPrefix
+   * @param distortionLimit
+   * @param allowIncompletePrefix
+   * @return
+   */
+  public int resumableLength(Sequence<TK> newPrefix, int distortionLimit, boolean allowIncompletePrefix) {
+    if (distortionLimit != this.distortionLimit || allowIncompletePrefix != this.allowIncompletePrefix) return 0;
+    // The last beam of the new prefix must be searched so that straddling rules are considered
+    final int maxLength = Math.min(prefix.size(), newPrefix.size()) - 1;
+    int i = 0;
+    while (i < maxLength && prefix.get(i).equals(newPrefix.get(i))) ++i;
+    return i;
+  }
+
+  /**
+   * Return the derivations in the target-cardinality beam <code>i</code>, and copy
+   * their recombinations to <code>history</code>. The first call makes the calling thread
+   * the owner of the state, and clears the n-best annotations that were added to the
+   * lattice when it was last extracted.
+   *
+   * @param i
+   * @param history May be null.
+   * @return An unmodifiable list.
+   * @throws IllegalStateException if the state is owned by another thread.
+   */
+  public List<Derivation<TK,FV>> resume(int i, RecombinationHistory<Derivation<TK,FV>> history) {
+    final Thread thread = Thread.currentThread();
+    if (owner == null) {
+      owner = thread;
+      for (Derivation<TK,FV> d : lattice) {
+        d.bestChild = null;
+        d.completionScore = 0.0;
+      }
+    } else if (owner != thread) {
+      throw new IllegalStateException("Prefix decoding state is owned by another thread");
+    }
+    final List<Derivation<TK,FV>> beam = beams.get(i);
+    if (history != null) {
+      for (Derivation<TK,FV> d : beam) history.copy(d, recombinationHistory);
+    }
+    return beam;
+  }
+}
@@ -281,6 +281,16 @@ public class RuleGrid<TK,FV> implements Iterable<ConcreteRule<TK,FV>> {
     return grid[offset] == null ? Collections.emptyList() : grid[offset];
   }
 
+  /**
+   * Sort all spans. Afterwards <code>get()</code> does not modify the grid, so the
+   * grid can be shared across threads.
+   */
+  public void sortAll() {
+    for (int i = 0; i < sequenceLength; ++i) {
+      for (int j = i; j < sequenceLength; ++j) get(i, j);
+    }
+  }
+
   /**
    * 
    * @param startPos
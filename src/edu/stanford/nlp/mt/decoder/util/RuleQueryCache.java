@@ -0,0 +1,230 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.InputProperty;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * LRU cache of translation model queries for recently decoded source inputs. Each
+ * entry holds the rule list, the source rule grid, and the future cost table of
+ * the search heuristic. Repeated decodes of the same source under the same weights
+ * (e.g., successive prefix requests in interactive MT, or n-best re-decoding) skip
+ * the TM query, rule grid construction, and heuristic setup.
+ *
+ * Rule isolation scores depend on the model weights, so keys include the version of
+ * the weight snapshot installed in the scorer (see <code>WeightSnapshot</code>). The
+ * first lookup under a newer version drops all entries, and entries computed under
+ * older versions are not inserted.
+ *
+ * Entries also hold the beams of the last prefix decoded for the source, which
+ * allows incremental prefix decoding across requests (see <code>PrefixDecodingState</code>).
+ *
+ * This class is threadsafe. Entries are read-only once they are published.
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public class RuleQueryCache<TK,FV> {
+
+  private final int capacity;
+  private final Map<Key<TK>,Entry<TK,FV>> cache;
+  private long weightsVersion = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity Maximum number of source inputs in the cache.
+   */
+  @SuppressWarnings("serial")
+  public RuleQueryCache(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+    this.capacity = capacity;
+    this.cache = new LinkedHashMap<Key<TK>,Entry<TK,FV>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key<TK>,RuleQueryCache.Entry<TK,FV>> eldest) {
+        return size() > RuleQueryCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * Create a lookup key for a source input. Returns null if the rule query depends on
+   * request-specific state that is not part of the key (a foreground TM, weights,
+   * or annotations supplied with the request), or if the weights were not installed
+   * from a snapshot.
+   *
+   * @param source
+   * @param inputProperties
+   * @param weightsVersion The scorer weights version (<code>Scorer.getWeightsVersion()</code>).
+   * @return
+   */
+  public Key<TK> newKey(Sequence<TK> source, InputProperties inputProperties, long weightsVersion) {
+    if (weightsVersion < 0 ||
+        inputProperties.containsKey(InputProperty.ForegroundTM) ||
+        inputProperties.containsKey(InputProperty.ModelWeights) ||
+        inputProperties.containsKey(InputProperty.CoreNLPAnnotation) ||
+        inputProperties.containsKey(InputProperty.ReferencePermutation)) {
+      return null;
+    }
+    return new Key<>(source, weightsVersion, inputProperties.get(InputProperty.RuleQueryLimit),
+        inputProperties.get(InputProperty.Domain), inputProperties.get(InputProperty.RuleFeatureIndex));
+  }
+
+  /**
+   * Lookup a source input.
+   *
+   * @param key
+   * @return The entry or null if the key is not in the cache.
+   */
+  public synchronized Entry<TK,FV> get(Key<TK> key) {
+    return key == null || ! checkVersion(key) ? null : cache.get(key);
+  }
+
+  /**
+   * Insert the result of a TM query. The rule list must not be modified
+   * after insertion. Entries computed under stale weights are discarded.
+   *
+   * @param key
+   * @param filteredSource
+   * @param ruleList
+   * @param ruleGrid
+   * @return The cache entry.
+   */
+  public synchronized Entry<TK,FV> put(Key<TK> key, Sequence<TK> filteredSource,
+      List<ConcreteRule<TK,FV>> ruleList, RuleGrid<TK,FV> ruleGrid) {
+    ruleGrid.sortAll();
+    final Entry<TK,FV> entry = new Entry<>(filteredSource, Collections.unmodifiableList(ruleList), ruleGrid);
+    if (checkVersion(key)) cache.put(key, entry);
+    return entry;
+  }
+
+  /**
+   * Advance to the version of the key if it is newer. Returns false if the key
+   * is stale.
+   */
+  private boolean checkVersion(Key<TK> key) {
+    if (key.weightsVersion > weightsVersion) {
+      weightsVersion = key.weightsVersion;
+      cache.clear();
+    }
+    return key.weightsVersion == weightsVersion;
+  }
+
+  /**
+   * Drop all entries.
+   */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  /**
+   * Number of source inputs in the cache.
+   *
+   * @return
+   */
+  public synchronized int size() { return cache.size(); }
+
+  /**
+   * Cache key.
+   *
+   * @author Spence Green
+   *
+   * @param <TK>
+   */
+  public static final class Key<TK> {
+    private final Sequence<TK> source;
+    private final long weightsVersion;
+    private final Object ruleQueryLimit;
+    private final Object domain;
+    private final Object ruleFeatureIndex;
+    private final int hashCode;
+
+    private Key(Sequence<TK> source, long weightsVersion, Object ruleQueryLimit, Object domain,
+        Object ruleFeatureIndex) {
+      this.source = source;
+      this.weightsVersion = weightsVersion;
+      this.ruleQueryLimit = ruleQueryLimit;
+      this.domain = domain;
+      this.ruleFeatureIndex = ruleFeatureIndex;
+      this.hashCode = Objects.hash(source, weightsVersion, ruleQueryLimit, domain, ruleFeatureIndex);
+    }
+
+    @Override
+    public int hashCode() { return hashCode; }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if ( ! (o instanceof Key)) return false;
+      Key<?> other = (Key<?>) o;
+      return hashCode == other.hashCode && weightsVersion == other.weightsVersion &&
+          source.equals(other.source) && Objects.equals(ruleQueryLimit, other.ruleQueryLimit) &&
+          Objects.equals(domain, other.domain) && Objects.equals(ruleFeatureIndex, other.ruleFeatureIndex);
+    }
+  }
+
+  /**
+   * Cached result of a TM query.
+   *
+   * @author Spence Green
+   *
+   * @param <TK>
+   * @param <FV>
+   */
+  public static final class Entry<TK,FV> {
+    public final Sequence<TK> filteredSource;
+    public final List<ConcreteRule<TK,FV>> ruleList;
+    public final RuleGrid<TK,FV> ruleGrid;
+
+    // Set by the first decoder that computes the heuristic for this entry
+    private volatile Object futureCostTable;
+
+    // Beams of the last prefix decoded for this source
+    private final AtomicReference<PrefixDecodingState<TK,FV>> prefixState = new AtomicReference<>();
+
+    private Entry(Sequence<TK> filteredSource, List<ConcreteRule<TK,FV>> ruleList, RuleGrid<TK,FV> ruleGrid) {
+      this.filteredSource = filteredSource;
+      this.ruleList = ruleList;
+      this.ruleGrid = ruleGrid;
+    }
+
+    /**
+     * The future cost table of the search heuristic, or null if it has not been computed.
+     *
+     * @return
+     */
+    public Object getFutureCostTable() { return futureCostTable; }
+
+    /**
+     * Set the future cost table.
+     *
+     * @param table
+     */
+    public void setFutureCostTable(Object table) { this.futureCostTable = table; }
+
+    /**
+     * Remove the prefix decoding state, or return null if none is available. Only
+     * one decoder at a time may use the state.
+     *
+     * @return
+     */
+    public PrefixDecodingState<TK,FV> takePrefixState() { return prefixState.getAndSet(null); }
+
+    /**
+     * Set the prefix decoding state.
+     *
+     * @param state
+     */
+    public void setPrefixState(PrefixDecodingState<TK,FV> state) { prefixState.set(state); }
+  }
+}
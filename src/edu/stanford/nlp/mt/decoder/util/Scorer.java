@@ -2,6 +2,8 @@ package edu.stanford.nlp.mt.decoder.util;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.stats.Counter;
@@ -16,6 +18,35 @@ public interface Scorer<FV> {
    * @return a score under the current weights for the specified set of features.
    */
   public double getIncrementalScore(Collection<FeatureValue<FV>> features);
+
+  /**
+   * Score a batch of feature vectors in one pass.
+   * 
+   * @param batch
+   * @param scores Output array of length at least <code>batch.size()</code>.
+   */
+  public default void getIncrementalScores(FeatureBatch<FV> batch, double[] scores) {
+    for (int i = 0, sz = batch.size(); i < sz; ++i) {
+      scores[i] = getIncrementalScore(batch.vector(i));
+    }
+  }
+  
+  /**
+   * The weights of a fixed list of features, e.g., the dense features of 
+   * <code>FeatureExtractor.getDenseFeatureNames()</code>. Implementations may cache the
+   * array until the weights change, so callers must not modify it.
+   * 
+   * @param featureNames
+   * @return
+   */
+  public default double[] getWeights(List<FV> featureNames) {
+    final double[] weights = new double[featureNames.size()];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = getIncrementalScore(Collections.singletonList(
+          new FeatureValue<>(featureNames.get(i), 1.0, true)));
+    }
+    return weights;
+  }
   
   /**
    * Update the scorer weights.
@@ -23,6 +54,23 @@ public interface Scorer<FV> {
    * @param weights
    */
   public void updateWeights(Counter<FV> weights);
+
+  /**
+   * Update the scorer weights from a snapshot. Cheap if the snapshot is already installed.
+   * 
+   * @param snapshot
+   */
+  public default void updateWeights(WeightSnapshot<FV> snapshot) {
+    updateWeights(snapshot.weights);
+  }
+  
+  /**
+   * @return The version of the installed weight snapshot, or -1 if the weights were not
+   * installed from a snapshot.
+   */
+  public default long getWeightsVersion() {
+    return -1;
+  }
   
   /**
    * Save the weights to a file.
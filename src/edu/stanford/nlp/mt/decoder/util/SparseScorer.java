@@ -2,7 +2,9 @@ package edu.stanford.nlp.mt.decoder.util;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
 import edu.stanford.nlp.mt.util.FeatureValue;
 import edu.stanford.nlp.mt.util.IOTools;
 import edu.stanford.nlp.stats.Counter;
@@ -11,8 +13,9 @@ import edu.stanford.nlp.util.Index;
 /**
  * A sparse scorer for high dimensional models.
  * 
- * NOTE: This class is not threadsafe, which is okay for the current implementation
- * in which each Inferer has its own scorer.
+ * NOTE: The scoring methods are threadsafe, since the workers of an inferer with
+ * intra-sentence parallelism share its scorer. <code>updateWeights()</code> is not, and
+ * must not be called while the scorer is in use.
  * 
  * @author Spence Green
  *
@@ -20,6 +23,15 @@ import edu.stanford.nlp.util.Index;
 public class SparseScorer implements Scorer<String> {
 
   private Counter<String> weights;
+  private long weightsVersion = -1;
+  private WeightSnapshot<String> snapshot;
+  private volatile WeightFilter<String> weightFilter;
+  private DenseWeights denseWeights;
+
+  // Weights indexed by global feature id (integer feature mode). Created when a
+  // featurizer uses templates. Scoring threads may create them concurrently.
+  private volatile double[] idWeights;
+  private Counter<String> idWeightsSource;
   
   public SparseScorer(Counter<String> featureWts) {
     this(featureWts, null);
@@ -38,16 +50,82 @@ public class SparseScorer implements Scorer<String> {
   @Override
   public double getIncrementalScore(Collection<FeatureValue<String>> features) {
     double score = 0.0;
+    double[] idw = idWeights;
     for (FeatureValue<String> feature : features) {
-      score += feature.value * weights.getCount(feature.name);
+      if (feature.id >= 0) {
+        if (idw == null) idw = indexWeights();
+        if (feature.id < idw.length) score += feature.value * idw[feature.id];
+      } else {
+        score += feature.value * weights.getCount(feature.name);
+      }
     }
     return score;
   }
 
+  @Override
+  public void getIncrementalScores(FeatureBatch<String> batch, double[] scores) {
+    final double[] w = batch.weights();
+    double[] idw = idWeights;
+    for (int k = 0, n = batch.numFeatures(); k < n; ++k) {
+      final int id = batch.id(k);
+      if (id >= 0) {
+        if (idw == null) idw = indexWeights();
+        w[k] = id < idw.length ? idw[id] : 0.0;
+      } else {
+        w[k] = weights.getCount(batch.name(k));
+      }
+    }
+    batch.innerProducts(scores);
+  }
+
   @Override
   public void updateWeights(Counter<String> weights) {
     // Do not copy the weights vector.
     this.weights = weights;
+    this.weightsVersion = -1;
+    this.snapshot = null;
+    this.weightFilter = null;
+    this.denseWeights = null;
+    // Only re-index when the weight vector changes. Names interned for other weight
+    // vectors have zero weight or fall outside of the array.
+    if (FeatureTemplate.inUse() && weights != idWeightsSource) indexWeights();
+  }
+
+  private synchronized double[] indexWeights() {
+    // Another scoring thread may have indexed the weights
+    if (idWeights != null && idWeightsSource == weights) return idWeights;
+    final double[] idw = FeatureTemplate.toArray(weights, idWeights);
+    idWeightsSource = weights;
+    idWeights = idw;
+    return idw;
+  }
+
+  @Override
+  public double[] getWeights(List<String> featureNames) {
+    // Publish the names and the weights together, since worker threads may share this scorer
+    final DenseWeights cached = denseWeights;
+    if (cached != null && (cached.featureNames == featureNames || cached.featureNames.equals(featureNames))) {
+      return cached.weights;
+    }
+    final double[] w = new double[featureNames.size()];
+    for (int i = 0; i < w.length; ++i) {
+      w[i] = weights.getCount(featureNames.get(i));
+    }
+    denseWeights = new DenseWeights(featureNames, w);
+    return w;
+  }
+
+  @Override
+  public void updateWeights(WeightSnapshot<String> snapshot) {
+    if (snapshot.version == weightsVersion) return;
+    updateWeights(snapshot.weights);
+    weightsVersion = snapshot.version;
+    this.snapshot = snapshot;
+  }
+
+  @Override
+  public long getWeightsVersion() {
+    return weightsVersion;
   }
 
   @Override
@@ -57,7 +135,21 @@ public class SparseScorer implements Scorer<String> {
 
   @Override
   public boolean hasNonZeroWeight(String featureName) {
-    // Axiomatic for sparse weight vectors
-    return true;
+    WeightFilter<String> filter = weightFilter;
+    if (filter == null) {
+      // Share the filter of the snapshot with the other scorers
+      filter = snapshot == null ? new WeightFilter<>(weights) : snapshot.getWeightFilter();
+      weightFilter = filter;
+    }
+    return filter.hasNonZeroWeight(featureName);
+  }
+
+  private static class DenseWeights {
+    private final List<String> featureNames;
+    private final double[] weights;
+    private DenseWeights(List<String> featureNames, double[] weights) {
+      this.featureNames = featureNames;
+      this.weights = weights;
+    }
   }
 }
@@ -0,0 +1,295 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+import edu.stanford.nlp.mt.util.CoverageSet;
+
+/**
+ * Storage for the successors on the agenda of a cube pruning decoder. A successor is a
+ * slot in parallel primitive arrays: the bundle, the item id of the antecedent in the
+ * bundle (the parent pointer), the rule id, the source coverage words, the priority, and
+ * the derivation once it has been built. The agenda is a binary heap of slots.
+ *
+ * Slots are recycled through a free list, so an arena that is reused across inputs does
+ * not allocate once it has grown to the largest agenda. Not threadsafe. Each decoder owns
+ * one arena.
+ *
+ * @author Spence Green
+ *
+ * @param <TK>
+ * @param <FV>
+ */
+public class SuccessorArena<TK,FV> {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final byte PRUNED = 0x1;
+  private static final byte REQUEUED = 0x2;
+  private static final byte OVERLAPS = 0x4;
+
+  // Slots
+  private HyperedgeBundle<TK,FV>[] bundles;
+  private int[] itemIds;
+  private int[] ruleIds;
+  private int[] ids;
+  private double[] priorities;
+  private byte[] flags;
+  private Derivation<TK,FV>[] derivations;
+  private long[] coverage;
+  private int coverageWords = CoverageSet.MAX_PACKED_SIZE / Long.SIZE;
+  private int numSlots = 0;
+
+  private int[] freeSlots;
+  private int numFree = 0;
+
+  // The agenda
+  private int[] heap;
+  private int heapSize = 0;
+
+  private int nextId = 0;
+
+  public SuccessorArena(int initialCapacity) {
+    final int capacity = Math.max(initialCapacity, INITIAL_CAPACITY);
+    @SuppressWarnings("unchecked")
+    final HyperedgeBundle<TK,FV>[] newBundles = (HyperedgeBundle<TK,FV>[]) new HyperedgeBundle<?,?>[capacity];
+    bundles = newBundles;
+    itemIds = new int[capacity];
+    ruleIds = new int[capacity];
+    ids = new int[capacity];
+    priorities = new double[capacity];
+    flags = new byte[capacity];
+    @SuppressWarnings("unchecked")
+    final Derivation<TK,FV>[] newDerivations = (Derivation<TK,FV>[]) new Derivation<?,?>[capacity];
+    derivations = newDerivations;
+    coverage = new long[capacity * coverageWords];
+    freeSlots = new int[capacity];
+    heap = new int[capacity];
+  }
+
+  /**
+   * Prepare the arena for a new input. Releases all slots.
+   *
+   * @param sourceLength
+   */
+  public void reset(int sourceLength) {
+    Arrays.fill(bundles, 0, numSlots, null);
+    Arrays.fill(derivations, 0, numSlots, null);
+    numSlots = 0;
+    numFree = 0;
+    heapSize = 0;
+    nextId = 0;
+    final int words = Math.max(CoverageSet.MAX_PACKED_SIZE, sourceLength + Long.SIZE - 1) / Long.SIZE;
+    if (words != coverageWords) {
+      coverageWords = words;
+      coverage = new long[bundles.length * coverageWords];
+    }
+  }
+
+  /**
+   * Allocate a slot for the successor <code>(itemId, ruleId)</code> of a bundle. The
+   * coverage of the successor is the union of the coverage of the antecedent and the rule.
+   *
+   * @param bundle
+   * @param itemId
+   * @param ruleId
+   * @return The slot.
+   */
+  public int add(HyperedgeBundle<TK,FV> bundle, int itemId, int ruleId) {
+    final int slot = numFree > 0 ? freeSlots[--numFree] : newSlot();
+    bundles[slot] = bundle;
+    itemIds[slot] = itemId;
+    ruleIds[slot] = ruleId;
+    ids[slot] = nextId++;
+    priorities[slot] = 0.0;
+    derivations[slot] = null;
+    final CoverageSet antecedentCoverage = bundle.getItem(itemId).sourceCoverage;
+    final CoverageSet ruleCoverage = bundle.getRule(ruleId).sourceCoverage;
+    boolean overlaps = false;
+    for (int i = 0, offset = slot * coverageWords; i < coverageWords; ++i) {
+      final long a = antecedentCoverage.word(i);
+      final long r = ruleCoverage.word(i);
+      coverage[offset + i] = a | r;
+      overlaps |= (a & r) != 0;
+    }
+    flags[slot] = overlaps ? OVERLAPS : 0;
+    return slot;
+  }
+
+  private int newSlot() {
+    if (numSlots == bundles.length) grow();
+    return numSlots++;
+  }
+
+  private void grow() {
+    final int capacity = 2 * bundles.length;
+    bundles = Arrays.copyOf(bundles, capacity);
+    itemIds = Arrays.copyOf(itemIds, capacity);
+    ruleIds = Arrays.copyOf(ruleIds, capacity);
+    ids = Arrays.copyOf(ids, capacity);
+    priorities = Arrays.copyOf(priorities, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    derivations = Arrays.copyOf(derivations, capacity);
+    coverage = Arrays.copyOf(coverage, capacity * coverageWords);
+    freeSlots = Arrays.copyOf(freeSlots, capacity);
+    heap = Arrays.copyOf(heap, capacity);
+  }
+
+  /**
+   * Return a slot to the free list.
+   *
+   * @param slot
+   */
+  public void release(int slot) {
+    bundles[slot] = null;
+    derivations[slot] = null;
+    freeSlots[numFree++] = slot;
+  }
+
+  public HyperedgeBundle<TK,FV> bundle(int slot) { return bundles[slot]; }
+
+  public int itemId(int slot) { return itemIds[slot]; }
+
+  public int ruleId(int slot) { return ruleIds[slot]; }
+
+  public Derivation<TK,FV> antecedent(int slot) { return bundles[slot].getItem(itemIds[slot]); }
+
+  public ConcreteRule<TK,FV> rule(int slot) { return bundles[slot].getRule(ruleIds[slot]); }
+
+  /**
+   * Insertion order of the slot. Breaks ties on the agenda.
+   */
+  public int id(int slot) { return ids[slot]; }
+
+  public double priority(int slot) { return priorities[slot]; }
+
+  public void setPriority(int slot, double priority) { priorities[slot] = priority; }
+
+  /**
+   * Rank the slot by <code>HyperedgeBundle.estimatedScore()</code>.
+   */
+  public void setEstimatedPriority(int slot) {
+    priorities[slot] = bundles[slot].estimatedScore(itemIds[slot], ruleIds[slot]);
+  }
+
+  public boolean isPruned(int slot) { return (flags[slot] & PRUNED) != 0; }
+
+  /**
+   * Pruned slots are never scored and are ranked after all other slots.
+   */
+  public void setPruned(int slot) {
+    flags[slot] |= PRUNED;
+    priorities[slot] = Double.NEGATIVE_INFINITY;
+  }
+
+  public boolean isRequeued(int slot) { return (flags[slot] & REQUEUED) != 0; }
+
+  public void setRequeued(int slot) { flags[slot] |= REQUEUED; }
+
+  /**
+   * True if the source coverage of the rule overlaps the coverage of the antecedent.
+   */
+  public boolean coverageOverlaps(int slot) { return (flags[slot] & OVERLAPS) != 0; }
+
+  /**
+   * A word of the source coverage of the successor. See <code>CoverageSet.word()</code>.
+   */
+  public long coverageWord(int slot, int wordIndex) {
+    return wordIndex < coverageWords ? coverage[slot * coverageWords + wordIndex] : 0L;
+  }
+
+  public Derivation<TK,FV> derivation(int slot) { return derivations[slot]; }
+
+  public void setDerivation(int slot, Derivation<TK,FV> derivation) { derivations[slot] = derivation; }
+
+  /**
+   * The number of allocated slots, including the free list.
+   */
+  public int capacity() { return bundles.length; }
+
+  /*
+   * The agenda. Slots with higher priority come first, and ties are broken by
+   * insertion order. Pruned slots come last.
+   */
+
+  public boolean isEmpty() { return heapSize == 0; }
+
+  public int size() { return heapSize; }
+
+  /**
+   * Add a slot to the agenda.
+   *
+   * @param slot
+   */
+  public void push(int slot) {
+    int i = heapSize++;
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (compare(heap[parent], slot) <= 0) break;
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = slot;
+  }
+
+  /**
+   * @return The best slot on the agenda.
+   */
+  public int peek() {
+    if (heapSize == 0) throw new IllegalStateException("Empty agenda");
+    return heap[0];
+  }
+
+  /**
+   * Remove the best slot from the agenda.
+   *
+   * @return The slot.
+   */
+  public int poll() {
+    final int top = peek();
+    final int last = heap[--heapSize];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) break;
+      if (child + 1 < heapSize && compare(heap[child + 1], heap[child]) < 0) ++child;
+      if (compare(last, heap[child]) <= 0) break;
+      heap[i] = heap[child];
+      i = child;
+    }
+    if (heapSize > 0) heap[i] = last;
+    return top;
+  }
+
+  /**
+   * Release all slots on the agenda.
+   *
+   * @return The number of slots that were never scored.
+   */
+  public int clearAgenda() {
+    int numUnscored = 0;
+    for (int i = 0; i < heapSize; ++i) {
+      final int slot = heap[i];
+      if ( ! isPruned(slot) && derivations[slot] == null) ++numUnscored;
+      release(slot);
+    }
+    heapSize = 0;
+    return numUnscored;
+  }
+
+  private int compare(int a, int b) {
+    final boolean prunedA = isPruned(a), prunedB = isPruned(b);
+    if (prunedA != prunedB) {
+      return prunedA ? 1 : -1;
+    } else if ( ! prunedA) {
+      final int cmp = Double.compare(priorities[b], priorities[a]);
+      if (cmp != 0) return cmp;
+    }
+    return Integer.compare(ids[a], ids[b]);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("slots: %d  free: %d  agenda: %d", numSlots, numFree, heapSize);
+  }
+}
@@ -0,0 +1,55 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * The set of features with a non-zero weight. Featurizers build the feature name before
+ * they query the filter, so the lookup is a single probe of the weight vector.
+ *
+ * The weight vector must not change after construction. This class is threadsafe.
+ *
+ * @author Spence Green
+ *
+ * @param <FV>
+ */
+public class WeightFilter<FV> {
+
+  private final Counter<FV> weights;
+  private final int numFeatures;
+
+  /**
+   * Constructor.
+   *
+   * @param weights
+   */
+  public WeightFilter(Counter<FV> weights) {
+    this.weights = weights;
+    int n = 0;
+    for (FV feature : weights.keySet()) {
+      if (feature != null && weights.getCount(feature) != 0.0) ++n;
+    }
+    this.numFeatures = n;
+  }
+
+  /**
+   * True if the feature has a non-zero weight.
+   *
+   * @param feature
+   * @return
+   */
+  public boolean hasNonZeroWeight(FV feature) {
+    return feature != null && weights.getCount(feature) != 0.0;
+  }
+
+  /**
+   * Number of features with a non-zero weight.
+   *
+   * @return
+   */
+  public int numFeatures() { return numFeatures; }
+
+  @Override
+  public String toString() {
+    return String.format("%d features", numFeatures);
+  }
+}
@@ -0,0 +1,74 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.stats.Counters;
+
+/**
+ * A versioned weight vector. Decoder threads read the current snapshot at the start of
+ * each input, so a new snapshot can be published while other inputs are being decoded.
+ * Caches of weight-dependent values (e.g., rule isolation scores) are keyed by the
+ * snapshot version.
+ *
+ * Versions are unique within the JVM.
+ *
+ * @author Spence Green
+ *
+ * @param <FV>
+ */
+public class WeightSnapshot<FV> {
+
+  private static final AtomicLong nextVersion = new AtomicLong();
+
+  public final Counter<FV> weights;
+  public final long version;
+  private volatile WeightFilter<FV> filter;
+
+  private WeightSnapshot(Counter<FV> weights) {
+    this.weights = weights;
+    this.version = nextVersion.incrementAndGet();
+  }
+
+  /**
+   * Create an immutable snapshot from a copy of a weight vector.
+   *
+   * @param weights
+   * @return
+   */
+  public static <FV> WeightSnapshot<FV> copyOf(Counter<FV> weights) {
+    return new WeightSnapshot<>(Counters.unmodifiableCounter(new ClassicCounter<>(weights)));
+  }
+
+  /**
+   * Create a snapshot that wraps a weight vector without copying it. The caller must not
+   * modify the weights after this call.
+   *
+   * @param weights
+   * @return
+   */
+  public static <FV> WeightSnapshot<FV> wrap(Counter<FV> weights) {
+    return new WeightSnapshot<>(weights);
+  }
+
+  /**
+   * Return the filter of the features with a non-zero weight. The filter is created on
+   * first use and shared by all scorers that install this snapshot.
+   *
+   * @return
+   */
+  public WeightFilter<FV> getWeightFilter() {
+    WeightFilter<FV> f = filter;
+    if (f == null) {
+      f = new WeightFilter<>(weights);
+      filter = f;
+    }
+    return f;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("v%d (%d weights)", version, weights.size());
+  }
+}
@@ -1,32 +1,57 @@
 package edu.stanford.nlp.mt.lm;
 
-import edu.stanford.nlp.mt.util.IString;
-import edu.stanford.nlp.mt.util.Sequence;
+import java.util.Arrays;
+
+import edu.stanford.nlp.mt.util.MurmurHash2;
 
 /**
- * Result of an ARPALanguageModel query.
- * 
+ * Result of a query to one of the pure Java backoff language models. The state is
+ * the minimized context in model word ids, ordered from the oldest word to the most
+ * recent word, and the backoff sums for the next query (see
+ * <code>BackoffLanguageModel</code>). The backoffs are a function of the context, so
+ * only the context is hashed and compared.
+ *
  * @author Spence Green
  *
  */
 public class ARPALMState extends LMState {
 
-  private final Sequence<IString> state;
+  private final int[] state;
+  private final float[] backoffs;
   private final int hashCode;
 
-  public ARPALMState(double score, Sequence<IString> state) {
+  /**
+   * Constructor.
+   *
+   * @param score
+   * @param state
+   * @param backoffs <code>backoffs[j]</code> is the sum of the backoffs of the suffixes
+   * of the state that are longer than j words.
+   */
+  public ARPALMState(double score, int[] state, float[] backoffs) {
+    assert state.length == backoffs.length;
     this.score = score;
     this.state = state;
-    this.hashCode = state.hashCode();
+    this.backoffs = backoffs;
+    this.hashCode = MurmurHash2.hash32(state, state.length, 1);
   }
-  
+
+  /**
+   * Constructor that shares the context of another state.
+   *
+   * @param score
+   * @param state
+   */
   public ARPALMState(double score, ARPALMState state) {
     this.score = score;
     this.state = state.state;
+    this.backoffs = state.backoffs;
     this.hashCode = state.hashCode;
   }
-  
-  public Sequence<IString> getState() { return state; }
+
+  public int[] getState() { return state; }
+
+  public float[] getBackoffs() { return backoffs; }
 
   @Override
   public int hashCode() {
@@ -41,17 +66,17 @@ public class ARPALMState extends LMState {
       return false;
     } else {
       ARPALMState otherState = (ARPALMState) other;
-      return this.state.equals(otherState.state);
+      return hashCode == otherState.hashCode && Arrays.equals(state, otherState.state);
     }
   }
 
   @Override
   public int length() {
-    return state.size();
+    return state.length;
   }
-  
+
   @Override
   public String toString() {
-    return String.format("%.6f ||| %s", score, state.toString());
+    return String.format("%.6f ||| %s", score, Arrays.toString(state));
   }
 }
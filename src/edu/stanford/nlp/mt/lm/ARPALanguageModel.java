@@ -6,45 +6,30 @@ import java.util.StringTokenizer;
 
 import edu.stanford.nlp.mt.util.IOTools;
 import edu.stanford.nlp.mt.util.IString;
-import edu.stanford.nlp.mt.util.IntegerArrayRawIndex;
 import edu.stanford.nlp.mt.util.ProbingIntegerArrayRawIndex;
-import edu.stanford.nlp.mt.util.Sequence;
-import edu.stanford.nlp.mt.util.Sequences;
-import edu.stanford.nlp.mt.util.TokenUtils;
 
 /**
  * A pure Java implementation of an n-gram language model loaded from
  * an ARPA-format file.
  * 
+ * N-grams that are not a context of a longer n-gram and have no backoff
+ * are marked with <code>NO_EXTENSION_BACKOFF</code> so that queries can
+ * minimize their states.
+ * 
  * @author Daniel Cer
  */
-public class ARPALanguageModel implements LanguageModel<IString> {
-
-  static boolean verbose = false;
+public class ARPALanguageModel extends BackoffLanguageModel {
 
   // in srilm -99 is -infinity
   public static final double UNKNOWN_WORD_SCORE = -100.0;
 
   protected final String name;
   
-  private static final ARPALMState EMPTY_STATE = new ARPALMState(0.0, Sequences.emptySequence());
-  private static final int[] UNK_QUERY = new int[]{TokenUtils.UNK_TOKEN.id};
-  
   @Override
   public String getName() {
     return name;
   }
 
-  @Override
-  public IString getStartToken() {
-    return TokenUtils.START_TOKEN;
-  }
-
-  @Override
-  public IString getEndToken() {
-    return TokenUtils.END_TOKEN;
-  }
-
   protected static String readLineNonNull(LineNumberReader reader)
       throws IOException {
     String inline = reader.readLine();
@@ -54,7 +39,7 @@ public class ARPALanguageModel implements LanguageModel<IString> {
     return inline;
   }
 
-  protected IntegerArrayRawIndex[] tables;
+  protected ProbingIntegerArrayRawIndex[] tables;
   private float[][] probs;
   private float[][] bows;
 
@@ -108,6 +93,7 @@ public class ARPALanguageModel implements LanguageModel<IString> {
     }
 
     float log10LogConstant = (float) Math.log(10);
+    long numMissingContexts = 0;
 
     // read in the n-gram tables one by one
     for (int order = 0; order < maxOrder; order++) {
@@ -134,14 +120,32 @@ public class ARPALanguageModel implements LanguageModel<IString> {
         }
 
         float bow = (tok.hasMoreElements() ? Float.parseFloat(tok.nextToken())
-            * log10LogConstant : Float.NaN);
+            * log10LogConstant : NO_EXTENSION_BACKOFF);
+        if (bow == 0.0f || Float.isNaN(bow)) {
+          // Cleared below if this n-gram is a context
+          bow = NO_EXTENSION_BACKOFF;
+        }
         int index = tables[order].insertIntoIndex(ngramInts);
         probs[order][index] = prob;
         if (order < bows.length)
           bows[order][index] = bow;
+        if (order > 0) {
+          // Replace the NO_EXTENSION_BACKOFF marker (-0.0f) of the context with a positive
+          // zero. The two compare equal as floats, so test the bits.
+          int contextIndex = tables[order - 1].find(ngramInts, 0, order);
+          if (contextIndex < 0)
+            ++numMissingContexts;
+          else if ( ! extendsRight(bows[order - 1][contextIndex]))
+            bows[order - 1][contextIndex] = 0.0f;
+        }
       }
     }
 
+    if (numMissingContexts > 0) {
+      System.err.printf("WARNING: %d n-grams have a context that is not in the model%n",
+          numMissingContexts);
+    }
+
     // print some status information
     long postLMLoadMemUsed = rt.totalMemory() - rt.freeMemory();
     long loadTimeMillis = System.currentTimeMillis() - startTimeMillis;
@@ -163,92 +167,29 @@ public class ARPALanguageModel implements LanguageModel<IString> {
     return getName();
   }
 
-  /**
-   * 
-   * From CMU language model headers:
-   * ------------------------------------------------------------------
-   * 
-   * This file is in the ARPA-standard format introduced by Doug Paul.
-   * 
-   * p(wd3|wd1,wd2)= if(trigram exists) p_3(wd1,wd2,wd3) else if(bigram w1,w2
-   * exists) bo_wt_2(w1,w2)*p(wd3|wd2) else p(wd3|w2)
-   * 
-   * p(wd2|wd1)= if(bigram exists) p_2(wd1,wd2) else bo_wt_1(wd1)*p_1(wd2)
-   * 
-   */
-  protected ARPALMState scoreNgram(Sequence<IString> sequence) {
-    int[] ngramInts = Sequences.toIntArray(sequence);
-    int index;
+  @Override
+  protected int toModelId(IString token) {
+    return token.id;
+  }
 
-    index = tables[ngramInts.length - 1].getIndex(ngramInts);
-    if (index >= 0) { // found a match
-      double p = probs[ngramInts.length - 1][index];
-      if (verbose)
-        System.err.printf("EM: scoreR: seq: %s logp: %f%n", sequence.toString(), p);
-      return new ARPALMState(p, sequence.subsequence(1, sequence.size()));
-    }
-    
-    // OOV
-    if (ngramInts.length == 1) {
-      // First check for an <unk> class, which is present for KenLM
-      // but not necessarily for SRILM.
-      index = tables[0].getIndex(UNK_QUERY);
-      double p = index >= 0 ? probs[0][index] : UNKNOWN_WORD_SCORE;
-      return new ARPALMState(p, Sequences.emptySequence());
-    }
-    
-    // Backoff recursively
-    Sequence<IString> prefix = sequence.subsequence(0, ngramInts.length - 1);
-    int[] prefixInts = Sequences.toIntArray(prefix);
-    index = tables[prefixInts.length - 1].getIndex(prefixInts);
-    double bow = 0;
-    if (index >= 0) {
-      bow = bows[prefixInts.length - 1][index];
-    }
-    if (Double.isNaN(bow)) {
-      bow = 0.0; // treat NaNs as bow that are not found at all
-    }
-    ARPALMState state = scoreNgram(sequence.subsequence(1, ngramInts.length));
-    double p = bow + state.getScore();
-    if (verbose) {
-      System.err.printf("scoreR: seq: %s logp: %f [%f] bow: %f\n",
-          sequence.toString(), p, p / Math.log(10), bow);
-    }
-    return new ARPALMState(p, state);
+  @Override
+  protected long find(int[] ids, int start, int end) {
+    return tables[end - start - 1].find(ids, start, end);
   }
 
   @Override
-  public LMState score(Sequence<IString> sequence, int startOffsetIndex, LMState priorState) {
-    if (sequence.size() == 0) {
-      // Source deletion rule
-      return priorState == null ? EMPTY_STATE : priorState;
-    } else if (sequence.size() == 1 && priorState == null && sequence.get(0).equals(TokenUtils.START_TOKEN)) {
-      // Special case: Source deletion rule (e.g., from the OOV model) at the start of a string
-      return new ARPALMState(0.0f, sequence);
-    }
-    
-    // Concatenate the state onto the sequence.
-    if (priorState != null && priorState instanceof ARPALMState) {
-      int seqLength = sequence.size();
-    	sequence = ((ARPALMState) priorState).getState().concat(sequence);
-    	startOffsetIndex += (sequence.size() - seqLength);
-    }
+  protected float prob(int order, long entry) {
+    return probs[order - 1][(int) entry];
+  }
 
-    // Score the sequence
-    double lmSumScore = 0.0;
-    ARPALMState state = EMPTY_STATE;
-    for (int pos = startOffsetIndex, limit = sequence.size(); pos < limit; pos++) {
-      final int seqStart = Math.max(0, pos - order() + 1);
-      Sequence<IString> ngram = sequence.subsequence(seqStart, pos + 1);
-      state = scoreNgram(ngram);
-      lmSumScore += state.getScore();
-    }
-    
-    if (verbose) {
-      System.err.printf("ARPALM: seq: %s  state: %s  score: %f%n", sequence.toString(),
-          state.toString(), lmSumScore);
-    }
-    return new ARPALMState(lmSumScore, state);
+  @Override
+  protected float backoff(int order, long entry) {
+    return order - 1 < bows.length ? bows[order - 1][(int) entry] : 0.0f;
+  }
+
+  @Override
+  protected boolean extendsRight(int order, long entry) {
+    return extendsRight(bows[order - 1][(int) entry]);
   }
 
   @Override
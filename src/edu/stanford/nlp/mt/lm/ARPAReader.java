@@ -0,0 +1,123 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.StringTokenizer;
+
+import edu.stanford.nlp.mt.util.IOTools;
+
+/**
+ * Streaming reader for the n-gram tables of an ARPA file. Used by the converters
+ * to the binary language model formats. Probabilities and backoffs are converted to
+ * natural logs as in <code>ARPALanguageModel</code>.
+ *
+ * @author Spence Green
+ *
+ */
+final class ARPAReader implements Closeable {
+
+  private static final float LOG_10 = (float) Math.log(10);
+
+  /**
+   * Receives the n-grams of a table.
+   *
+   * @author Spence Green
+   *
+   */
+  interface NgramHandler {
+    /**
+     * Called for each n-gram. The words array is reused for the next n-gram.
+     *
+     * @param words
+     * @param prob Natural log probability.
+     * @param backoff Natural log backoff, or 0 if the n-gram has none.
+     */
+    void ngram(String[] words, float prob, float backoff);
+  }
+
+  private final LineNumberReader reader;
+  private final long[] ngramCounts;
+  private final int order;
+
+  /**
+   * Constructor. Reads the header of the file.
+   *
+   * @param filename
+   * @throws IOException
+   */
+  public ARPAReader(String filename) throws IOException {
+    this.reader = IOTools.getReaderFromFile(filename);
+
+    // skip everything until the line that begins with '\data\'
+    while (!ARPALanguageModel.readLineNonNull(reader).startsWith("\\data\\")) {
+    }
+
+    // read in ngram counts
+    long[] counts = new long[LanguageModelFactory.MAX_NGRAM_ORDER];
+    String inline;
+    int maxOrder = 0;
+    while ((inline = ARPALanguageModel.readLineNonNull(reader)).startsWith("ngram")) {
+      String[] fields = inline.replaceFirst("ngram\\s+", "").split("=");
+      int ngramOrder = Integer.parseInt(fields[0].trim());
+      if (ngramOrder > counts.length) {
+        throw new RuntimeException(String.format("Max n-gram order: %d", counts.length));
+      }
+      counts[ngramOrder - 1] = Long.parseLong(fields[1].replaceAll("[^0-9]", ""));
+      maxOrder = Math.max(maxOrder, ngramOrder);
+    }
+    if (maxOrder == 0) throw new RuntimeException("No n-gram counts in ARPA header: " + filename);
+    this.order = maxOrder;
+    this.ngramCounts = new long[maxOrder];
+    System.arraycopy(counts, 0, ngramCounts, 0, maxOrder);
+  }
+
+  /**
+   * The order of the model.
+   *
+   * @return
+   */
+  public int order() { return order; }
+
+  /**
+   * The number of n-grams of an order according to the header.
+   *
+   * @param order
+   * @return
+   */
+  public long ngramCount(int order) { return ngramCounts[order - 1]; }
+
+  /**
+   * Read the table of an order. Tables must be read in increasing order.
+   *
+   * @param order
+   * @param handler
+   * @throws IOException
+   */
+  public void readNgrams(int order, NgramHandler handler) throws IOException {
+    // skip all material up to the next n-gram table header
+    final String header = String.format("\\%d-grams:", order);
+    while (!ARPALanguageModel.readLineNonNull(reader).startsWith(header)) {
+    }
+    final String[] words = new String[order];
+    String inline;
+    while (!(inline = ARPALanguageModel.readLineNonNull(reader)).equals("") && !inline.equals("\\end\\")) {
+      // StringTokenizer is about twice as fast as split()
+      StringTokenizer tok = new StringTokenizer(inline);
+      float prob = strToFloat(tok.nextToken()) * LOG_10;
+      for (int i = 0; i < order; ++i) words[i] = tok.nextToken();
+      float backoff = tok.hasMoreTokens() ? Float.parseFloat(tok.nextToken()) * LOG_10 : 0.0f;
+      handler.ngram(words, prob, backoff);
+    }
+  }
+
+  private static float strToFloat(String token) {
+    // Escape for KenLM
+    return token.equals("-inf") ? Float.NEGATIVE_INFINITY : Float.parseFloat(token);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,185 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.TokenUtils;
+
+/**
+ * Queries for the pure Java backoff language models. Follows KenLM:
+ *
+ * <ul>
+ * <li>The state is the longest suffix of the history that can extend to the right,
+ * i.e., that is the context of a longer n-gram or has a non-zero backoff. Other words
+ * cannot affect later queries, so dropping them lets recombination merge more
+ * derivations.</li>
+ * <li>The state carries the sums of the backoffs of its suffixes, so a query only
+ * looks up the n-grams that end in the new word, and only for the contexts in the
+ * state.</li>
+ * </ul>
+ *
+ * Scores are identical to the ARPA backoff definition for models in which the context
+ * of every n-gram is also an n-gram, which holds for models estimated by KenLM and SRILM.
+ * An n-gram that is missing from the model has no backoff and, by this property, is not
+ * the context of a longer n-gram, so it can be dropped from the state.
+ *
+ * @author Spence Green
+ *
+ */
+abstract class BackoffLanguageModel implements LanguageModel<IString> {
+
+  protected static final int UNKNOWN_ID = -1;
+
+  /**
+   * Backoff of an n-gram that is not a context of a longer n-gram. Implementations that
+   * store backoffs as floats mark these n-grams with negative zero.
+   */
+  protected static final float NO_EXTENSION_BACKOFF = -0.0f;
+  private static final int NO_EXTENSION_BITS = Float.floatToRawIntBits(NO_EXTENSION_BACKOFF);
+
+  private static final int[] EMPTY_CONTEXT = new int[0];
+  private static final float[] EMPTY_BACKOFFS = new float[0];
+  protected static final ARPALMState EMPTY_STATE = new ARPALMState(0.0, EMPTY_CONTEXT, EMPTY_BACKOFFS);
+
+  /**
+   * Model word id of a token.
+   *
+   * @param token
+   * @return The model id or <code>UNKNOWN_ID</code>.
+   */
+  protected abstract int toModelId(IString token);
+
+  /**
+   * Look up the n-gram <code>ids[start, end)</code>. The ids are known words.
+   *
+   * @param ids
+   * @param start
+   * @param end
+   * @return A non-negative entry for <code>prob()</code> and <code>backoff()</code>, or
+   * -1 if the n-gram is not in the model.
+   */
+  protected abstract long find(int[] ids, int start, int end);
+
+  /**
+   * Look up the n-gram <code>ids[start, end)</code> given the entry of its suffix
+   * <code>ids[start+1, end)</code>, or -1 if the suffix is not in the model. Models that
+   * store n-grams in reverse order override this method to extend the suffix by one word.
+   *
+   * @param ids
+   * @param start
+   * @param end
+   * @param suffixEntry
+   * @return See <code>find()</code>.
+   */
+  protected long findExtension(int[] ids, int start, int end, long suffixEntry) {
+    return find(ids, start, end);
+  }
+
+  protected abstract float prob(int order, long entry);
+
+  protected abstract float backoff(int order, long entry);
+
+  /**
+   * True if the n-gram is a context of a longer n-gram or has a non-zero backoff. Not
+   * called for the highest order.
+   *
+   * @param order
+   * @param entry
+   * @return
+   */
+  protected abstract boolean extendsRight(int order, long entry);
+
+  /**
+   * Convenience method for implementations that mark n-grams with
+   * <code>NO_EXTENSION_BACKOFF</code>.
+   */
+  protected static boolean extendsRight(float backoff) {
+    return Float.floatToRawIntBits(backoff) != NO_EXTENSION_BITS;
+  }
+
+  /**
+   * Score of a word that is not in the model. First check for an &lt;unk&gt; class, which is
+   * present for KenLM but not necessarily for SRILM.
+   */
+  protected double unknownWordScore() {
+    final int[] unk = new int[] { toModelId(TokenUtils.UNK_TOKEN) };
+    final long entry = unk[0] == UNKNOWN_ID ? -1 : find(unk, 0, 1);
+    return entry < 0 ? ARPALanguageModel.UNKNOWN_WORD_SCORE : prob(1, entry);
+  }
+
+  @Override
+  public LMState score(Sequence<IString> sequence, int startOffsetIndex, LMState priorState) {
+    if (sequence.size() == 0) {
+      // Source deletion rule
+      return priorState == null ? EMPTY_STATE : priorState;
+    } else if (sequence.size() == 1 && priorState == null && sequence.get(0).equals(TokenUtils.START_TOKEN)) {
+      // Special case: Source deletion rule (e.g., from the OOV model) at the start of a string.
+      // Return the state of the start token without scoring it.
+      startOffsetIndex = 1;
+    }
+    final ARPALMState prior = priorState instanceof ARPALMState ? (ARPALMState) priorState : EMPTY_STATE;
+
+    // ids[0, k) is the context and ids[k] is the current word.
+    final int order = order();
+    final int[] ids = new int[order];
+    final long[] entries = new long[order];
+    int k = prior.length();
+    System.arraycopy(prior.getState(), 0, ids, 0, k);
+    float[] backoffs = prior.getBackoffs();
+
+    double lmSumScore = 0.0;
+    for (int pos = 0, sz = sequence.size(); pos < sz; ++pos) {
+      ids[k] = toModelId(sequence.get(pos));
+      if (ids[k] == UNKNOWN_ID || (entries[0] = find(ids, k, k + 1)) < 0) {
+        // OOV. Back off from every context.
+        if (pos >= startOffsetIndex) lmSumScore += unknownWordScore() + (k > 0 ? backoffs[0] : 0.0);
+        k = 0;
+        backoffs = EMPTY_BACKOFFS;
+        continue;
+      }
+
+      // entries[j] is the n-gram of the word and the j most recent context words, or -1.
+      // Pruned models may omit suffixes of n-grams, so look up every context length.
+      int matched = 0;
+      for (int j = 1; j <= k; ++j) {
+        entries[j] = findExtension(ids, k - j, k + 1, entries[j - 1]);
+        if (entries[j] >= 0) matched = j;
+      }
+      if (pos >= startOffsetIndex) {
+        lmSumScore += prob(matched + 1, entries[matched]) + (matched < k ? backoffs[matched] : 0.0);
+      }
+
+      // Minimize the new state
+      int length = Math.min(k + 1, order - 1);
+      while (length > 0 && (entries[length - 1] < 0 || ! extendsRight(length, entries[length - 1]))) {
+        --length;
+      }
+      System.arraycopy(ids, k + 1 - length, ids, 0, length);
+      k = length;
+      backoffs = new float[length];
+      float sum = 0.0f;
+      for (int i = length; i > 0; --i) {
+        if (entries[i - 1] >= 0) sum += backoff(i, entries[i - 1]);
+        backoffs[i - 1] = sum;
+      }
+    }
+    return k == 0 ? new ARPALMState(lmSumScore, EMPTY_STATE) :
+      new ARPALMState(lmSumScore, Arrays.copyOf(ids, k), backoffs);
+  }
+
+  @Override
+  public IString getStartToken() {
+    return TokenUtils.START_TOKEN;
+  }
+
+  @Override
+  public IString getEndToken() {
+    return TokenUtils.END_TOKEN;
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -0,0 +1,249 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Wraps a language model with a per-thread <code>LMQueryCache</code>. Each decoding
+ * thread queries its own cache, so lookups are not synchronized.
+ *
+ * Whether caching pays off depends on the model and the decoder configuration: a query to
+ * <code>ARPALanguageModel</code> or KenLM costs a few hash probes per word, which is close
+ * to the cost of a cache lookup. Use the hit counts in the decoding log and
+ * <code>edu.stanford.nlp.mt.benchmark.LanguageModelCache</code> to decide.
+ *
+ * @author Spence Green
+ *
+ * @param <T>
+ */
+public class CachingLanguageModel<T> implements LanguageModel<T> {
+
+  private final LanguageModel<T> lm;
+  private final String cacheType;
+  private final int capacity;
+  private final String name;
+
+  private final ThreadLocal<ThreadCache<T>> threadCache;
+  // The caches of live threads, for the aggregate counts. The cache of a thread that
+  // has ended is dropped and its counts are added to the retired counts.
+  private final List<ThreadEntry<T>> caches = new ArrayList<>();
+  private long retiredHits = 0;
+  private long retiredMisses = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param lm
+   * @param cacheType See <code>LMQueryCache.create()</code>.
+   * @param capacity The capacity of each thread cache.
+   */
+  public CachingLanguageModel(LanguageModel<T> lm, String cacheType, int capacity) {
+    // Fail on construction instead of on the first query
+    LMQueryCache.create(cacheType, capacity);
+    this.lm = lm;
+    this.cacheType = cacheType;
+    this.capacity = capacity;
+    this.name = String.format("%s[%s cache: %d]", lm.getName(), cacheType, capacity);
+    this.threadCache = ThreadLocal.withInitial(() -> {
+      final ThreadCache<T> c = new ThreadCache<>(LMQueryCache.create(cacheType, capacity));
+      register(c.cache);
+      return c;
+    });
+  }
+
+  /**
+   * @return The language model without the cache.
+   */
+  public LanguageModel<T> getLanguageModel() { return lm; }
+
+  public String getCacheType() { return cacheType; }
+
+  public int getCapacity() { return capacity; }
+
+  /**
+   * Cache hits of the calling thread.
+   */
+  public long threadHits() { return threadCache.get().cache.hits(); }
+
+  /**
+   * Cache misses of the calling thread.
+   */
+  public long threadMisses() { return threadCache.get().cache.misses(); }
+
+  /**
+   * Cache hits of all threads. Approximate while other threads are decoding.
+   */
+  public synchronized long hits() {
+    retireCaches();
+    long hits = retiredHits;
+    for (ThreadEntry<T> entry : caches) hits += entry.cache.hits();
+    return hits;
+  }
+
+  /**
+   * Cache misses of all threads. Approximate while other threads are decoding.
+   */
+  public synchronized long misses() {
+    retireCaches();
+    long misses = retiredMisses;
+    for (ThreadEntry<T> entry : caches) misses += entry.cache.misses();
+    return misses;
+  }
+
+  private synchronized void register(LMQueryCache<T> cache) {
+    retireCaches();
+    caches.add(new ThreadEntry<>(Thread.currentThread(), cache));
+  }
+
+  /**
+   * Drop the caches of threads that have ended.
+   */
+  private void retireCaches() {
+    for (Iterator<ThreadEntry<T>> it = caches.iterator(); it.hasNext();) {
+      final ThreadEntry<T> entry = it.next();
+      final Thread thread = entry.thread.get();
+      if (thread == null || ! thread.isAlive()) {
+        retiredHits += entry.cache.hits();
+        retiredMisses += entry.cache.misses();
+        it.remove();
+      }
+    }
+  }
+
+  @Override
+  public LMState score(Sequence<T> sequence, int startOffsetIndex, LMState priorState) {
+    if (sequence.size() == 0) {
+      return lm.score(sequence, startOffsetIndex, priorState);
+    }
+    final LMQueryCache<T> cache = threadCache.get().cache;
+    LMState state = cache.get(sequence, startOffsetIndex, priorState);
+    if (state == null) {
+      state = lm.score(sequence, startOffsetIndex, priorState);
+      cache.put(sequence, startOffsetIndex, priorState, state);
+    }
+    return state;
+  }
+
+  /**
+   * Answer the cached queries and send the others to the language model as one batch.
+   */
+  @Override
+  public void score(List<Sequence<T>> sequences, int[] startOffsetIndices, List<LMState> priorStates,
+      LMState[] states) {
+    final ThreadCache<T> c = threadCache.get();
+    c.clear();
+    for (int i = 0, sz = sequences.size(); i < sz; ++i) {
+      final Sequence<T> sequence = sequences.get(i);
+      if (sequence == null || sequence.size() == 0) {
+        states[i] = sequence == null ? null : lm.score(sequence, startOffsetIndices[i], priorStates.get(i));
+      } else if ((states[i] = c.cache.get(sequence, startOffsetIndices[i], priorStates.get(i))) == null) {
+        c.add(i, sequence, startOffsetIndices[i], priorStates.get(i));
+      }
+    }
+    final int numMisses = c.sequences.size();
+    if (numMisses == 0) return;
+    final LMState[] missStates = c.states(numMisses);
+    lm.score(c.sequences, c.startIndices, c.priorStates, missStates);
+    for (int j = 0; j < numMisses; ++j) {
+      final int i = c.indices[j];
+      states[i] = missStates[j];
+      c.cache.put(sequences.get(i), startOffsetIndices[i], priorStates.get(i), missStates[j]);
+    }
+    c.clear();
+  }
+
+  @Override
+  public boolean supportsBatchScoring() {
+    return lm.supportsBatchScoring();
+  }
+
+  @Override
+  public T getStartToken() {
+    return lm.getStartToken();
+  }
+
+  @Override
+  public T getEndToken() {
+    return lm.getEndToken();
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int order() {
+    return lm.order();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * A thread cache and its owner. The thread is held weakly.
+   *
+   * @author Spence Green
+   *
+   * @param <T>
+   */
+  private static class ThreadEntry<T> {
+    final WeakReference<Thread> thread;
+    final LMQueryCache<T> cache;
+
+    ThreadEntry(Thread thread, LMQueryCache<T> cache) {
+      this.thread = new WeakReference<>(thread);
+      this.cache = cache;
+    }
+  }
+
+  /**
+   * The cache of a thread and scratch space for the misses of a batch.
+   *
+   * @author Spence Green
+   *
+   * @param <T>
+   */
+  private static class ThreadCache<T> {
+    final LMQueryCache<T> cache;
+    int[] indices = new int[64];
+    final List<Sequence<T>> sequences = new ArrayList<>();
+    final List<LMState> priorStates = new ArrayList<>();
+    int[] startIndices = new int[64];
+    private LMState[] states = new LMState[64];
+
+    ThreadCache(LMQueryCache<T> cache) {
+      this.cache = cache;
+    }
+
+    void add(int index, Sequence<T> sequence, int startIndex, LMState priorState) {
+      final int j = sequences.size();
+      if (j == indices.length) {
+        indices = Arrays.copyOf(indices, 2 * j);
+        startIndices = Arrays.copyOf(startIndices, 2 * j);
+      }
+      indices[j] = index;
+      sequences.add(sequence);
+      priorStates.add(priorState);
+      startIndices[j] = startIndex;
+    }
+
+    LMState[] states(int size) {
+      if (states.length < size) states = new LMState[Math.max(size, 2 * states.length)];
+      return states;
+    }
+
+    void clear() {
+      Arrays.fill(states, 0, Math.min(states.length, sequences.size()), null);
+      sequences.clear();
+      priorStates.clear();
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.mt.lm;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,6 +41,7 @@ public class KenLM {
   // JNI methods
   private native long readKenLM(String filename, long nplm_cache_size, int loadMethod);
   private native long scoreNGramSeq(long kenLMPtr, int[] ngram, int startIndex);
+  private native void scoreNGramSeqBatch(long kenLMPtr, ByteBuffer input, int numQueries, ByteBuffer output);
   private native long scoreNGram(long kenLMPtr, int[] ngram);
   private native int getLMId(long kenLMPtr, String token);
   private native int getOrder(long kenLMPtr);
@@ -142,4 +144,22 @@ public class KenLM {
   public float scoreSeq(int words[], int startIndex) {
     return scoreFromMarshalled(scoreSeqMarshalled(words, startIndex));
   }
+
+  /**
+   * Score a batch of sequences in one JNI call. Both buffers must be direct and in
+   * native byte order. For each query, <code>input</code> holds the length of the
+   * sequence, the start index, and the words in the same order as
+   * <code>scoreSeqMarshalled(int[], int)</code>. The marshalled result of query i is
+   * written to the i-th long of <code>output</code>. The positions of the buffers
+   * are ignored.
+   * 
+   * @param input
+   * @param numQueries
+   * @param output
+   */
+  public void scoreSeqMarshalled(ByteBuffer input, int numQueries, ByteBuffer output) {
+    assert input.isDirect() && output.isDirect();
+    assert output.capacity() >= numQueries * Long.BYTES;
+    scoreNGramSeqBatch(kenLMPtr, input, numQueries, output);
+  }
 }
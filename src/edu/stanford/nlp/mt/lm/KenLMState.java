@@ -38,7 +38,7 @@ public class KenLMState extends LMState {
       logger.error("State length mis-match: {} vs. {}", state.length, stateLength);
       throw new RuntimeException("Bad state length returned from KenLM query");
     }
-    this.hashCode = MurmurHash2.hash32(state, state.length, 1);
+    this.hashCode = MurmurHash2.hash32(this.state, this.state.length, 1);
   }
   
   /**
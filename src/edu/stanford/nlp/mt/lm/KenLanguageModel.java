@@ -1,5 +1,10 @@
 package edu.stanford.nlp.mt.lm;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,6 +52,10 @@ public class KenLanguageModel implements LanguageModel<IString> {
 
   private final ReentrantLock preventDuplicateWork = new ReentrantLock();
 
+  // Reusable direct buffers for batch queries. Released with the model.
+  private final ThreadLocal<QueryBuffer> threadLocalBuffer =
+      ThreadLocal.withInitial(QueryBuffer::new);
+
   /**
    * Constructor for multi-threaded queries.
    *
@@ -167,6 +176,81 @@ public class KenLanguageModel implements LanguageModel<IString> {
     return new KenLMState(KenLM.scoreFromMarshalled(got), ngramIds, KenLM.rightStateFromMarshalled(got));
   }
 
+  /**
+   * Score the batch with one JNI call. The KenLM inputs are written directly to a
+   * reusable direct buffer, so the only allocations are the returned states.
+   */
+  @Override
+  public void score(List<Sequence<IString>> sequences, int[] startOffsetIndices, List<LMState> priorStates,
+      LMState[] states) {
+    final int numSequences = sequences.size();
+    final QueryBuffer buffer = threadLocalBuffer.get();
+    final int[] queryToSequence = buffer.queryToSequence(numSequences);
+    
+    // Size the input. Queries that do not need KenLM are answered here.
+    int numQueries = 0;
+    int inputSize = 0;
+    for (int i = 0; i < numSequences; ++i) {
+      final Sequence<IString> sequence = sequences.get(i);
+      final LMState priorState = priorStates.get(i);
+      if (sequence == null) {
+        states[i] = null;
+      } else if (sequence.size() == 0 || (sequence.size() == 1 && priorState == null && 
+          sequence.get(0).equals(TokenUtils.START_TOKEN))) {
+        states[i] = score(sequence, startOffsetIndices[i], priorState);
+      } else {
+        queryToSequence[numQueries++] = i;
+        inputSize += 2 + sequence.size() + (priorState == null ? 0 : priorState.length());
+      }
+    }
+    if (numQueries == 0) {
+      buffer.trim();
+      return;
+    }
+    
+    // Write the queries in the format of makeKenLMInput(), preceded by the length and the
+    // reversed start index.
+    final IntBuffer input = buffer.input(inputSize);
+    final int[] queryOffsets = buffer.queryOffsets(numQueries);
+    int offset = 0;
+    for (int q = 0; q < numQueries; ++q) {
+      final int i = queryToSequence[q];
+      final Sequence<IString> sequence = sequences.get(i);
+      final int[] state = priorStates.get(i) == null ? EMPTY_INT_ARRAY : ((KenLMState) priorStates.get(i)).getState();
+      final int sequenceSize = sequence.size();
+      final int length = sequenceSize + state.length;
+      final int kenLMStartIndex = length - state.length - startOffsetIndices[i] - 1;
+      assert kenLMStartIndex >= 0;
+      queryOffsets[q] = offset;
+      input.put(offset++, length);
+      input.put(offset++, kenLMStartIndex);
+      for (int j = sequenceSize - 1; j >= 0; --j) {
+        input.put(offset++, toKenLMId(sequence.get(j)));
+      }
+      for (int j = 0; j < state.length; ++j) {
+        input.put(offset++, state[j]);
+      }
+    }
+    
+    // Execute the queries (via JNI) and construct the return states
+    final LongBuffer output = buffer.output(numQueries);
+    model.scoreSeqMarshalled(buffer.inputBytes, numQueries, buffer.outputBytes);
+    for (int q = 0; q < numQueries; ++q) {
+      final long got = output.get(q);
+      final int[] state = new int[KenLM.rightStateFromMarshalled(got)];
+      for (int j = 0, start = queryOffsets[q] + 2; j < state.length; ++j) {
+        state[j] = input.get(start + j);
+      }
+      states[queryToSequence[q]] = new KenLMState(KenLM.scoreFromMarshalled(got), state, state.length);
+    }
+    buffer.trim();
+  }
+
+  @Override
+  public boolean supportsBatchScoring() {
+    return true;
+  }
+
   /**
    * Convert a Sequence and an optional state to an input for KenLM.
    *
@@ -187,34 +271,83 @@ public class KenLanguageModel implements LanguageModel<IString> {
     return ngramIds;
   }
   
-// TODO(spenceg) This never yielded an improvement....
-//  private static final int DEFAULT_CACHE_SIZE = 10000;
-//  private static final ThreadLocal<KenLMCache> threadLocalCache =
-//      new ThreadLocal<KenLMCache>();
-//  
-//  private static class KenLMCache {
-//    private final long[] keys;
-//    private final long[] values;
-//    private final int mask;
-//    public KenLMCache(int size) {
-//      this.keys = new long[size];
-//      this.values = new long[size];
-//      this.mask = size - 1;
-//    }
-//    
-//    public Long get(int[] kenLMInput, int startIndex) {
-//      long hashValue = MurmurHash2.hash64(kenLMInput, kenLMInput.length, startIndex);
-//      int k = ideal(hashValue);
-//      return keys[k] == hashValue ? values[k] : null;
-//    }
-//    private int ideal(long hashed) {
-//      return ((int)hashed) & mask;
-//    }
-//    public void insert(int[] kenLMInput, int startIndex, long value) {
-//      long hashValue = MurmurHash2.hash64(kenLMInput, kenLMInput.length, startIndex);
-//      int k = ideal(hashValue);
-//      keys[k] = hashValue;
-//      values[k] = value;
-//    }
-//  }
+  /**
+   * Per-thread storage for batch queries. The buffers grow as needed. Buffers that
+   * grew beyond the retained limits for an unusually large batch are released after
+   * the batch.
+   * 
+   * @author Spence Green
+   *
+   */
+  private static class QueryBuffer {
+    private static final int INITIAL_QUERIES = 256;
+    private static final int INITIAL_INPUT_SIZE = 16 * INITIAL_QUERIES;
+    private static final int MAX_RETAINED_QUERIES = 1 << 16;
+    private static final int MAX_RETAINED_INPUT_SIZE = 16 * MAX_RETAINED_QUERIES;
+    
+    ByteBuffer inputBytes;
+    ByteBuffer outputBytes;
+    private IntBuffer input;
+    private LongBuffer output;
+    private int[] queryToSequence = new int[INITIAL_QUERIES];
+    private int[] queryOffsets = new int[INITIAL_QUERIES];
+    
+    QueryBuffer() {
+      allocateInput(INITIAL_INPUT_SIZE);
+      allocateOutput(INITIAL_QUERIES);
+    }
+    
+    private void allocateInput(int size) {
+      inputBytes = ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder());
+      input = inputBytes.asIntBuffer();
+    }
+    
+    private void allocateOutput(int size) {
+      outputBytes = ByteBuffer.allocateDirect(size * Long.BYTES).order(ByteOrder.nativeOrder());
+      output = outputBytes.asLongBuffer();
+    }
+    
+    IntBuffer input(int size) {
+      if (input.capacity() < size) allocateInput(grow(input.capacity(), size, MAX_RETAINED_INPUT_SIZE));
+      return input;
+    }
+    
+    LongBuffer output(int numQueries) {
+      if (output.capacity() < numQueries) {
+        allocateOutput(grow(output.capacity(), numQueries, MAX_RETAINED_QUERIES));
+      }
+      return output;
+    }
+    
+    int[] queryToSequence(int numQueries) {
+      if (queryToSequence.length < numQueries) {
+        queryToSequence = new int[grow(queryToSequence.length, numQueries, MAX_RETAINED_QUERIES)];
+      }
+      return queryToSequence;
+    }
+    
+    int[] queryOffsets(int numQueries) {
+      if (queryOffsets.length < numQueries) {
+        queryOffsets = new int[grow(queryOffsets.length, numQueries, MAX_RETAINED_QUERIES)];
+      }
+      return queryOffsets;
+    }
+    
+    /**
+     * Double the capacity up to the retained limit, or fit the request if it is larger.
+     */
+    private static int grow(int capacity, int size, int maxRetained) {
+      return Math.max(size, Math.min(2 * capacity, maxRetained));
+    }
+    
+    /**
+     * Release the buffers that exceed the retained limits.
+     */
+    void trim() {
+      if (input.capacity() > MAX_RETAINED_INPUT_SIZE) allocateInput(INITIAL_INPUT_SIZE);
+      if (output.capacity() > MAX_RETAINED_QUERIES) allocateOutput(INITIAL_QUERIES);
+      if (queryToSequence.length > MAX_RETAINED_QUERIES) queryToSequence = new int[INITIAL_QUERIES];
+      if (queryOffsets.length > MAX_RETAINED_QUERIES) queryOffsets = new int[INITIAL_QUERIES];
+    }
+  }
 }
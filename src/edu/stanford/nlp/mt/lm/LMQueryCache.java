@@ -0,0 +1,241 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * A cache of language model queries. The key is the query (the sequence, the start
+ * index, and the prior state) and the value is the result of <code>LanguageModel.score()</code>.
+ * Prior states are compared with <code>equals()</code>, so a hit does not require the
+ * same state object.
+ *
+ * Not threadsafe. <code>CachingLanguageModel</code> creates one cache per thread.
+ *
+ * @author Spence Green
+ *
+ * @param <T>
+ */
+public abstract class LMQueryCache<T> {
+
+  /**
+   * One entry per hash bucket. A new query replaces the old one.
+   */
+  public static final String DIRECT_MAPPED = "direct";
+
+  /**
+   * Least-recently used replacement.
+   */
+  public static final String LRU = "lru";
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  protected long hits = 0;
+  protected long misses = 0;
+
+  /**
+   * Create a cache.
+   *
+   * @param type <code>DIRECT_MAPPED</code> or <code>LRU</code>.
+   * @param capacity The maximum number of entries.
+   * @return
+   */
+  public static <T> LMQueryCache<T> create(String type, int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+    if (DIRECT_MAPPED.equals(type)) {
+      return new DirectMapped<>(capacity);
+    } else if (LRU.equals(type)) {
+      return new LeastRecentlyUsed<>(capacity);
+    } else {
+      throw new IllegalArgumentException("Unknown LM cache type: " + type);
+    }
+  }
+
+  /**
+   * Lookup a query and update the hit and miss counts.
+   *
+   * @param sequence
+   * @param startOffsetIndex
+   * @param priorState
+   * @return The cached state or null if the query is not in the cache.
+   */
+  public abstract LMState get(Sequence<T> sequence, int startOffsetIndex, LMState priorState);
+
+  /**
+   * Insert the result of a query.
+   *
+   * @param sequence
+   * @param startOffsetIndex
+   * @param priorState
+   * @param state
+   */
+  public abstract void put(Sequence<T> sequence, int startOffsetIndex, LMState priorState, LMState state);
+
+  /**
+   * @return The maximum number of entries.
+   */
+  public abstract int capacity();
+
+  public long hits() { return hits; }
+
+  public long misses() { return misses; }
+
+  /**
+   * Hash of a query.
+   */
+  protected static <T> int hash(Sequence<T> sequence, int startOffsetIndex, LMState priorState) {
+    int h = sequence.hashCode();
+    h = 31 * h + startOffsetIndex;
+    h = 31 * h + (priorState == null ? 0 : priorState.hashCode());
+    // Spread the high bits for power-of-two tables (from the MurmurHash3 finalizer)
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  /**
+   * True if the cached query matches the query.
+   */
+  protected static <T> boolean matches(Sequence<T> cachedSequence, int cachedStart, LMState cachedPrior,
+      Sequence<T> sequence, int startOffsetIndex, LMState priorState) {
+    return cachedStart == startOffsetIndex &&
+        (cachedPrior == null ? priorState == null : cachedPrior.equals(priorState)) &&
+        cachedSequence.equals(sequence);
+  }
+
+  /**
+   * Direct-mapped cache in parallel arrays. Lookups do not allocate.
+   *
+   * @author Spence Green
+   *
+   * @param <T>
+   */
+  private static final class DirectMapped<T> extends LMQueryCache<T> {
+    private final int mask;
+    private final int[] hashes;
+    private final Sequence<T>[] sequences;
+    private final int[] starts;
+    private final LMState[] priors;
+    private final LMState[] states;
+
+    @SuppressWarnings("unchecked")
+    DirectMapped(int capacity) {
+      // Round up to a power of two
+      int size = Integer.highestOneBit(capacity);
+      if (size < capacity) size <<= 1;
+      this.mask = size - 1;
+      this.hashes = new int[size];
+      this.sequences = (Sequence<T>[]) new Sequence<?>[size];
+      this.starts = new int[size];
+      this.priors = new LMState[size];
+      this.states = new LMState[size];
+    }
+
+    @Override
+    public LMState get(Sequence<T> sequence, int startOffsetIndex, LMState priorState) {
+      final int h = hash(sequence, startOffsetIndex, priorState);
+      final int i = h & mask;
+      if (states[i] != null && hashes[i] == h &&
+          matches(sequences[i], starts[i], priors[i], sequence, startOffsetIndex, priorState)) {
+        ++hits;
+        return states[i];
+      }
+      ++misses;
+      return null;
+    }
+
+    @Override
+    public void put(Sequence<T> sequence, int startOffsetIndex, LMState priorState, LMState state) {
+      final int h = hash(sequence, startOffsetIndex, priorState);
+      final int i = h & mask;
+      hashes[i] = h;
+      sequences[i] = sequence;
+      starts[i] = startOffsetIndex;
+      priors[i] = priorState;
+      states[i] = state;
+    }
+
+    @Override
+    public int capacity() { return mask + 1; }
+  }
+
+  /**
+   * LRU cache backed by an access-ordered <code>LinkedHashMap</code>.
+   *
+   * @author Spence Green
+   *
+   * @param <T>
+   */
+  private static final class LeastRecentlyUsed<T> extends LMQueryCache<T> {
+    private final int capacity;
+    private final Map<Key<T>,LMState> map;
+    // Reused for lookups
+    private final Key<T> probe = new Key<>();
+
+    @SuppressWarnings("serial")
+    LeastRecentlyUsed(int capacity) {
+      this.capacity = capacity;
+      this.map = new LinkedHashMap<Key<T>,LMState>(Math.min(capacity, 1 << 16), 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key<T>,LMState> eldest) {
+          return size() > LeastRecentlyUsed.this.capacity;
+        }
+      };
+    }
+
+    @Override
+    public LMState get(Sequence<T> sequence, int startOffsetIndex, LMState priorState) {
+      probe.set(sequence, startOffsetIndex, priorState);
+      final LMState state = map.get(probe);
+      probe.set(null, 0, null);
+      if (state == null) {
+        ++misses;
+      } else {
+        ++hits;
+      }
+      return state;
+    }
+
+    @Override
+    public void put(Sequence<T> sequence, int startOffsetIndex, LMState priorState, LMState state) {
+      final Key<T> key = new Key<>();
+      key.set(sequence, startOffsetIndex, priorState);
+      map.put(key, state);
+    }
+
+    @Override
+    public int capacity() { return capacity; }
+  }
+
+  private static final class Key<T> {
+    private Sequence<T> sequence;
+    private int start;
+    private LMState prior;
+    private int hashCode;
+
+    void set(Sequence<T> sequence, int start, LMState prior) {
+      this.sequence = sequence;
+      this.start = start;
+      this.prior = prior;
+      this.hashCode = sequence == null ? 0 : hash(sequence, start, prior);
+    }
+
+    @Override
+    public int hashCode() { return hashCode; }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      } else if ( ! (other instanceof Key)) {
+        return false;
+      } else {
+        final Key<T> o = (Key<T>) other;
+        return hashCode == o.hashCode && matches(sequence, start, prior, o.sequence, o.start, o.prior);
+      }
+    }
+  }
+}
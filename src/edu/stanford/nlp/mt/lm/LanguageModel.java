@@ -1,5 +1,7 @@
 package edu.stanford.nlp.mt.lm;
 
+import java.util.List;
+
 import edu.stanford.nlp.mt.util.Sequence;
 
 /**
@@ -28,6 +30,35 @@ public interface LanguageModel<T> {
    */
   LMState score(Sequence<T> sequence, int startOffsetIndex, LMState priorState);
   
+  /**
+   * Score a batch of queries. Query i is <code>score(sequences.get(i), startOffsetIndices[i],
+   * priorStates.get(i))</code>, and its result is written to <code>states[i]</code>. A null
+   * sequence is not scored, and its result is null.
+   * 
+   * The default implementation scores the queries one at a time. Implementations that have
+   * a fixed cost per query, e.g., a JNI call, should override this method and
+   * <code>supportsBatchScoring()</code>.
+   * 
+   * @param sequences
+   * @param startOffsetIndices
+   * @param priorStates Prior states, which may be null.
+   * @param states The output array, which must hold at least <code>sequences.size()</code> states.
+   */
+  default void score(List<Sequence<T>> sequences, int[] startOffsetIndices, List<LMState> priorStates,
+      LMState[] states) {
+    for (int i = 0, sz = sequences.size(); i < sz; ++i) {
+      final Sequence<T> sequence = sequences.get(i);
+      states[i] = sequence == null ? null : score(sequence, startOffsetIndices[i], priorStates.get(i));
+    }
+  }
+  
+  /**
+   * @return true if the batch <code>score()</code> is faster than scoring the queries one at a time.
+   */
+  default boolean supportsBatchScoring() {
+    return false;
+  }
+  
   /**
 	 * @return the LM-specific start token.
 	 */
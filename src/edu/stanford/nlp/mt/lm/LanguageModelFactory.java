@@ -16,6 +16,8 @@ public final class LanguageModelFactory {
 
   // Supported language models
   public static final String KEN_LM_TAG = "kenlm:";
+  public static final String MAPPED_LM_TAG = "mapped:";
+  public static final String TRIE_LM_TAG = "trie:";
 
   public static final int MAX_NGRAM_ORDER = 10;
 
@@ -27,6 +29,16 @@ public final class LanguageModelFactory {
       String realFilename = filename.substring(KEN_LM_TAG.length());
       languageModel = new KenLanguageModel(realFilename);
 
+    } else if (filename.startsWith(MAPPED_LM_TAG)) {
+      // Binary file created by MappedLanguageModelBuilder
+      String realFilename = filename.substring(MAPPED_LM_TAG.length());
+      languageModel = new MappedLanguageModel(realFilename);
+
+    } else if (filename.startsWith(TRIE_LM_TAG)) {
+      // Binary file created by TrieLanguageModelBuilder
+      String realFilename = filename.substring(TRIE_LM_TAG.length());
+      languageModel = new TrieLanguageModel(realFilename);
+
     } else {
       // Default Java LM data structure
       languageModel = new ARPALanguageModel(filename);
@@ -0,0 +1,273 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.MurmurHash2;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * A pure Java n-gram language model whose probing hash tables are memory-mapped
+ * from a binary file created by <code>MappedLanguageModelBuilder</code>. Only the
+ * vocabulary is read onto the heap, so the model loads quickly, and processes on the
+ * same host share the pages of the file through the OS page cache.
+ *
+ * Queries and states are identical to <code>ARPALanguageModel</code> for the same ARPA file.
+ * Like <code>ProbingIntegerArrayRawIndex</code>, each table stores the 64-bit hash of
+ * an n-gram instead of the n-gram itself.
+ *
+ * File format:
+ * <pre>
+ *   long magic
+ *   int order
+ *   int vocabSize
+ *   long vocabBytes
+ *   long[order] number of buckets per order (powers of two)
+ *   UTF-8 words (DataOutput.writeUTF) for model word ids 0 .. vocabSize-1
+ *   buckets for orders 1 .. order: long key, float prob, float backoff
+ * </pre>
+ * A backoff of negative zero marks an n-gram that is not the context of a longer n-gram.
+ *
+ * This class is threadsafe.
+ *
+ * @author Spence Green
+ *
+ */
+public class MappedLanguageModel extends BackoffLanguageModel {
+
+  private static final Logger logger = LogManager.getLogger(MappedLanguageModel.class.getName());
+
+  static final long MAGIC = 0x50484c4d41503031L;
+  static final int BUCKET_BYTES = 16;
+  static final float LOAD = 0.7f;
+
+  // Buckets per mapped region (1GB per region)
+  static final int REGION_SHIFT = 26;
+  static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+  private final String name;
+  private final ProbingTable[] tables;
+  private final int[] istringIdToLMId;
+
+  /**
+   * Constructor.
+   *
+   * @param filename
+   * @throws IOException
+   */
+  public MappedLanguageModel(String filename) throws IOException {
+    this.name = String.format("MappedLM(%s)", filename);
+    final long startTime = TimingUtils.startTime();
+    final int order;
+    final long[] numBuckets;
+    final String[] vocab;
+    final long tableOffset;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+      if (in.readLong() != MAGIC) {
+        throw new RuntimeException("Not a mapped language model: " + filename);
+      }
+      order = in.readInt();
+      final int vocabSize = in.readInt();
+      final long vocabBytes = in.readLong();
+      numBuckets = new long[order];
+      for (int i = 0; i < order; ++i) numBuckets[i] = in.readLong();
+      vocab = new String[vocabSize];
+      for (int i = 0; i < vocabSize; ++i) vocab[i] = in.readUTF();
+      tableOffset = headerBytes(order) + vocabBytes;
+    }
+
+    // Map the tables
+    this.tables = new ProbingTable[order];
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+      final FileChannel channel = file.getChannel();
+      long offset = tableOffset;
+      for (int i = 0; i < order; ++i) {
+        tables[i] = new ProbingTable(channel, offset, numBuckets[i], MapMode.READ_ONLY);
+        offset += numBuckets[i] * BUCKET_BYTES;
+      }
+      if (offset > channel.size()) {
+        throw new RuntimeException("Truncated mapped language model: " + filename);
+      }
+    }
+
+    // Map system vocabulary ids to model word ids
+    final int[] ids = new int[vocab.length];
+    int maxId = 0;
+    for (int i = 0; i < vocab.length; ++i) {
+      ids[i] = new IString(vocab[i]).id;
+      maxId = Math.max(maxId, ids[i]);
+    }
+    this.istringIdToLMId = new int[maxId + 1];
+    Arrays.fill(istringIdToLMId, UNKNOWN_ID);
+    for (int i = 0; i < ids.length; ++i) istringIdToLMId[ids[i]] = i;
+
+    logger.info("Loaded mapped lm: {} (order: {} vocab: {}) in {}s", filename, order, vocab.length,
+        String.format("%.3f", TimingUtils.elapsedSeconds(startTime)));
+  }
+
+  /**
+   * Size of the fixed part of the header.
+   *
+   * @param order
+   * @return
+   */
+  static long headerBytes(int order) {
+    return 8 + 4 + 4 + 8 + 8L * order;
+  }
+
+  /**
+   * Hash of the n-gram <code>ids[start, end)</code>. Zero marks an empty bucket.
+   */
+  static long hash(int[] ids, int start, int end) {
+    final long h = MurmurHash2.hash64(ids, start, end - start, 1);
+    return h == 0 ? 1 : h;
+  }
+
+  /**
+   * Number of buckets for a table with <code>numNgrams</code> entries.
+   *
+   * @param numNgrams
+   * @return
+   */
+  static long numBuckets(long numNgrams) {
+    return Long.highestOneBit(Math.max(1L, (long) (numNgrams / LOAD))) << 1;
+  }
+
+  @Override
+  protected int toModelId(IString token) {
+    return token.id >= 0 && token.id < istringIdToLMId.length ? istringIdToLMId[token.id] : UNKNOWN_ID;
+  }
+
+  @Override
+  protected long find(int[] ids, int start, int end) {
+    return tables[end - start - 1].find(hash(ids, start, end));
+  }
+
+  @Override
+  protected float prob(int order, long entry) {
+    return tables[order - 1].prob(entry);
+  }
+
+  @Override
+  protected float backoff(int order, long entry) {
+    return tables[order - 1].backoff(entry);
+  }
+
+  @Override
+  protected boolean extendsRight(int order, long entry) {
+    return extendsRight(tables[order - 1].backoff(entry));
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int order() {
+    return tables.length;
+  }
+
+  /**
+   * A memory-mapped open addressing table with linear probing.
+   *
+   * @author Spence Green
+   *
+   */
+  static final class ProbingTable {
+    private final MappedByteBuffer[] regions;
+    private final long mask;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     * @param offset Position of the first bucket in the file.
+     * @param numBuckets A power of two.
+     * @param mode
+     * @throws IOException
+     */
+    ProbingTable(FileChannel channel, long offset, long numBuckets, MapMode mode) throws IOException {
+      if (Long.bitCount(numBuckets) != 1) {
+        throw new RuntimeException("Number of buckets is not a power of two: " + numBuckets);
+      }
+      this.mask = numBuckets - 1;
+      final int numRegions = (int) ((numBuckets + REGION_MASK) >>> REGION_SHIFT);
+      this.regions = new MappedByteBuffer[numRegions];
+      for (int i = 0; i < numRegions; ++i) {
+        final long firstBucket = (long) i << REGION_SHIFT;
+        final long size = Math.min(numBuckets - firstBucket, 1L << REGION_SHIFT) * BUCKET_BYTES;
+        regions[i] = channel.map(mode, offset + firstBucket * BUCKET_BYTES, size);
+      }
+    }
+
+    private MappedByteBuffer region(long bucket) {
+      return regions[(int) (bucket >>> REGION_SHIFT)];
+    }
+
+    private static int position(long bucket) {
+      return (int) (bucket & REGION_MASK) * BUCKET_BYTES;
+    }
+
+    /**
+     * Bucket of a key, or -1 if the key is not in the table.
+     *
+     * @param key
+     * @return
+     */
+    long find(long key) {
+      for (long i = key & mask; ; i = (i + 1) & mask) {
+        final long k = region(i).getLong(position(i));
+        if (k == key) return i;
+        if (k == 0) return -1;
+      }
+    }
+
+    float prob(long bucket) {
+      return region(bucket).getFloat(position(bucket) + 8);
+    }
+
+    float backoff(long bucket) {
+      return region(bucket).getFloat(position(bucket) + 12);
+    }
+
+    /**
+     * Insert or overwrite a key. The table must be mapped for writing and must not be full.
+     *
+     * @param key
+     * @param prob
+     * @param backoff
+     */
+    void put(long key, float prob, float backoff) {
+      long i = key & mask;
+      for (long k; (k = region(i).getLong(position(i))) != 0 && k != key; i = (i + 1) & mask);
+      final MappedByteBuffer region = region(i);
+      final int position = position(i);
+      region.putLong(position, key);
+      region.putFloat(position + 8, prob);
+      region.putFloat(position + 12, backoff);
+    }
+
+    void setBackoff(long bucket, float backoff) {
+      region(bucket).putFloat(position(bucket) + 12, backoff);
+    }
+
+    /**
+     * Flush writes to the file.
+     */
+    void force() {
+      for (MappedByteBuffer region : regions) region.force();
+    }
+  }
+}
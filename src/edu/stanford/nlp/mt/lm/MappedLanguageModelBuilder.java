@@ -0,0 +1,164 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.stanford.nlp.mt.lm.MappedLanguageModel.ProbingTable;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * Converts an ARPA file to the binary format of <code>MappedLanguageModel</code>.
+ * The n-gram tables are written directly to the memory-mapped output file, so only the
+ * vocabulary is held on the heap.
+ *
+ * @author Spence Green
+ *
+ */
+public final class MappedLanguageModelBuilder {
+
+  private static final Logger logger = LogManager.getLogger(MappedLanguageModelBuilder.class.getName());
+
+  private MappedLanguageModelBuilder() {}
+
+  /**
+   * Convert an ARPA file.
+   *
+   * @param arpaFile
+   * @param outputFile
+   * @throws IOException
+   */
+  public static void build(String arpaFile, String outputFile) throws IOException {
+    final long startTime = TimingUtils.startTime();
+    try (ARPAReader reader = new ARPAReader(arpaFile)) {
+      final int order = reader.order();
+
+      // Unigrams define the vocabulary
+      final List<String> vocab = new ArrayList<>((int) reader.ngramCount(1));
+      final Map<String,Integer> wordToId = new HashMap<>((int) (reader.ngramCount(1) / 0.75f) + 1);
+      final List<float[]> unigrams = new ArrayList<>((int) reader.ngramCount(1));
+      reader.readNgrams(1, (words, prob, backoff) -> {
+        Integer id = wordToId.get(words[0]);
+        if (id == null) {
+          wordToId.put(words[0], vocab.size());
+          vocab.add(words[0]);
+          unigrams.add(new float[] { prob, backoff });
+        } else {
+          unigrams.set(id, new float[] { prob, backoff });
+        }
+      });
+
+      // Header and vocabulary
+      long[] numBuckets = new long[order];
+      for (int i = 0; i < order; ++i) {
+        numBuckets[i] = MappedLanguageModel.numBuckets(i == 0 ? vocab.size() : reader.ngramCount(i + 1));
+      }
+      ByteArrayOutputStream vocabBytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(vocabBytes)) {
+        for (String word : vocab) out.writeUTF(word);
+      }
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(header)) {
+        out.writeLong(MappedLanguageModel.MAGIC);
+        out.writeInt(order);
+        out.writeInt(vocab.size());
+        out.writeLong(vocabBytes.size());
+        for (long n : numBuckets) out.writeLong(n);
+      }
+      assert header.size() == MappedLanguageModel.headerBytes(order);
+
+      long fileSize = header.size() + vocabBytes.size();
+      for (long n : numBuckets) fileSize += n * MappedLanguageModel.BUCKET_BYTES;
+
+      final long[] numSkipped = new long[1];
+      final long[] numMissingContexts = new long[1];
+      try (RandomAccessFile file = new RandomAccessFile(outputFile, "rw")) {
+        file.setLength(0);
+        file.write(header.toByteArray());
+        file.write(vocabBytes.toByteArray());
+        file.setLength(fileSize);
+        final FileChannel channel = file.getChannel();
+        long offset = header.size() + vocabBytes.size();
+        final ProbingTable[] tables = new ProbingTable[order];
+        for (int i = 0; i < order; ++i) {
+          tables[i] = new ProbingTable(channel, offset, numBuckets[i], MapMode.READ_WRITE);
+          offset += numBuckets[i] * MappedLanguageModel.BUCKET_BYTES;
+        }
+
+        final int[] ngram = new int[order];
+        for (int i = 0; i < unigrams.size(); ++i) {
+          ngram[0] = i;
+          tables[0].put(MappedLanguageModel.hash(ngram, 0, 1), unigrams.get(i)[0], backoff(unigrams.get(i)[1]));
+        }
+
+        // read in the remaining n-gram tables one by one
+        for (int i = 1; i < order; ++i) {
+          logger.info("Reading {} {}-grams...", reader.ngramCount(i + 1), i + 1);
+          final ProbingTable table = tables[i];
+          final ProbingTable contextTable = tables[i - 1];
+          reader.readNgrams(i + 1, (words, prob, backoff) -> {
+            for (int j = 0; j < words.length; ++j) {
+              Integer id = wordToId.get(words[j]);
+              if (id == null) {
+                // Not in the unigram table, so it can't be queried.
+                ++numSkipped[0];
+                return;
+              }
+              ngram[j] = id;
+            }
+            table.put(MappedLanguageModel.hash(ngram, 0, words.length), prob, backoff(backoff));
+
+            // Mark the context as extending to the right
+            final long context = contextTable.find(MappedLanguageModel.hash(ngram, 0, words.length - 1));
+            if (context < 0) {
+              ++numMissingContexts[0];
+            } else if ( ! BackoffLanguageModel.extendsRight(contextTable.backoff(context))) {
+              // Replace the NO_EXTENSION_BACKOFF marker (-0.0f) with a positive zero. The
+              // two compare equal as floats, so test the bits.
+              contextTable.setBackoff(context, 0.0f);
+            }
+          });
+        }
+        for (ProbingTable table : tables) table.force();
+      }
+
+      if (numMissingContexts[0] > 0) {
+        logger.warn("{} n-grams have a context that is not in the model", numMissingContexts[0]);
+      }
+      if (numSkipped[0] > 0) {
+        logger.warn("Skipped {} n-grams with words that are not in the unigram table", numSkipped[0]);
+      }
+      logger.info("Wrote mapped lm: {} (order: {} size: {} MiB) in {}s", outputFile, order,
+          fileSize / (1024 * 1024), String.format("%.3f", TimingUtils.elapsedSeconds(startTime)));
+    }
+  }
+
+  /**
+   * Zero backoffs are marked as not extending until a longer n-gram is read.
+   */
+  private static float backoff(float backoff) {
+    return backoff == 0.0f ? BackoffLanguageModel.NO_EXTENSION_BACKOFF : backoff;
+  }
+
+  /**
+   * @param args
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.printf("Usage: java %s arpa_file output_file%n", MappedLanguageModelBuilder.class.getName());
+      System.err.printf("Load the output with the %s prefix.%n", LanguageModelFactory.MAPPED_LM_TAG);
+      System.exit(-1);
+    }
+    build(args[0], args[1]);
+  }
+}
@@ -0,0 +1,129 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Maps log probabilities or backoffs to codes of a fixed number of bits. Values are
+ * sorted and split into bins with equal numbers of values, and each bin is represented
+ * by the mean of its values. Infinite values map to the nearest center. With 32 bits,
+ * codes are the raw float bits (no loss).
+ *
+ * Backoff quantizers reserve code 0 for an exact zero, since most n-grams with no
+ * extension have a zero backoff.
+ *
+ * @author Spence Green
+ *
+ */
+final class Quantizer {
+
+  public static final int LOSSLESS_BITS = 32;
+
+  private final int bits;
+  private final boolean zeroCode;
+  private final float[] centers;
+
+  private Quantizer(int bits, boolean zeroCode, float[] centers) {
+    this.bits = bits;
+    this.zeroCode = zeroCode;
+    this.centers = centers;
+  }
+
+  /**
+   * Create a quantizer for a set of values.
+   *
+   * @param values
+   * @param size Number of values in the array.
+   * @param bits Between 1 and 16, or <code>LOSSLESS_BITS</code>.
+   * @param zeroCode Reserve code 0 for 0.0.
+   * @return
+   */
+  public static Quantizer train(float[] values, int size, int bits, boolean zeroCode) {
+    if (bits == LOSSLESS_BITS) return new Quantizer(bits, false, null);
+    if (bits < 1 || bits > 16 || (zeroCode && bits < 2)) {
+      throw new IllegalArgumentException("Invalid number of quantization bits: " + bits);
+    }
+    float[] sorted = new float[size];
+    int n = 0;
+    for (int i = 0; i < size; ++i) {
+      final float v = values[i];
+      if (Float.isInfinite(v) || Float.isNaN(v) || (zeroCode && v == 0.0f)) continue;
+      sorted[n++] = v;
+    }
+    Arrays.sort(sorted, 0, n);
+    final int numBins = Math.min((1 << bits) - (zeroCode ? 1 : 0), Math.max(1, n));
+    float[] centers = new float[numBins];
+    int numCenters = 0;
+    for (int b = 0; b < numBins; ++b) {
+      final int start = (int) ((long) b * n / numBins);
+      final int end = (int) ((long) (b + 1) * n / numBins);
+      if (start >= end) continue;
+      double sum = 0.0;
+      for (int i = start; i < end; ++i) sum += sorted[i];
+      centers[numCenters++] = (float) (sum / (end - start));
+    }
+    if (numCenters == 0) centers[numCenters++] = 0.0f;
+    return new Quantizer(bits, zeroCode, Arrays.copyOf(centers, numCenters));
+  }
+
+  /**
+   * Bits per code.
+   *
+   * @return
+   */
+  public int bits() { return bits; }
+
+  /**
+   * The code of the nearest center.
+   *
+   * @param value
+   * @return
+   */
+  public long encode(float value) {
+    if (bits == LOSSLESS_BITS) return Float.floatToRawIntBits(value) & 0xffffffffL;
+    if (zeroCode && value == 0.0f) return 0;
+    int i = Arrays.binarySearch(centers, value);
+    if (i < 0) {
+      i = -i - 1;
+      if (i == centers.length || (i > 0 && value - centers[i - 1] <= centers[i] - value)) --i;
+    }
+    return zeroCode ? i + 1 : i;
+  }
+
+  /**
+   * The value of a code.
+   *
+   * @param code
+   * @return
+   */
+  public float decode(long code) {
+    if (bits == LOSSLESS_BITS) return Float.intBitsToFloat((int) code);
+    if (zeroCode) return code == 0 ? 0.0f : centers[(int) code - 1];
+    return centers[(int) code];
+  }
+
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(bits);
+    out.writeBoolean(zeroCode);
+    out.writeInt(centers == null ? 0 : centers.length);
+    if (centers != null) for (float c : centers) out.writeFloat(c);
+  }
+
+  public static Quantizer read(DataInputStream in) throws IOException {
+    final int bits = in.readInt();
+    final boolean zeroCode = in.readBoolean();
+    final int n = in.readInt();
+    float[] centers = null;
+    if (bits != LOSSLESS_BITS) {
+      centers = new float[n];
+      for (int i = 0; i < n; ++i) centers[i] = in.readFloat();
+    }
+    return new Quantizer(bits, zeroCode, centers);
+  }
+
+  public long sizeInBytes() {
+    return centers == null ? 0 : 4L * centers.length;
+  }
+}
@@ -0,0 +1,393 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * A compact n-gram language model for memory-bound hosts. N-grams are stored in a
+ * trie of bit-packed arrays (one per order) in reverse word order, as in KenLM: the
+ * children of a node are the n-grams that extend it by one word to the left. Children
+ * are contiguous and sorted, so they can be found by binary search, and a query extends
+ * the match of the shorter context by one step instead of walking from the root.
+ * Probabilities and backoffs of the higher orders are quantized (see
+ * <code>Quantizer</code>). Unigrams are not quantized.
+ *
+ * Queries and states follow <code>ARPALanguageModel</code>, and are identical for lossless
+ * quantization. Create models with <code>TrieLanguageModelBuilder</code>.
+ *
+ * This class is threadsafe.
+ *
+ * @author Spence Green
+ *
+ */
+public class TrieLanguageModel extends BackoffLanguageModel {
+
+  private static final Logger logger = LogManager.getLogger(TrieLanguageModel.class.getName());
+
+  static final long MAGIC = 0x50484c4d54524932L;
+
+  private final String name;
+  private final String[] vocab;
+  private final int[] istringIdToLMId;
+
+  // Unigrams, indexed by word id. unigramPtr[w] is the first child of w in levels[0].
+  // Unigrams that are not the context of a bigram and have no backoff are marked with
+  // NO_EXTENSION_BACKOFF.
+  private final float[] unigramProb;
+  private final float[] unigramBackoff;
+  private final long[] unigramPtr;
+
+  // levels[k] holds the n-grams of order k+2
+  private final Level[] levels;
+
+  /**
+   * Load a model created by <code>TrieLanguageModelBuilder</code>.
+   *
+   * @param filename
+   * @throws IOException
+   */
+  public TrieLanguageModel(String filename) throws IOException {
+    final long startTime = TimingUtils.startTime();
+    this.name = String.format("TrieLM(%s)", filename);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 20))) {
+      if (in.readLong() != MAGIC) {
+        throw new RuntimeException("Not a trie language model: " + filename);
+      }
+      final int order = in.readInt();
+      final int vocabSize = in.readInt();
+      this.vocab = new String[vocabSize];
+      for (int i = 0; i < vocabSize; ++i) vocab[i] = in.readUTF();
+      this.unigramProb = new float[vocabSize];
+      this.unigramBackoff = new float[vocabSize];
+      this.unigramPtr = new long[vocabSize + 1];
+      for (int i = 0; i < vocabSize; ++i) unigramProb[i] = in.readFloat();
+      for (int i = 0; i < vocabSize; ++i) unigramBackoff[i] = in.readFloat();
+      readLongs(in, unigramPtr);
+      this.levels = new Level[order - 1];
+      for (int k = 0; k < levels.length; ++k) levels[k] = Level.read(in);
+    }
+    this.istringIdToLMId = mapVocabulary(vocab);
+    logger.info("Loaded trie lm: {} (order: {} vocab: {} size: {} MiB) in {}s", filename, order(),
+        vocab.length, sizeInBytes() / (1024 * 1024), String.format("%.3f", TimingUtils.elapsedSeconds(startTime)));
+  }
+
+  /**
+   * Constructor for <code>TrieLanguageModelBuilder</code>.
+   */
+  TrieLanguageModel(String name, String[] vocab, float[] unigramProb, float[] unigramBackoff,
+      long[] unigramPtr, Level[] levels) {
+    this.name = name;
+    this.vocab = vocab;
+    this.unigramProb = unigramProb;
+    this.unigramBackoff = unigramBackoff;
+    this.unigramPtr = unigramPtr;
+    this.levels = levels;
+    this.istringIdToLMId = mapVocabulary(vocab);
+  }
+
+  /**
+   * Map system vocabulary ids to model word ids.
+   */
+  private static int[] mapVocabulary(String[] vocab) {
+    final int[] ids = new int[vocab.length];
+    int maxId = 0;
+    for (int i = 0; i < vocab.length; ++i) {
+      ids[i] = new IString(vocab[i]).id;
+      maxId = Math.max(maxId, ids[i]);
+    }
+    final int[] table = new int[maxId + 1];
+    Arrays.fill(table, UNKNOWN_ID);
+    for (int i = 0; i < ids.length; ++i) table[ids[i]] = i;
+    return table;
+  }
+
+  /**
+   * Save the model.
+   *
+   * @param filename
+   * @throws IOException
+   */
+  public void write(String filename) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 20))) {
+      out.writeLong(MAGIC);
+      out.writeInt(order());
+      out.writeInt(vocab.length);
+      for (String word : vocab) out.writeUTF(word);
+      for (float p : unigramProb) out.writeFloat(p);
+      for (float b : unigramBackoff) out.writeFloat(b);
+      writeLongs(out, unigramPtr);
+      for (Level level : levels) level.write(out);
+    }
+  }
+
+  /**
+   * Number of n-grams of all orders.
+   *
+   * @return
+   */
+  public long numNgrams() {
+    long n = vocab.length;
+    for (Level level : levels) n += level.count;
+    return n;
+  }
+
+  /**
+   * Bytes used by the n-gram arrays and the quantizers. Excludes the vocabulary strings.
+   *
+   * @return
+   */
+  public long sizeInBytes() {
+    long size = 4L * unigramProb.length + 4L * unigramBackoff.length + 8L * unigramPtr.length +
+        4L * istringIdToLMId.length;
+    for (Level level : levels) size += level.sizeInBytes();
+    return size;
+  }
+
+  @Override
+  protected int toModelId(IString token) {
+    return token.id >= 0 && token.id < istringIdToLMId.length ? istringIdToLMId[token.id] : UNKNOWN_ID;
+  }
+
+  /**
+   * Walk the trie along <code>ids[start, end)</code> from right to left.
+   */
+  @Override
+  protected long find(int[] ids, int start, int end) {
+    long node = ids[end - 1];
+    for (int order = 1, len = end - start; order < len && node >= 0; ++order) {
+      node = child(order, node, ids[end - 1 - order]);
+    }
+    return node;
+  }
+
+  @Override
+  protected long findExtension(int[] ids, int start, int end, long suffixEntry) {
+    return suffixEntry < 0 ? -1 : child(end - start - 1, suffixEntry, ids[start]);
+  }
+
+  /**
+   * The child of an n-gram for the word to its left, or -1.
+   */
+  private long child(int order, long node, int word) {
+    final long lo, hi;
+    if (order == 1) {
+      lo = unigramPtr[(int) node];
+      hi = unigramPtr[(int) node + 1];
+    } else {
+      final Level parent = levels[order - 2];
+      lo = parent.ptr(node);
+      hi = parent.ptr(node + 1);
+    }
+    return levels[order - 1].find(word, lo, hi);
+  }
+
+  @Override
+  protected float prob(int order, long node) {
+    return order == 1 ? unigramProb[(int) node] : levels[order - 2].prob(node);
+  }
+
+  @Override
+  protected float backoff(int order, long node) {
+    return order == 1 ? unigramBackoff[(int) node] : levels[order - 2].backoff(node);
+  }
+
+  /**
+   * True if the n-gram is the context of a longer n-gram or has a non-zero backoff.
+   * The builder records this, since the children of a node extend it to the left.
+   */
+  @Override
+  protected boolean extendsRight(int order, long node) {
+    return order == 1 ? extendsRight(unigramBackoff[(int) node]) : levels[order - 2].extendsRight(node);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int order() {
+    return levels.length + 1;
+  }
+
+  private static final int IO_BUFFER_LONGS = 1 << 16;
+
+  static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+    out.writeInt(values.length);
+    final ByteBuffer buffer = ByteBuffer.allocate(8 * IO_BUFFER_LONGS);
+    for (int i = 0; i < values.length; i += IO_BUFFER_LONGS) {
+      final int n = Math.min(IO_BUFFER_LONGS, values.length - i);
+      buffer.clear();
+      buffer.asLongBuffer().put(values, i, n);
+      out.write(buffer.array(), 0, 8 * n);
+    }
+  }
+
+  static void readLongs(DataInputStream in, long[] values) throws IOException {
+    if (in.readInt() != values.length) throw new RuntimeException("Corrupt trie language model");
+    final ByteBuffer buffer = ByteBuffer.allocate(8 * IO_BUFFER_LONGS);
+    for (int i = 0; i < values.length; i += IO_BUFFER_LONGS) {
+      final int n = Math.min(IO_BUFFER_LONGS, values.length - i);
+      in.readFully(buffer.array(), 0, 8 * n);
+      buffer.clear();
+      buffer.asLongBuffer().get(values, i, n);
+    }
+  }
+
+  /**
+   * The n-grams of one order as fixed-width bit-packed entries: the id of the leftmost
+   * word, quantized probability, quantized backoff, a bit that is set if the n-gram
+   * extends to the right (see <code>extendsRight()</code>), and the index of the first
+   * child in the next order. The highest order has no backoff, extension, or child
+   * fields. The other orders end with a sentinel entry whose child index is the size of
+   * the next order.
+   *
+   * @author Spence Green
+   *
+   */
+  static final class Level {
+    final long count;
+    private final int wordBits;
+    private final int ptrBits;
+    private final Quantizer probQuantizer;
+    private final Quantizer backoffQuantizer;
+    private final int entryBits;
+    private final long[] data;
+
+    Level(long count, int wordBits, int ptrBits, Quantizer probQuantizer, Quantizer backoffQuantizer) {
+      this.count = count;
+      this.wordBits = wordBits;
+      this.ptrBits = ptrBits;
+      this.probQuantizer = probQuantizer;
+      this.backoffQuantizer = backoffQuantizer;
+      this.entryBits = wordBits + probQuantizer.bits() +
+          (backoffQuantizer == null ? 0 : backoffQuantizer.bits() + 1) + ptrBits;
+      final long numEntries = backoffQuantizer == null ? count : count + 1;
+      final long numLongs = (numEntries * entryBits + 63) / 64 + 1;
+      if (numLongs > Integer.MAX_VALUE - 8) throw new RuntimeException("Too many n-grams: " + count);
+      this.data = new long[(int) numLongs];
+    }
+
+    /**
+     * Set an entry. Called by the builder.
+     */
+    void set(long i, int word, float prob, float backoff, boolean extendsRight, long ptr) {
+      long offset = i * entryBits;
+      write(data, offset, wordBits, word);
+      offset += wordBits;
+      write(data, offset, probQuantizer.bits(), probQuantizer.encode(prob));
+      offset += probQuantizer.bits();
+      if (backoffQuantizer != null) {
+        write(data, offset, backoffQuantizer.bits(), backoffQuantizer.encode(backoff));
+        offset += backoffQuantizer.bits();
+        write(data, offset, 1, extendsRight ? 1 : 0);
+        offset += 1;
+        write(data, offset, ptrBits, ptr);
+      }
+    }
+
+    int word(long i) {
+      return (int) read(data, i * entryBits, wordBits);
+    }
+
+    float prob(long i) {
+      return probQuantizer.decode(read(data, i * entryBits + wordBits, probQuantizer.bits()));
+    }
+
+    float backoff(long i) {
+      return backoffQuantizer.decode(read(data, i * entryBits + wordBits + probQuantizer.bits(),
+          backoffQuantizer.bits()));
+    }
+
+    boolean extendsRight(long i) {
+      return read(data, i * entryBits + entryBits - ptrBits - 1, 1) != 0;
+    }
+
+    long ptr(long i) {
+      return read(data, i * entryBits + entryBits - ptrBits, ptrBits);
+    }
+
+    /**
+     * Binary search for a word among the entries <code>[lo, hi)</code>.
+     *
+     * @return The entry or -1 if the word is not found.
+     */
+    long find(int word, long lo, long hi) {
+      --hi;
+      while (lo <= hi) {
+        final long mid = (lo + hi) >>> 1;
+        final int w = word(mid);
+        if (w < word) {
+          lo = mid + 1;
+        } else if (w > word) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    long sizeInBytes() {
+      return 8L * data.length + probQuantizer.sizeInBytes() +
+          (backoffQuantizer == null ? 0 : backoffQuantizer.sizeInBytes());
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeLong(count);
+      out.writeInt(wordBits);
+      out.writeInt(ptrBits);
+      probQuantizer.write(out);
+      out.writeBoolean(backoffQuantizer != null);
+      if (backoffQuantizer != null) backoffQuantizer.write(out);
+      writeLongs(out, data);
+    }
+
+    static Level read(DataInputStream in) throws IOException {
+      final long count = in.readLong();
+      final int wordBits = in.readInt();
+      final int ptrBits = in.readInt();
+      final Quantizer probQuantizer = Quantizer.read(in);
+      final Quantizer backoffQuantizer = in.readBoolean() ? Quantizer.read(in) : null;
+      final Level level = new Level(count, wordBits, ptrBits, probQuantizer, backoffQuantizer);
+      readLongs(in, level.data);
+      return level;
+    }
+
+    private static long read(long[] data, long bitOffset, int width) {
+      if (width == 0) return 0;
+      final int index = (int) (bitOffset >>> 6);
+      final int shift = (int) (bitOffset & 63);
+      long value = data[index] >>> shift;
+      if (shift + width > 64) value |= data[index + 1] << (64 - shift);
+      return value & ((1L << width) - 1);
+    }
+
+    private static void write(long[] data, long bitOffset, int width, long value) {
+      if (width == 0) return;
+      final long mask = (1L << width) - 1;
+      value &= mask;
+      final int index = (int) (bitOffset >>> 6);
+      final int shift = (int) (bitOffset & 63);
+      data[index] = (data[index] & ~(mask << shift)) | (value << shift);
+      if (shift + width > 64) {
+        final int spill = shift + width - 64;
+        final long highMask = (1L << spill) - 1;
+        data[index + 1] = (data[index + 1] & ~highMask) | (value >>> (64 - shift));
+      }
+    }
+  }
+}
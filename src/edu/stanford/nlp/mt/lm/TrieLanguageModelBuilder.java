@@ -0,0 +1,344 @@
+package edu.stanford.nlp.mt.lm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.stanford.nlp.mt.lm.TrieLanguageModel.Level;
+import edu.stanford.nlp.mt.util.TimingUtils;
+
+/**
+ * Converts an ARPA file to a <code>TrieLanguageModel</code>. The builder holds the
+ * n-grams of two consecutive orders on the heap while it sorts them and links them
+ * into the trie. N-grams are stored in reverse word order.
+ *
+ * N-grams whose suffix (the n-gram without its leftmost word) is not in the model, or
+ * that contain words that are not in the unigram table, cannot be reached in the trie
+ * and are skipped. Models estimated by KenLM and SRILM contain the suffix of every
+ * n-gram unless they are pruned.
+ *
+ * @author Spence Green
+ *
+ */
+public final class TrieLanguageModelBuilder {
+
+  private static final Logger logger = LogManager.getLogger(TrieLanguageModelBuilder.class.getName());
+
+  public static final int DEFAULT_PROB_BITS = 8;
+  public static final int DEFAULT_BACKOFF_BITS = 8;
+
+  private TrieLanguageModelBuilder() {}
+
+  /**
+   * Convert an ARPA file.
+   *
+   * @param arpaFile
+   * @param probBits Bits per quantized probability, or <code>Quantizer.LOSSLESS_BITS</code>.
+   * @param backoffBits Bits per quantized backoff, or <code>Quantizer.LOSSLESS_BITS</code>.
+   * @return
+   * @throws IOException
+   */
+  public static TrieLanguageModel build(String arpaFile, int probBits, int backoffBits) throws IOException {
+    final long startTime = TimingUtils.startTime();
+    try (ARPAReader reader = new ARPAReader(arpaFile)) {
+      final int order = reader.order();
+
+      // Unigrams define the vocabulary
+      final List<String> vocab = new ArrayList<>((int) reader.ngramCount(1));
+      final Map<String,Integer> wordToId = new HashMap<>((int) (reader.ngramCount(1) / 0.75f) + 1);
+      final NgramArray unigrams = new NgramArray(1, reader.ngramCount(1));
+      final int[] key = new int[order];
+      reader.readNgrams(1, (words, prob, backoff) -> {
+        Integer id = wordToId.get(words[0]);
+        if (id == null) {
+          wordToId.put(words[0], vocab.size());
+          vocab.add(words[0]);
+          key[0] = unigrams.size;
+          unigrams.add(key, prob, backoff);
+        } else {
+          unigrams.prob[id] = prob;
+          unigrams.backoff[id] = backoff;
+        }
+      });
+      final int vocabSize = vocab.size();
+      final int wordBits = bits(vocabSize - 1);
+      final long[] unigramPtr = new long[vocabSize + 1];
+
+      long numSkipped = 0;
+      final Level[] levels = new Level[order - 1];
+      NgramArray prev = unigrams;
+      for (int n = 2; n <= order; ++n) {
+        logger.info("Reading {} {}-grams...", reader.ngramCount(n), n);
+        final NgramArray cur = new NgramArray(n, reader.ngramCount(n));
+        final int[] ngram = new int[n];
+        final long[] oov = new long[1];
+        reader.readNgrams(n, (words, prob, backoff) -> {
+          // Reverse word order
+          for (int j = 0; j < words.length; ++j) {
+            Integer id = wordToId.get(words[j]);
+            if (id == null) {
+              ++oov[0];
+              return;
+            }
+            ngram[words.length - 1 - j] = id;
+          }
+          cur.add(ngram, prob, backoff);
+        });
+        numSkipped += oov[0];
+        cur.sort();
+
+        // Link the suffixes to the children
+        final long[] ptr = n == 2 ? unigramPtr : new long[prev.size + 1];
+        numSkipped += cur.link(prev, ptr);
+        prev.markContexts(cur);
+        if (n > 2) levels[n - 3] = pack(prev, wordBits, ptr, cur.size, probBits, backoffBits);
+        prev = cur;
+      }
+      if (order > 1) levels[order - 2] = pack(prev, wordBits, null, 0, probBits, backoffBits);
+
+      for (int i = 0; i < vocabSize; ++i) {
+        if (unigrams.backoff[i] == 0.0f && (unigrams.isContext == null || ! unigrams.isContext[i])) {
+          unigrams.backoff[i] = BackoffLanguageModel.NO_EXTENSION_BACKOFF;
+        }
+      }
+
+      if (numSkipped > 0) {
+        logger.warn("Skipped {} n-grams that cannot be reached in the trie", numSkipped);
+      }
+      TrieLanguageModel lm = new TrieLanguageModel(String.format("TrieLM(%s)", arpaFile),
+          vocab.toArray(new String[vocabSize]), Arrays.copyOf(unigrams.prob, vocabSize),
+          Arrays.copyOf(unigrams.backoff, vocabSize), unigramPtr, levels);
+      logger.info("Built trie lm: {} (order: {} n-grams: {} size: {} MiB) in {}s", arpaFile, order,
+          lm.numNgrams(), lm.sizeInBytes() / (1024 * 1024), String.format("%.3f", TimingUtils.elapsedSeconds(startTime)));
+      return lm;
+    }
+  }
+
+  /**
+   * Pack the n-grams of one order.
+   *
+   * @param ngrams
+   * @param wordBits
+   * @param ptr First child of each n-gram, or null for the highest order.
+   * @param numChildren
+   * @param probBits
+   * @param backoffBits
+   * @return
+   */
+  private static Level pack(NgramArray ngrams, int wordBits, long[] ptr, int numChildren,
+      int probBits, int backoffBits) {
+    final Quantizer probQuantizer = Quantizer.train(ngrams.prob, ngrams.size, probBits, false);
+    final Quantizer backoffQuantizer = ptr == null ? null :
+      Quantizer.train(ngrams.backoff, ngrams.size, backoffBits, true);
+    final Level level = new Level(ngrams.size, wordBits, ptr == null ? 0 : bits(numChildren),
+        probQuantizer, backoffQuantizer);
+    final int n = ngrams.order;
+    for (int i = 0; i < ngrams.size; ++i) {
+      final boolean extendsRight = ngrams.backoff[i] != 0.0f || 
+          (ngrams.isContext != null && ngrams.isContext[i]);
+      level.set(i, ngrams.words[i * n + n - 1], ngrams.prob[i], ngrams.backoff[i], extendsRight,
+          ptr == null ? 0 : ptr[i]);
+    }
+    if (ptr != null) level.set(ngrams.size, 0, 0.0f, 0.0f, false, ptr[ngrams.size]);
+    return level;
+  }
+
+  /**
+   * Bits needed to represent values up to <code>max</code>.
+   */
+  private static int bits(long max) {
+    return Math.max(1, 64 - Long.numberOfLeadingZeros(max));
+  }
+
+  /**
+   * The n-grams of one order in parallel arrays. Words are in reverse order.
+   *
+   * @author Spence Green
+   *
+   */
+  private static final class NgramArray {
+    final int order;
+    int[] words;
+    float[] prob;
+    float[] backoff;
+    boolean[] isContext;
+    int size = 0;
+
+    NgramArray(int order, long capacity) {
+      if (capacity * order > Integer.MAX_VALUE - 8) {
+        throw new RuntimeException(String.format("Too many %d-grams: %d", order, capacity));
+      }
+      final int n = (int) Math.max(1, capacity);
+      this.order = order;
+      this.words = new int[n * order];
+      this.prob = new float[n];
+      this.backoff = new float[n];
+    }
+
+    void add(int[] ngram, float p, float b) {
+      if (size == prob.length) {
+        final int n = size + (size >> 1) + 1;
+        words = Arrays.copyOf(words, n * order);
+        prob = Arrays.copyOf(prob, n);
+        backoff = Arrays.copyOf(backoff, n);
+      }
+      System.arraycopy(ngram, 0, words, size * order, order);
+      prob[size] = p;
+      backoff[size] = b;
+      ++size;
+    }
+
+    /**
+     * Compare n-gram i to n-gram j of the same order.
+     */
+    private int compare(int i, int j) {
+      for (int k = 0; k < order; ++k) {
+        final int c = Integer.compare(words[i * order + k], words[j * order + k]);
+        if (c != 0) return c;
+      }
+      return 0;
+    }
+
+    /**
+     * Compare the suffix of n-gram i to n-gram j of the previous order.
+     */
+    private int compareContext(int i, NgramArray prev, int j) {
+      for (int k = 0; k < prev.order; ++k) {
+        final int c = Integer.compare(words[i * order + k], prev.words[j * prev.order + k]);
+        if (c != 0) return c;
+      }
+      return 0;
+    }
+
+    /**
+     * Sort lexicographically by word ids.
+     */
+    void sort() {
+      final int[] perm = new int[size];
+      for (int i = 0; i < size; ++i) perm[i] = i;
+      sort(perm, 0, size - 1);
+      final int[] sortedWords = new int[size * order];
+      final float[] sortedProb = new float[size];
+      final float[] sortedBackoff = new float[size];
+      for (int i = 0; i < size; ++i) {
+        System.arraycopy(words, perm[i] * order, sortedWords, i * order, order);
+        sortedProb[i] = prob[perm[i]];
+        sortedBackoff[i] = backoff[perm[i]];
+      }
+      words = sortedWords;
+      prob = sortedProb;
+      backoff = sortedBackoff;
+    }
+
+    private void sort(int[] perm, int lo, int hi) {
+      while (hi - lo > 16) {
+        final int mid = (lo + hi) >>> 1;
+        if (compare(perm[mid], perm[lo]) < 0) swap(perm, mid, lo);
+        if (compare(perm[hi], perm[lo]) < 0) swap(perm, hi, lo);
+        if (compare(perm[hi], perm[mid]) < 0) swap(perm, hi, mid);
+        final int pivot = perm[mid];
+        int i = lo, j = hi;
+        while (i <= j) {
+          while (compare(perm[i], pivot) < 0) ++i;
+          while (compare(perm[j], pivot) > 0) --j;
+          if (i <= j) swap(perm, i++, j--);
+        }
+        // Recurse on the smaller partition
+        if (j - lo < hi - i) {
+          sort(perm, lo, j);
+          lo = i;
+        } else {
+          sort(perm, i, hi);
+          hi = j;
+        }
+      }
+      for (int i = lo + 1; i <= hi; ++i) {
+        for (int j = i; j > lo && compare(perm[j], perm[j - 1]) < 0; --j) swap(perm, j, j - 1);
+      }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+      final int t = a[i];
+      a[i] = a[j];
+      a[j] = t;
+    }
+
+    /**
+     * Remove duplicates and n-grams whose suffix is not in <code>prev</code>, and set
+     * <code>ptr[j]</code> to the first child of each suffix j. Both orders must be sorted.
+     *
+     * @return The number of n-grams removed.
+     */
+    int link(NgramArray prev, long[] ptr) {
+      int out = 0;
+      int j = 0;
+      for (int i = 0; i < size; ++i) {
+        if (out > 0 && compare(i, out - 1) == 0) continue;
+        // Suffixes up to and including the suffix of n-gram i start here
+        while (j < prev.size && compareContext(i, prev, j) >= 0) ptr[j++] = out;
+        if (j == 0 || compareContext(i, prev, j - 1) != 0) continue;
+        if (i != out) {
+          System.arraycopy(words, i * order, words, out * order, order);
+          prob[out] = prob[i];
+          backoff[out] = backoff[i];
+        }
+        ++out;
+      }
+      while (j <= prev.size) ptr[j++] = out;
+      final int removed = size - out;
+      size = out;
+      return removed;
+    }
+
+    /**
+     * Mark the n-grams that are the context (the n-gram without its rightmost word) of an
+     * n-gram of the next order. This order must be sorted.
+     */
+    void markContexts(NgramArray next) {
+      isContext = new boolean[size];
+      for (int i = 0; i < next.size; ++i) {
+        // The reversed context starts at the second word of the reversed n-gram
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+          final int mid = (lo + hi) >>> 1;
+          int c = 0;
+          for (int k = 0; k < order && c == 0; ++k) {
+            c = Integer.compare(words[mid * order + k], next.words[i * next.order + 1 + k]);
+          }
+          if (c < 0) {
+            lo = mid + 1;
+          } else if (c > 0) {
+            hi = mid - 1;
+          } else {
+            isContext[mid] = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param args
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2 && args.length != 4) {
+      System.err.printf("Usage: java %s arpa_file output_file [prob_bits backoff_bits]%n",
+          TrieLanguageModelBuilder.class.getName());
+      System.err.printf("Quantization bits are between 1 and 16, or %d for no loss (default: %d %d)%n",
+          Quantizer.LOSSLESS_BITS, DEFAULT_PROB_BITS, DEFAULT_BACKOFF_BITS);
+      System.err.printf("Load the output with the %s prefix.%n", LanguageModelFactory.TRIE_LM_TAG);
+      System.exit(-1);
+    }
+    final int probBits = args.length == 4 ? Integer.parseInt(args[2]) : DEFAULT_PROB_BITS;
+    final int backoffBits = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_BACKOFF_BITS;
+    TrieLanguageModel lm = build(args[0], probBits, backoffBits);
+    lm.write(args[1]);
+  }
+}
@@ -22,6 +22,7 @@ abstract public class AbstractPhraseGenerator<TK, FV> implements
     TranslationModel<TK,FV> {
   
   protected RuleFeaturizer<TK, FV> phraseFeaturizer;
+  protected int ruleFeaturizationParallelism = 1;
 
   /**
    * Constructor.
@@ -42,7 +43,8 @@ abstract public class AbstractPhraseGenerator<TK, FV> implements
       Sequence<TK> source, InputProperties sourceInputProperties, int sourceInputId, 
       Scorer<FV> scorer) {
     if (source == null || source.size() == 0) return new ArrayList<>(0);
-    List<ConcreteRule<TK,FV>> concreteRules = new ArrayList<>(source.size() * source.size() * 100);
+    final List<Rule<TK>> rules = new ArrayList<>(source.size() * source.size() * 100);
+    final List<CoverageSet> sourceCoverages = new ArrayList<>(source.size() * source.size() * 100);
     int longestSourcePhrase = this.maxLengthSource();
     if (longestSourcePhrase < 0)
       longestSourcePhrase = -longestSourcePhrase;
@@ -54,16 +56,17 @@ abstract public class AbstractPhraseGenerator<TK, FV> implements
         CoverageSet sourceCoverage = new CoverageSet(sz);
         sourceCoverage.set(i, j);
         Sequence<TK> sourcePhrase = source.subsequence(i, j);
-        List<Rule<TK>> rules = this.query(sourcePhrase);
-        if (rules != null) {
-          for (Rule<TK> ruleOpt : rules) {
-            concreteRules.add(new ConcreteRule<TK,FV>(ruleOpt, 
-                sourceCoverage, phraseFeaturizer, scorer, source, sourceInputId, sourceInputProperties));
+        List<Rule<TK>> spanRules = this.query(sourcePhrase);
+        if (spanRules != null) {
+          for (Rule<TK> ruleOpt : spanRules) {
+            rules.add(ruleOpt);
+            sourceCoverages.add(sourceCoverage);
           }
         }
       }
     }
-    return concreteRules;
+    return RuleFeaturizationStage.featurize(rules, sourceCoverages, phraseFeaturizer, scorer, 
+        source, sourceInputId, sourceInputProperties, ruleFeaturizationParallelism);
   }
   
   /**
@@ -84,4 +87,9 @@ abstract public class AbstractPhraseGenerator<TK, FV> implements
   public void setFeaturizer(RuleFeaturizer<TK, FV> featurizer) {
     phraseFeaturizer = featurizer;
   }
+
+  @Override
+  public void setRuleFeaturizationParallelism(int parallelism) {
+    ruleFeaturizationParallelism = parallelism;
+  }
 }
@@ -151,6 +151,13 @@ public class CombinedTranslationModel<TK,FV> implements TranslationModel<TK,FV>
     }
   }
 
+  @Override
+  public void setRuleFeaturizationParallelism(int parallelism) {
+    for (TranslationModel<TK,FV> m : models) {
+      m.setRuleFeaturizationParallelism(parallelism);
+    }
+  }
+
   @Override
   public int maxLengthTarget() {
     int longest = -1;
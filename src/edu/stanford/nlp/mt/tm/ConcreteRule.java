@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
+import edu.stanford.nlp.mt.decoder.feat.RuleFeatureCache;
 import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
 import edu.stanford.nlp.mt.decoder.util.Scorer;
 import edu.stanford.nlp.mt.util.CoverageSet;
@@ -51,6 +53,13 @@ public class ConcreteRule<TK,FV> implements Comparable<ConcreteRule<TK,FV>> {
    * cached.
    */
   public List<FeatureValue<FV>> cachedFeatureList;
+  
+  /**
+   * The score of <code>cachedFeatureList</code> for the dense-only path of
+   * <code>Derivation</code>. NaN if the rule was created without a scorer, or if
+   * the score would have to be computed and the featurizer is not dense-only.
+   */
+  public final double cachedFeatureScore;
 
   public enum LinearDistortionType {
     standard, first_contiguous_segment, last_contiguous_segment, closest_contiguous_segment, min_first_last_contiguous_segment, average_distance
@@ -87,17 +96,43 @@ public class ConcreteRule<TK,FV> implements Comparable<ConcreteRule<TK,FV>> {
     // Extract rule features
     Featurizable<TK, FV> f = new Featurizable<>(sourceSequence, sourceInputProperties, this,
         sourceInputId);
-    List<FeatureValue<FV>> features = phraseFeaturizer == null ? 
-        Collections.emptyList() : phraseFeaturizer.ruleFeaturize(f);
+    final FeatureExtractor<TK,FV> extractor = phraseFeaturizer instanceof FeatureExtractor ?
+        (FeatureExtractor<TK,FV>) phraseFeaturizer : null;
+    final RuleFeatureCache.Entry<FV> contextFree = extractor == null ? null : 
+      extractor.contextFreeRuleFeaturize(f);
+    List<FeatureValue<FV>> features = contextFree != null ? extractor.contextDependentRuleFeaturize(f) :
+      phraseFeaturizer == null ? Collections.emptyList() : phraseFeaturizer.ruleFeaturize(f);
     
     // Cache selected features
-    cachedFeatureList = new ArrayList<>(features.size());
+    cachedFeatureList = new ArrayList<>(features.size() + 
+        (contextFree == null ? 0 : contextFree.features.size()));
+    if (contextFree != null) addCacheable(contextFree.features);
+    addCacheable(features);
+    
+    double score = scorer == null ? -199.0 : scorer.getIncrementalScore(features);
+    if (scorer != null && contextFree != null) score += contextFree.score(scorer);
+    this.isolationScore = score;
+    final boolean allCached = cachedFeatureList.size() == features.size() + 
+        (contextFree == null ? 0 : contextFree.features.size());
+    this.cachedFeatureScore = scorer == null ? Double.NaN : 
+      allCached ? score : cachedFeatureScore(phraseFeaturizer, scorer);
+  }
+
+  /**
+   * Score the cached features if the featurizer uses the dense-only path.
+   */
+  private double cachedFeatureScore(RuleFeaturizer<TK, FV> phraseFeaturizer, Scorer<FV> scorer) {
+    return phraseFeaturizer instanceof FeatureExtractor && 
+        ((FeatureExtractor<TK,FV>) phraseFeaturizer).isDenseOnly() ? 
+            scorer.getIncrementalScore(cachedFeatureList) : Double.NaN;
+  }
+
+  private void addCacheable(List<FeatureValue<FV>> features) {
     for (FeatureValue<FV> feature : features) {
       if ( ! feature.doNotCache) {
         cachedFeatureList.add(feature);
       }
     }
-    this.isolationScore = scorer == null ? -199.0 : scorer.getIncrementalScore(features);
   }
 
   /**
@@ -157,6 +192,7 @@ public class ConcreteRule<TK,FV> implements Comparable<ConcreteRule<TK,FV>> {
       }
     }
     this.isolationScore = totalScore;
+    this.cachedFeatureScore = cachedFeatureScore(phraseFeaturizer, scorer);
     // System.err.printf("total isolation score for %s: %f\n", abstractOption,
     // this.isolationScore);
   }
@@ -136,6 +136,7 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
   protected transient int maxTargetPhrase;
   protected transient FeatureTemplate featureTemplate;
   protected transient RuleFeaturizer<IString, FV> featurizer;
+  protected transient int ruleFeaturizationParallelism;
   protected transient int sampleSize;
   protected transient String[] featureNames;
   protected transient String name;
@@ -492,6 +493,17 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
     this.featurizer = featurizer;
   }
 
+  /**
+   * If <code>parallelism</code> is greater than 1, then the extraction tasks only sample
+   * rules, and the rules of all spans are featurized afterward by a 
+   * <code>RuleFeaturizationStage</code>. Otherwise, each extraction task featurizes 
+   * the rules of its span.
+   */
+  @Override
+  public void setRuleFeaturizationParallelism(int parallelism) {
+    this.ruleFeaturizationParallelism = parallelism;
+  }
+
   @Override
   public List<String> getFeatureNames() {
     return Arrays.asList(featureNames);
@@ -551,6 +563,16 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
     final ExecutorCompletionService<QueryResult<FV>> workQueue = 
         new ExecutorCompletionService<>(threadPool);
     
+    // Rules of all spans for the rule featurization stage. Null if the extraction tasks
+    // featurize the rules.
+    final boolean featurizeInTasks = ruleFeaturizationParallelism <= 1;
+    final List<Rule<IString>> rules = featurizeInTasks ? null : new ArrayList<>();
+    final List<CoverageSet> sourceCoverages = featurizeInTasks ? null : new ArrayList<>();
+    
+    // Results are collected by span start so that the rule order does not depend
+    // on the order in which the tasks finish.
+    final QueryResult<FV>[] resultsByStart = new QueryResult[source.size()];
+    
     // Iterate over source span lengths
 //    TimeKeeper timer = TimingUtils.start();
     for (int len = 1, longestSourcePhrase = Math.min(maxSourcePhrase, source.size()); 
@@ -570,7 +592,7 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
         } else {
           final int[] prefixBounds = (len > 1 && searchBounds[i][j-1] != null) ? searchBounds[i][j-1] : null;
           workQueue.submit(new ExtractionTask(i, j, source, sourceInputProperties, 
-              sourceInputId, scorer, sourceArray, prefixBounds));
+              sourceInputId, scorer, sourceArray, prefixBounds, featurizeInTasks));
           ++numTasks;
         }
       }
@@ -590,8 +612,21 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
             int j = result.j;
             misses[i][j] = result.miss;
             searchBounds[i][j] = result.searchBounds;
+            resultsByStart[i] = result;
+          }
+        }
+        for (int i = 0; i < resultsByStart.length; ++i) {
+          final QueryResult<FV> result = resultsByStart[i];
+          if (result == null) continue;
+          if (featurizeInTasks) {
             concreteRules.addAll(result.ruleList);
+          } else {
+            for (Rule<IString> r : result.rules) {
+              rules.add(r);
+              sourceCoverages.add(result.sourceCoverage);
+            }
           }
+          resultsByStart[i] = null;
         }
       } catch (InterruptedException | ExecutionException e) {
         logger.error("input {}: rule extraction failed for order {}", sourceInputId, len);
@@ -603,6 +638,11 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
     
 //    logger.info("input {}: TM timing {}", sourceInputId, timer);
     
+    if ( ! featurizeInTasks) {
+      concreteRules.addAll(RuleFeaturizationStage.featurize(rules, sourceCoverages, featurizer, scorer, 
+          source, sourceInputId, sourceInputProperties, ruleFeaturizationParallelism));
+    }
+    
     // Concatenate foreground model rules
     if (sourceInputProperties.containsKey(InputProperty.ForegroundTM)) {
       DynamicTranslationModel<FV> foregroundTM = 
@@ -632,9 +672,10 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
     private Scorer<FV> scorer;
     private int[] sourceArray;
     private int[] prefixBounds;
+    private boolean featurize;
 
     public ExtractionTask(int i, int j, Sequence<IString> source, InputProperties sourceInputProperties, 
-        int sourceInputId, Scorer<FV> scorer, int[] sourceArray, int[] prefixBounds) {
+        int sourceInputId, Scorer<FV> scorer, int[] sourceArray, int[] prefixBounds, boolean featurize) {
       this.i = i;
       this.j = j;
       this.source = source;
@@ -643,6 +684,7 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
       this.scorer = scorer;
       this.sourceArray = sourceArray;
       this.prefixBounds = prefixBounds;
+      this.featurize = featurize;
     }
 
     @Override
@@ -672,6 +714,12 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
           rules = samplesToRules(corpusSample.samples, order, sampleRate, sourceSpan);
         }
       }
+      if ( ! featurize) {
+        result.rules = rules;
+        result.sourceCoverage = sourceCoverage;
+        return result;
+      }
+      
       // Extract rules
       result.ruleList = new ArrayList<>(rules.size());
       for (Rule<IString> r : rules) {
@@ -686,6 +734,8 @@ public class DynamicTranslationModel<FV> implements TranslationModel<IString,FV>
     public final int i;
     public final int j;
     public List<ConcreteRule<IString,FV>> ruleList;
+    public List<Rule<IString>> rules;
+    public CoverageSet sourceCoverage;
     public int[] searchBounds;
     public boolean miss = false;
     public QueryResult(int i, int j) {
@@ -0,0 +1,86 @@
+package edu.stanford.nlp.mt.tm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.util.CoverageSet;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Featurizes and scores the rules of a TM query in contiguous chunks on the shared
+ * <code>ForkJoinPool</code>. The i-th <code>ConcreteRule</code> of the result corresponds
+ * to the i-th rule of the input, so the order of the rule list does not depend on thread
+ * scheduling.
+ *
+ * Rule featurizers and scorers must be threadsafe for concurrent reads, which is already
+ * required of the featurizers of a TM shared by several decoding threads.
+ *
+ * @author Spence Green
+ *
+ */
+public final class RuleFeaturizationStage {
+
+  // Minimum number of rules per chunk. Smaller chunks are not worth the task overhead.
+  private static final int MIN_RULES_PER_CHUNK = 256;
+
+  private RuleFeaturizationStage() {}
+
+  /**
+   * Create a <code>ConcreteRule</code> for each rule.
+   *
+   * @param rules
+   * @param sourceCoverages The source coverage of each rule.
+   * @param featurizer
+   * @param scorer
+   * @param source
+   * @param sourceInputId
+   * @param sourceInputProperties
+   * @param parallelism Maximum number of chunks.
+   * @return A mutable list of rules in input order.
+   */
+  @SuppressWarnings("unchecked")
+  public static <TK,FV> List<ConcreteRule<TK,FV>> featurize(List<Rule<TK>> rules,
+      List<CoverageSet> sourceCoverages, RuleFeaturizer<TK,FV> featurizer, Scorer<FV> scorer,
+      Sequence<TK> source, int sourceInputId, InputProperties sourceInputProperties, int parallelism) {
+    if (rules.size() != sourceCoverages.size()) {
+      throw new RuntimeException("Rule and coverage lists have different sizes");
+    }
+    final int size = rules.size();
+    final ConcreteRule<TK,FV>[] concreteRules = (ConcreteRule<TK,FV>[]) new ConcreteRule<?,?>[size];
+    final int numChunks = Math.min(parallelism, size / MIN_RULES_PER_CHUNK);
+    if (numChunks <= 1) {
+      featurize(rules, sourceCoverages, 0, size, concreteRules, featurizer, scorer, source,
+          sourceInputId, sourceInputProperties);
+
+    } else {
+      final int chunkSize = (size + numChunks - 1) / numChunks;
+      final List<ForkJoinTask<?>> tasks = new ArrayList<>(numChunks - 1);
+      for (int chunk = 1; chunk < numChunks; ++chunk) {
+        final int start = chunk * chunkSize;
+        final int end = Math.min(size, start + chunkSize);
+        if (start >= end) break;
+        tasks.add(ForkJoinPool.commonPool().submit(() -> featurize(rules, sourceCoverages, start, end,
+            concreteRules, featurizer, scorer, source, sourceInputId, sourceInputProperties)));
+      }
+      featurize(rules, sourceCoverages, 0, Math.min(size, chunkSize), concreteRules, featurizer,
+          scorer, source, sourceInputId, sourceInputProperties);
+      for (ForkJoinTask<?> t : tasks) t.join();
+    }
+    return new ArrayList<>(Arrays.asList(concreteRules));
+  }
+
+  private static <TK,FV> void featurize(List<Rule<TK>> rules, List<CoverageSet> sourceCoverages,
+      int start, int end, ConcreteRule<TK,FV>[] concreteRules, RuleFeaturizer<TK,FV> featurizer,
+      Scorer<FV> scorer, Sequence<TK> source, int sourceInputId, InputProperties sourceInputProperties) {
+    for (int i = start; i < end; ++i) {
+      concreteRules[i] = new ConcreteRule<>(rules.get(i), sourceCoverages.get(i), featurizer, scorer,
+          source, sourceInputId, sourceInputProperties);
+    }
+  }
+}
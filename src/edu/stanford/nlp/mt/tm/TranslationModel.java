@@ -38,6 +38,14 @@ public interface TranslationModel<TK,FV> extends Cloneable {
   
   public void setFeaturizer(RuleFeaturizer<TK, FV> featurizer);
   
+  /**
+   * Featurize the rules of each query in up to <code>parallelism</code> chunks
+   * on the shared <code>ForkJoinPool</code>. See <code>RuleFeaturizationStage</code>.
+   * 
+   * @param parallelism
+   */
+  public default void setRuleFeaturizationParallelism(int parallelism) {}
+  
   public List<String> getFeatureNames();
   
   public String getName();
@@ -34,9 +34,9 @@ public class DTUInstance extends AlignmentTemplateInstance {
     this.eStartPos = e1;
     // Init phrases:
     f = fContiguous ? sent.f().subsequence(f1, f2 + 1)
-        : DiscontinuousSubSequences.subsequence(sent.f(), fs, fAlign);
+        : DiscontinuousSubSequences.subsequence(sent.f(), fs.toBitSet(), fAlign);
     e = eContiguous ? sent.e().subsequence(e1, e2 + 1)
-        : DiscontinuousSubSequences.subsequence(sent.e(), es, eAlign);
+        : DiscontinuousSubSequences.subsequence(sent.e(), es.toBitSet(), eAlign);
     fSet = fs;
     eSet = es;
     if (!fContiguous || !eContiguous)
@@ -89,11 +89,11 @@ public class DTUInstance extends AlignmentTemplateInstance {
     return true;
   }
 
-  public BitSet getFAlignment() {
+  public CoverageSet getFAlignment() {
     return fSet;
   }
 
-  public BitSet getEAlignment() {
+  public CoverageSet getEAlignment() {
     return eSet;
   }
 }
@@ -2,37 +2,311 @@ package edu.stanford.nlp.mt.util;
 
 import edu.stanford.nlp.util.IntPair;
 
+import java.io.Serializable;
 import java.util.BitSet;
 import java.util.Iterator;
 
 /**
- * util.BitSet with a faster clone operation, a more readable toString() result
+ * A set of source (or target) positions with a more readable toString() result
  * (e.g., {1,3-6} instead of {1,3,4,5,6}), and the ability to iterate through
- * bits set to true. Note: The BitSet iterator doesn't allow removal.
- * 
+ * bits set to true. Note: The iterator doesn't allow removal.
+ *
+ * Coverage sets are cloned for every derivation, so the common case of inputs with
+ * at most 128 tokens is stored in two longs. The set falls back to a
+ * <code>java.util.BitSet</code> for longer inputs. The API mirrors the subset of
+ * <code>java.util.BitSet</code> that is used by the decoder and the phrase extractors.
+ *
  * @author danielcer
  * @author Michel Galley
- * 
+ * @author Spence Green
+ *
  */
-public class CoverageSet extends BitSet implements Iterable<Integer> {
+public class CoverageSet implements Iterable<Integer>, Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
+
+  /**
+   * Maximum number of positions stored in the packed representation.
+   */
+  public static final int MAX_PACKED_SIZE = 2 * Long.SIZE;
+
+  private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  private long word0;
+  private long word1;
+
+  // Fallback for long inputs. Non-null iff the packed representation is not used.
+  private BitSet bits;
 
   public CoverageSet(int size) {
-    super(size);
+    if (size < 0) throw new NegativeArraySizeException("size < 0: " + size);
+    if (size > MAX_PACKED_SIZE) bits = new BitSet(size);
   }
 
-  public CoverageSet() {
-    super();
-  }
+  public CoverageSet() {}
 
   @Override
   public CoverageSet clone() {
-    CoverageSet c = new CoverageSet(this.size());
-    c.or(this);
+    CoverageSet c = new CoverageSet();
+    c.word0 = word0;
+    c.word1 = word1;
+    if (bits != null) c.bits = (BitSet) bits.clone();
     return c;
   }
 
+  /**
+   * Convert the packed representation to a <code>BitSet</code>.
+   */
+  private void inflate() {
+    if (bits == null) {
+      bits = BitSet.valueOf(new long[] { word0, word1 });
+      word0 = word1 = 0L;
+    }
+  }
+
+  /**
+   * Return a copy of this set as a <code>java.util.BitSet</code>.
+   */
+  public BitSet toBitSet() {
+    return bits == null ? BitSet.valueOf(new long[] { word0, word1 }) : (BitSet) bits.clone();
+  }
+
+  /**
+   * The 64 positions starting at <code>wordIndex * 64</code>, in the layout of
+   * <code>BitSet.toLongArray()</code>. Does not allocate.
+   */
+  public long word(int wordIndex) {
+    checkIndex(wordIndex);
+    if (bits == null) return wordIndex == 0 ? word0 : wordIndex == 1 ? word1 : 0L;
+    final int offset = wordIndex * Long.SIZE;
+    long w = 0L;
+    for (int i = bits.nextSetBit(offset); i >= 0 && i < offset + Long.SIZE; i = bits.nextSetBit(i + 1)) {
+      w |= 1L << i;
+    }
+    return w;
+  }
+
+  private static void checkIndex(int i) {
+    if (i < 0) throw new IndexOutOfBoundsException("index < 0: " + i);
+  }
+
+  private static void checkRange(int fromIndex, int toIndex) {
+    if (fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    if (toIndex < 0) throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+    if (fromIndex > toIndex) throw new IndexOutOfBoundsException("fromIndex: " + fromIndex +
+        " > toIndex: " + toIndex);
+  }
+
+  /**
+   * Mask of the bits in [fromIndex, toIndex) that fall into the word at wordOffset.
+   */
+  private static long rangeMask(int fromIndex, int toIndex, int wordOffset) {
+    final int lo = Math.max(fromIndex - wordOffset, 0);
+    final int hi = Math.min(toIndex - wordOffset, Long.SIZE);
+    if (lo >= hi) return 0L;
+    return (-1L >>> (Long.SIZE - (hi - lo))) << lo;
+  }
+
+  public boolean get(int i) {
+    checkIndex(i);
+    if (bits != null) return bits.get(i);
+    if (i < Long.SIZE) return (word0 & (1L << i)) != 0;
+    if (i < MAX_PACKED_SIZE) return (word1 & (1L << i)) != 0;
+    return false;
+  }
+
+  public void set(int i) {
+    checkIndex(i);
+    if (bits == null) {
+      if (i < Long.SIZE) {
+        word0 |= 1L << i;
+        return;
+      } else if (i < MAX_PACKED_SIZE) {
+        word1 |= 1L << i;
+        return;
+      }
+      inflate();
+    }
+    bits.set(i);
+  }
+
+  public void set(int i, boolean value) {
+    if (value) set(i);
+    else clear(i);
+  }
+
+  public void set(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (bits == null) {
+      if (toIndex <= MAX_PACKED_SIZE) {
+        word0 |= rangeMask(fromIndex, toIndex, 0);
+        word1 |= rangeMask(fromIndex, toIndex, Long.SIZE);
+        return;
+      }
+      inflate();
+    }
+    bits.set(fromIndex, toIndex);
+  }
+
+  public void clear(int i) {
+    checkIndex(i);
+    if (bits != null) {
+      bits.clear(i);
+    } else if (i < Long.SIZE) {
+      word0 &= ~(1L << i);
+    } else if (i < MAX_PACKED_SIZE) {
+      word1 &= ~(1L << i);
+    }
+  }
+
+  public void clear(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (bits != null) {
+      bits.clear(fromIndex, toIndex);
+    } else {
+      word0 &= ~rangeMask(fromIndex, toIndex, 0);
+      word1 &= ~rangeMask(fromIndex, toIndex, Long.SIZE);
+    }
+  }
+
+  public void clear() {
+    word0 = word1 = 0L;
+    if (bits != null) bits.clear();
+  }
+
+  public void or(CoverageSet other) {
+    if (bits == null && other.bits == null) {
+      word0 |= other.word0;
+      word1 |= other.word1;
+    } else if (this != other) {
+      inflate();
+      bits.or(other.bits == null ? other.toBitSet() : other.bits);
+    }
+  }
+
+  public void and(CoverageSet other) {
+    if (bits == null && other.bits == null) {
+      word0 &= other.word0;
+      word1 &= other.word1;
+    } else if (this != other) {
+      inflate();
+      bits.and(other.bits == null ? other.toBitSet() : other.bits);
+    }
+  }
+
+  public void andNot(CoverageSet other) {
+    if (bits == null && other.bits == null) {
+      word0 &= ~other.word0;
+      word1 &= ~other.word1;
+    } else {
+      inflate();
+      bits.andNot(other.bits == null ? other.toBitSet() : other.bits);
+    }
+  }
+
+  public void xor(CoverageSet other) {
+    if (bits == null && other.bits == null) {
+      word0 ^= other.word0;
+      word1 ^= other.word1;
+    } else {
+      inflate();
+      bits.xor(other.bits == null ? other.toBitSet() : other.bits);
+    }
+  }
+
+  public boolean intersects(CoverageSet other) {
+    if (bits == null && other.bits == null) {
+      return (word0 & other.word0) != 0 || (word1 & other.word1) != 0;
+    }
+    return toBitSet().intersects(other.bits == null ? other.toBitSet() : other.bits);
+  }
+
+  public boolean isEmpty() {
+    return bits == null ? (word0 | word1) == 0 : bits.isEmpty();
+  }
+
+  public int cardinality() {
+    return bits == null ? Long.bitCount(word0) + Long.bitCount(word1) : bits.cardinality();
+  }
+
+  /**
+   * The index of the highest set bit plus one.
+   */
+  public int length() {
+    if (bits != null) return bits.length();
+    if (word1 != 0) return MAX_PACKED_SIZE - Long.numberOfLeadingZeros(word1);
+    return Long.SIZE - Long.numberOfLeadingZeros(word0);
+  }
+
+  /**
+   * The number of bits of space in use.
+   */
+  public int size() {
+    return bits == null ? MAX_PACKED_SIZE : bits.size();
+  }
+
+  public int nextSetBit(int fromIndex) {
+    checkIndex(fromIndex);
+    if (bits != null) return bits.nextSetBit(fromIndex);
+    if (fromIndex < Long.SIZE) {
+      final long w = word0 & (-1L << fromIndex);
+      if (w != 0) return Long.numberOfTrailingZeros(w);
+      fromIndex = Long.SIZE;
+    }
+    if (fromIndex < MAX_PACKED_SIZE) {
+      final long w = word1 & (-1L << fromIndex);
+      if (w != 0) return Long.SIZE + Long.numberOfTrailingZeros(w);
+    }
+    return -1;
+  }
+
+  public int nextClearBit(int fromIndex) {
+    checkIndex(fromIndex);
+    if (bits != null) return bits.nextClearBit(fromIndex);
+    if (fromIndex < Long.SIZE) {
+      final long w = ~word0 & (-1L << fromIndex);
+      if (w != 0) return Long.numberOfTrailingZeros(w);
+      fromIndex = Long.SIZE;
+    }
+    if (fromIndex < MAX_PACKED_SIZE) {
+      final long w = ~word1 & (-1L << fromIndex);
+      if (w != 0) return Long.SIZE + Long.numberOfTrailingZeros(w);
+      return MAX_PACKED_SIZE;
+    }
+    return fromIndex;
+  }
+
+  public int previousSetBit(int fromIndex) {
+    if (fromIndex < -1) throw new IndexOutOfBoundsException("fromIndex < -1: " + fromIndex);
+    if (bits != null) return bits.previousSetBit(fromIndex);
+    if (fromIndex >= Long.SIZE) {
+      final long w = fromIndex >= MAX_PACKED_SIZE ? word1 : word1 & (-1L >>> (MAX_PACKED_SIZE - 1 - fromIndex));
+      if (w != 0) return MAX_PACKED_SIZE - 1 - Long.numberOfLeadingZeros(w);
+      fromIndex = Long.SIZE - 1;
+    }
+    if (fromIndex >= 0) {
+      final long w = word0 & (-1L >>> (Long.SIZE - 1 - fromIndex));
+      if (w != 0) return Long.SIZE - 1 - Long.numberOfLeadingZeros(w);
+    }
+    return -1;
+  }
+
+  public int previousClearBit(int fromIndex) {
+    if (fromIndex < -1) throw new IndexOutOfBoundsException("fromIndex < -1: " + fromIndex);
+    if (bits != null) return bits.previousClearBit(fromIndex);
+    if (fromIndex >= MAX_PACKED_SIZE) return fromIndex;
+    if (fromIndex >= Long.SIZE) {
+      final long w = ~word1 & (-1L >>> (MAX_PACKED_SIZE - 1 - fromIndex));
+      if (w != 0) return MAX_PACKED_SIZE - 1 - Long.numberOfLeadingZeros(w);
+      fromIndex = Long.SIZE - 1;
+    }
+    if (fromIndex >= 0) {
+      final long w = ~word0 & (-1L >>> (Long.SIZE - 1 - fromIndex));
+      if (w != 0) return Long.SIZE - 1 - Long.numberOfLeadingZeros(w);
+    }
+    return -1;
+  }
+
   public boolean isContiguous() {
     return cardinality() == (length() - nextSetBit(0));
   }
@@ -45,6 +319,44 @@ public class CoverageSet extends BitSet implements Iterable<Integer> {
     return (c1S < c2S && c2S < c1E) || (c1S < c2E && c2E < c1E);
   }
 
+  /**
+   * Same value as <code>java.util.BitSet.hashCode()</code> for the same set of bits.
+   */
+  @Override
+  public int hashCode() {
+    if (bits != null) return bits.hashCode();
+    long h = 1234;
+    h ^= word0;
+    h ^= word1 * 2;
+    return (int) ((h >> 32) ^ h);
+  }
+
+  /**
+   * A 64-bit hash code for recombination signatures. Equal sets have equal
+   * codes irrespective of the representation.
+   */
+  public long longHashCode() {
+    if (bits == null) return word0 + word1 * HASH_MULTIPLIER;
+    final long[] words = bits.toLongArray();
+    long h = 0L;
+    for (int i = words.length - 1; i >= 0; --i) h = h * HASH_MULTIPLIER + words[i];
+    return h;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if ( ! (o instanceof CoverageSet)) {
+      return false;
+    }
+    final CoverageSet other = (CoverageSet) o;
+    if (bits == null && other.bits == null) {
+      return word0 == other.word0 && word1 == other.word1;
+    }
+    return toBitSet().equals(other.toBitSet());
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
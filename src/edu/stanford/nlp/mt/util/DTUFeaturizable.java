@@ -15,9 +15,9 @@ public class DTUFeaturizable<TK, FV> extends Featurizable<TK, FV> {
 
   public DTUFeaturizable(Derivation<TK, FV> hypothesis,
       Rule<TK> abstractOption, int sourceInputId,
-      int nbStatefulFeaturizers, Sequence<TK> targetPhrase,
+      int nbStatefulFeaturizers, int nbStateWords, Sequence<TK> targetPhrase,
       boolean hasPendingPhrases, int segmentIdx) {
-    super(hypothesis, sourceInputId, nbStatefulFeaturizers, targetPhrase,
+    super(hypothesis, sourceInputId, nbStatefulFeaturizers, nbStateWords, targetPhrase,
         hasPendingPhrases, segmentIdx > 0);
     this.segmentIdx = segmentIdx;
     this.abstractOption = abstractOption;
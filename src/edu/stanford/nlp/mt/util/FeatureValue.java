@@ -23,6 +23,9 @@ public class FeatureValue<T> implements Serializable {
   // This feature is a baseline dense feature.
   public final boolean isDenseFeature;
 
+  // Global feature id in integer feature mode, or -1 if the feature has no id.
+  public final int id;
+
   /**
    * Constructor.
    * 
@@ -41,10 +44,34 @@ public class FeatureValue<T> implements Serializable {
    * @param isDense
    */
   public FeatureValue(T name, double value, boolean isDense) {
+    this(name, value, isDense, -1);
+  }
+
+  /**
+   * Constructor for integer feature mode.
+   * 
+   * @param name
+   * @param value
+   * @param id
+   */
+  public FeatureValue(T name, double value, int id) {
+    this(name, value, false, id);
+  }
+
+  /**
+   * Constructor for integer feature mode.
+   * 
+   * @param name
+   * @param value
+   * @param isDense
+   * @param id
+   */
+  public FeatureValue(T name, double value, boolean isDense, int id) {
     assert name != null : "Feature name cannot be null";
     this.name = name;
     this.value = value;
     this.isDenseFeature = isDense;
+    this.id = id;
   }
 
   @Override
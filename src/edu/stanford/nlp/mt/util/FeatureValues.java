@@ -49,6 +49,14 @@ public class FeatureValues {
           counter.incrementCount(feature.name, feature.value);
         }
       }
+      if (hyp.denseFeatures != null) {
+        for (int i = 0; i < hyp.denseFeatures.length; ++i) {
+          // Features that did not fire are not extracted in the list representation
+          if (hyp.denseFeatures[i] != 0.0) {
+            counter.incrementCount(hyp.denseFeatureNames.get(i), hyp.denseFeatures[i]);
+          }
+        }
+      }
     }
     Set<FV> featureNames = new TreeSet<FV>(counter.keySet());
     FeatureValueCollection<FV> combinedList = new FeatureValueList<FV>(featureNames.size());
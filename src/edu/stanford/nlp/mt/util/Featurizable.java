@@ -118,6 +118,13 @@ public class Featurizable<TK, FV> {
    */
   final private FeaturizerState[] states;
 
+  /**
+   * Packed state words of the featurizers that declare them (see
+   * <code>DerivationFeaturizer.numStateWords()</code>). Null if no featurizer
+   * declares state words.
+   */
+  final private long[] stateWords;
+
   /**
    * Constructor.
    * 
@@ -127,6 +134,40 @@ public class Featurizable<TK, FV> {
    */
   public Featurizable(Derivation<TK, FV> derivation, int sourceInputId,
       int nbStatefulFeaturizers) {
+    this(derivation, sourceInputId, nbStatefulFeaturizers, 0);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param derivation
+   * @param sourceInputId
+   * @param nbStatefulFeaturizers
+   * @param nbStateWords Total number of packed state words.
+   */
+  public Featurizable(Derivation<TK, FV> derivation, int sourceInputId,
+      int nbStatefulFeaturizers, int nbStateWords) {
+    this(derivation, sourceInputId, (nbStatefulFeaturizers > 0) ? 
+        new FeaturizerState[nbStatefulFeaturizers] : null,
+        nbStateWords > 0 ? new long[nbStateWords] : null);
+  }
+
+  /**
+   * Constructor for a derivation that re-attaches a scored rule application to
+   * a recombined parent. The featurizer states are shared with the original
+   * rule application.
+   * 
+   * @param derivation
+   * @param sourceInputId
+   * @param original
+   */
+  public Featurizable(Derivation<TK, FV> derivation, int sourceInputId,
+      Featurizable<TK, FV> original) {
+    this(derivation, sourceInputId, original.states, original.stateWords);
+  }
+
+  private Featurizable(Derivation<TK, FV> derivation, int sourceInputId,
+      FeaturizerState[] states, long[] stateWords) {
     this.sourceInputId = sourceInputId;
     done = derivation.isDone();
     this.rule = derivation.rule;
@@ -144,8 +185,8 @@ public class Featurizable<TK, FV> {
     sourceInputProperties = derivation.sourceInputProperties;
     numUntranslatedSourceTokens = derivation.untranslatedSourceTokens;
     prior = derivation.parent.featurizable;
-    states = (nbStatefulFeaturizers > 0) ? new FeaturizerState[nbStatefulFeaturizers]
-        : null;
+    this.states = states;
+    this.stateWords = stateWords;
     this.derivation = derivation;
   }
 
@@ -155,13 +196,14 @@ public class Featurizable<TK, FV> {
    * @param derivation
    * @param sourceInputId
    * @param nbStatefulFeaturizers
+   * @param nbStateWords
    * @param targetPhrase
    * @param tokens
    * @param hasPendingPhrases
    * @param targetOnly
    */
   protected Featurizable(Derivation<TK, FV> derivation, int sourceInputId,
-      int nbStatefulFeaturizers, Sequence<TK> targetPhrase,
+      int nbStatefulFeaturizers, int nbStateWords, Sequence<TK> targetPhrase,
       boolean hasPendingPhrases, boolean targetOnly) {
     this.sourceInputId = sourceInputId;
     done = derivation.isDone() && !hasPendingPhrases;
@@ -188,6 +230,7 @@ public class Featurizable<TK, FV> {
     prior = derivation.parent.featurizable;
     states = (nbStatefulFeaturizers > 0) ? new FeaturizerState[nbStatefulFeaturizers]
         : null;
+    stateWords = nbStateWords > 0 ? new long[nbStateWords] : null;
     this.derivation = derivation;
   }
 
@@ -199,6 +242,60 @@ public class Featurizable<TK, FV> {
     states[f.getId()] = s;
   }
 
+  /**
+   * Return a packed state word of a featurizer.
+   * 
+   * @param f
+   * @param i Index of the word in <code>[0, f.numStateWords())</code>.
+   * @return
+   */
+  public long getStateWord(DerivationFeaturizer<TK, FV> f, int i) {
+    assert i >= 0 && i < f.numStateWords();
+    return stateWords[f.getStateOffset() + i];
+  }
+
+  /**
+   * Set a packed state word of a featurizer.
+   * 
+   * @param f
+   * @param i Index of the word in <code>[0, f.numStateWords())</code>.
+   * @param word
+   */
+  public void setStateWord(DerivationFeaturizer<TK, FV> f, int i, long word) {
+    assert i >= 0 && i < f.numStateWords();
+    stateWords[f.getStateOffset() + i] = word;
+  }
+
+  /**
+   * True if the packed recombination state words of a featurizer are equal in
+   * both featurizables.
+   * 
+   * @param f
+   * @param other
+   * @return
+   */
+  public boolean stateWordsEqual(DerivationFeaturizer<TK, FV> f, Featurizable<TK, FV> other) {
+    for (int i = f.getStateOffset(), end = i + f.numRecombinationStateWords(); i < end; ++i) {
+      if (stateWords[i] != other.stateWords[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Hash code of the packed recombination state words of a featurizer.
+   * 
+   * @param f
+   * @return
+   */
+  public long stateWordsHashCode(DerivationFeaturizer<TK, FV> f) {
+    long h = 0x9e3779b97f4a7c15L;
+    for (int i = f.getStateOffset(), end = i + f.numRecombinationStateWords(); i < end; ++i) {
+      h = (h ^ stateWords[i]) * 0xbf58476d1ce4e5b9L;
+      h ^= h >>> 31;
+    }
+    return h;
+  }
+
   /**
    * Current segment in (dis)continuous phrase. Note: A continuous phrase hsa
    * only one segment.
@@ -241,6 +338,7 @@ public class Featurizable<TK, FV> {
     numUntranslatedSourceTokens = sourceSequence.size() - sourcePhrase.size();
     prior = null;
     states = null;
+    stateWords = null;
     linearDistortion = Integer.MAX_VALUE;
     derivation = null;
   }
@@ -276,6 +374,7 @@ public class Featurizable<TK, FV> {
     numUntranslatedSourceTokens = sourceSequence.size() - sourcePhrase.size();
     prior = null;
     states = null;
+    stateWords = null;
     linearDistortion = Integer.MAX_VALUE;
     derivation = null;
   }
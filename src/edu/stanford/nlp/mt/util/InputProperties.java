@@ -83,6 +83,9 @@ public class InputProperties extends HashMap<InputProperty, Object> {
         } else if (inputProperty == InputProperty.AllowIncompletePrefix) {
           inputProperties.put(inputProperty, Boolean.valueOf(value));
           
+        } else if (inputProperty == InputProperty.DecodingTimeLimit) {
+          inputProperties.put(inputProperty, Long.valueOf(value));
+          
         } else {
           // Leave as a string
           inputProperties.put(inputProperty, value);
@@ -56,6 +56,14 @@ public enum InputProperty {
   
   // Flag that is true if the last word of the prefix may be incomplete
   // Type: Boolean
-  AllowIncompletePrefix
+  AllowIncompletePrefix,
+  
+  // Decoding time budget in milliseconds, measured from the start of search
+  // Type: Long
+  DecodingTimeLimit,
+  
+  // Sparse featurizers do not emit features for which hasNonZeroWeight() is false
+  // Type: Scorer<String>
+  FeatureFilter
   
 }
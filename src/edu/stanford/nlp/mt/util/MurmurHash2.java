@@ -222,6 +222,18 @@ public class MurmurHash2 {
 	 */
 
   public static long hash64(final int[] data, int length, int seed) {
+    return hash64(data, 0, length, seed);
+  }
+
+  /** Generates 64 bit hash from a range of an int array and seed.
+   * 
+   * @param data int array to hash
+   * @param offset index of the first element to hash
+   * @param length number of indices to hash
+   * @param seed initial seed value
+   * @return 64 bit hash of <code>data[offset, offset+length)</code>
+   */
+  public static long hash64(final int[] data, int offset, int length, int seed) {
 		final long m = 0xc6a4a7935bd1e995L;
 		final int r = 47;
 
@@ -231,8 +243,8 @@ public class MurmurHash2 {
 
 		for (int i=0; i<length8; i++) {
       // We'll pretend to be little-endian.
-      long k = (((long)(data[i * 2]) & 0xffffffffl)) |
-               (((long)(data[i * 2 + 1]) & 0xffffffffl) << 32);
+      long k = (((long)(data[offset + i * 2]) & 0xffffffffl)) |
+               (((long)(data[offset + i * 2 + 1]) & 0xffffffffl) << 32);
               
 			k *= m;
 			k ^= k >>> r;
@@ -243,7 +255,7 @@ public class MurmurHash2 {
 		}
 		
     if (length % 2 == 1) {
-       h ^= (long)(data[length & ~1]) & 0xffffffffl;
+       h ^= (long)(data[offset + (length & ~1)]) & 0xffffffffl;
 		   h *= m;
 		}
 	 
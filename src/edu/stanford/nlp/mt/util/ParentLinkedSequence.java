@@ -0,0 +1,138 @@
+package edu.stanford.nlp.mt.util;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A persistent sequence that is built left-to-right by appending to a shared prefix.
+ * Appending costs O(|suffix|) instead of copying the prefix, so sibling derivations
+ * share the partial translation of their parent.
+ *
+ * Random access walks the parent links, which is cheap for the right edge of the
+ * sequence (the common case for featurizers). The chain is flattened every
+ * <code>MAX_DEPTH</code> appends so that the walk is bounded. The underlying array
+ * is only materialized (and cached) when it is requested.
+ *
+ * @author Spence Green
+ *
+ * @param <T>
+ */
+public class ParentLinkedSequence<T> extends AbstractSequence<T> {
+
+  private static final long serialVersionUID = -2310562913520046811L;
+
+  // Maximum length of the chain of parent links
+  private static final int MAX_DEPTH = 16;
+
+  private final Sequence<T> prefix;
+  private final Sequence<T> suffix;
+  private final int prefixSize;
+  private final int size;
+  private final int depth;
+
+  // Materialized elements
+  private transient volatile T[] elements;
+
+  /**
+   * Constructor.
+   *
+   * @param prefix
+   * @param suffix
+   */
+  private ParentLinkedSequence(Sequence<T> prefix, Sequence<T> suffix) {
+    int prefixDepth = prefix instanceof ParentLinkedSequence ?
+        ((ParentLinkedSequence<T>) prefix).depth : 0;
+    if (prefixDepth >= MAX_DEPTH) {
+      prefix = new ArraySequence<>(true, prefix.elements());
+      prefixDepth = 0;
+    }
+    this.prefix = prefix;
+    this.suffix = suffix;
+    this.prefixSize = prefix.size();
+    this.size = prefixSize + suffix.size();
+    this.depth = prefixDepth + 1;
+  }
+
+  /**
+   * Concatenate two sequences without copying the prefix.
+   *
+   * @param prefix
+   * @param suffix
+   * @return
+   */
+  public static <T> Sequence<T> concat(Sequence<T> prefix, Sequence<T> suffix) {
+    if (prefix.size() == 0) return suffix;
+    if (suffix.size() == 0) return prefix;
+    return new ParentLinkedSequence<>(prefix, suffix);
+  }
+
+  @Override
+  public T get(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException(String.format("length: %d index: %d", size, i));
+    }
+    Sequence<T> node = this;
+    while (node instanceof ParentLinkedSequence) {
+      final ParentLinkedSequence<T> link = (ParentLinkedSequence<T>) node;
+      if (i >= link.prefixSize) return link.suffix.get(i - link.prefixSize);
+      final T[] arr = link.elements;
+      if (arr != null) return arr[i];
+      node = link.prefix;
+    }
+    return node.get(i);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Sequence<T> subsequence(int start, int end) {
+    if (start > end || start < 0 || end > size) {
+      throw new IndexOutOfBoundsException(String.format("length: %d start index: %d end index: %d",
+          size, start, end));
+    }
+    if (start >= prefixSize) {
+      return suffix.subsequence(start - prefixSize, end - prefixSize);
+    } else if (end <= prefixSize) {
+      return prefix.subsequence(start, end);
+    } else {
+      return new ArraySequence<>(true, Arrays.copyOfRange(elements(), start, end));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T[] elements() {
+    T[] arr = elements;
+    if (arr == null) {
+      arr = (T[]) Array.newInstance(suffix.elements().getClass().getComponentType(), size);
+      int end = size;
+      Sequence<T> node = this;
+      while (node instanceof ParentLinkedSequence && ((ParentLinkedSequence<T>) node).elements == null) {
+        final ParentLinkedSequence<T> link = (ParentLinkedSequence<T>) node;
+        final int suffixSize = link.suffix.size();
+        System.arraycopy(link.suffix.elements(), 0, arr, end - suffixSize, suffixSize);
+        end -= suffixSize;
+        node = link.prefix;
+      }
+      if (end > 0) {
+        System.arraycopy(node.elements(), 0, arr, 0, end);
+      }
+      elements = arr;
+    }
+    return arr;
+  }
+
+  @Override
+  public Sequence<T> concat(Sequence<T> other) {
+    return concat(this, other);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return Arrays.asList(elements()).iterator();
+  }
+}
@@ -30,7 +30,14 @@ public class ProbingIntegerArrayRawIndex implements IntegerArrayRawIndex {
 
   /* Suggested API: separate functions for different semantics */
   public int find(int[] key) {
-    long hashed = hash(key);
+    return find(key, 0, key.length);
+  }
+
+  /**
+   * Find the sub-array <code>key[start, end)</code>.
+   */
+  public int find(int[] key, int start, int end) {
+    long hashed = MurmurHash2.hash64(key, start, end - start, 1);
     for (int i = ideal(hashed); ; ++i) {
       if (i == values.length)
         i = 0;
@@ -27,6 +27,7 @@ public class RichTranslation<TK, FV> extends ScoredFeaturizedTranslation<TK, FV>
   public Sequence<TK> source;
   private final transient Featurizable<TK, FV> featurizable;
   private String f2eAlignment;
+  private boolean degraded = false;
 
   /**
    * Constructor.
@@ -84,6 +85,15 @@ public class RichTranslation<TK, FV> extends ScoredFeaturizedTranslation<TK, FV>
    */
   public Featurizable<TK, FV> getFeaturizable() { return featurizable; }
 
+  /**
+   * True if the decoder degraded the search to meet the decoding time limit.
+   * 
+   * @return
+   */
+  public boolean isDegraded() { return degraded; }
+  
+  public void setDegraded(boolean degraded) { this.degraded = degraded; }
+
   /**
    * Prints untokenized Moses n-best list for a given input segment. The n-best
    * list is currently not tokenized since tokenization would break the
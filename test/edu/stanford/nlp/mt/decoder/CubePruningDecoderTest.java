@@ -0,0 +1,512 @@
+package edu.stanford.nlp.mt.decoder;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.CubePruningDecoder.CubePruningDecoderBuilder;
+import edu.stanford.nlp.mt.decoder.Inferer.NbestMode;
+import edu.stanford.nlp.mt.decoder.feat.FeatureExtractor;
+import edu.stanford.nlp.mt.decoder.feat.Featurizer;
+import edu.stanford.nlp.mt.decoder.feat.FeaturizerFactory;
+import edu.stanford.nlp.mt.decoder.feat.base.NGramLanguageModelFeaturizer;
+import edu.stanford.nlp.mt.decoder.feat.sparse.DiscriminativeSignedDistortion;
+import edu.stanford.nlp.mt.decoder.feat.sparse.RuleIndicator;
+import edu.stanford.nlp.mt.decoder.h.HeuristicFactory;
+import edu.stanford.nlp.mt.decoder.recomb.RecombinationFilterFactory;
+import edu.stanford.nlp.mt.decoder.util.Derivation;
+import edu.stanford.nlp.mt.decoder.util.OutputSpace;
+import edu.stanford.nlp.mt.decoder.util.OutputSpaceFactory;
+import edu.stanford.nlp.mt.decoder.util.RuleQueryCache;
+import edu.stanford.nlp.mt.decoder.util.Scorer;
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.decoder.util.WeightSnapshot;
+import edu.stanford.nlp.mt.lm.ARPALanguageModel;
+import edu.stanford.nlp.mt.lm.LMState;
+import edu.stanford.nlp.mt.lm.LanguageModel;
+import edu.stanford.nlp.mt.tm.CompiledPhraseTable;
+import edu.stanford.nlp.mt.tm.DynamicTranslationModel;
+import edu.stanford.nlp.mt.tm.TranslationModel;
+import edu.stanford.nlp.mt.tm.UnknownWordPhraseGenerator;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.FeatureValues;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.InputProperty;
+import edu.stanford.nlp.mt.util.ParallelCorpus;
+import edu.stanford.nlp.mt.util.ParallelSuffixArray;
+import edu.stanford.nlp.mt.util.RichTranslation;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Decodes with a small phrase table and compares the search options of the cube
+ * pruning decoder.
+ *
+ * @author Spence Green
+ *
+ */
+public class CubePruningDecoderTest {
+
+  private static final String PHRASE_TABLE = "test-resources/inputs/dev12tune.phrase-table.gz";
+  private static final String LM_FILE = "test-resources/inputs/mt06.flt_giga.lm.gz";
+
+  private static final String[] SOURCES = {
+    "政府 必须 依法 行使 权力 , 维护 社会 的 法治 。",
+    "任何 的 事 , 就 是 为了 家庭 。",
+    "全 社会 必须 尊重 法律 , 防止 违法 行政 。",
+  };
+
+  // A word-aligned bitext for the dynamic translation model, which prefix decoding requires
+  private static final String[][] BITEXT = {
+    {SOURCES[0], "government must lawfully exercise power , safeguard society 's rule of law .",
+      "0-0 1-1 2-2 3-3 4-4 5-5 6-6 7-7 8-8 9-9 9-10 9-11 10-12"},
+    {SOURCES[1], "anything at all , is just for the family .", "0-0 1-1 2-2 3-3 4-5 5-4 6-6 7-8 8-9"},
+    {SOURCES[2], "the whole society must respect the law , prevent illegal administration .",
+      "0-1 1-2 2-3 3-4 4-6 5-7 6-8 7-9 8-10 9-11"},
+  };
+
+  private static final int RULE_QUERY_LIMIT = 20;
+
+  private static TranslationModel<IString,String> phraseTable;
+  private static DynamicTranslationModel<String> dynamicTM;
+  private static LanguageModel<IString> lm;
+  private static Counter<String> weights;
+  private static WeightSnapshot<String> weightSnapshot;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    phraseTable = new CompiledPhraseTable<>(PHRASE_TABLE);
+    final ParallelCorpus corpus = new ParallelCorpus();
+    for (String[] segment : BITEXT) corpus.add(segment[0], segment[1], segment[2]);
+    final ParallelSuffixArray suffixArray = new ParallelSuffixArray(corpus);
+    suffixArray.build();
+    dynamicTM = new DynamicTranslationModel<>(suffixArray);
+    dynamicTM.initialize(true);
+    lm = new ARPALanguageModel(LM_FILE);
+    weights = new ClassicCounter<>();
+    for (String name : phraseTable.getFeatureNames()) weights.setCount("TM:" + name, 0.2);
+    for (String name : dynamicTM.getFeatureNames()) weights.setCount("TM:" + name, 0.2);
+    weights.setCount("LM", 0.5);
+    weights.setCount("LinearDistortion", 0.1);
+    weights.setCount("WordPenalty", -0.3);
+    weights.setCount("PhrasePenalty", -0.1);
+    weights.setCount("UnknownWord", 1.0);
+    weightSnapshot = WeightSnapshot.wrap(weights);
+  }
+
+  /**
+   * Create a decoder with the default configuration, modified by <code>options</code>.
+   */
+  static CubePruningDecoder<IString,String> newDecoder(int beamSize,
+      Consumer<CubePruningDecoderBuilder<IString,String>> options) {
+    return newDecoder(phraseTable, beamSize, options);
+  }
+
+  /**
+   * Create a decoder with the default configuration and translation model <code>translationModel</code>,
+   * modified by <code>options</code>.
+   */
+  static CubePruningDecoder<IString,String> newDecoder(TranslationModel<IString,String> translationModel, 
+      int beamSize, Consumer<CubePruningDecoderBuilder<IString,String>> options) {
+    final CubePruningDecoderBuilder<IString,String> builder = CubePruningDecoder.builder();
+    configure(builder, translationModel, beamSize, weights);
+    if (options != null) options.accept(builder);
+    return (CubePruningDecoder<IString,String>) builder.newInferer();
+  }
+
+  /**
+   * Configure <code>builder</code> with the default configuration, translation model
+   * <code>translationModel</code>, model weights <code>weights</code>, and the default
+   * featurizers followed by <code>extraFeaturizers</code>.
+   */
+  @SafeVarargs
+  static void configure(AbstractBeamInfererBuilder<IString,String> builder,
+      TranslationModel<IString,String> translationModel, int beamSize, Counter<String> weights,
+      Featurizer<IString,String>...extraFeaturizers) {
+    configure(builder, translationModel, lm, beamSize, weights, extraFeaturizers);
+  }
+
+  /**
+   * Configure <code>builder</code> as above, with the language model <code>languageModel</code>.
+   */
+  @SuppressWarnings("unchecked")
+  @SafeVarargs
+  static void configure(AbstractBeamInfererBuilder<IString,String> builder,
+      TranslationModel<IString,String> translationModel, LanguageModel<IString> languageModel, 
+      int beamSize, Counter<String> weights, Featurizer<IString,String>...extraFeaturizers) {
+    FeatureExtractor<IString,String> featurizer = FeaturizerFactory.factory(
+        FeaturizerFactory.MOSES_DENSE_FEATURES, false, languageModel);
+    if (extraFeaturizers.length > 0) {
+      final List<Featurizer<IString,String>> featurizers = new ArrayList<>(featurizer.getFeaturizers());
+      featurizers.addAll(Arrays.asList(extraFeaturizers));
+      featurizer = new FeatureExtractor<>(featurizers);
+    }
+    try {
+      final TranslationModel<IString,String> tm = (TranslationModel<IString,String>) translationModel.clone();
+      tm.setFeaturizer(featurizer);
+      final Scorer<String> scorer = new SparseScorer(weights);
+      // Rule query caches require versioned weights
+      scorer.updateWeights(weights == CubePruningDecoderTest.weights ? weightSnapshot : WeightSnapshot.wrap(weights));
+      builder.setFeaturizer(featurizer);
+      builder.setPhraseGenerator(tm);
+      builder.setUnknownWordModel(new UnknownWordPhraseGenerator<IString,String>(false), false);
+      builder.setScorer(scorer);
+      builder.setSearchHeuristic(HeuristicFactory.factory(featurizer, HeuristicFactory.ISOLATED_PHRASE_SOURCE_COVERAGE));
+      builder.setRecombinationFilter(RecombinationFilterFactory.factory(
+          RecombinationFilterFactory.PHAROAH_RECOMBINATION, featurizer.getFeaturizers()));
+      builder.setMaxDistortion(5);
+      builder.setBeamSize(beamSize);
+    } catch (CloneNotSupportedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static RichTranslation<IString,String> translate(AbstractBeamInferer<IString,String> decoder,
+      Sequence<IString> source, int sourceInputId, InputProperties properties) {
+    return translate(decoder, source, sourceInputId, properties, null);
+  }
+
+  /**
+   * Decode <code>source</code>. If <code>prefix</code> is not null, then the translation
+   * must start with it.
+   */
+  static RichTranslation<IString,String> translate(AbstractBeamInferer<IString,String> decoder,
+      Sequence<IString> source, int sourceInputId, InputProperties properties, Sequence<IString> prefix) {
+    if ( ! properties.containsKey(InputProperty.RuleQueryLimit)) {
+      properties.put(InputProperty.RuleQueryLimit, RULE_QUERY_LIMIT);
+    }
+    final List<Sequence<IString>> targets = prefix == null ? null : Collections.singletonList(prefix);
+    if (prefix != null) properties.put(InputProperty.TargetPrefix, true);
+    final OutputSpace<IString,String> outputSpace = OutputSpaceFactory.getOutputSpace(sourceInputId,
+        targets, true, decoder.phraseGenerator.maxLengthSource(), decoder.phraseGenerator.maxLengthTarget(), false);
+    return decoder.translate(source, sourceInputId, properties, outputSpace, targets);
+  }
+
+  static void assertCompleteCoverage(Sequence<IString> source, RichTranslation<IString,String> translation) {
+    assertNotNull(translation);
+    assertEquals(0, translation.getFeaturizable().numUntranslatedSourceTokens);
+    assertEquals(source.size(), translation.getFeaturizable().derivation.sourceCoverage.cardinality());
+  }
+
+  /**
+   * The translations, scores, and feature values must be equal.
+   */
+  static void assertSameTranslation(RichTranslation<IString,String> expected, RichTranslation<IString,String> actual) {
+    assertEquals(expected.translation, actual.translation);
+    assertEquals(expected.score, actual.score, 1e-6);
+    final Counter<String> expectedFeatures = FeatureValues.toCounter(expected.features);
+    final Counter<String> actualFeatures = FeatureValues.toCounter(actual.features);
+    assertEquals(expectedFeatures.keySet(), actualFeatures.keySet());
+    for (String feature : expectedFeatures.keySet()) {
+      assertEquals(feature, expectedFeatures.getCount(feature), actualFeatures.getCount(feature), 1e-6);
+    }
+  }
+
+  @Test
+  public void testLazyDerivations() {
+    final CubePruningDecoder<IString,String> eager = newDecoder(200, null);
+    final CubePruningDecoder<IString,String> lazy = newDecoder(200, b -> b.setLazyDerivations(true));
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+      assertCompleteCoverage(source, translate(eager, source, i, new InputProperties()));
+      assertCompleteCoverage(source, translate(lazy, source, i, new InputProperties()));
+    }
+  }
+
+  @Test
+  public void testSuccessorArenaReuse() {
+    // The decoder recycles its successor arena across inputs
+    final CubePruningDecoder<IString,String> decoder = newDecoder(200, null);
+    final List<RichTranslation<IString,String>> firstPass = new ArrayList<>();
+    for (int i = 0; i < SOURCES.length; ++i) {
+      firstPass.add(translate(decoder, IStrings.tokenize(SOURCES[i]), i, new InputProperties()));
+    }
+    for (int i = SOURCES.length - 1; i >= 0; --i) {
+      final RichTranslation<IString,String> translation = translate(decoder,
+          IStrings.tokenize(SOURCES[i]), i, new InputProperties());
+      assertEquals(firstPass.get(i).translation, translation.translation);
+      assertEquals(firstPass.get(i).score, translation.score, 1e-9);
+    }
+  }
+
+  @Test
+  public void testCubeGrowing() {
+    // With a large pop limit, neither search should make a search error
+    final CubePruningDecoder<IString,String> pruning = newDecoder(1000, null);
+    final CubePruningDecoder<IString,String> growing = newDecoder(1000, b -> b.setCubeGrowing(true));
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+      final RichTranslation<IString,String> expected = translate(pruning, source, i, new InputProperties());
+      final RichTranslation<IString,String> actual = translate(growing, source, i, new InputProperties());
+      assertCompleteCoverage(source, actual);
+      assertEquals(expected.translation, actual.translation);
+      assertEquals(expected.score, actual.score, 1e-6);
+    }
+  }
+
+  @Test
+  public void testTimeLimit() {
+    final CubePruningDecoder<IString,String> decoder = newDecoder(200, null);
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+      final InputProperties properties = new InputProperties();
+      properties.put(InputProperty.RuleQueryLimit, RULE_QUERY_LIMIT);
+      properties.put(InputProperty.DecodingTimeLimit, 0L);
+      final InputProperties expectedProperties = new InputProperties(properties);
+      final RichTranslation<IString,String> translation = translate(decoder, source, i, properties);
+      assertCompleteCoverage(source, translation);
+      assertTrue(translation.isDegraded());
+      // The decoder does not write to the caller's properties
+      assertEquals(expectedProperties, properties);
+
+      // Without a time limit
+      assertFalse(translate(decoder, source, i, new InputProperties()).isDegraded());
+    }
+  }
+
+  @Test
+  public void testTimeLimitWithPrefix() {
+    final CubePruningDecoder<IString,String> decoder = newDecoder(dynamicTM, 200, null);
+    final Sequence<IString> source = IStrings.tokenize(SOURCES[0]);
+    final Sequence<IString> prefix = IStrings.tokenize("government must");
+    final InputProperties properties = new InputProperties();
+    properties.put(InputProperty.DecodingTimeLimit, 0L);
+    final RichTranslation<IString,String> translation = translate(decoder, source, 0, properties, prefix);
+    assertCompleteCoverage(source, translation);
+    assertTrue(translation.isDegraded());
+    assertEquals(prefix, translation.translation.subsequence(0, prefix.size()));
+  }
+
+  @Test
+  public void testIncrementalPrefixDecoding() {
+    final RuleQueryCache<IString,String> cache = new RuleQueryCache<>(10);
+    final CubePruningDecoder<IString,String> incremental = newDecoder(dynamicTM, 200, b -> {
+      b.setRuleQueryCache(cache);
+      b.setIncrementalPrefixDecoding(true);
+    });
+    final CubePruningDecoder<IString,String> scratch = newDecoder(dynamicTM, 200, null);
+    final Sequence<IString> source = IStrings.tokenize(SOURCES[0]);
+    final String[] prefixes = {"government", "government must", "government must lawfully exercise",
+        "government must lawfully exercise power ,"};
+    for (String prefixString : prefixes) {
+      final Sequence<IString> prefix = IStrings.tokenize(prefixString);
+      final RichTranslation<IString,String> expected = translate(scratch, source, 0, new InputProperties(), prefix);
+      final RichTranslation<IString,String> actual = translate(incremental, source, 0, new InputProperties(), prefix);
+      assertCompleteCoverage(source, actual);
+      assertEquals(expected.translation, actual.translation);
+      assertEquals(expected.score, actual.score, 1e-6);
+    }
+  }
+
+  @Test
+  public void testNbestReattachment() {
+    // Lattice paths through recombined derivations are re-attached without running the
+    // featurizers. Re-featurize each path from scratch and compare.
+    final CubePruningDecoder<IString,String> decoder = newDecoder(200, null);
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+      final InputProperties properties = new InputProperties();
+      properties.put(InputProperty.RuleQueryLimit, RULE_QUERY_LIMIT);
+      final OutputSpace<IString,String> outputSpace = OutputSpaceFactory.getOutputSpace(i, null, false, 
+          phraseTable.maxLengthSource(), phraseTable.maxLengthTarget(), false);
+      final List<RichTranslation<IString,String>> nbestList = decoder.nbest(source, i, properties, 
+          outputSpace, null, 50, false, NbestMode.Standard);
+      assertTrue(nbestList.size() > 1);
+      for (RichTranslation<IString,String> translation : nbestList) {
+        final List<Derivation<IString,String>> path = new ArrayList<>();
+        for (Derivation<IString,String> d = translation.getFeaturizable().derivation; d != null; d = d.parent) {
+          path.add(d);
+        }
+        Collections.reverse(path);
+        Derivation<IString,String> expected = path.get(0);
+        for (Derivation<IString,String> d : path.subList(1, path.size())) {
+          expected = new Derivation<>(i, d.rule, expected.length, expected, decoder.featurizer, 
+              decoder.scorer, decoder.heuristic, outputSpace);
+        }
+        assertEquals(expected.score, translation.score, 1e-6);
+        final Counter<String> expectedFeatures = FeatureValues.toCounter(FeatureValues.combine(expected));
+        final Counter<String> actualFeatures = FeatureValues.toCounter(translation.features);
+        assertEquals(expectedFeatures.keySet(), actualFeatures.keySet());
+        for (String feature : expectedFeatures.keySet()) {
+          assertEquals(expectedFeatures.getCount(feature), actualFeatures.getCount(feature), 1e-6);
+        }
+      }
+    }
+  }
+
+  /**
+   * Weight the rule indicators of the n-best translations of the sources. Decodes with
+   * <code>featurizers</code>, which must include the rule indicators.
+   */
+  @SafeVarargs
+  static Counter<String> weightRuleIndicators(Featurizer<IString,String>...featurizers) {
+    final Counter<String> sparseWeights = new ClassicCounter<>(weights);
+    final CubePruningDecoderBuilder<IString,String> builder = CubePruningDecoder.builder();
+    configure(builder, phraseTable, 200, weights, featurizers);
+    final CubePruningDecoder<IString,String> decoder = (CubePruningDecoder<IString,String>) builder.newInferer();
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final InputProperties properties = new InputProperties();
+      properties.put(InputProperty.RuleQueryLimit, RULE_QUERY_LIMIT);
+      final OutputSpace<IString,String> outputSpace = OutputSpaceFactory.getOutputSpace(i, null, false, 
+          phraseTable.maxLengthSource(), phraseTable.maxLengthTarget(), false);
+      for (RichTranslation<IString,String> translation : decoder.nbest(IStrings.tokenize(SOURCES[i]), i, 
+          properties, outputSpace, null, 200, false, NbestMode.Standard)) {
+        for (FeatureValue<String> feature : translation.features) {
+          if (feature.name.startsWith("DPT:")) sparseWeights.setCount(feature.name, -0.5);
+        }
+      }
+    }
+    assertTrue(sparseWeights.size() > weights.size());
+    return sparseWeights;
+  }
+
+  @Test
+  public void testParallelism() {
+    // Rule indicators in integer feature mode with weights, so that the workers look up
+    // weights by id in the scorer that they share. A sparse derivation featurizer makes
+    // the workers score the rule features with the derivation features.
+    final Featurizer<IString,String> ruleIndicator = new RuleIndicator("addLexicalized", "integerFeatures");
+    final Featurizer<IString,String> distortion = new DiscriminativeSignedDistortion();
+    final Counter<String> sparseWeights = weightRuleIndicators(ruleIndicator, distortion);
+
+    final List<Supplier<AbstractBeamInfererBuilder<IString,String>>> decoderTypes = 
+        Arrays.asList(CubePruningDecoder::builder, MultiBeamDecoder::builder);
+    for (Supplier<AbstractBeamInfererBuilder<IString,String>> decoderType : decoderTypes) {
+      final AbstractBeamInfererBuilder<IString,String> serialBuilder = decoderType.get();
+      configure(serialBuilder, phraseTable, 200, sparseWeights, ruleIndicator, distortion);
+      final AbstractBeamInferer<IString,String> serial = (AbstractBeamInferer<IString,String>) serialBuilder.newInferer();
+      final AbstractBeamInfererBuilder<IString,String> parallelBuilder = decoderType.get();
+      configure(parallelBuilder, phraseTable, 200, sparseWeights, ruleIndicator, distortion);
+      parallelBuilder.setParallelism(4);
+      final AbstractBeamInferer<IString,String> parallel = (AbstractBeamInferer<IString,String>) parallelBuilder.newInferer();
+      for (int i = 0; i < SOURCES.length; ++i) {
+        final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+        final RichTranslation<IString,String> expected = translate(serial, source, i, new InputProperties());
+        final RichTranslation<IString,String> actual = translate(parallel, source, i, new InputProperties());
+        assertCompleteCoverage(source, actual);
+        assertSameTranslation(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testBatchScoring() {
+    // Batch scoring applies to derivations with feature lists, so add sparse featurizers.
+    // The rule indicators with weights are scored by id, and the others by name.
+    final Featurizer<IString,String> ruleIndicator = new RuleIndicator("addLexicalized", "integerFeatures");
+    final Featurizer<IString,String> distortion = new DiscriminativeSignedDistortion();
+    final Counter<String> sparseWeights = weightRuleIndicators(ruleIndicator, distortion);
+    sparseWeights.setCount("DDIST:neg", -0.2);
+    sparseWeights.setCount("DDIST:0", 0.3);
+
+    final CubePruningDecoderBuilder<IString,String> unbatchedBuilder = CubePruningDecoder.builder();
+    configure(unbatchedBuilder, phraseTable, 200, sparseWeights, ruleIndicator, distortion);
+    final CubePruningDecoder<IString,String> unbatched = (CubePruningDecoder<IString,String>) unbatchedBuilder.newInferer();
+    final CubePruningDecoderBuilder<IString,String> batchedBuilder = CubePruningDecoder.builder();
+    configure(batchedBuilder, phraseTable, 200, sparseWeights, ruleIndicator, distortion);
+    batchedBuilder.setBatchScoring(true);
+    final CubePruningDecoder<IString,String> batched = (CubePruningDecoder<IString,String>) batchedBuilder.newInferer();
+    for (int i = 0; i < SOURCES.length; ++i) {
+      final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+      final RichTranslation<IString,String> expected = translate(unbatched, source, i, new InputProperties());
+      final RichTranslation<IString,String> actual = translate(batched, source, i, new InputProperties());
+      assertCompleteCoverage(source, actual);
+      assertSameTranslation(expected, actual);
+
+      // The score of each derivation must equal the sum of its feature values times their weights
+      double score = 0.0;
+      for (FeatureValue<String> feature : actual.features) {
+        score += feature.value * sparseWeights.getCount(feature.name);
+      }
+      assertEquals(score, actual.score, 1e-6);
+    }
+  }
+
+  @Test
+  public void testPrefetch() {
+    // The LM featurizer prefetches the queries of a batch if the LM supports batch scoring
+    final BatchLanguageModel batchLM = new BatchLanguageModel(lm);
+    final CountingLanguageModel plainLM = new CountingLanguageModel(lm);
+    for (int parallelism : new int[] {1, 4}) {
+      final CubePruningDecoderBuilder<IString,String> plainBuilder = CubePruningDecoder.builder();
+      configure(plainBuilder, phraseTable, plainLM, 200, weights);
+      plainBuilder.setParallelism(parallelism);
+      final CubePruningDecoder<IString,String> plain = (CubePruningDecoder<IString,String>) plainBuilder.newInferer();
+      final CubePruningDecoderBuilder<IString,String> prefetchBuilder = CubePruningDecoder.builder();
+      configure(prefetchBuilder, phraseTable, batchLM, 200, weights);
+      prefetchBuilder.setParallelism(parallelism);
+      final CubePruningDecoder<IString,String> prefetch = (CubePruningDecoder<IString,String>) prefetchBuilder.newInferer();
+      assertFalse(plain.featurizer.isPrefetchEnabled());
+      assertTrue(prefetch.featurizer.isPrefetchEnabled());
+      for (int i = 0; i < SOURCES.length; ++i) {
+        final Sequence<IString> source = IStrings.tokenize(SOURCES[i]);
+        plainLM.queries.set(0);
+        batchLM.queries.set(0);
+        batchLM.batchQueries.set(0);
+        final RichTranslation<IString,String> expected = translate(plain, source, i, new InputProperties());
+        final RichTranslation<IString,String> actual = translate(prefetch, source, i, new InputProperties());
+        assertCompleteCoverage(source, actual);
+        assertSameTranslation(expected, actual);
+        assertEquals(FeatureValues.toCounter(expected.features).getCount(NGramLanguageModelFeaturizer.DEFAULT_FEATURE_NAME),
+            FeatureValues.toCounter(actual.features).getCount(NGramLanguageModelFeaturizer.DEFAULT_FEATURE_NAME), 1e-9);
+        // Each query is answered once, and the prefetched states are used by the derivations
+        assertTrue(batchLM.batchQueries.get() > 0);
+        assertEquals(plainLM.queries.get(), batchLM.queries.get() + batchLM.batchQueries.get());
+      }
+    }
+  }
+
+  /**
+   * Counts the queries that are not part of a batch.
+   */
+  private static class CountingLanguageModel implements LanguageModel<IString> {
+    final LanguageModel<IString> lm;
+    final AtomicLong queries = new AtomicLong();
+    CountingLanguageModel(LanguageModel<IString> lm) { this.lm = lm; }
+    @Override
+    public LMState score(Sequence<IString> sequence, int startOffsetIndex, LMState priorState) {
+      queries.incrementAndGet();
+      return lm.score(sequence, startOffsetIndex, priorState);
+    }
+    @Override
+    public IString getStartToken() { return lm.getStartToken(); }
+    @Override
+    public IString getEndToken() { return lm.getEndToken(); }
+    @Override
+    public String getName() { return lm.getName(); }
+    @Override
+    public int order() { return lm.order(); }
+  }
+
+  /**
+   * A language model that supports batch scoring, and counts the queries of the batches.
+   */
+  private static class BatchLanguageModel extends CountingLanguageModel {
+    final AtomicLong batchQueries = new AtomicLong();
+    BatchLanguageModel(LanguageModel<IString> lm) { super(lm); }
+    @Override
+    public void score(List<Sequence<IString>> sequences, int[] startOffsetIndices, List<LMState> priorStates,
+        LMState[] states) {
+      for (int i = 0, sz = sequences.size(); i < sz; ++i) {
+        final Sequence<IString> sequence = sequences.get(i);
+        if (sequence != null) batchQueries.incrementAndGet();
+        states[i] = sequence == null ? null : lm.score(sequence, startOffsetIndices[i], priorStates.get(i));
+      }
+    }
+    @Override
+    public boolean supportsBatchScoring() { return true; }
+  }
+}
@@ -0,0 +1,58 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Unit test for the featurizer container.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeatureExtractorTest {
+
+  private static class Packed extends DerivationFeaturizer<IString,String> {
+    private final int numWords;
+    private Packed(int numWords) { this.numWords = numWords; }
+    @Override
+    public void initialize(int sourceInputId, Sequence<IString> source) {}
+    @Override
+    public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) { return null; }
+    @Override
+    public int numStateWords() { return numWords; }
+  }
+
+  @Test
+  public void testStateOffsets() {
+    Packed a = new Packed(2);
+    Packed b = new Packed(0);
+    Packed c = new Packed(3);
+    List<Featurizer<IString,String>> featurizers = new ArrayList<>();
+    featurizers.add(a);
+    featurizers.add(b);
+    featurizers.add(c);
+    FeatureExtractor<IString,String> extractor = new FeatureExtractor<>(featurizers);
+    assertEquals(3, extractor.getNumDerivationFeaturizers());
+    assertEquals(5, extractor.getNumStateWords());
+    assertEquals(0, a.getStateOffset());
+    assertEquals(2, c.getStateOffset());
+  }
+
+  @Test(expected=RuntimeException.class)
+  public void testNoStateWords() {
+    Packed a = new Packed(0);
+    List<Featurizer<IString,String>> featurizers = new ArrayList<>();
+    featurizers.add(a);
+    new FeatureExtractor<>(featurizers);
+    a.getStateOffset();
+  }
+}
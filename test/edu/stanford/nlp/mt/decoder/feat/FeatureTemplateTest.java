@@ -0,0 +1,108 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.util.DenseScorer;
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Unit test for integer feature mode.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeatureTemplateTest {
+
+  @Test
+  public void testRegistration() {
+    FeatureTemplate template = new FeatureTemplate("TEST");
+    final int numFeatures = FeatureTemplate.numFeatures();
+    FeatureValue<String> a = template.newFeatureValue(new int[] {1, -1, 2}, 1.0, () -> "a>b");
+    assertEquals("TEST:a>b", a.name);
+
+    // Names without weights are not interned
+    assertEquals(-1, a.id);
+    assertEquals(numFeatures, FeatureTemplate.numFeatures());
+
+    // The name is only built once
+    FeatureValue<String> b = template.newFeatureValue(new int[] {1, -1, 2}, 2.0, () -> { fail(); return null; });
+    assertSame(a.name, b.name);
+    assertEquals(2.0, b.value, 1e-9);
+
+    // The key receives an id once the name has a weight
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("TEST:a>b", 1.0);
+    FeatureTemplate.toArray(weights, null);
+    FeatureValue<String> c = template.newFeatureValue(new int[] {1, -1, 2}, 1.0, () -> { fail(); return null; });
+    assertEquals(FeatureTemplate.indexOf("TEST:a>b"), c.id);
+    assertTrue(c.id >= 0);
+
+    FeatureValue<String> d = template.newFeatureValue(new int[] {2, -1, 1}, 1.0, () -> "b>a");
+    assertEquals(-1, d.id);
+    assertEquals(2, template.size());
+  }
+
+  @Test
+  public void testToArray() {
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("ARRAY:a", 1.0);
+    weights.setCount("ARRAY:b", 2.0);
+    double[] array = FeatureTemplate.toArray(weights, null);
+    assertEquals(2.0, array[FeatureTemplate.indexOf("ARRAY:b")], 1e-9);
+
+    // Large enough arrays are cleared and reused
+    weights.remove("ARRAY:b");
+    assertSame(array, FeatureTemplate.toArray(weights, array));
+    assertEquals(1.0, array[FeatureTemplate.indexOf("ARRAY:a")], 1e-9);
+    assertEquals(0.0, array[FeatureTemplate.indexOf("ARRAY:b")], 1e-9);
+  }
+
+  @Test
+  public void testBoundedIndex() {
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("BOUND:a", 1.0);
+    FeatureTemplate.toArray(weights, null);
+
+    // A full index does not register new names
+    weights.setCount("BOUND:b", 2.0);
+    final int numFeatures = FeatureTemplate.numFeatures();
+    double[] array = FeatureTemplate.toArray(weights, null, numFeatures);
+    assertEquals(numFeatures, FeatureTemplate.numFeatures());
+    assertEquals(-1, FeatureTemplate.indexOf("BOUND:b"));
+    assertEquals(1.0, array[FeatureTemplate.indexOf("BOUND:a")], 1e-9);
+
+    // Features of unregistered names are scored by name
+    FeatureTemplate template = new FeatureTemplate("BOUND");
+    FeatureValue<String> b = template.newFeatureValue(new int[] {1}, 1.0, () -> "b");
+    assertEquals(-1, b.id);
+    assertEquals(2.0, new SparseScorer(weights).getIncrementalScore(Arrays.asList(b)), 1e-9);
+  }
+
+  @Test
+  public void testScoring() {
+    FeatureTemplate template = new FeatureTemplate("SCORE");
+    FeatureValue<String> known = template.newFeatureValue(new int[] {7}, 2.0, () -> "known");
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("SCORE:known", 0.5);
+    weights.setCount("SCORE:other", 3.0);
+    weights.setCount("DENSE", 1.0);
+    SparseScorer scorer = new SparseScorer(weights);
+
+    // Features without weights are scored by name, and features with weights by id
+    FeatureValue<String> unknown = template.newFeatureValue(new int[] {8}, 1.0, () -> "unknown");
+    FeatureValue<String> other = template.newFeatureValue(new int[] {9}, 1.0, () -> "other");
+    assertTrue(other.id >= 0);
+    List<FeatureValue<String>> features = Arrays.asList(known, unknown, other,
+        new FeatureValue<>("DENSE", 1.0, true));
+    assertEquals(1.0 + 3.0 + 1.0, scorer.getIncrementalScore(features), 1e-9);
+    assertEquals(1.0 + 3.0 + 1.0, new DenseScorer(weights).getIncrementalScore(features), 1e-9);
+  }
+}
@@ -0,0 +1,112 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Unit test for featurizer plans.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeaturizerPlanTest {
+
+  private static RuleFeaturizer<IString,String> newRuleFeaturizer(String name, boolean contextFree,
+      boolean isolationScoreOnly) {
+    return new RuleFeaturizer<IString,String>() {
+      @Override
+      public void initialize() {}
+      @Override
+      public List<FeatureValue<String>> ruleFeaturize(Featurizable<IString, String> f) {
+        List<FeatureValue<String>> features = new ArrayList<>();
+        features.add(new FeatureValue<>(name, 1.0));
+        return features;
+      }
+      @Override
+      public boolean isolationScoreOnly() { return isolationScoreOnly; }
+      @Override
+      public boolean isContextFree() { return contextFree; }
+    };
+  }
+
+  private static DerivationFeaturizer<IString,String> newDerivationFeaturizer(String name) {
+    return new DerivationFeaturizer<IString,String>() {
+      @Override
+      public void initialize(int sourceInputId, Sequence<IString> source) {}
+      @Override
+      public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) {
+        return name == null ? null : Arrays.asList(new FeatureValue<>(name, 1.0));
+      }
+    };
+  }
+
+  private static class Dense extends DerivationFeaturizer<IString,String> 
+    implements DenseFeaturizer<IString,String> {
+    private final List<String> names;
+    private Dense(String...names) { this.names = Arrays.asList(names); }
+    @Override
+    public void initialize(int sourceInputId, Sequence<IString> source) {}
+    @Override
+    public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) { return null; }
+    @Override
+    public List<String> getDenseFeatureNames() { return names; }
+    @Override
+    public void denseFeaturize(Featurizable<IString, String> f, double[] values, int offset) {
+      for (int i = 0; i < names.size(); ++i) values[offset + i] = i + 1;
+    }
+  }
+
+  private static List<String> names(List<FeatureValue<String>> features) {
+    List<String> names = new ArrayList<>();
+    for (FeatureValue<String> fv : features) names.add(fv.name);
+    return names;
+  }
+
+  @Test
+  public void testPlan() {
+    List<Featurizer<IString,String>> featurizers = new ArrayList<>();
+    featurizers.add(newRuleFeaturizer("CF", true, false));
+    featurizers.add(newDerivationFeaturizer("D1"));
+    featurizers.add(newRuleFeaturizer("CD", false, true));
+    featurizers.add(newDerivationFeaturizer(null));
+    featurizers.add(newDerivationFeaturizer("D2"));
+    FeaturizerPlan<IString,String> plan = new FeaturizerPlan<>(featurizers);
+
+    assertEquals(3, plan.numDerivationFeaturizers());
+    assertEquals(Arrays.asList("D1", "D2"), names(plan.featurize(null)));
+    assertEquals(Arrays.asList("CF", "CD"), names(plan.ruleFeaturize(null)));
+    assertEquals(Arrays.asList("CF"), names(plan.contextFreeRuleFeaturize(null)));
+
+    List<FeatureValue<String>> contextDependent = plan.contextDependentRuleFeaturize(null);
+    assertEquals(Arrays.asList("CD"), names(contextDependent));
+    assertTrue(contextDependent.get(0).doNotCache);
+  }
+
+  @Test
+  public void testDenseOnly() {
+    List<Featurizer<IString,String>> featurizers = new ArrayList<>();
+    featurizers.add(newRuleFeaturizer("CF", true, false));
+    featurizers.add(new Dense("A", "B"));
+    featurizers.add(new Dense("C"));
+    FeaturizerPlan<IString,String> plan = new FeaturizerPlan<>(featurizers);
+    assertTrue(plan.isDenseOnly());
+    assertEquals(Arrays.asList("A", "B", "C"), plan.getDenseFeatureNames());
+    assertArrayEquals(new double[] { 1.0, 2.0, 1.0 }, plan.denseFeaturize(null), 1e-9);
+
+    // Any sparse derivation featurizer disables dense-only mode
+    featurizers.add(newDerivationFeaturizer("D1"));
+    plan = new FeaturizerPlan<>(featurizers);
+    assertFalse(plan.isDenseOnly());
+    assertNull(plan.getDenseFeatureNames());
+  }
+}
@@ -0,0 +1,59 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Unit test for featurizer profiling.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeaturizerProfilerTest {
+
+  private static class Counting extends DerivationFeaturizer<IString,String> {
+    @Override
+    public void initialize(int sourceInputId, Sequence<IString> source) {}
+    @Override
+    public List<FeatureValue<String>> featurize(Featurizable<IString, String> f) {
+      List<FeatureValue<String>> features = new ArrayList<>();
+      features.add(new FeatureValue<>("COUNT", 1.0));
+      return features;
+    }
+  }
+
+  @Test
+  public void testProfile() throws InterruptedException {
+    List<Featurizer<IString,String>> featurizers = new ArrayList<>();
+    featurizers.add(new Counting());
+    FeaturizerProfiler profiler = new FeaturizerProfiler();
+    FeaturizerPlan<IString,String> plan = new FeaturizerPlan<>(featurizers, profiler);
+
+    for (int i = 0; i < 10; ++i) plan.featurize(null);
+    Thread thread = new Thread(() -> { for (int i = 0; i < 5; ++i) plan.featurize(null); });
+    thread.start();
+    thread.join();
+
+    List<FeaturizerProfiler.Entry> entries = profiler.entries();
+    assertEquals(1, entries.size());
+    assertEquals("Counting.featurize", entries.get(0).name);
+    assertEquals(15, entries.get(0).calls);
+    assertEquals(2, entries.get(0).threads);
+    assertEquals(15, profiler.getTotalCalls());
+    assertTrue(profiler.getSummary().contains("Counting.featurize"));
+
+    profiler.reset();
+    assertEquals(0, profiler.getTotalCalls());
+    plan.featurize(null);
+    assertEquals(1, profiler.getTotalCalls());
+  }
+}
@@ -0,0 +1,103 @@
+package edu.stanford.nlp.mt.decoder.feat;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.decoder.util.WeightSnapshot;
+import edu.stanford.nlp.mt.tm.Rule;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.PhraseAlignment;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Unit test for the rule feature cache.
+ *
+ * @author Spence Green
+ *
+ */
+public class RuleFeatureCacheTest {
+
+  private static Rule<IString> newRule(String source, String target, float score) {
+    return new Rule<>(new float[] { score }, new String[] { "TM" }, IStrings.tokenize(target),
+        IStrings.tokenize(source), PhraseAlignment.getPhraseAlignment("I-I"), "test");
+  }
+
+  private static List<FeatureValue<String>> newFeatures(double value) {
+    List<FeatureValue<String>> features = new ArrayList<>();
+    features.add(new FeatureValue<>("TM", value, true));
+    return features;
+  }
+
+  @Test
+  public void testLookup() {
+    RuleFeatureCache<IString,String> cache = new RuleFeatureCache<>(100);
+    RuleFeatureCache.Entry<String> entry = cache.put(newRule("a", "b", 1.0f), newFeatures(1.0));
+    assertSame(entry, cache.get(newRule("a", "b", 1.0f)));
+    assertNull(cache.get(newRule("a", "b", 2.0f)));
+    assertNull(cache.get(newRule("a", "c", 1.0f)));
+  }
+
+  @Test
+  public void testScore() {
+    RuleFeatureCache<IString,String> cache = new RuleFeatureCache<>(100);
+    RuleFeatureCache.Entry<String> entry = cache.put(newRule("a", "b", 1.0f), newFeatures(2.0));
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("TM", 0.5);
+    SparseScorer scorer = new SparseScorer(weights);
+    WeightSnapshot<String> snapshot = WeightSnapshot.wrap(weights);
+    scorer.updateWeights(snapshot);
+    assertEquals(snapshot.version, scorer.getWeightsVersion());
+    assertEquals(1.0, entry.score(scorer), 1e-9);
+
+    // Weights that were not installed from a snapshot are never cached
+    Counter<String> newWeights = new ClassicCounter<>();
+    newWeights.setCount("TM", 2.0);
+    scorer.updateWeights(newWeights);
+    assertEquals(-1, scorer.getWeightsVersion());
+    assertEquals(4.0, entry.score(scorer), 1e-9);
+
+    // Cached under the snapshot version
+    scorer.updateWeights(snapshot);
+    assertEquals(1.0, entry.score(scorer), 1e-9);
+    scorer.updateWeights(WeightSnapshot.copyOf(newWeights));
+    assertEquals(4.0, entry.score(scorer), 1e-9);
+  }
+
+  @Test
+  public void testPrunedVersion() {
+    RuleFeatureCache<IString,String> cache = new RuleFeatureCache<>(100);
+    RuleFeatureCache.Entry<String> entry = cache.put(newRule("a", "b", 1.0f), newFeatures(1.0), 7);
+    assertTrue(entry.isValidFor(7));
+    assertFalse(entry.isValidFor(8));
+    assertFalse(entry.isValidFor(RuleFeatureCache.UNPRUNED));
+
+    // Stale pruned entries are replaced
+    RuleFeatureCache.Entry<String> newEntry = cache.put(newRule("a", "b", 1.0f), newFeatures(1.0), 8);
+    assertNotSame(entry, newEntry);
+    assertSame(newEntry, cache.get(newRule("a", "b", 1.0f)));
+
+    // Unpruned entries are valid for any weights
+    RuleFeatureCache.Entry<String> unpruned = cache.put(newRule("a", "b", 1.0f), newFeatures(1.0));
+    assertTrue(unpruned.isValidFor(9));
+    assertSame(unpruned, cache.put(newRule("a", "b", 1.0f), newFeatures(1.0), 9));
+  }
+
+  @Test
+  public void testEviction() {
+    RuleFeatureCache<IString,String> cache = new RuleFeatureCache<>(4);
+    for (int i = 0; i < 10; ++i) {
+      cache.put(newRule("a", "b" + i, 1.0f), newFeatures(1.0));
+    }
+    assertTrue(cache.size() <= 4);
+    assertNotNull(cache.get(newRule("a", "b9", 1.0f)));
+    assertNull(cache.get(newRule("a", "b0", 1.0f)));
+  }
+}
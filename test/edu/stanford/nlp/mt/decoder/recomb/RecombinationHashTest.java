@@ -0,0 +1,129 @@
+package edu.stanford.nlp.mt.decoder.recomb;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.recomb.RecombinationHash.Status;
+import edu.stanford.nlp.mt.decoder.util.State;
+
+/**
+ * Unit test for the open-addressing recombination table.
+ *
+ * @author Spence Green
+ *
+ */
+public class RecombinationHashTest {
+
+  private RecombinationHash<TestState> hash;
+
+  @Before
+  public void setUp() {
+    hash = new RecombinationHash<>(new KeyFilter());
+  }
+
+  @Test
+  public void testUpdate() {
+    TestState a = new TestState(1, -2.0);
+    TestState b = new TestState(1, -1.0);
+    TestState c = new TestState(1, -3.0);
+    TestState d = new TestState(4, -3.0);
+    assertEquals(Status.NOVEL, hash.update(a));
+    assertEquals(Status.SELF, hash.update(a));
+    assertEquals(Status.BETTER, hash.update(b));
+    assertSame(a, hash.getLastRedundant());
+    assertEquals(Status.COMBINABLE, hash.update(c));
+    assertSame(b, hash.getLastBestOnQuery());
+    // Same signature, but not combinable
+    assertEquals(Status.NOVEL, hash.update(d));
+    assertEquals(2, hash.size());
+    assertTrue(hash.isBest(b));
+    assertFalse(hash.isBest(a));
+  }
+
+  @Test
+  public void testGrowAndRemove() {
+    final int numStates = 1000;
+    TestState[] states = new TestState[numStates];
+    for (int i = 0; i < numStates; ++i) {
+      states[i] = new TestState(i, -i);
+      assertEquals(Status.NOVEL, hash.update(states[i]));
+    }
+    assertEquals(numStates, hash.size());
+    for (int i = 0; i < numStates; i += 2) {
+      hash.remove(states[i]);
+    }
+    assertEquals(numStates / 2, hash.size());
+    for (int i = 0; i < numStates; ++i) {
+      assertEquals(i % 2 == 1, hash.isBest(states[i]));
+    }
+    Set<TestState> remaining = new HashSet<>(hash.derivations());
+    assertEquals(numStates / 2, remaining.size());
+    hash.remove(states[0], true);
+  }
+
+  @Test(expected=RuntimeException.class)
+  public void testRemoveMissing() {
+    hash.remove(new TestState(7, 0.0));
+  }
+
+  private static class KeyFilter implements RecombinationFilter<TestState> {
+    @Override
+    public boolean combinable(TestState hypA, TestState hypB) {
+      return hypA.key == hypB.key;
+    }
+
+    @Override
+    public long recombinationHashCode(TestState hyp) {
+      // Force signature collisions
+      return hyp.key % 3;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+      return super.clone();
+    }
+  }
+
+  private static class TestState implements State<TestState> {
+    private static int nextId = 0;
+    private final int id = nextId++;
+    private final int key;
+    private final double score;
+
+    public TestState(int key, double score) {
+      this.key = key;
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo(TestState o) {
+      int cmp = (int) Math.signum(o.score - score);
+      return cmp == 0 ? id - o.id : cmp;
+    }
+
+    @Override
+    public double score() {
+      return score;
+    }
+
+    @Override
+    public double partialScore() {
+      return score;
+    }
+
+    @Override
+    public State<TestState> parent() {
+      return null;
+    }
+
+    @Override
+    public int depth() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.feat.FeatureTemplate;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Unit test for batch scoring.
+ *
+ * @author Spence Green
+ *
+ */
+public class FeatureBatchTest {
+
+  @Test
+  public void testBatchScores() {
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("a", 1.0);
+    weights.setCount("b", -2.0);
+    weights.setCount("c", 0.5);
+    weights.setCount("BATCH:x", 1.5);
+
+    // Features with global ids
+    FeatureTemplate template = new FeatureTemplate("BATCH");
+    FeatureTemplate.toArray(weights, null);
+    FeatureValue<String> x = template.newFeatureValue(new int[] {1}, 2.0, () -> "x");
+    assertTrue(x.id >= 0);
+
+    List<List<FeatureValue<String>>> vectors = new ArrayList<>();
+    vectors.add(Arrays.asList(new FeatureValue<>("a", 1.0), new FeatureValue<>("b", 2.0)));
+    vectors.add(new ArrayList<>());
+    vectors.add(Arrays.asList(new FeatureValue<>("c", 4.0), new FeatureValue<>("d", 3.0)));
+    vectors.add(Arrays.asList(x, new FeatureValue<>("a", 1.0)));
+
+    // Force growth of the internal arrays
+    for (int i = 0; i < 2000; ++i) {
+      vectors.add(Arrays.asList(new FeatureValue<>("a", i)));
+    }
+
+    List<Scorer<String>> scorers = Arrays.asList(new SparseScorer(weights), new DenseScorer(weights));
+    FeatureBatch<String> batch = new FeatureBatch<>();
+    for (Scorer<String> scorer : scorers) {
+      for (List<FeatureValue<String>> vector : vectors) batch.add(vector);
+      assertEquals(vectors.size(), batch.size());
+      double[] scores = new double[batch.size()];
+      scorer.getIncrementalScores(batch, scores);
+      for (int i = 0; i < vectors.size(); ++i) {
+        assertEquals(scorer.getIncrementalScore(vectors.get(i)), scores[i], 1e-9);
+      }
+      assertEquals(1.5 * 2.0 + 1.0, scores[3], 1e-9);
+      batch.clear();
+      assertEquals(0, batch.size());
+      assertEquals(0, batch.numFeatures());
+    }
+  }
+}
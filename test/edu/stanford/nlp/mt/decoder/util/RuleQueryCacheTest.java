@@ -0,0 +1,90 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.tm.ConcreteRule;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.InputProperty;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Unit test for the TM query cache.
+ *
+ * @author Spence Green
+ *
+ */
+public class RuleQueryCacheTest {
+
+  private RuleQueryCache<IString,String> cache;
+
+  @Before
+  public void setUp() {
+    cache = new RuleQueryCache<>(2);
+  }
+
+  private RuleQueryCache.Entry<IString,String> put(Sequence<IString> source, InputProperties props) {
+    List<ConcreteRule<IString,String>> ruleList = new ArrayList<>();
+    RuleQueryCache.Key<IString> key = cache.newKey(source, props, 1);
+    return cache.put(key, source, ruleList, new RuleGrid<>(ruleList, source));
+  }
+
+  @Test
+  public void testLookup() {
+    Sequence<IString> source = IStrings.tokenize("This is a test sentence .");
+    InputProperties props = new InputProperties();
+    props.put(InputProperty.RuleQueryLimit, 20);
+    RuleQueryCache.Entry<IString,String> entry = put(source, props);
+    assertSame(entry, cache.get(cache.newKey(IStrings.tokenize("This is a test sentence ."), props, 1)));
+
+    // Different query limit
+    InputProperties otherProps = new InputProperties();
+    otherProps.put(InputProperty.RuleQueryLimit, 10);
+    assertNull(cache.get(cache.newKey(source, otherProps, 1)));
+
+    // Request-specific weights are not cacheable
+    otherProps.put(InputProperty.ModelWeights, new Object());
+    assertNull(cache.newKey(source, otherProps, 1));
+
+    // Nor are weights that were not installed from a snapshot
+    assertNull(cache.newKey(source, props, -1));
+  }
+
+  @Test
+  public void testWeightsVersion() {
+    Sequence<IString> source = IStrings.tokenize("This is a test sentence .");
+    InputProperties props = new InputProperties();
+    RuleQueryCache.Key<IString> staleKey = cache.newKey(source, props, 1);
+    put(source, props);
+    assertEquals(1, cache.size());
+    assertNull(cache.get(cache.newKey(source, props, 2)));
+    assertEquals(0, cache.size());
+
+    // Results computed under the old weights are not inserted
+    List<ConcreteRule<IString,String>> ruleList = new ArrayList<>();
+    cache.put(staleKey, source, ruleList, new RuleGrid<>(ruleList, source));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEviction() {
+    InputProperties props = new InputProperties();
+    Sequence<IString> a = IStrings.tokenize("a");
+    Sequence<IString> b = IStrings.tokenize("b");
+    Sequence<IString> c = IStrings.tokenize("c");
+    put(a, props);
+    put(b, props);
+    assertNotNull(cache.get(cache.newKey(a, props, 1)));
+    put(c, props);
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(cache.newKey(a, props, 1)));
+    assertNull(cache.get(cache.newKey(b, props, 1)));
+  }
+}
@@ -0,0 +1,52 @@
+package edu.stanford.nlp.mt.decoder.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Unit test for the non-zero weight filter.
+ *
+ * @author Spence Green
+ *
+ */
+public class WeightFilterTest {
+
+  @Test
+  public void testMembership() {
+    Counter<String> weights = new ClassicCounter<>();
+    for (int i = 0; i < 5000; ++i) {
+      weights.setCount("DPT:" + i, i % 2 == 0 ? 0.0 : 0.1);
+    }
+    WeightFilter<String> filter = new WeightFilter<>(weights);
+    assertEquals(2500, filter.numFeatures());
+    for (int i = 0; i < 5000; ++i) {
+      assertEquals(i % 2 != 0, filter.hasNonZeroWeight("DPT:" + i));
+      assertFalse(filter.hasNonZeroWeight("OTHER:" + i));
+    }
+    assertFalse(filter.hasNonZeroWeight(null));
+  }
+
+  @Test
+  public void testSparseScorer() {
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("a", 1.0);
+    weights.setCount("b", 0.0);
+    WeightSnapshot<String> snapshot = WeightSnapshot.wrap(weights);
+    SparseScorer scorer = new SparseScorer(weights);
+    scorer.updateWeights(snapshot);
+    assertTrue(scorer.hasNonZeroWeight("a"));
+    assertFalse(scorer.hasNonZeroWeight("b"));
+    assertFalse(scorer.hasNonZeroWeight("c"));
+    assertSame(snapshot.getWeightFilter(), snapshot.getWeightFilter());
+
+    Counter<String> newWeights = new ClassicCounter<>();
+    newWeights.setCount("c", 1.0);
+    scorer.updateWeights(newWeights);
+    assertFalse(scorer.hasNonZeroWeight("a"));
+    assertTrue(scorer.hasNonZeroWeight("c"));
+  }
+}
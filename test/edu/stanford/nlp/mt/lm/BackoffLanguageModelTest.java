@@ -0,0 +1,103 @@
+package edu.stanford.nlp.mt.lm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.Sequences;
+
+/**
+ * Unit test for minimized language model states. The test model is pruned, so many
+ * trigrams are in the model without their suffixes.
+ *
+ * @author Spence Green
+ */
+public class BackoffLanguageModelTest {
+
+  private static final String LM_FILE = "test-resources/inputs/mt06.flt_giga.lm.gz";
+
+  private static File mappedFile;
+  private static List<BackoffLanguageModel> models;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    mappedFile = File.createTempFile("backofflm", ".bin");
+    MappedLanguageModelBuilder.build(LM_FILE, mappedFile.getPath());
+    models = new ArrayList<>();
+    models.add(new ARPALanguageModel(LM_FILE));
+    models.add(new MappedLanguageModel(mappedFile.getPath()));
+    models.add(TrieLanguageModelBuilder.build(LM_FILE, Quantizer.LOSSLESS_BITS, Quantizer.LOSSLESS_BITS));
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    mappedFile.delete();
+  }
+
+  @Test
+  public void testIncrementalScore() {
+    for (BackoffLanguageModel lm : models) {
+      Sequence<IString> seq = Sequences.wrapStartEnd(IStrings.tokenize("question no one knows the question"),
+          lm.getStartToken(), lm.getEndToken());
+      double total = lm.score(seq, 1, null).getScore();
+      LMState state = lm.score(seq.subsequence(0, 1), 0, null);
+      double sum = state.getScore();
+      for (int i = 1; i < seq.size(); ++i) {
+        state = lm.score(seq.subsequence(i, i + 1), 0, state);
+        sum += state.getScore();
+      }
+      assertEquals(lm.getName(), total, sum, 1e-4);
+    }
+  }
+
+  @Test
+  public void testStateMinimization() {
+    for (BackoffLanguageModel lm : models) {
+      // "<s> question no" is in the model, but "question no" is not, so only "no"
+      // can affect the next word.
+      LMState s1 = lm.score(IStrings.tokenize("<s> question no"), 1, null);
+      LMState s2 = lm.score(IStrings.tokenize("the question no"), 1, null);
+      assertEquals(lm.getName(), 1, s1.length());
+      assertEquals(lm.getName(), s1, s2);
+      assertEquals(lm.getName(), s1.hashCode(), s2.hashCode());
+      assertTrue(lm.getName(), s1.getScore() != s2.getScore());
+
+      // Words that are not in the model can't affect the next word
+      LMState s3 = lm.score(IStrings.tokenize("the question xyzzy"), 1, null);
+      assertEquals(lm.getName(), 0, s3.length());
+    }
+  }
+
+  @Test
+  public void testBatchScore() {
+    for (BackoffLanguageModel lm : models) {
+      LMState prior = lm.score(IStrings.tokenize("<s> the question"), 1, null);
+      List<Sequence<IString>> sequences = Arrays.asList(IStrings.tokenize("<s> no one knows"),
+          IStrings.tokenize("no one knows"), null, IStrings.tokenize(""), IStrings.tokenize("xyzzy </s>"));
+      int[] startIndices = new int[] { 1, 0, 0, 0, 0 };
+      List<LMState> priorStates = Arrays.asList(null, prior, prior, prior, prior);
+      LMState[] states = new LMState[sequences.size()];
+      lm.score(sequences, startIndices, priorStates, states);
+      for (int i = 0; i < states.length; ++i) {
+        if (sequences.get(i) == null) {
+          assertNull(lm.getName(), states[i]);
+        } else {
+          LMState expected = lm.score(sequences.get(i), startIndices[i], priorStates.get(i));
+          assertEquals(lm.getName(), expected, states[i]);
+          assertEquals(lm.getName(), expected.getScore(), states[i].getScore(), 1e-6);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package edu.stanford.nlp.mt.lm;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+
+/**
+ * Unit test for the language model query caches.
+ *
+ * @author Spence Green
+ */
+public class CachingLanguageModelTest {
+
+  private static final String LM_FILE = "test-resources/inputs/mt06.flt_giga.lm.gz";
+
+  private static LanguageModel<IString> lm;
+  private static LMState prior;
+  private static List<Sequence<IString>> sequences;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    lm = new ARPALanguageModel(LM_FILE);
+    prior = lm.score(IStrings.tokenize("<s> the question"), 1, null);
+    sequences = Arrays.asList(IStrings.tokenize("no one knows"), IStrings.tokenize("of the"),
+        IStrings.tokenize("xyzzy </s>"), IStrings.tokenize("no one knows"));
+  }
+
+  @Test
+  public void testCachedScores() {
+    for (String type : new String[] { LMQueryCache.DIRECT_MAPPED, LMQueryCache.LRU }) {
+      CachingLanguageModel<IString> cachingLM = new CachingLanguageModel<>(lm, type, 1024);
+      for (int pass = 0; pass < 2; ++pass) {
+        for (Sequence<IString> seq : sequences) {
+          // Equal but not identical sequences and prior states also hit the cache
+          Sequence<IString> query = IStrings.tokenize(seq.toString());
+          LMState priorState = lm.score(IStrings.tokenize("<s> the question"), 1, null);
+          LMState expected = lm.score(seq, 0, prior);
+          LMState state = cachingLM.score(query, 0, priorState);
+          assertEquals(type, expected, state);
+          assertEquals(type, expected.getScore(), state.getScore(), 1e-9);
+        }
+      }
+      // The repeated query in the first pass and all queries in the second pass
+      assertEquals(type, 5, cachingLM.hits());
+      assertEquals(type, 3, cachingLM.misses());
+      assertEquals(type, cachingLM.hits(), cachingLM.threadHits());
+    }
+  }
+
+  @Test
+  public void testStartIndexAndPriorState() {
+    CachingLanguageModel<IString> cachingLM = new CachingLanguageModel<>(lm, LMQueryCache.LRU, 1024);
+    Sequence<IString> seq = IStrings.tokenize("<s> no one knows");
+    cachingLM.score(seq, 0, null);
+    assertEquals(lm.score(seq, 1, null).getScore(), cachingLM.score(seq, 1, null).getScore(), 1e-9);
+    assertEquals(lm.score(seq, 1, prior).getScore(), cachingLM.score(seq, 1, prior).getScore(), 1e-9);
+    assertEquals(0, cachingLM.hits());
+  }
+
+  @Test
+  public void testLRUEviction() {
+    LMQueryCache<IString> cache = LMQueryCache.create(LMQueryCache.LRU, 2);
+    Sequence<IString> a = IStrings.tokenize("a"), b = IStrings.tokenize("b"), c = IStrings.tokenize("c");
+    cache.put(a, 0, null, prior);
+    cache.put(b, 0, null, prior);
+    assertNotNull(cache.get(a, 0, null));
+    cache.put(c, 0, null, prior);
+    assertNull(cache.get(b, 0, null));
+    assertNotNull(cache.get(a, 0, null));
+    assertNotNull(cache.get(c, 0, null));
+    assertEquals(3, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void testDirectMapped() {
+    LMQueryCache<IString> cache = LMQueryCache.create(LMQueryCache.DIRECT_MAPPED, 1000);
+    assertEquals(1024, cache.capacity());
+    cache = LMQueryCache.create(LMQueryCache.DIRECT_MAPPED, 1);
+    Sequence<IString> a = IStrings.tokenize("a"), b = IStrings.tokenize("b");
+    cache.put(a, 0, null, prior);
+    assertNotNull(cache.get(a, 0, null));
+    cache.put(b, 0, null, prior);
+    assertNull(cache.get(a, 0, null));
+  }
+
+  @Test
+  public void testBatchScore() {
+    CachingLanguageModel<IString> cachingLM = new CachingLanguageModel<>(lm, LMQueryCache.DIRECT_MAPPED, 1024);
+    List<LMState> priorStates = Arrays.asList(prior, prior, prior, prior);
+    int[] startIndices = new int[sequences.size()];
+    LMState[] states = new LMState[sequences.size()];
+    for (int pass = 0; pass < 2; ++pass) {
+      cachingLM.score(sequences, startIndices, priorStates, states);
+      for (int i = 0; i < states.length; ++i) {
+        assertEquals(lm.score(sequences.get(i), 0, prior).getScore(), states[i].getScore(), 1e-9);
+      }
+    }
+    // The duplicate in the first batch is sent to the language model
+    assertEquals(4, cachingLM.hits());
+    assertEquals(4, cachingLM.misses());
+  }
+
+  @Test
+  public void testEndedThread() throws InterruptedException {
+    CachingLanguageModel<IString> cachingLM = new CachingLanguageModel<>(lm, LMQueryCache.LRU, 1024);
+    Thread thread = new Thread(() -> {
+      for (Sequence<IString> seq : sequences) cachingLM.score(seq, 0, prior);
+    });
+    thread.start();
+    thread.join();
+    // The cache of the ended thread is dropped, but its counts are kept
+    assertEquals(1, cachingLM.hits());
+    assertEquals(3, cachingLM.misses());
+    assertEquals(0, cachingLM.threadHits());
+    cachingLM.score(sequences.get(0), 0, prior);
+    assertEquals(1, cachingLM.hits());
+    assertEquals(4, cachingLM.misses());
+  }
+}
@@ -0,0 +1,108 @@
+package edu.stanford.nlp.mt.lm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.Sequences;
+
+/**
+ * Unit test for the memory-mapped language model. Compares queries to
+ * ARPALanguageModel on the same ARPA file.
+ *
+ * @author Spence Green
+ */
+public class MappedLanguageModelTest {
+
+  private static File arpaFile;
+  private static File mappedFile;
+  private static ARPALanguageModel arpaLM;
+  private static MappedLanguageModel mappedLM;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    arpaFile = File.createTempFile("mappedlm", ".arpa");
+    mappedFile = File.createTempFile("mappedlm", ".bin");
+    try (PrintWriter pw = new PrintWriter(arpaFile)) {
+      pw.println("\\data\\");
+      pw.println("ngram 1=6");
+      pw.println("ngram 2=5");
+      pw.println("ngram 3=2");
+      pw.println();
+      pw.println("\\1-grams:");
+      pw.println("-1.0\t<unk>\t0");
+      pw.println("-99\t<s>\t-0.5");
+      pw.println("-1.2\t</s>\t0");
+      pw.println("-0.8\tthe\t-0.3");
+      pw.println("-1.5\tcat\t-0.2");
+      pw.println("-1.7\tsat\t-0.1");
+      pw.println();
+      pw.println("\\2-grams:");
+      pw.println("-0.4\t<s> the\t-0.2");
+      pw.println("-0.6\tthe cat\t-0.1");
+      pw.println("-0.7\tcat sat\t-0.05");
+      pw.println("-0.3\tsat </s>");
+      pw.println("-0.9\tthe sat");
+      pw.println();
+      pw.println("\\3-grams:");
+      pw.println("-0.2\t<s> the cat");
+      pw.println("-0.25\tthe cat sat");
+      pw.println();
+      pw.println("\\end\\");
+    }
+    MappedLanguageModelBuilder.build(arpaFile.getPath(), mappedFile.getPath());
+    arpaLM = new ARPALanguageModel(arpaFile.getPath());
+    mappedLM = (MappedLanguageModel) LanguageModelFactory.load(
+        LanguageModelFactory.MAPPED_LM_TAG + mappedFile.getPath());
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    arpaFile.delete();
+    mappedFile.delete();
+  }
+
+  private static Sequence<IString> wrap(String sentence) {
+    return Sequences.wrapStartEnd(IStrings.tokenize(sentence), arpaLM.getStartToken(),
+        arpaLM.getEndToken());
+  }
+
+  @Test
+  public void testScore() {
+    assertEquals(arpaLM.order(), mappedLM.order());
+    String[] sentences = { "the cat sat", "cat the sat", "the dog sat", "sat sat sat the", "" };
+    for (String sentence : sentences) {
+      Sequence<IString> seq = wrap(sentence);
+      assertEquals(sentence, arpaLM.score(seq, 1, null).getScore(),
+          mappedLM.score(seq, 1, null).getScore(), 1e-5);
+    }
+  }
+
+  @Test
+  public void testIncrementalScore() {
+    Sequence<IString> seq = wrap("the cat sat");
+    double total = mappedLM.score(seq, 1, null).getScore();
+    LMState state = mappedLM.score(seq.subsequence(0, 1), 0, null);
+    double sum = state.getScore();
+    for (int i = 1; i < seq.size(); ++i) {
+      state = mappedLM.score(seq.subsequence(i, i + 1), 0, state);
+      sum += state.getScore();
+    }
+    assertEquals(total, sum, 1e-5);
+
+    // Equal contexts yield equal states
+    LMState s1 = mappedLM.score(IStrings.tokenize("cat the cat"), 0, null);
+    LMState s2 = mappedLM.score(IStrings.tokenize("sat the cat"), 0, null);
+    assertEquals(s1, s2);
+    assertEquals(s1.hashCode(), s2.hashCode());
+  }
+}
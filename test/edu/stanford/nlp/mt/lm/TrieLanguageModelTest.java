@@ -0,0 +1,151 @@
+package edu.stanford.nlp.mt.lm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.mt.util.Sequences;
+
+/**
+ * Unit test for the quantized trie language model. Compares queries to
+ * ARPALanguageModel on the same ARPA file.
+ *
+ * @author Spence Green
+ */
+public class TrieLanguageModelTest {
+
+  private static final String[] SENTENCES = { "the cat sat", "cat the sat", "the dog sat",
+    "sat sat sat the", "" };
+
+  private static File arpaFile;
+  private static File trieFile;
+  private static ARPALanguageModel arpaLM;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    arpaFile = File.createTempFile("trielm", ".arpa");
+    trieFile = File.createTempFile("trielm", ".bin");
+    try (PrintWriter pw = new PrintWriter(arpaFile)) {
+      pw.println("\\data\\");
+      pw.println("ngram 1=6");
+      pw.println("ngram 2=5");
+      pw.println("ngram 3=2");
+      pw.println();
+      pw.println("\\1-grams:");
+      pw.println("-1.0\t<unk>\t0");
+      pw.println("-99\t<s>\t-0.5");
+      pw.println("-1.2\t</s>\t0");
+      pw.println("-0.8\tthe\t-0.3");
+      pw.println("-1.5\tcat\t-0.2");
+      pw.println("-1.7\tsat\t-0.1");
+      pw.println();
+      pw.println("\\2-grams:");
+      pw.println("-0.4\t<s> the\t-0.2");
+      pw.println("-0.6\tthe cat\t-0.1");
+      pw.println("-0.7\tcat sat\t-0.05");
+      pw.println("-0.3\tsat </s>");
+      pw.println("-0.9\tthe sat");
+      pw.println();
+      pw.println("\\3-grams:");
+      pw.println("-0.2\t<s> the cat");
+      pw.println("-0.25\tthe cat sat");
+      pw.println();
+      pw.println("\\end\\");
+    }
+    arpaLM = new ARPALanguageModel(arpaFile.getPath());
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    arpaFile.delete();
+    trieFile.delete();
+  }
+
+  private static Sequence<IString> wrap(String sentence) {
+    return Sequences.wrapStartEnd(IStrings.tokenize(sentence), arpaLM.getStartToken(),
+        arpaLM.getEndToken());
+  }
+
+  @Test
+  public void testLossless() throws IOException {
+    TrieLanguageModel lm = TrieLanguageModelBuilder.build(arpaFile.getPath(),
+        Quantizer.LOSSLESS_BITS, Quantizer.LOSSLESS_BITS);
+    assertEquals(arpaLM.order(), lm.order());
+    assertEquals(13, lm.numNgrams());
+    for (String sentence : SENTENCES) {
+      Sequence<IString> seq = wrap(sentence);
+      assertEquals(sentence, arpaLM.score(seq, 1, null).getScore(),
+          lm.score(seq, 1, null).getScore(), 1e-5);
+
+      // The n-grams that extend to the right are recorded by the builder
+      for (int i = 1; i <= seq.size(); ++i) {
+        Sequence<IString> prefix = seq.subsequence(0, i);
+        assertEquals(prefix.toString(), ((ARPALMState) arpaLM.score(prefix, 1, null)).length(),
+            ((ARPALMState) lm.score(prefix, 1, null)).length());
+      }
+    }
+  }
+
+  @Test
+  public void testQuantized() throws IOException {
+    TrieLanguageModel lm = TrieLanguageModelBuilder.build(arpaFile.getPath(), 2, 2);
+    for (String sentence : SENTENCES) {
+      Sequence<IString> seq = wrap(sentence);
+      assertEquals(sentence, arpaLM.score(seq, 1, null).getScore(),
+          lm.score(seq, 1, null).getScore(), 1.0);
+    }
+  }
+
+  @Test
+  public void testWriteAndLoad() throws IOException {
+    TrieLanguageModel lm = TrieLanguageModelBuilder.build(arpaFile.getPath(), 8, 8);
+    lm.write(trieFile.getPath());
+    TrieLanguageModel loaded = (TrieLanguageModel) LanguageModelFactory.load(
+        LanguageModelFactory.TRIE_LM_TAG + trieFile.getPath());
+    assertEquals(lm.numNgrams(), loaded.numNgrams());
+    assertEquals(lm.sizeInBytes(), loaded.sizeInBytes());
+    for (String sentence : SENTENCES) {
+      Sequence<IString> seq = wrap(sentence);
+      assertEquals(sentence, lm.score(seq, 1, null).getScore(),
+          loaded.score(seq, 1, null).getScore(), 1e-9);
+    }
+  }
+
+  @Test
+  public void testIncrementalScore() throws IOException {
+    TrieLanguageModel lm = TrieLanguageModelBuilder.build(arpaFile.getPath(),
+        Quantizer.LOSSLESS_BITS, Quantizer.LOSSLESS_BITS);
+    Sequence<IString> seq = wrap("the cat sat");
+    double total = lm.score(seq, 1, null).getScore();
+    LMState state = lm.score(seq.subsequence(0, 1), 0, null);
+    double sum = state.getScore();
+    for (int i = 1; i < seq.size(); ++i) {
+      state = lm.score(seq.subsequence(i, i + 1), 0, state);
+      sum += state.getScore();
+    }
+    assertEquals(total, sum, 1e-5);
+
+    // Equal contexts yield equal states
+    LMState s1 = lm.score(IStrings.tokenize("cat the cat"), 0, null);
+    LMState s2 = lm.score(IStrings.tokenize("sat the cat"), 0, null);
+    assertEquals(s1, s2);
+  }
+
+  @Test
+  public void testQuantizer() {
+    float[] values = { 0.0f, -0.1f, -0.2f, -0.3f, 0.0f, -2.0f, -2.1f };
+    Quantizer q = Quantizer.train(values, values.length, 2, true);
+    assertEquals(0.0f, q.decode(q.encode(0.0f)), 0.0f);
+    assertEquals(-0.2f, q.decode(q.encode(-0.2f)), 0.2f);
+    assertEquals(-2.05f, q.decode(q.encode(-2.0f)), 0.2f);
+  }
+}
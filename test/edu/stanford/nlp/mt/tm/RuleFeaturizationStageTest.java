@@ -0,0 +1,71 @@
+package edu.stanford.nlp.mt.tm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.stanford.nlp.mt.decoder.feat.RuleFeaturizer;
+import edu.stanford.nlp.mt.decoder.util.SparseScorer;
+import edu.stanford.nlp.mt.util.CoverageSet;
+import edu.stanford.nlp.mt.util.FeatureValue;
+import edu.stanford.nlp.mt.util.Featurizable;
+import edu.stanford.nlp.mt.util.IString;
+import edu.stanford.nlp.mt.util.IStrings;
+import edu.stanford.nlp.mt.util.InputProperties;
+import edu.stanford.nlp.mt.util.PhraseAlignment;
+import edu.stanford.nlp.mt.util.Sequence;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Unit test for parallel rule featurization.
+ *
+ * @author Spence Green
+ *
+ */
+public class RuleFeaturizationStageTest {
+
+  private static final RuleFeaturizer<IString,String> featurizer = new RuleFeaturizer<IString,String>() {
+    @Override
+    public void initialize() {}
+    @Override
+    public List<FeatureValue<String>> ruleFeaturize(Featurizable<IString, String> f) {
+      return Collections.singletonList(new FeatureValue<>("TM", f.translationScores[0], true));
+    }
+    @Override
+    public boolean isolationScoreOnly() { return false; }
+  };
+
+  @Test
+  public void testOrder() {
+    final Sequence<IString> source = IStrings.tokenize("a b c");
+    final List<Rule<IString>> rules = new ArrayList<>();
+    final List<CoverageSet> coverages = new ArrayList<>();
+    for (int i = 0; i < 5000; ++i) {
+      rules.add(new Rule<>(new float[] { i }, new String[] { "TM" }, IStrings.tokenize("x" + i),
+          IStrings.tokenize("a"), PhraseAlignment.getPhraseAlignment("I-I"), "test"));
+      CoverageSet coverage = new CoverageSet(source.size());
+      coverage.set(i % source.size());
+      coverages.add(coverage);
+    }
+    Counter<String> weights = new ClassicCounter<>();
+    weights.setCount("TM", 0.5);
+    SparseScorer scorer = new SparseScorer(weights);
+
+    for (int parallelism : new int[] { 1, 4 }) {
+      List<ConcreteRule<IString,String>> concreteRules = RuleFeaturizationStage.featurize(rules, coverages,
+          featurizer, scorer, source, 0, new InputProperties(), parallelism);
+      assertEquals(rules.size(), concreteRules.size());
+      for (int i = 0; i < rules.size(); ++i) {
+        ConcreteRule<IString,String> rule = concreteRules.get(i);
+        assertSame(rules.get(i), rule.abstractRule);
+        assertSame(coverages.get(i), rule.sourceCoverage);
+        assertEquals(0.5 * i, rule.isolationScore, 1e-6);
+      }
+    }
+  }
+}
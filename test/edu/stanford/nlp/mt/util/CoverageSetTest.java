@@ -1,5 +1,6 @@
 package edu.stanford.nlp.mt.util;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import edu.stanford.nlp.mt.util.CoverageSet;
@@ -58,4 +59,63 @@ public class CoverageSetTest  extends TestCase {
 		   assertTrue(bit.intValue() == bitOrderedSet[i]);
 	   }
    }
+   
+   public void testPackedRanges() {
+      CoverageSet cs = new CoverageSet(100);
+      BitSet bs = new BitSet(100);
+      cs.set(3, 70); bs.set(3, 70);
+      cs.clear(10); bs.clear(10);
+      cs.set(99); bs.set(99);
+      assertEquals(bs, cs.toBitSet());
+      assertEquals(bs.hashCode(), cs.hashCode());
+      assertEquals(bs.cardinality(), cs.cardinality());
+      assertEquals(bs.length(), cs.length());
+      for (int i = 0; i < 110; ++i) {
+         assertEquals(bs.nextSetBit(i), cs.nextSetBit(i));
+         assertEquals(bs.nextClearBit(i), cs.nextClearBit(i));
+         assertEquals(bs.previousSetBit(i), cs.previousSetBit(i));
+      }
+      CoverageSet rule = new CoverageSet(100);
+      rule.set(10);
+      assertFalse(cs.intersects(rule));
+      cs.or(rule);
+      assertTrue(cs.intersects(rule));
+      assertEquals("{3-69,99}", cs.toString());
+   }
+   
+   public void testLongInput() {
+      CoverageSet packed = new CoverageSet(10);
+      packed.set(5);
+      CoverageSet large = new CoverageSet(500);
+      large.set(5);
+      assertEquals(packed, large);
+      assertEquals(packed.hashCode(), large.hashCode());
+      assertEquals(packed.longHashCode(), large.longHashCode());
+      packed.set(300);
+      large.set(300);
+      assertEquals(packed, large);
+      assertEquals(packed.longHashCode(), large.longHashCode());
+      assertEquals(301, packed.length());
+      assertEquals(6, packed.nextClearBit(5));
+      CoverageSet clone = large.clone();
+      clone.set(400, 450);
+      assertEquals(52, clone.cardinality());
+      assertEquals(2, large.cardinality());
+      assertTrue(clone.intersects(large));
+   }
+   
+   public void testWord() {
+      CoverageSet packed = new CoverageSet(100);
+      packed.set(3); packed.set(64); packed.set(99);
+      CoverageSet large = new CoverageSet(500);
+      large.set(3); large.set(64); large.set(99); large.set(300);
+      long[] words = large.toBitSet().toLongArray();
+      for (int i = 0; i < words.length; ++i) {
+         assertEquals(words[i], large.word(i));
+      }
+      assertEquals(0L, large.word(words.length));
+      assertEquals(large.word(0), packed.word(0));
+      assertEquals(large.word(1), packed.word(1));
+      assertEquals(0L, packed.word(4));
+   }
 }
@@ -32,4 +32,29 @@ public class SequenceTest {
     assertTrue(TokenUtils.END_TOKEN.equals(padStartEnd.subsequence(seq.size() + 1, padStartEnd.size()).get(0)));
     assertTrue(seq.equals(padStartEnd.subsequence(1, seq.size() + 1)));
   }
+  
+  @Test
+  public void testParentLinkedSequence() {
+    Sequence<IString> seq = IStrings.tokenize(str);
+    Sequence<IString> flat = Sequences.emptySequence();
+    Sequence<IString> linked = Sequences.emptySequence();
+    for (int i = 0; i < 50; ++i) {
+      flat = flat.concat(seq);
+      linked = ParentLinkedSequence.concat(linked, seq);
+      assertEquals(flat.size(), linked.size());
+      assertEquals(flat.get(flat.size() - 1), linked.get(linked.size() - 1));
+    }
+    assertTrue(ParentLinkedSequence.concat(linked, Sequences.emptySequence()) == linked);
+    for (int i = 0; i < flat.size(); ++i) {
+      assertEquals(flat.get(i), linked.get(i));
+    }
+    // Span crosses a parent boundary
+    assertEquals(flat.subsequence(2, 9), linked.subsequence(2, 9));
+    assertEquals(seq, linked.subsequence(seq.size(), 2 * seq.size()));
+    assertEquals(flat, linked);
+    assertEquals(linked, flat);
+    assertEquals(flat.hashCode(), linked.hashCode());
+    assertEquals(flat.toString(), linked.toString());
+    assertTrue(linked.elements() instanceof IString[]);
+  }
 }